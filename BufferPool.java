@@ -0,0 +1,136 @@
+/*
+ * File         : BufferPool.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * Arrays kept for reuse, so that buffers taken and given back on every
+ * call are not made anew each time.  Arrays of each primitive type and
+ * of objects come in classes of powers of two elements.  A pool keeps at
+ * most `keep' arrays of each class, none of more than `largest' bytes,
+ * and no more than `limit' bytes in all, so its footprint stays bounded
+ * however many sizes pass through it.
+ *
+ * `ObjectMessage' keeps one pool of bytes for messages, and each
+ * `Intracomm' one for the temporary buffers of its collectives.
+ */
+
+package mpi;
+
+import java.lang.reflect.Array ;
+import java.util.ArrayDeque ;
+import java.util.Arrays ;
+
+class BufferPool {
+
+  private final static Class<?> [] kinds = {
+    byte.class, char.class, short.class, boolean.class,
+    int.class, long.class, float.class, double.class, Object.class
+  } ;
+
+  private final static int BYTE   = 0 ;
+  private final static int OBJECT = 8 ;
+
+  private final static int SMALLEST = 16 ;   // elements
+
+  private final int keep, largest, limit ;
+
+  private final ArrayDeque<Object> [] [] free ;
+
+  private int kept ;   // bytes
+
+  BufferPool(int keep, int largest, int limit) {
+    this.keep    = keep ;
+    this.largest = largest ;
+    this.limit   = limit ;
+
+    @SuppressWarnings("unchecked")
+    ArrayDeque<Object> [] [] lists =
+        (ArrayDeque<Object> [] []) new ArrayDeque<?> [kinds.length] [32] ;
+    free = lists ;
+    for (int k = 0 ; k < kinds.length ; k++)
+      for (int c = 0 ; c < 32 ; c++)
+        free [k] [c] = new ArrayDeque<Object>() ;
+  }
+
+  /*
+   * An array of at least `length' bytes.
+   */
+
+  byte [] bytes(int length) {
+    return (byte []) take(BYTE, length) ;
+  }
+
+  /*
+   * An array of at least `length' elements, of the same primitive type
+   * as `template', or of objects if it holds objects.
+   */
+
+  Object take(Object template, int length) {
+    return take(kind(template.getClass()), length) ;
+  }
+
+  /*
+   * Gives back an array from `take' or `bytes'.  Arrays of other lengths
+   * are dropped.  Arrays of objects are cleared, so that the pool does
+   * not keep what they referred to.
+   */
+
+  void release(Object array) {
+    if (array == null)
+      return ;
+    int length = Array.getLength(array) ;
+    int k = kind(array.getClass()) ;
+    int bytes = length * unit(k) ;
+    if (Integer.bitCount(length) != 1 || length < SMALLEST ||
+        bytes > largest || k == OBJECT && array.getClass() != Object [].class)
+      return ;
+
+    if (array instanceof Object [])
+      Arrays.fill((Object []) array, null) ;
+
+    synchronized (this) {
+      ArrayDeque<Object> list = free [k] [classOf(length)] ;
+      if (list.size() < keep && kept + bytes <= limit) {
+        list.add(array) ;
+        kept += bytes ;
+      }
+    }
+  }
+
+  private Object take(int k, int length) {
+    int c = classOf(length) ;
+    synchronized (this) {
+      Object array = free [k] [c].poll() ;
+      if (array != null) {
+        kept -= (1 << c) * unit(k) ;
+        return array ;
+      }
+    }
+    return Array.newInstance(kinds [k], 1 << c) ;
+  }
+
+  private static int classOf(int length) {
+    return 32 - Integer.numberOfLeadingZeros(Math.max(length, SMALLEST) - 1) ;
+  }
+
+  private static int kind(Class<?> c) {
+    for (int k = 0 ; k < OBJECT ; k++)
+      if (c.getComponentType() == kinds [k])
+        return k ;
+    return OBJECT ;
+  }
+
+  private static int unit(int k) {
+    switch (k) {
+      case 0 : case 3 :
+        return 1 ;
+      case 1 : case 2 :
+        return 2 ;
+      case 4 : case 6 :
+        return 4 ;
+      default :
+        return 8 ;
+    }
+  }
+}
@@ -0,0 +1,282 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Properties;
+import mpi.*;
+
+/*
+    Calibration
+    Measures how fast the network and the stencil are on the machines of a
+    run, and picks the ghost width that should make a step quickest
+
+    A step with ghost width k costs about
+        latency / k                  one message per side every k steps
+        + 8 * size / bandwidth       k columns per side every k steps
+        + (k - 1) * column time      ghost columns advanced redundantly
+    The model is for strips of whole columns only, which is the only shape
+    the program has
+*/
+public class Calibration
+{
+    final static int PINGS = 50;            // messages timed for each size
+    final static int COLUMNS = 16;          // columns in the large message
+                                            // and the stencil benchmark
+    final static int SWEEPS = 20;           // stencil sweeps timed
+
+    double latency;                         // seconds for an empty message
+    double secondsPerByte;                  // of a message, past latency
+    double columnTime;                      // seconds for one column sweep
+
+
+
+
+    /*
+        measure
+        Every machine exchanges messages with a partner using Sendrecv,
+        first of one double to find latency and then of COLUMNS columns
+        to find bandwidth, and times a few sweeps of the stencil. The
+        slowest figures of all machines are kept, since the slowest one
+        holds up every exchange
+    */
+    static Calibration measure(Intracomm comm, int size, int threads)
+            throws MPIException
+    {
+        int rank = comm.Rank();
+        int partner = rank ^ 1;
+        if(partner >= comm.Size())
+        {
+            partner = MPI.PROC_NULL;
+        }
+
+        double small = pingPong(comm, partner, 1);
+        double large = pingPong(comm, partner, COLUMNS * size);
+
+        //a few sweeps on scratch columns, the same way the field is swept,
+        //after as many that are not timed
+        double[][][] z = new double[2][COLUMNS][size];
+        for(int x = 0; x < COLUMNS; x++)
+        {
+            Arrays.fill(z[0][x], x);
+        }
+        for(int s = 0; s < SWEEPS; s++)
+        {
+            Heat2D_mpi.forwardEulerMethod(s % 2, size, z, 0.25, 1,
+                    COLUMNS - 2);
+        }
+        double start = MPI.Wtime();
+        for(int s = 0; s < SWEEPS; s++)
+        {
+            Heat2D_mpi.forwardEulerMethod(s % 2, size, z, 0.25, 1,
+                    COLUMNS - 2);
+        }
+        double sweep = (MPI.Wtime() - start) / (SWEEPS * (COLUMNS - 2));
+
+        double[] mine = new double[] { small,
+            Math.max(0, large - small) / (8.0 * COLUMNS * size),
+            sweep / threads };
+        double[] slowest = new double[3];
+        comm.Allreduce(mine, 0, slowest, 0, 3, MPI.DOUBLE, MPI.MAX);
+
+        Calibration c = new Calibration();
+        c.latency = slowest[0];
+        c.secondsPerByte = slowest[1];
+        c.columnTime = slowest[2];
+        return c;
+    }
+
+
+
+
+    /*
+        pingPong
+        Average time for one Sendrecv of count doubles with partner, after
+        one that is not timed
+    */
+    private static double pingPong(Intracomm comm, int partner, int count)
+            throws MPIException
+    {
+        double[] out = new double[count];
+        double[] in = new double[count];
+
+        comm.Sendrecv(out, 0, count, MPI.DOUBLE, partner, 0,
+                in, 0, count, MPI.DOUBLE, partner, 0);
+        double start = MPI.Wtime();
+        for(int i = 0; i < PINGS; i++)
+        {
+            comm.Sendrecv(out, 0, count, MPI.DOUBLE, partner, 0,
+                    in, 0, count, MPI.DOUBLE, partner, 0);
+        }
+        return (MPI.Wtime() - start) / PINGS;
+    }
+
+
+
+
+    /*
+        stepTime
+        Predicted seconds a step takes with ghost width k
+    */
+    double stepTime(int size, int k)
+    {
+        return latency / k + 8.0 * size * secondsPerByte
+                + (k - 1) * columnTime;
+    }
+
+
+
+
+    /*
+        bestHalo
+        The ghost width from 1 to widest with the lowest predicted step
+    */
+    int bestHalo(int size, int widest)
+    {
+        int best = 1;
+        for(int k = 2; k <= widest; k++)
+        {
+            if(stepTime(size, k) < stepTime(size, best))
+            {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+
+
+
+    /*
+        configuration
+        Names the machines of a run, how many there are and which hosts
+        they are on, together with the size of the field. Choices are
+        cached under this name. The hosts are named by a SHA-256 digest of
+        their sorted names, so different sets of hosts get different names
+    */
+    static String configuration(Intracomm comm, int size)
+            throws MPIException
+    {
+        int machines = comm.Size();
+        Object[] host = new Object[] { MPI.Get_processor_name() };
+        Object[] hosts = new Object[machines];
+        comm.Allgather(host, 0, 1, MPI.OBJECT, hosts, 0, 1, MPI.OBJECT);
+        Arrays.sort(hosts);
+
+        StringBuilder names = new StringBuilder();
+        for(int i = 0; i < machines; i++)
+        {
+            names.append(hosts[i]).append('\n');
+        }
+        return "machines." + machines + ".hosts." + digest(names.toString())
+                + ".size." + size;
+    }
+
+
+
+
+    /*
+        digest
+        The SHA-256 digest of text in hexadecimal
+    */
+    private static String digest(String text)
+    {
+        try
+        {
+            byte[] bytes = MessageDigest.getInstance("SHA-256").digest(
+                    text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for(int i = 0; i < bytes.length; i++)
+            {
+                hex.append(String.format("%02x", bytes[i]));
+            }
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            //every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+
+
+    /*
+        load
+        The ghost width cached for configuration in the file at path, or 0
+        if there is none
+    */
+    static int load(String path, String configuration)
+    {
+        Properties cache = new Properties();
+        try
+        {
+            FileInputStream in = new FileInputStream(path);
+            try
+            {
+                cache.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch(IOException e)
+        {
+            return 0;
+        }
+        return Integer.parseInt(cache.getProperty(configuration + ".halo",
+                "0"));
+    }
+
+
+
+
+    /*
+        save
+        Adds the ghost width chosen for configuration to the file at path,
+        keeping what is already cached for other configurations
+    */
+    static void save(String path, String configuration, int halo)
+    {
+        Properties cache = new Properties();
+        try
+        {
+            FileInputStream in = new FileInputStream(path);
+            try
+            {
+                cache.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch(IOException e)
+        {
+            //nothing cached yet
+        }
+
+        cache.setProperty(configuration + ".halo", Integer.toString(halo));
+        try
+        {
+            FileOutputStream out = new FileOutputStream(path);
+            try
+            {
+                cache.store(out, "Heat2D_mpi calibration");
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch(IOException e)
+        {
+            System.out.println("An error occured saving the calibration: " +
+                    e.getMessage());
+        }
+    }
+}
@@ -16,9 +16,16 @@ public class Cartcomm extends Intracomm {
     super(handle) ;
   }
 
+  Cartcomm(int context, int [] members, int [] dims, boolean [] periods) {
+    super(context, members) ;
+
+    this.dims    = dims ;
+    this.periods = periods ;
+  }
+
   public Object clone() {
     try {
-      return new Cartcomm(super.dup()) ;
+      return MPI.device.dup(this) ;
     }
     catch (MPIException e) {
       throw new RuntimeException(e.getMessage()) ;
@@ -40,7 +47,11 @@ public class Cartcomm extends Intracomm {
    * <tt>dims</tt> field of the returned object.
    */
 
-  public native CartParms Get() throws MPIException ;
+  public CartParms Get() throws MPIException {
+    return MPI.device.cartGet(this) ;
+  }
+
+  native CartParms GetNative() throws MPIException ;
 
   /**
    * Translate logical process coordinates to process rank.
@@ -54,7 +65,11 @@ public class Cartcomm extends Intracomm {
    * Java binding of the MPI operation <tt>MPI_CART_RANK</tt>.
    */
 
-  public native int Rank(int[] coords) throws MPIException ;
+  public int Rank(int[] coords) throws MPIException {
+    return MPI.device.cartRank(this, coords) ;
+  }
+
+  native int RankNative(int[] coords) throws MPIException ;
 
   /**
    * Translate process rank to logical process coordinates.
@@ -68,7 +83,11 @@ public class Cartcomm extends Intracomm {
    * Java binding of the MPI operation <tt>MPI_CART_COORDS</tt>.
    */
 
-  public native int [] Coords(int rank) throws MPIException ;
+  public int [] Coords(int rank) throws MPIException {
+    return MPI.device.cartCoords(this, rank) ;
+  }
+
+  native int [] CoordsNative(int rank) throws MPIException ;
 
   /**
    * Compute source and destination ranks for ``shift'' communication.
@@ -83,7 +102,12 @@ public class Cartcomm extends Intracomm {
    * Java binding of the MPI operation <tt>MPI_CART_SHIFT</tt>.
    */
 
-  public native ShiftParms Shift(int direction, int disp) throws MPIException ;
+  public ShiftParms Shift(int direction, int disp) throws MPIException {
+    return MPI.device.cartShift(this, direction, disp) ;
+  }
+
+  native ShiftParms ShiftNative(int direction, int disp)
+                                              throws MPIException ;
 
   /**
    * Partition Cartesian communicator into subgroups of lower dimension.
@@ -100,10 +124,10 @@ public class Cartcomm extends Intracomm {
    */
 
   public Cartcomm Sub(boolean [] remain_dims) throws MPIException {
-    return new Cartcomm(sub(remain_dims)) ;
+    return MPI.device.cartSub(this, remain_dims) ;
   }
 
-  private native long sub(boolean [] remain_dims);
+  native long sub(boolean [] remain_dims);
 
   /**
    * Compute an optimal placement.
@@ -123,7 +147,12 @@ public class Cartcomm extends Intracomm {
    * The number of dimensions is taken to be size of the <tt>dims</tt> argument.
    */
 
-  public native int Map(int [] dims, boolean [] periods) throws MPIException ;
+  public int Map(int [] dims, boolean [] periods) throws MPIException {
+    return MPI.device.cartMap(this, dims, periods) ;
+  }
+
+  native int MapNative(int [] dims, boolean [] periods)
+                                              throws MPIException ;
  
   /**
    * Select a balanced distribution of processes per coordinate direction.
@@ -141,7 +170,17 @@ public class Cartcomm extends Intracomm {
    * <tt>dims</tt> is an <em>inout</em> parameter.
    */
 
-  static public native void Dims_create(int nnodes, int[] dims)
-                                                      throws MPIException ;
+  static public void Dims_create(int nnodes, int[] dims)
+                                               throws MPIException {
+    MPI.device.dimsCreate(nnodes, dims) ;
+  }
+
+  static native void Dims_createNative(int nnodes, int[] dims)
+                                              throws MPIException ;
+
+  // The grid, under the engine.
+
+  int [] dims ;
+  boolean [] periods ;
 }
 
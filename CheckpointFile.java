@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    CheckpointFile
+    Binary file holding the whole field at the start of one step, written
+    by every machine for it's own columns. It can be read back by any
+    number of machines, each reading only the columns it needs
+
+    Layout, all big-endian:
+        header  magic, size, step, number of pieces          (4 ints)
+        index   first column, last column, offset            (2 ints, long)
+                for each piece, one piece per machine that wrote it
+        pieces  the columns of each piece, each top-down
+    The index is what tells a reader where a column is, so it does not
+    need to know how the writers were split
+*/
+public class CheckpointFile
+{
+    final static int MAGIC = 0x48324443;     // "H2DC"
+    final static int HEADER = 16;            // bytes before the index
+    final static int ENTRY = 16;             // bytes of one index entry
+
+    private FileChannel channel;
+    int size;                                // columns (and rows) of field
+    int step;                                // step the field is at
+    private int[] firsts;                    // first column of each piece
+    private int[] lasts;                     // last column of each piece
+    private long[] offsets;                  // where each piece starts
+
+
+
+
+    /*
+        create
+        Creates the file at path for the field at step t, split into
+        pieces as given by bounds, and writes it's header and index
+    */
+    public static CheckpointFile create(String path, int size, int t,
+            int[] bounds) throws IOException
+    {
+        CheckpointFile file = new CheckpointFile();
+        file.channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        file.size = size;
+        file.step = t;
+
+        int pieces = bounds.length - 1;
+        file.firsts = new int[pieces];
+        file.lasts = new int[pieces];
+        file.offsets = new long[pieces];
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER + pieces * ENTRY);
+        header.putInt(MAGIC).putInt(size).putInt(t).putInt(pieces);
+        long offset = HEADER + pieces * ENTRY;
+        for(int i = 0; i < pieces; i++)
+        {
+            file.firsts[i] = bounds[i];
+            file.lasts[i] = bounds[i + 1] - 1;
+            file.offsets[i] = offset;
+            header.putInt(file.firsts[i]).putInt(file.lasts[i]);
+            header.putLong(offset);
+            offset += 8L * (bounds[i + 1] - bounds[i]) * size;
+        }
+        header.flip();
+        file.write(header, 0);
+        return file;
+    }
+
+
+
+
+    /*
+        open
+        Opens an existing file at path and reads it's header and index,
+        for writing columns into it or for reading them back
+    */
+    public static CheckpointFile open(String path, boolean writing)
+            throws IOException
+    {
+        CheckpointFile file = new CheckpointFile();
+        file.channel = writing
+                ? FileChannel.open(Paths.get(path), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)
+                : FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        file.read(header, 0);
+        if(header.getInt() != MAGIC)
+        {
+            file.channel.close();
+            throw new IOException(path + " is not a checkpoint");
+        }
+        file.size = header.getInt();
+        file.step = header.getInt();
+
+        int pieces = header.getInt();
+        file.firsts = new int[pieces];
+        file.lasts = new int[pieces];
+        file.offsets = new long[pieces];
+
+        ByteBuffer index = ByteBuffer.allocate(pieces * ENTRY);
+        file.read(index, HEADER);
+        for(int i = 0; i < pieces; i++)
+        {
+            file.firsts[i] = index.getInt();
+            file.lasts[i] = index.getInt();
+            file.offsets[i] = index.getLong();
+        }
+        return file;
+    }
+
+
+
+
+    /*
+        writeColumns
+        Writes columns first to last of field, which must all be in one
+        piece, at their place in that piece
+    */
+    public void writeColumns(final double[][] field, int first, int last)
+            throws IOException
+    {
+        int piece = pieceOf(first);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                (last - first + 1) * size * 8);
+        DoubleBuffer columns = buffer.asDoubleBuffer();
+        for(int x = first; x <= last; x++)
+        {
+            columns.put(field[x], 0, size);
+        }
+
+        write(buffer, offsets[piece] + 8L * (first - firsts[piece]) * size);
+    }
+
+
+
+
+    /*
+        readColumns
+        Reads columns first to last into field. Only the part of each
+        piece that overlaps them is read
+    */
+    public void readColumns(double[][] field, int first, int last)
+            throws IOException
+    {
+        for(int i = 0; i < firsts.length; i++)
+        {
+            int from = Math.max(first, firsts[i]);
+            int to = Math.min(last, lasts[i]);
+            if(from > to)
+            {
+                continue;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    (to - from + 1) * size * 8);
+            read(buffer, offsets[i] + 8L * (from - firsts[i]) * size);
+
+            DoubleBuffer columns = buffer.asDoubleBuffer();
+            for(int x = from; x <= to; x++)
+            {
+                columns.get(field[x], 0, size);
+            }
+        }
+    }
+
+
+
+
+    /*
+        close
+        Makes sure everything written is on disk and closes the file
+    */
+    public void close() throws IOException
+    {
+        channel.force(false);
+        channel.close();
+    }
+
+
+
+
+    /*
+        pieceOf
+        The piece holding column x
+    */
+    private int pieceOf(int x)
+    {
+        for(int i = 0; i < firsts.length; i++)
+        {
+            if(x >= firsts[i] && x <= lasts[i])
+            {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("column " + x + " not in file");
+    }
+
+
+
+
+    /*
+        write
+        Positional writes may write less than asked for, so keep going
+        until the whole buffer is in the file
+    */
+    private void write(ByteBuffer data, long position) throws IOException
+    {
+        while(data.hasRemaining())
+        {
+            position += channel.write(data, position);
+        }
+    }
+
+
+
+
+    /*
+        read
+        Fills data from the file starting at position, then readies it to
+        be read from
+    */
+    private void read(ByteBuffer data, long position) throws IOException
+    {
+        while(data.hasRemaining())
+        {
+            int n = channel.read(data, position);
+            if(n < 0)
+            {
+                throw new IOException("checkpoint ends early");
+            }
+            position += n;
+        }
+        data.flip();
+    }
+}
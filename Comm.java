@@ -11,6 +11,7 @@
 package mpi;
 import java.io.*;
 import java.lang.*;
+import java.util.Arrays;
 
 public class Comm {
   protected final static int SELF  = 1;
@@ -21,15 +22,29 @@ public class Comm {
   Comm() {}
 
   void setType(int Type) {
-    GetComm(Type);
+    GetCommDispatch(Type);
   }
 
-  private native void GetComm(int Type);
+  private void GetCommDispatch(int Type) {
+    MPI.device.setType(this, Type) ;
+  }
+
+  native void GetComm(int Type);
 
   protected Comm(long handle) {
     this.handle = handle;
   }  
 
+  Comm(int context, int [] members) {
+    setMembers(context, members) ;
+  }
+
+  void setMembers(int context, int [] members) {
+    this.context = context ;
+    this.members = members ;
+    ranks = Engine.started.ranksOf(members) ;
+  }
+
   /**
    * Duplicate this communicator.
    * <p>
@@ -44,7 +59,12 @@ public class Comm {
    */
 
   public Object clone() {
-    return new Comm(dup());
+    try {
+      return MPI.device.dup(this) ;
+    }
+    catch (MPIException e) {
+      throw new RuntimeException(e.getMessage()) ;
+    }
   }
 
   protected native long dup();
@@ -60,7 +80,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_COMM_SIZE</tt>.
    */
 
-  public native int Size() throws MPIException ;
+  public int Size() throws MPIException {
+    return MPI.device.size(this) ;
+  }
+
+  native int SizeNative() throws MPIException ;
 
   /**
    * Rank of this process in group of this communicator.
@@ -73,7 +97,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_COMM_RANK</tt>.
    */
 
-  public native int Rank() throws MPIException ;
+  public int Rank() throws MPIException {
+    return MPI.device.rank(this) ;
+  }
+
+  native int RankNative() throws MPIException ;
 
   /**
    * Compare two communicators.
@@ -95,7 +123,11 @@ public class Comm {
    * <tt>MPI.UNEQUAL</tt> results otherwise.
    */
 
-  public static native int Compare(Comm comm1, Comm comm2) throws MPIException ;
+  public static int Compare(Comm comm1, Comm comm2) throws MPIException {
+    return MPI.device.compare(comm1, comm2) ;
+  }
+
+  static native int CompareNative(Comm comm1, Comm comm2) throws MPIException ;
 
   /**
    * Destroy this communicator.
@@ -103,7 +135,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_COMM_FREE</tt>.
    */
 
-  public native void Free() throws MPIException ;
+  public void Free() throws MPIException {
+    MPI.device.free(this) ;
+  }
+
+  native void FreeNative() throws MPIException ;
 
   /**
    * Test if communicator object is void (has been freed).
@@ -114,7 +150,11 @@ public class Comm {
    * </table>
    */
 
-  public native boolean Is_null();
+  public boolean Is_null() {
+    return MPI.device.isNull(this) ;
+  }
+
+  native boolean Is_nullNative();
 
   /**
    * Return group associated with a communicator.
@@ -128,10 +168,10 @@ public class Comm {
    */
 
   public Group Group() throws MPIException {
-    return new Group(group());
+    return MPI.device.group(this) ;
   }
 
-  private native long group();
+  native long group();
 
   // Inter-communication
 
@@ -147,7 +187,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_COMM_TEST_INTER</tt>.
    */
 
-  public native boolean Test_inter() throws MPIException ;
+  public boolean Test_inter() throws MPIException {
+    return MPI.device.testInter(this) ;
+  }
+
+  native boolean Test_interNative() throws MPIException ;
 
   /**
    * Create an inter-communicator.
@@ -173,8 +217,8 @@ public class Comm {
                                     int  local_leader,
 	                            int  remote_leader, 
                                     int  tag) throws MPIException {
-    return new Intercomm(GetIntercomm(local_comm, local_leader,
-                                      remote_leader, tag)) ;
+    return MPI.device.createIntercomm(this, local_comm,
+                                      local_leader, remote_leader, tag) ;
   }
 
   public native long GetIntercomm(Comm local_comm, 
@@ -184,36 +228,21 @@ public class Comm {
 
 
   // Object serialization support
+
+  /*
+   * An object buffer goes as an `ObjectMessage': the header and the
+   * serialized items in one message of at most `ObjectMessage.FIRST'
+   * bytes, and the rest of them in a second if there are more.
+   */
     
   public byte[] Object_Serialize(Object   buf,
                                  int      offset,
                                  int      count, 
                                  Datatype type) throws MPIException {
-    if(type.Size() != 0) {
-	byte[] byte_buf ; 
-	Object buf_els [] = (Object[])buf;
-	try {
-	  ByteArrayOutputStream o = new ByteArrayOutputStream();
-	  ObjectOutputStream out = new ObjectOutputStream(o);
-	  int base;
-	  for (int i = 0; i < count; i++){
-	    base = type.Extent() * i;
-	    for (int j = 0 ; j < type.displacements.length ; j++)
-	      out.writeObject(buf_els[base + offset + 
-				     type.displacements[j]]);     
-	  }
-	      
-	  out.flush();
-	  out.close();
-	  byte_buf  = o.toByteArray();
-
-	} catch(Exception ex){
-	    ex.printStackTrace();
-	    byte_buf  = null ;
-	}
-	return byte_buf ;
-    }
-    else return new byte[0];
+    byte [] message = ObjectMessage.write(buf, offset, count, type) ;
+    byte [] byte_buf = Arrays.copyOf(message, ObjectMessage.length(message)) ;
+    ObjectMessage.release(message) ;
+    return byte_buf ;
   }
    
   public void Object_Deserialize(Object   buf,
@@ -221,22 +250,124 @@ public class Comm {
                                  int      offset,
                                  int      count,
                                  Datatype type) throws MPIException {
+    ObjectMessage.read(byte_buf, 0, buf, offset, type) ;
+  }
 
-    if(type.Size() != 0) {
-      Object buf_els [] = (Object[])buf;          
+  private void sendObjects(int mode, Object buf, int offset, int count,
+                           Datatype type, int dest, int tag)
+                                                      throws MPIException {
+    byte [] message = ObjectMessage.write(buf, offset, count, type) ;
+    try {
+      sendMessage(mode, message, dest, tag) ;
+    }
+    finally {
+      ObjectMessage.release(message) ;
+    }
+  }
+
+  /*
+   * Sends a message that starts with its length in `mode'.  Only the
+   * first part goes in that mode: the receive of the rest is posted once
+   * the first has arrived, so the rest goes as a standard send unless it
+   * is buffered.
+   */
+
+  void sendMessage(int mode, byte [] message, int dest, int tag)
+                                                      throws MPIException {
+    int length = ObjectMessage.length(message) ;
+    int first = Math.min(length, ObjectMessage.FIRST) ;
+    MPI.device.send(this, mode, message, 0, first, MPI.BYTE, dest, tag) ;
+    if (length > first)
+      MPI.device.send(this, restMode(mode), message, first,
+                      length - first, MPI.BYTE, dest, tag) ;
+  }
+
+  /*
+   * Receives a message sent by `sendMessage', into a pooled array.
+   */
 
-      try {      
-        ByteArrayInputStream in = new ByteArrayInputStream(byte_buf);   
-	ObjectInputStream s = new ObjectInputStream(in);
-	int base;
-	for (int i = 0; i < count; i++){
-	  base = type.Extent() * i;
-	  for (int j = 0 ; j < type.displacements.length ; j++)
-	    buf_els[base + offset + type.displacements[j]]=s.readObject();
-	} 
-	s.close(); 
-      }catch(Exception ex){ex.printStackTrace();}	
-    }  
+  byte [] recvMessage(int source, int tag) throws MPIException {
+    byte [] first = ObjectMessage.take(ObjectMessage.FIRST) ;
+    Status status = RecvDispatch(first, 0, ObjectMessage.FIRST, MPI.BYTE,
+                                 source, tag, new Status()) ;
+    return recvRest(first, status) ;
+  }
+
+  private static int restMode(int mode) {
+    return mode == Prequest.MODE_BUFFERED ? mode : Prequest.MODE_STANDARD ;
+  }
+
+  /*
+   * Starts sending a serialized object buffer, with req as the request
+   * for the first part of the message.  The request for the rest, if
+   * any, is kept in `req.restReq', and the message in `req.message'
+   * until the request completes.
+   */
+
+  Request isendObjects(int mode, byte [] message, int dest, int tag,
+                       Request req) throws MPIException {
+    int length = ObjectMessage.length(message) ;
+    int first = Math.min(length, ObjectMessage.FIRST) ;
+
+    req.message = message ;
+    MPI.device.isend(this, mode, message, 0, first, MPI.BYTE, dest, tag,
+                     req) ;
+    req.restReq = null ;
+    if (length > first)
+      req.restReq = MPI.device.isend(this, restMode(mode), message, first,
+                                     length - first, MPI.BYTE, dest, tag,
+                                     new Request()) ;
+    return req ;
+  }
+
+  /*
+   * Starts receiving an object buffer, with req as the request for the
+   * first part of the message.
+   */
+
+  Request irecvObjects(int source, int tag, Request req)
+                                                      throws MPIException {
+    req.message = ObjectMessage.take(ObjectMessage.FIRST) ;
+    return MPI.device.irecv(this, req.message, 0, ObjectMessage.FIRST,
+                            MPI.BYTE, source, tag, req) ;
+  }
+
+  /*
+   * Receives the rest of a message whose first part arrived in `first'
+   * with `status', if there is any, from the same source and with the
+   * same tag, and returns the whole message.
+   */
+
+  private byte [] recvRest(byte [] first, Status status)
+                                                      throws MPIException {
+    int length = ObjectMessage.length(first) ;
+    if (length <= ObjectMessage.FIRST)
+      return first ;
+
+    byte [] message = ObjectMessage.take(length) ;
+    System.arraycopy(first, 0, message, 0, ObjectMessage.FIRST) ;
+    ObjectMessage.release(first) ;
+    RecvDispatch(message, ObjectMessage.FIRST, length - ObjectMessage.FIRST,
+                 MPI.BYTE, status.source, status.tag, new Status()) ;
+    return message ;
+  }
+
+  /*
+   * Completes the receive of an object buffer whose first part arrived
+   * in `first' with `status', and reads the items into buf.
+   */
+
+  Status recvObjects(byte [] first, Status status, Object buf, int offset,
+                     Datatype type) throws MPIException {
+    byte [] message = recvRest(first, status) ;
+    try {
+      status.object_count = ObjectMessage.read(message, 0, buf, offset,
+                                               type) ;
+      return status ;
+    }
+    finally {
+      ObjectMessage.release(message) ;
+    }
   }
 
     
@@ -275,26 +406,30 @@ public class Comm {
                    int      dest,  
                    int      tag) throws MPIException {
 
-    if (type.isObject()){   
-      byte[] byte_buf = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
-
-      send(length_buf, 0, 2, MPI.INT, dest, tag);  // header
-
-      send(byte_buf, 0, byte_buf.length, MPI.BYTE,dest, tag) ;
-    }
+    if (type.isObject())
+      sendObjects(Prequest.MODE_STANDARD, buf, offset, count, type,
+                  dest, tag) ;
     else {
-      send(buf, offset, count, type, dest, tag);
+      sendDispatch(buf, offset, count, type, dest, tag);
     }
   }
   
-  private native void send(Object   buf, 
-                           int      offset, 
-                           int      count, 
-                           Datatype type, 
-                           int      dest, 
-                           int      tag);
+  private void sendDispatch(Object   buf, 
+                            int      offset, 
+                            int      count, 
+                            Datatype type, 
+                            int      dest, 
+                            int      tag) throws MPIException {
+    MPI.device.send(this, Prequest.MODE_STANDARD, buf, offset, count, type,
+                    dest, tag) ;
+  }
+
+  native void send(Object   buf, 
+                   int      offset, 
+                   int      count, 
+                   Datatype type, 
+                   int      dest, 
+                   int      tag);
 
   /**
    * Blocking receive operation.
@@ -333,30 +468,33 @@ public class Comm {
                      int      tag) throws MPIException {
 
     if (type.isObject()){
-      Status status = new Status();
-
-      int[] length_buf= new int[2];
-      Recv(length_buf,0,2, MPI.INT, source, tag, status); 
-
-      byte[] byte_buf = new byte[length_buf[0]];
-      Recv(byte_buf,0,length_buf[0], MPI.BYTE, status.source, tag, status);
-
-      Object_Deserialize(buf,byte_buf,offset,length_buf[1],type);
-
-      status.object_count = length_buf[1];
-      return status;
+      byte [] first = ObjectMessage.take(ObjectMessage.FIRST) ;
+      Status status = RecvDispatch(first, 0, ObjectMessage.FIRST, MPI.BYTE,
+                                   source, tag, new Status()) ;
+      return recvObjects(first, status, buf, offset, type) ;
     }
     else
-      return Recv(buf, offset, count, type, source, tag, new Status());
+      return RecvDispatch(buf, offset, count, type, source, tag, new Status());
   }
 
-  private native Status Recv(Object   buf, 
-                             int      offset, 
-                             int      count, 
-                             Datatype type,
-                             int      source, 
-                             int      tag, 
-                             Status   stat);
+  private Status RecvDispatch(Object   buf, 
+                              int      offset, 
+                              int      count, 
+                              Datatype type,
+                              int      source, 
+                              int      tag, 
+                              Status   stat) throws MPIException {
+    return MPI.device.recv(this, buf, offset, count, type, source, tag,
+                           stat) ;
+  }
+
+  native Status Recv(Object   buf, 
+                     int      offset, 
+                     int      count, 
+                     Datatype type,
+                     int      source, 
+                     int      tag, 
+                     Status   stat);
 
   // Send-Recv
 
@@ -412,28 +550,46 @@ public class Comm {
 
       return stas [1] ;      
     }
-    else  return Sendrecv(sendbuf,   sendoffset,
-                          sendcount, sendtype,
-                          dest,      sendtag,
-                          recvbuf,   recvoffset,
-                          recvcount, recvtype, 
-                          source,    recvtag,
-                          new Status());
-  }
-
-  private native Status Sendrecv(Object   sbuf, 
-                                 int      soffset, 
-                                 int      scount,
-                                 Datatype stype, 
-                                 int      dest, 
-                                 int      stag,
-                                 Object   rbuf, 
-                                 int      roffset, 
-                                 int      rcount, 
-                                 Datatype rtype, 
-                                 int      source, 
-                                 int      rtag,
-                                 Status   stat);
+    else  return SendrecvDispatch(sendbuf,   sendoffset,
+                                  sendcount, sendtype,
+                                  dest,      sendtag,
+                                  recvbuf,   recvoffset,
+                                  recvcount, recvtype, 
+                                  source,    recvtag,
+                                  new Status());
+  }
+
+  private Status SendrecvDispatch(Object   sbuf, 
+                                  int      soffset, 
+                                  int      scount,
+                                  Datatype stype, 
+                                  int      dest, 
+                                  int      stag,
+                                  Object   rbuf, 
+                                  int      roffset, 
+                                  int      rcount, 
+                                  Datatype rtype, 
+                                  int      source, 
+                                  int      rtag,
+                                  Status   stat) throws MPIException {
+    return MPI.device.sendrecv(this, sbuf, soffset, scount, stype, dest,
+                               stag, rbuf, roffset, rcount, rtype,
+                               source, rtag, stat) ;
+  }
+
+  native Status Sendrecv(Object   sbuf, 
+                         int      soffset, 
+                         int      scount,
+                         Datatype stype, 
+                         int      dest, 
+                         int      stag,
+                         Object   rbuf, 
+                         int      roffset, 
+                         int      rcount, 
+                         Datatype rtype, 
+                         int      source, 
+                         int      rtag,
+                         Status   stat);
 
   /**
    * Execute a blocking send and receive operation, receiving message
@@ -468,44 +624,41 @@ public class Comm {
 
     if(type.isObject()) {
 
-      // Might as well do this natively, to avoid allocation of one more
-      // buffer.
-
-      Status status = new Status() ;
-
-      byte[] sendbytes = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {sendbytes.length, count} ;
+      // The items are serialized when the send starts, so the receive
+      // can overwrite them.
 
-      Sendrecv_replace(length_buf, 0, 2, MPI.INT,
-                       dest, sendtag, source, recvtag,
-                       status) ;
-
-      byte [] recvbytes = new byte [length_buf[0]] ;
-
-      Sendrecv(sendbytes, 0, sendbytes.length, MPI.BYTE, dest, sendtag,
-               recvbytes, 0, recvbytes.length, MPI.BYTE, status.source, recvtag,
-               status) ;
-
-      Object_Deserialize(buf,recvbytes,offset,length_buf[1],type);
-
-      status.object_count = length_buf[1] ;
-      return status;
+      Request req = Isend(buf, offset, count, type, dest, sendtag) ;
+      Status status = Recv(buf, offset, count, type, source, recvtag) ;
+      req.Wait() ;
+      return status ;
     }
     else
-      return Sendrecv_replace(buf, offset, count, type, 
-                              dest, sendtag, source, recvtag, new Status());
+      return Sendrecv_replaceDispatch(buf, offset, count, type, dest,
+                                      sendtag, source, recvtag, new Status());
   }
 
-  private native Status Sendrecv_replace(Object   buf, 
-                                         int      offset, 
-                                         int      count,
-                                         Datatype type, 
-                                         int      dest, 
-                                         int      stag,
-                                         int      source, 
-                                         int      rtag, 
-                                         Status   stat);
+  private Status Sendrecv_replaceDispatch(Object   buf, 
+                                          int      offset, 
+                                          int      count,
+                                          Datatype type, 
+                                          int      dest, 
+                                          int      stag,
+                                          int      source, 
+                                          int      rtag, 
+                                          Status   stat) throws MPIException {
+    return MPI.device.sendrecvReplace(this, buf, offset, count, type,
+                                      dest, stag, source, rtag, stat) ;
+  }
+
+  native Status Sendrecv_replace(Object   buf, 
+                                 int      offset, 
+                                 int      count,
+                                 Datatype type, 
+                                 int      dest, 
+                                 int      stag,
+                                 int      source, 
+                                 int      rtag, 
+                                 Status   stat);
 
   // Communication Modes
 
@@ -534,23 +687,28 @@ public class Comm {
                     int      dest, 
                     int      tag) throws MPIException {
 
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
+    if (type.isObject())
+      sendObjects(Prequest.MODE_BUFFERED, buf, offset, count, type,
+                  dest, tag) ;
+    else bsendDispatch(buf, offset, count, type, dest, tag);
+  }
 
-      int[] length_buf = {byte_buf.length, count} ;
-       
-      bsend(length_buf, 0, 2, MPI.INT, dest, tag);
-      bsend(byte_buf, 0, length_buf[0], MPI.BYTE, dest, tag);
-    }
-    else bsend(buf, offset, count, type, dest, tag);
+  private void bsendDispatch(Object   buf, 
+                             int      offset, 
+                             int      count, 
+                             Datatype type,
+                             int      dest, 
+                             int      tag) throws MPIException {
+    MPI.device.send(this, Prequest.MODE_BUFFERED, buf, offset, count, type,
+                    dest, tag) ;
   }
 
-  private native void bsend(Object   buf, 
-                            int      offset, 
-                            int      count, 
-                            Datatype type,
-                            int      dest, 
-                            int      tag) ;
+  native void bsend(Object   buf, 
+                    int      offset, 
+                    int      count, 
+                    Datatype type,
+                    int      dest, 
+                    int      tag) ;
 
   /**
    * Send in synchronous mode.
@@ -577,23 +735,28 @@ public class Comm {
                     int      dest, 
                     int      tag) throws MPIException {
 
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
+    if (type.isObject())
+      sendObjects(Prequest.MODE_SYNCHRONOUS, buf, offset, count, type,
+                  dest, tag) ;
+    else ssendDispatch(buf, offset, count, type, dest,  tag);
+  }
 
-      send(length_buf, 0, 2, MPI.INT, dest, tag); 
-      ssend(byte_buf , 0, byte_buf.length, MPI.BYTE, dest, tag);
-    }
-    else ssend(buf, offset, count, type, dest,  tag);
+  private void ssendDispatch(Object   buf,
+                             int      offset, 
+                             int      count, 
+                             Datatype type,
+                             int      dest, 
+                             int      tag) throws MPIException {
+    MPI.device.send(this, Prequest.MODE_SYNCHRONOUS, buf, offset, count,
+                    type, dest, tag) ;
   }
 
-  private native void ssend(Object   buf,
-                            int      offset, 
-                            int      count, 
-                            Datatype type,
-                            int      dest, 
-                            int      tag);
+  native void ssend(Object   buf,
+                    int      offset, 
+                    int      count, 
+                    Datatype type,
+                    int      dest, 
+                    int      tag);
 
   /**
    * Send in ready mode.
@@ -620,23 +783,28 @@ public class Comm {
                     int      dest, 
                     int      tag) throws MPIException {
 
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
+    if (type.isObject())
+      sendObjects(Prequest.MODE_READY, buf, offset, count, type,
+                  dest, tag) ;
+    else rsendDispatch(buf, offset, count, type, dest, tag);
+  }
 
-      int[] length_buf = {byte_buf.length, count} ;
-       
-      rsend(length_buf, 0, 2, MPI.INT, dest, tag);       
-      rsend(byte_buf , 0, byte_buf.length, MPI.BYTE, dest, tag);
-    }
-    else rsend(buf, offset, count, type, dest, tag);
+  private void rsendDispatch(Object   buf,
+                             int      offset, 
+                             int      count, 
+                             Datatype type,
+                             int      dest, 
+                             int      tag) throws MPIException {
+    MPI.device.send(this, Prequest.MODE_READY, buf, offset, count, type,
+                    dest, tag) ;
   }
 
-  private native void rsend(Object   buf,
-                            int      offset, 
-                            int      count, 
-                            Datatype type,
-                            int      dest, 
-                            int      tag) ;
+  native void rsend(Object   buf,
+                    int      offset, 
+                    int      count, 
+                    Datatype type,
+                    int      dest, 
+                    int      tag) ;
 
   // Nonblocking communication 
 
@@ -666,33 +834,37 @@ public class Comm {
                        int      dest, 
                        int      tag) throws MPIException {
     if (type.isObject()) {
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
-       
-      Request hdrReq = Isend(length_buf, 0, 2, MPI.INT, dest, tag,
-                             new Request());
-      Request req = new Request(hdrReq) ;
-
-      Isend(byte_buf, 0, byte_buf.length, MPI.BYTE, dest, tag, req);
-
-      return req;
+      byte [] message = ObjectMessage.write(buf, offset, count,
+                                            type) ;
+      return isendObjects(Prequest.MODE_STANDARD, message, dest, tag,
+                          new Request(message)) ;
     }
     else
-      return Isend(buf, offset, count, type, dest, tag, new Request());
+      return IsendDispatch(buf, offset, count, type, dest, tag, new Request());
   }
 
   /**
    * Protected member used internally by <tt>Prequest.Start</tt>
    */
 
-  protected native Request Isend(Object   buf, 
-                                 int      offset, 
-                                 int      count,
-                                 Datatype type,
-                                 int      dest, 
-                                 int      tag,  
-                                 Request  req);
+  protected Request IsendDispatch(Object   buf, 
+                                  int      offset, 
+                                  int      count,
+                                  Datatype type,
+                                  int      dest, 
+                                  int      tag,  
+                                  Request  req) throws MPIException {
+    return MPI.device.isend(this, Prequest.MODE_STANDARD, buf, offset,
+                            count, type, dest, tag, req) ;
+  }
+
+  native Request Isend(Object   buf, 
+                       int      offset, 
+                       int      count,
+                       Datatype type,
+                       int      dest, 
+                       int      tag,  
+                       Request  req);
 
   /**
    * Start a buffered mode, nonblocking send.
@@ -720,34 +892,39 @@ public class Comm {
                         int      dest, 
                         int      tag) throws MPIException {
 
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
-       
-      Request hdrReq = Ibsend(length_buf, 0, 2, MPI.INT, dest, tag,
-                              new Request());
-      Request req = new Request(hdrReq) ;
-
-      Ibsend(byte_buf, 0, byte_buf.length, MPI.BYTE, dest, tag, req);
-
-      return req;     
+    if (type.isObject()) {
+      byte [] message = ObjectMessage.write(buf, offset, count,
+                                            type) ;
+      return isendObjects(Prequest.MODE_BUFFERED, message, dest, tag,
+                          new Request(message)) ;
     }
     else
-      return Ibsend(buf, offset, count, type, dest, tag, new Request());
+      return IbsendDispatch(buf, offset, count, type, dest, tag,
+                            new Request());
   }
 
   /**
    * Protected member used internally by <tt>Prequest.Start</tt>
    */
 
-  protected native Request Ibsend(Object   buf, 
-                                  int      offset, 
-                                  int      count,
-                                  Datatype type,
-                                  int      dest, 
-                                  int      tag, 
-                                  Request req);
+  protected Request IbsendDispatch(Object   buf, 
+                                   int      offset, 
+                                   int      count,
+                                   Datatype type,
+                                   int      dest, 
+                                   int      tag, 
+                                   Request req) throws MPIException {
+    return MPI.device.isend(this, Prequest.MODE_BUFFERED, buf, offset,
+                            count, type, dest, tag, req) ;
+  }
+
+  native Request Ibsend(Object   buf, 
+                        int      offset, 
+                        int      count,
+                        Datatype type,
+                        int      dest, 
+                        int      tag, 
+                        Request req);
 
   /**
    * Start a synchronous mode, nonblocking send.
@@ -774,34 +951,39 @@ public class Comm {
                         Datatype type,
                         int      dest, 
                         int      tag) throws MPIException {
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
-
-      Request hdrReq = Issend(length_buf, 0, 2, MPI.INT, dest, tag,
-                              new Request());
-      Request req = new Request(hdrReq) ;
-
-      Isend(byte_buf, 0, byte_buf.length, MPI.BYTE, dest, tag, req);
-
-      return req;     
+    if (type.isObject()) {
+      byte [] message = ObjectMessage.write(buf, offset, count,
+                                            type) ;
+      return isendObjects(Prequest.MODE_SYNCHRONOUS, message, dest, tag,
+                          new Request(message)) ;
     }
     else
-      return Issend(buf, offset, count, type, dest, tag, new Request());
+      return IssendDispatch(buf, offset, count, type, dest, tag,
+                            new Request());
   }
 
   /**
    * Protected member used internally by <tt>Prequest.Start</tt>
    */
 
-  protected native Request Issend(Object   buf, 
-                                  int      offset, 
-                                  int      count,
-                                  Datatype type,
-                                  int      dest, 
-                                  int      tag, 
-                                  Request  req);
+  protected Request IssendDispatch(Object   buf, 
+                                   int      offset, 
+                                   int      count,
+                                   Datatype type,
+                                   int      dest, 
+                                   int      tag, 
+                                   Request  req) throws MPIException {
+    return MPI.device.isend(this, Prequest.MODE_SYNCHRONOUS, buf, offset,
+                            count, type, dest, tag, req) ;
+  }
+
+  native Request Issend(Object   buf, 
+                        int      offset, 
+                        int      count,
+                        Datatype type,
+                        int      dest, 
+                        int      tag, 
+                        Request  req);
 
   /**
    * Start a ready mode, nonblocking send.
@@ -829,34 +1011,39 @@ public class Comm {
                         int      dest,
                         int      tag) throws MPIException {
 
-    if (type.isObject()){
-      byte[] byte_buf  = Object_Serialize(buf,offset,count,type);
-
-      int[] length_buf = {byte_buf.length, count} ;
-       
-      Request hdrReq = Irsend(length_buf, 0, 2, MPI.INT, dest, tag,
-                              new Request());
-      Request req = new Request(hdrReq) ;
-
-      Isend(byte_buf, 0, byte_buf.length, MPI.BYTE, dest, tag, req);
-
-      return req;     
+    if (type.isObject()) {
+      byte [] message = ObjectMessage.write(buf, offset, count,
+                                            type) ;
+      return isendObjects(Prequest.MODE_READY, message, dest, tag,
+                          new Request(message)) ;
     }
     else
-      return Irsend(buf, offset, count, type, dest, tag, new Request()); 
+      return IrsendDispatch(buf, offset, count, type, dest, tag,
+                            new Request()); 
   }
 
   /**
    * Protected member used internally by <tt>Prequest.Start</tt>
    */
 
-  protected native Request Irsend(Object   buf,
-                                  int      offset, 
-                                  int      count,
-                                  Datatype type,
-                                  int      dest, 
-                                  int      tag,
-                                  Request  req);
+  protected Request IrsendDispatch(Object   buf,
+                                   int      offset, 
+                                   int      count,
+                                   Datatype type,
+                                   int      dest, 
+                                   int      tag,
+                                   Request  req) throws MPIException {
+    return MPI.device.isend(this, Prequest.MODE_READY, buf, offset,
+                            count, type, dest, tag, req) ;
+  }
+
+  native Request Irsend(Object   buf,
+                        int      offset, 
+                        int      count,
+                        Datatype type,
+                        int      dest, 
+                        int      tag,
+                        Request  req);
 
   /**
    * Start a nonblocking receive.
@@ -886,31 +1073,36 @@ public class Comm {
                        int      source,
                        int      tag) throws MPIException {
 
-    if (type.isObject()){
-      int[] length_buf= new int[2];
-
-      Request req = new Request(buf, offset, count, type,
-                                tag, this, length_buf) ;
-
-      Irecv(length_buf, 0, 2, MPI.INT, source, tag, req);
-
-      return req;
-    }
+    if (type.isObject())
+      return irecvObjects(source, tag,
+                          new Request(buf, offset, count, type, this)) ;
     else
-      return Irecv(buf, offset, count, type, source, tag, new Request());
+      return IrecvDispatch(buf, offset, count, type, source, tag,
+                           new Request());
   }
 
   /**
    * Protected member used internally by <tt>Prequest.Start</tt>
    */
 
-  protected native Request Irecv(Object   buf, 
-                                 int      offset, 
-                                 int      count,
-                                 Datatype type,
-                                 int      source, 
-                                 int      tag,
-                                 Request  req);
+  protected Request IrecvDispatch(Object   buf, 
+                                  int      offset, 
+                                  int      count,
+                                  Datatype type,
+                                  int      source, 
+                                  int      tag,
+                                  Request  req) throws MPIException {
+    return MPI.device.irecv(this, buf, offset, count, type, source, tag,
+                            req) ;
+  }
+
+  native Request Irecv(Object   buf, 
+                       int      offset, 
+                       int      count,
+                       Datatype type,
+                       int      source, 
+                       int      tag,
+                       Request  req);
 
 
   // Persistent communication  requests
@@ -1106,23 +1298,35 @@ public class Comm {
                   int      position) throws MPIException {
 
     if (datatype.isObject()){
-      byte[] byte_buf = Object_Serialize(inbuf,offset,incount,datatype);
+      byte [] message = ObjectMessage.write(inbuf, offset, incount,
+                                            datatype) ;
+      int length = ObjectMessage.length(message) ;
 
-      System.arraycopy(byte_buf,0,outbuf,position,byte_buf.length);
-  
-      return (position + byte_buf.length);
+      System.arraycopy(message, 0, outbuf, position, length) ;
+      ObjectMessage.release(message) ;
 
+      return position + length ;
     }
     else
-      return pack(inbuf, offset, incount, datatype, outbuf, position);
+      return packDispatch(inbuf, offset, incount, datatype, outbuf, position);
   }
 
-  private native int pack(Object   inbuf,
-                          int      offset,
-                          int      incount,
-                          Datatype data, 
-                          byte[]   outbuf, 
-                          int      position);
+  private int packDispatch(Object   inbuf,
+                           int      offset,
+                           int      incount,
+                           Datatype data, 
+                           byte[]   outbuf, 
+                           int      position) throws MPIException {
+    return MPI.device.pack(this, inbuf, offset, incount, data, outbuf,
+                           position) ;
+  }
+
+  native int pack(Object   inbuf,
+                  int      offset,
+                  int      incount,
+                  Datatype data, 
+                  byte[]   outbuf, 
+                  int      position);
 
   /**
    * Unpacks message in receive buffer <tt>outbuf</tt> into space specified in
@@ -1156,39 +1360,31 @@ public class Comm {
                     Datatype datatype) throws MPIException {
 
     if (datatype.isObject()){
-   
-      Object buf_els [] = (Object[])outbuf;
-      int ava=0;   
+      ObjectMessage.read(inbuf, position, outbuf, offset, datatype) ;
 
-      try {      
-        ByteArrayInputStream in = 
-                       new ByteArrayInputStream(inbuf,position,
-                                                inbuf.length-position);
-  
-        ObjectInputStream s = new ObjectInputStream(in);
-            
-        int base;
-        for (int i = 0; i < outcount; i++){
-          base = datatype.Extent() * i;
-          for (int j = 0 ; j < datatype.displacements.length ; j++)
-             buf_els[base + offset + datatype.displacements[j]]=s.readObject();
-        }  
-        ava= in.available();
-        s.close(); 
-      }catch(Exception ex){ex.printStackTrace();}	
-
-      return inbuf.length- ava;
+      return position + ObjectMessage.length(inbuf, position) ;
     }
     else
-      return unpack(inbuf, position, outbuf, offset, outcount, datatype);
+      return unpackDispatch(inbuf, position, outbuf, offset, outcount,
+                            datatype);
   }
 
-  private native int unpack(byte[]   inbuf,
-                            int      position, 
-                            Object   outbuf, 
-                            int      offset, 
-                            int      outcount, 
-                            Datatype type);
+  private int unpackDispatch(byte[]   inbuf,
+                             int      position, 
+                             Object   outbuf, 
+                             int      offset, 
+                             int      outcount, 
+                             Datatype type) throws MPIException {
+    return MPI.device.unpack(this, inbuf, position, outbuf, offset, outcount,
+                             type) ;
+  }
+
+  native int unpack(byte[]   inbuf,
+                    int      position, 
+                    Object   outbuf, 
+                    int      offset, 
+                    int      outcount, 
+                    Datatype type);
 
   /**
    * Returns an upper bound on the increment of <tt>position</tt> effected
@@ -1209,8 +1405,13 @@ public class Comm {
    * <tt>datatype</tt> is <tt>MPI.OBJECT</tt></em>.
    */
 
-  public native int Pack_size(int incount, Datatype datatype)
-                                                  throws MPIException ;
+  public int Pack_size(int incount, Datatype datatype)
+                                           throws MPIException {
+    return MPI.device.packSize(this, incount, datatype) ;
+  }
+
+  native int Pack_sizeNative(int incount, Datatype datatype)
+                                                 throws MPIException ;
 
   // Probe and Cancel
 
@@ -1232,11 +1433,16 @@ public class Comm {
    */
 
   public Status Iprobe(int source, int tag) throws MPIException {
-    return Iprobe(source,tag,new Status());
+    return IprobeDispatch(source,tag,new Status());
+  }
+
+  private Status IprobeDispatch(int source, int tag,Status stat)
+                                            throws MPIException {
+    return MPI.device.iprobe(this, source, tag, stat) ;
   }
 
-  private native Status Iprobe(int source, int tag,Status stat)
-                                                   throws MPIException ;
+  native Status Iprobe(int source, int tag,Status stat)
+                                                 throws MPIException ;
 
   /**
    * Wait until there is an incoming message matching the pattern specified.
@@ -1254,11 +1460,16 @@ public class Comm {
    */
 
   public Status Probe(int source, int tag) throws MPIException {
-    return Probe(source,tag,new Status());
+    return ProbeDispatch(source,tag,new Status());
   }
 
-  private native Status Probe(int source, int tag,Status stat)
-                                                   throws MPIException ;
+  private Status ProbeDispatch(int source, int tag,Status stat)
+                                            throws MPIException {
+    return MPI.device.probe(this, source, tag, stat) ;
+  }
+
+  native Status Probe(int source, int tag,Status stat)
+                                                 throws MPIException ;
 
   // Caching
 
@@ -1274,7 +1485,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_ATTR_GET</tt>.
    */
 
-  public native int Attr_get(int keyval) throws MPIException ;
+  public int Attr_get(int keyval) throws MPIException {
+    return MPI.device.attrGet(this, keyval) ;
+  }
+
+  native int Attr_getNative(int keyval) throws MPIException ;
 
   //public native void Attr_delete(int keyval);
 
@@ -1293,7 +1508,11 @@ public class Comm {
    * or <tt>MPI.UNDEFINED</tt>.
    */
 
-  public native int Topo_test() throws MPIException ;
+  public int Topo_test() throws MPIException {
+    return MPI.device.topoTest(this) ;
+  }
+
+  native int Topo_testNative() throws MPIException ;
 
   // Enviromental Management 
 
@@ -1308,7 +1527,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_ABORT</tt>.
    */
 
-  public native void Abort(int errorcode) throws MPIException ;
+  public void Abort(int errorcode) throws MPIException {
+    MPI.device.abort(this, errorcode) ;
+  }
+
+  native void AbortNative(int errorcode) throws MPIException ;
 
   // Error handler
 
@@ -1323,7 +1546,11 @@ public class Comm {
    * Java binding of the MPI operation <tt>MPI_ERRORHANDLER_SET</tt>.
    */
 
-  public native void Errhandler_set(Errhandler errhandler) throws MPIException ;
+  public void Errhandler_set(Errhandler errhandler) throws MPIException {
+    MPI.device.errhandlerSet(this, errhandler) ;
+  }
+
+  native void Errhandler_setNative(Errhandler errhandler) throws MPIException ;
 
   /**
    * Returns the error handler currently associated with the communicator.
@@ -1337,15 +1564,25 @@ public class Comm {
    */
 
   public Errhandler Errorhandler_get() throws MPIException {
-    return new Errhandler(errorhandler_get()) ;
+    return MPI.device.errhandlerGet(this) ;
   }
 
-  private native long errorhandler_get();
+  native long errorhandler_get();
 
   protected long handle;
 
+  // State of a communicator under the engine, in place of `handle'.
+  // Ranks are world ranks; `remote' is only set for intercommunicators.
+
+  int context ;
+  int [] members ;
+  int [] remote ;
+  int [] ranks ;                // rank in the group, by world rank
+  Errhandler errhandler ;
+
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }
 
   private static native void init();
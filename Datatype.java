@@ -86,13 +86,35 @@ public class Datatype extends Freeable {
       default :  // Native case
 
         baseType = Type ;  // what about PACKED?
-        GetDatatype(Type); 
+        MPI.device.typeBasic(this, Type) ;
+    }
+  }
+
+  /*
+   * Bytes taken by one element of a basic type, for devices that keep
+   * layouts in Java.
+   */
+
+  static int basicSize(int Type) {
+    switch(Type) {
+      case CHAR :
+      case SHORT :
+        return 2 ;
+
+      case INT :
+      case FLOAT :
+        return 4 ;
 
-	baseSize = size() ;
+      case LONG :
+      case DOUBLE :
+        return 8 ;
+
+      default :  // BYTE, BOOLEAN, PACKED
+        return 1 ;
     }
   }
 
-  private native void GetDatatype(int Type);
+  native void GetDatatype(int Type);
 
   /*
    * Constructor used by `Contiguous'
@@ -109,8 +131,9 @@ public class Datatype extends Freeable {
   void setContiguous(int count, Datatype oldtype) throws MPIException {
 
     baseType = oldtype.baseType ;
+    baseSize = oldtype.baseSize ;
 
-    if(baseType == OBJECT || baseType == UNDEFINED) {
+    if(javaLayout(baseType)) {
 
       int oldSize  = oldtype.Size() ;
       boolean oldUbSet = oldtype.ubSet ;
@@ -168,13 +191,11 @@ public class Datatype extends Freeable {
       }
     }
     else {
-      baseSize = oldtype.baseSize ;
-
-      GetContiguous(count, oldtype) ;
+      MPI.device.typeContiguous(this, count, oldtype) ;
     }
   }
 
-  private native void GetContiguous(int count, Datatype oldtype);
+  native void GetContiguous(int count, Datatype oldtype);
 
 
   /*
@@ -185,8 +206,9 @@ public class Datatype extends Freeable {
                    boolean unitsOfOldExtent) throws MPIException {
 
     baseType = oldtype.baseType ;
+    baseSize = oldtype.baseSize ;
 
-    if(baseType == OBJECT || baseType == UNDEFINED) {
+    if(javaLayout(baseType)) {
 
       int oldSize  = oldtype.Size() ;
       boolean oldUbSet = oldtype.ubSet ;
@@ -264,20 +286,16 @@ public class Datatype extends Freeable {
       }
     }
     else {
-      baseSize = oldtype.baseSize ;
-
-      if(unitsOfOldExtent)
-        GetVector(count, blocklength, stride, oldtype) ;
-      else
-        GetHvector(count, blocklength, stride, oldtype) ;
+      MPI.device.typeVector(this, count, blocklength, stride, oldtype,
+                            unitsOfOldExtent) ;
     }
   }
 
-  private native void GetVector(int count, int blocklength, int stride,
-                                Datatype oldtype);
+  native void GetVector(int count, int blocklength, int stride,
+                        Datatype oldtype);
 
-  private native void GetHvector(int count, int blocklength, int stride,
-                                 Datatype oldtype) ;
+  native void GetHvector(int count, int blocklength, int stride,
+                         Datatype oldtype) ;
 
 
   /*
@@ -289,8 +307,9 @@ public class Datatype extends Freeable {
                                                       throws MPIException {
 
     baseType = oldtype.baseType ;
+    baseSize = oldtype.baseSize ;
 
-    if(baseType == OBJECT || baseType == UNDEFINED) {
+    if(javaLayout(baseType)) {
 
       int oldSize  = oldtype.Size() ;
       boolean oldUbSet = oldtype.ubSet ;
@@ -370,22 +389,19 @@ public class Datatype extends Freeable {
       }
     }
     else {
-      baseSize = oldtype.baseSize ;
-
-      if(unitsOfOldExtent)
-        GetIndexed(array_of_blocklengths, array_of_displacements, oldtype) ;
-      else
-        GetHindexed(array_of_blocklengths, array_of_displacements, oldtype) ;
+      MPI.device.typeIndexed(this, array_of_blocklengths,
+                             array_of_displacements, oldtype,
+                             unitsOfOldExtent) ;
     }
   }
 
-  private native void GetIndexed(int[] array_of_blocklengths,
-                                 int[] array_of_displacements, 
-                                 Datatype oldtype) ;
+  native void GetIndexed(int[] array_of_blocklengths,
+                         int[] array_of_displacements, 
+                         Datatype oldtype) ;
 
-  private native void GetHindexed(int[] array_of_blocklengths,
-                                  int[] array_of_displacements,
-                                  Datatype oldtype) ;
+  native void GetHindexed(int[] array_of_blocklengths,
+                          int[] array_of_displacements,
+                          Datatype oldtype) ;
 
 
   /*
@@ -416,7 +432,7 @@ public class Datatype extends Freeable {
 
     // Allocate `displacements' if required
 
-    if(baseType == OBJECT || baseType == UNDEFINED) {
+    if(javaLayout(baseType)) {
       int size = 0 ;
       for (int i = 0; i < array_of_blocklengths.length; i++)
         size += array_of_blocklengths[i] * array_of_types[i].Size();
@@ -437,7 +453,7 @@ public class Datatype extends Freeable {
         Datatype oldtype = array_of_types [i] ;
         int oldBaseType  = oldtype.baseType ;
 
-        if(oldBaseType == OBJECT || oldBaseType == UNDEFINED) {
+        if(javaLayout(oldBaseType)) {
 
           int oldSize  = oldtype.Size() ;
           boolean oldUbSet = oldtype.ubSet ;
@@ -515,22 +531,36 @@ public class Datatype extends Freeable {
       }
     }
 
-    if(baseType != OBJECT && baseType != UNDEFINED)
-      GetStruct(array_of_blocklengths, array_of_displacements, array_of_types,
-                lbSet, lb, ubSet, ub) ;
+    if(!javaLayout(baseType))
+      MPI.device.typeStruct(this, array_of_blocklengths,
+                            array_of_displacements, array_of_types,
+                            lbSet, lb, ubSet, ub) ;
   }
 
 
-  private native void GetStruct(int[] array_of_blocklengths,
-                                int[] array_of_displacements, 
-                                Datatype[] array_of_types,
-                                boolean lbSet, int lb, boolean ubSet, int ub) ;
+  native void GetStruct(int[] array_of_blocklengths,
+                        int[] array_of_displacements, 
+                        Datatype[] array_of_types,
+                        boolean lbSet, int lb, boolean ubSet, int ub) ;
 
 
   protected boolean isObject() {
     return baseType == OBJECT || baseType == UNDEFINED ;
   }
 
+  /*
+   * True if the layout of the type is kept in `displacements', `lb' and
+   * `ub' here rather than by the device: for objects, and for every type
+   * if the device has no native handles.  Displacements are then always
+   * counted in basic elements, also for `Hvector', `Hindexed' and
+   * `Struct'.
+   */
+
+  private static boolean javaLayout(int baseType) {
+    return baseType == OBJECT || baseType == UNDEFINED ||
+           !MPI.device.nativeHandles() ;
+  }
+
   /**
    * Returns the extent of a datatype - the difference between
    * upper and lower bound.
@@ -543,13 +573,13 @@ public class Datatype extends Freeable {
    */
 
   public int Extent() throws MPIException {
-    if(baseType == OBJECT || baseType == UNDEFINED)
+    if(javaLayout(baseType))
       return ub - lb ;
     else
-      return extent() / baseSize ;  
+      return MPI.device.typeExtent(this) / baseSize ;
   }
 
-  private native int extent();
+  native int extent();
 
   /**
    * Returns the total size of a datatype - the number of buffer
@@ -563,13 +593,13 @@ public class Datatype extends Freeable {
    */
 
   public int Size() throws MPIException {
-    if(baseType == OBJECT || baseType == UNDEFINED)
+    if(javaLayout(baseType))
       return displacements.length;
     else 
-      return size() / baseSize ;  
+      return MPI.device.typeSize(this) / baseSize ;
   }
 
-  private native int size();
+  native int size();
 
   /**
    * Find the lower bound of a datatype - the least value
@@ -584,13 +614,13 @@ public class Datatype extends Freeable {
    */
 
   public int Lb() throws MPIException {
-    if(baseType == OBJECT || baseType == UNDEFINED)
+    if(javaLayout(baseType))
       return lb;
     else 
-      return lB() / baseSize ;
+      return MPI.device.typeLb(this) / baseSize ;
   }
 
-  private native int lB();
+  native int lB();
 
   /**
    * Find the upper bound of a datatype - the greatest value
@@ -605,13 +635,47 @@ public class Datatype extends Freeable {
    */
 
   public int Ub() throws MPIException {
-    if(baseType == OBJECT || baseType == UNDEFINED)
+    if(javaLayout(baseType))
       return ub;
     else 
-      return uB() / baseSize ; 
+      return MPI.device.typeUb(this) / baseSize ;
   }
 
-  private native int uB();
+  native int uB();
+
+  /*
+   * True if the elements of an item are one after another from its
+   * start, with no gaps, so that `count' items are `count * Size()'
+   * consecutive elements.
+   */
+
+  boolean contiguous() throws MPIException {
+    if(!javaLayout(baseType))
+      return Size() == Extent() && Lb() == 0 ;
+
+    if(displacements.length != ub - lb)
+      return false ;
+    for (int k = 0; k < displacements.length; k++)
+      if(displacements [k] != k)
+        return false ;
+    return true ;
+  }
+
+  /*
+   * The elements from offset 0 of a buffer that `count' items take, up
+   * to the last element of the last item.
+   */
+
+  int span(int count) throws MPIException {
+    if(count == 0)
+      return 0 ;
+
+    int reach = Extent() ;
+    if(javaLayout(baseType))
+      for (int k = 0; k < displacements.length; k++)
+        reach = Math.max(reach, displacements [k] + 1) ;
+    return (count - 1) * Extent() + reach ;
+  }
 
   /**
    * Commit a derived datatype.
@@ -619,13 +683,15 @@ public class Datatype extends Freeable {
    */
 
   public void Commit() throws MPIException {
-    if (baseType != OBJECT && baseType != UNDEFINED)
-      commit() ;
+    if (!javaLayout(baseType))
+      MPI.device.typeCommit(this) ;
   }
 
-  private native void commit();
+  native void commit();
 
   public void finalize() throws MPIException {
+      if(!MPI.device.nativeHandles())
+        return ;
       synchronized(MPI.class) {
           MPI.freeList.addFirst(this) ;
       }
@@ -816,7 +882,8 @@ public class Datatype extends Freeable {
     // Flags set if MPI.UB, MPI.LB respectively appears as a component type.
 
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }
 
 }
@@ -0,0 +1,185 @@
+/*
+    Decomposition
+    How the columns of the field are split between the machines, as seen by
+    one machine. It is worked out once after MPI.Init and never changes, so
+    the loops of every step only read plain fields. When the partition is
+    changed a new one is made with withBounds
+
+    The field is cut into blocks of columns, usually several per machine.
+    Every machine owns a run of whole blocks, so blocks are what is handed
+    to threads and what moves between machines when the load is balanced
+*/
+public class Decomposition
+{
+    final static int NONE = -1;     // no neighbor on this side
+
+    final int rank;                 // rank of this machine
+    final int machines;             // number of machines
+    final int size;                 // columns (and rows) of the field
+    final int halo;                 // ghost columns on each side
+    final int startPos;             // first column of this machine
+    final int endPos;               // last column of this machine
+    final int ghostStart;           // first column held, ghosts included
+    final int ghostEnd;             // last column held, ghosts included
+    final int left;                 // rank of the machine to the left
+    final int right;                // rank of the machine to the right
+    final boolean heater;           // whether the heater reaches the
+                                    // columns held by this machine
+
+    //machine i has columns bounds[i] to bounds[i + 1] - 1, so all machines
+    //can work out the layout of the whole field. Never modified
+    final int[] bounds;
+    
+    //block i has columns edges[i] to edges[i + 1] - 1. Never modified
+    final int[] edges;
+    final int[] counts;             // doubles in each machine's columns
+    final int[] displs;             // where each machine's columns start
+
+
+
+
+    /*
+        Decomposition
+        Works out this machine's part of a partition given by bounds, every
+        one of which is also one of the block edges. left and right are the
+        ranks of the neighbors, NONE at the ends of the line
+    */
+    Decomposition(int rank, int machines, int size, int halo, int[] bounds,
+            int[] edges, int left, int right)
+    {
+        this.rank = rank;
+        this.machines = machines;
+        this.size = size;
+        this.halo = halo;
+        this.bounds = bounds;
+        this.edges = edges;
+
+        startPos = bounds[rank];
+        endPos = bounds[rank + 1] - 1;
+        ghostStart = Math.max(0, startPos - halo);
+        ghostEnd = Math.min(size - 1, endPos + halo);
+
+        this.left = left;
+        this.right = right;
+
+        //the heater is the bottom of columns size / 3 to size / 3 * 2 - 1
+        heater = ghostStart < size / 3 * 2 && ghostEnd >= size / 3;
+
+        counts = new int[machines];
+        displs = new int[machines];
+        for(int i = 0; i < machines; i++)
+        {
+            counts[i] = (bounds[i + 1] - bounds[i]) * size;
+            displs[i] = bounds[i] * size;
+        }
+    }
+
+
+
+
+    /*
+        even
+        The field is cut into blocks per machine blocks for every machine,
+        all of the same width except the last which also takes the 
+        remainder. Every machine gets the same number of blocks. Boundaries
+        are only shared every halo steps, so the ghost width can be no 
+        wider than the narrowest slice
+    */
+    static Decomposition even(int rank, int machines, int size, int halo,
+            int blocks, int left, int right)
+    {
+        int slice = size / machines;
+        blocks = Math.max(1, Math.min(blocks, slice));
+        int width = size / (machines * blocks);
+
+        int[] edges = new int[machines * blocks + 1];
+        for(int i = 0; i < edges.length - 1; i++)
+        {
+            edges[i] = width * i;
+        }
+        edges[edges.length - 1] = size;
+
+        int[] bounds = new int[machines + 1];
+        for(int i = 0; i <= machines; i++)
+        {
+            bounds[i] = edges[i * blocks];
+        }
+
+        halo = Math.max(1, Math.min(halo, width * blocks));
+        return new Decomposition(rank, machines, size, halo, bounds, edges,
+                left, right);
+    }
+
+
+
+
+    /*
+        given
+        The field is cut at bounds, one block for every machine. The ghost
+        width can be no wider than the narrowest slice
+    */
+    static Decomposition given(int rank, int machines, int size, int halo,
+            int[] bounds, int left, int right)
+    {
+        int narrowest = size;
+        for(int i = 0; i < machines; i++)
+        {
+            narrowest = Math.min(narrowest, bounds[i + 1] - bounds[i]);
+        }
+
+        halo = Math.max(1, Math.min(halo, narrowest));
+        return new Decomposition(rank, machines, size, halo, bounds, 
+                bounds.clone(), left, right);
+    }
+
+
+
+
+    /*
+        withBounds
+        The same machines sharing the field as given by bounds instead
+    */
+    Decomposition withBounds(int[] bounds)
+    {
+        return new Decomposition(rank, machines, size, halo, bounds, edges,
+                left, right);
+    }
+
+
+
+
+    /*
+        width
+        Number of columns of machine i
+    */
+    int width(int i)
+    {
+        return bounds[i + 1] - bounds[i];
+    }
+
+
+
+
+    /*
+        edgeTowards
+        The block edge furthest from column from in the direction of 
+        column to, without passing it. Used to move a boundary in whole 
+        blocks
+    */
+    int edgeTowards(int from, int to)
+    {
+        int edge = from;
+        for(int i = 0; i < edges.length; i++)
+        {
+            if(from < to && edges[i] > edge && edges[i] <= to)
+            {
+                edge = edges[i];
+            }
+            if(from > to && edges[i] < edge && edges[i] >= to)
+            {
+                edge = edges[i];
+            }
+        }
+        return edge;
+    }
+}
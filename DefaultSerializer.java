@@ -0,0 +1,133 @@
+/*
+ * File         : DefaultSerializer.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * The serializer used unless `mpi.serializer' names another.  Strings
+ * and arrays of primitives are written as their length and then their
+ * elements in bulk, and `Externalizable' objects as their class and then
+ * what `writeExternal' writes, all without the class descriptors and
+ * block headers of Java serialization.  Anything else is written by the
+ * Java object stream of the message.
+ *
+ * The fast paths write by value, so an array or `Externalizable' that
+ * several elements refer to arrives as separate copies, and its
+ * `writeReplace' and `readResolve' are not called.  Objects left to
+ * Java serialization keep their sharing within a message.
+ *
+ * A subclass may write some classes its own way and pass the others to
+ * `super'.  With streams other than those of a message, objects are
+ * written and read by the stream itself.
+ */
+
+package mpi;
+
+import java.io.Externalizable ;
+import java.io.IOException ;
+import java.io.InvalidClassException ;
+import java.io.ObjectInput ;
+import java.io.ObjectOutput ;
+import java.io.StreamCorruptedException ;
+import java.lang.reflect.Constructor ;
+
+public class DefaultSerializer implements Serializer {
+
+  // The byte written before each object.
+
+  private final static int NULL     = 0 ;
+  private final static int JAVA     = 1 ;
+  private final static int STRING   = 2 ;
+  private final static int ARRAY    = 3 ;
+  private final static int EXTERNAL = 4 ;
+
+  // Constructors kept with their class, so that the classes of a rank's
+  // loader are not held here after the rank has gone.
+
+  private final static ClassValue<Constructor<?>> makers =
+                                           new ClassValue<Constructor<?>>() {
+    protected Constructor<?> computeValue(Class<?> c) {
+      try {
+        Constructor<?> maker = c.getConstructor() ;
+        maker.setAccessible(true) ;
+        return maker ;
+      }
+      catch (NoSuchMethodException e) {
+        return null ;
+      }
+    }
+  } ;
+
+  public void write(ObjectOutput out, Object obj) throws IOException {
+    if (!(out instanceof ObjectMessage.Output)) {
+      out.writeObject(obj) ;
+      return ;
+    }
+    ObjectMessage.Output message = (ObjectMessage.Output) out ;
+
+    if (obj == null)
+      out.writeByte(NULL) ;
+    else if (obj instanceof String) {
+      out.writeByte(STRING) ;
+      message.writeString((String) obj) ;
+    }
+    else if (obj.getClass().isArray() &&
+             obj.getClass().getComponentType().isPrimitive()) {
+      out.writeByte(ARRAY) ;
+      message.writeArray(obj) ;
+    }
+    else if (obj instanceof Externalizable) {
+      out.writeByte(EXTERNAL) ;
+      message.writeClass(obj.getClass()) ;
+      ((Externalizable) obj).writeExternal(out) ;
+    }
+    else {
+      out.writeByte(JAVA) ;
+      message.serialize(obj) ;
+    }
+  }
+
+  public Object read(ObjectInput in)
+                               throws IOException, ClassNotFoundException {
+    if (!(in instanceof ObjectMessage.Input))
+      return in.readObject() ;
+    ObjectMessage.Input message = (ObjectMessage.Input) in ;
+
+    switch (in.readByte()) {
+      case NULL :
+        return null ;
+      case JAVA :
+        return message.deserialize() ;
+      case STRING :
+        return message.readString() ;
+      case ARRAY :
+        return message.readArray() ;
+      case EXTERNAL :
+        Externalizable obj = make(message.readClass()) ;
+        obj.readExternal(in) ;
+        return obj ;
+    }
+    throw new StreamCorruptedException("Unknown kind of object") ;
+  }
+
+  /*
+   * A new instance of an `Externalizable' class, made by its public
+   * constructor without arguments as Java serialization does.
+   */
+
+  private static Externalizable make(Class<?> c) throws IOException {
+    if (!Externalizable.class.isAssignableFrom(c))
+      throw new InvalidClassException(c.getName(), "not Externalizable") ;
+    try {
+      Constructor<?> maker = makers.get(c) ;
+      if (maker == null)
+        throw new NoSuchMethodException() ;
+      return (Externalizable) maker.newInstance() ;
+    }
+    catch (ReflectiveOperationException e) {
+      throw new InvalidClassException(c.getName(),
+                                      "no public constructor without " +
+                                      "arguments") ;
+    }
+  }
+}
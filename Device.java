@@ -0,0 +1,360 @@
+/*
+ * File         : Device.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * Everything the bindings ask of an MPI implementation.  The classes of
+ * the bindings check their arguments, handle `MPI.OBJECT' buffers and
+ * user ops themselves, and pass all else to `MPI.device'.
+ *
+ * A device is chosen when `MPI' is loaded, at the first MPI call, by
+ * the property `mpi.device':
+ *
+ *   jni      the native library (the default)
+ *   java     the pure-Java engine, as one rank unless the job was
+ *            started by `Mpirun'
+ *
+ * It may be preceded by a comma-separated list of classes, each a
+ * device with a public constructor that takes the device below it, as
+ * in `-Dmpi.device=my.Trace,jni', to put layers such as tracing or
+ * other transports on top.
+ *
+ * Under a device whose objects are native handles (`nativeHandles'),
+ * the classes of the bindings are initialised by the library, freed
+ * objects are released through `MPI.freeList', and datatype layouts
+ * other than those of objects are handed to the device.  Otherwise
+ * all state is kept in the Java fields of the objects.
+ */
+
+package mpi;
+
+public interface Device {
+
+  /*
+   * True if communicators, groups, datatypes, requests, statuses and
+   * ops refer to native handles.
+   */
+
+  boolean nativeHandles() ;
+
+
+  // Environment
+
+  void setConstants() ;
+
+  String [] init(String [] args) throws MPIException ;
+
+  boolean initialized() throws MPIException ;
+
+  void finish() throws MPIException ;
+
+  double wtime() ;
+
+  double wtick() ;
+
+  String processorName() throws MPIException ;
+
+  void bufferAttach(byte [] buffer) throws MPIException ;
+
+  void bufferDetach(byte [] buffer) throws MPIException ;
+
+  void abort(Comm comm, int errorcode) throws MPIException ;
+
+  int attrGet(Comm comm, int keyval) throws MPIException ;
+
+  void newErrhandler(Errhandler errhandler, int type) ;
+
+  void errhandlerSet(Comm comm, Errhandler errhandler) throws MPIException ;
+
+  Errhandler errhandlerGet(Comm comm) throws MPIException ;
+
+
+  // Point-to-point
+
+  /*
+   * `mode' is one of `Prequest.MODE_...'.
+   */
+
+  void send(Comm comm, int mode, Object buf, int offset, int count,
+            Datatype type, int dest, int tag) throws MPIException ;
+
+  Status recv(Comm comm, Object buf, int offset, int count, Datatype type,
+              int source, int tag, Status status) throws MPIException ;
+
+  Status sendrecv(Comm comm,
+                  Object sbuf, int soffset, int scount, Datatype stype,
+                  int dest, int stag,
+                  Object rbuf, int roffset, int rcount, Datatype rtype,
+                  int source, int rtag, Status status) throws MPIException ;
+
+  Status sendrecvReplace(Comm comm, Object buf, int offset, int count,
+                         Datatype type, int dest, int stag,
+                         int source, int rtag, Status status)
+                                                      throws MPIException ;
+
+  Request isend(Comm comm, int mode, Object buf, int offset, int count,
+                Datatype type, int dest, int tag, Request req)
+                                                      throws MPIException ;
+
+  Request irecv(Comm comm, Object buf, int offset, int count,
+                Datatype type, int source, int tag, Request req)
+                                                      throws MPIException ;
+
+  Status iprobe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException ;
+
+  Status probe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException ;
+
+  int pack(Comm comm, Object inbuf, int offset, int incount, Datatype type,
+           byte [] outbuf, int position) throws MPIException ;
+
+  int unpack(Comm comm, byte [] inbuf, int position, Object outbuf,
+             int offset, int outcount, Datatype type) throws MPIException ;
+
+  int packSize(Comm comm, int incount, Datatype type) throws MPIException ;
+
+
+  // Progress
+
+  void newRequest(Request req, int type) ;
+
+  boolean isNull(Request req) ;
+
+  void free(Request req) throws MPIException ;
+
+  void cancel(Request req) throws MPIException ;
+
+  Status wait(Request req, Status status) throws MPIException ;
+
+  Status test(Request req, Status status) throws MPIException ;
+
+  Status waitany(Request [] reqs, Status status) throws MPIException ;
+
+  Status testany(Request [] reqs, Status status) throws MPIException ;
+
+  Status [] waitall(Request [] reqs) throws MPIException ;
+
+  Status [] testall(Request [] reqs) throws MPIException ;
+
+  Status [] waitsome(Request [] reqs) throws MPIException ;
+
+  Status [] testsome(Request [] reqs) throws MPIException ;
+
+  void newStatus(Status status) ;
+
+  int getCount(Status status, Datatype type) throws MPIException ;
+
+  int getElements(Status status, Datatype type) throws MPIException ;
+
+  boolean testCancelled(Status status) throws MPIException ;
+
+
+  // Collectives, of basic datatypes and predefined ops.  Offsets are in
+  // items, as the bindings take them.
+
+  void barrier(Intracomm comm) throws MPIException ;
+
+  void bcast(Intracomm comm, Object buf, int offset, int count,
+             Datatype type, int root) throws MPIException ;
+
+  void gather(Intracomm comm,
+              Object sendbuf, int sendoffset, int sendcount,
+              Datatype sendtype,
+              Object recvbuf, int recvoffset, int recvcount,
+              Datatype recvtype, int root) throws MPIException ;
+
+  void gatherv(Intracomm comm,
+               Object sendbuf, int sendoffset, int sendcount,
+               Datatype sendtype,
+               Object recvbuf, int recvoffset, int [] recvcount,
+               int [] displs, Datatype recvtype, int root)
+                                                      throws MPIException ;
+
+  void scatter(Intracomm comm,
+               Object sendbuf, int sendoffset, int sendcount,
+               Datatype sendtype,
+               Object recvbuf, int recvoffset, int recvcount,
+               Datatype recvtype, int root) throws MPIException ;
+
+  void scatterv(Intracomm comm,
+                Object sendbuf, int sendoffset, int [] sendcount,
+                int [] displs, Datatype sendtype,
+                Object recvbuf, int recvoffset, int recvcount,
+                Datatype recvtype, int root) throws MPIException ;
+
+  void allgather(Intracomm comm,
+                 Object sendbuf, int sendoffset, int sendcount,
+                 Datatype sendtype,
+                 Object recvbuf, int recvoffset, int recvcount,
+                 Datatype recvtype) throws MPIException ;
+
+  void allgatherv(Intracomm comm,
+                  Object sendbuf, int sendoffset, int sendcount,
+                  Datatype sendtype,
+                  Object recvbuf, int recvoffset, int [] recvcount,
+                  int [] displs, Datatype recvtype) throws MPIException ;
+
+  void alltoall(Intracomm comm,
+                Object sendbuf, int sendoffset, int sendcount,
+                Datatype sendtype,
+                Object recvbuf, int recvoffset, int recvcount,
+                Datatype recvtype) throws MPIException ;
+
+  void alltoallv(Intracomm comm,
+                 Object sendbuf, int sendoffset, int [] sendcount,
+                 int [] sdispls, Datatype sendtype,
+                 Object recvbuf, int recvoffset, int [] recvcount,
+                 int [] rdispls, Datatype recvtype) throws MPIException ;
+
+  void reduce(Intracomm comm, Object sendbuf, int sendoffset,
+              Object recvbuf, int recvoffset, int count,
+              Datatype type, Op op, int root) throws MPIException ;
+
+  void allreduce(Intracomm comm, Object sendbuf, int sendoffset,
+                 Object recvbuf, int recvoffset, int count,
+                 Datatype type, Op op) throws MPIException ;
+
+  void reduceScatter(Intracomm comm, Object sendbuf, int sendoffset,
+                     Object recvbuf, int recvoffset, int [] recvcounts,
+                     Datatype type, Op op) throws MPIException ;
+
+  void scan(Intracomm comm, Object sendbuf, int sendoffset,
+            Object recvbuf, int recvoffset, int count,
+            Datatype type, Op op) throws MPIException ;
+
+  void newOp(Op op, int type) ;
+
+
+  // Datatypes whose layout is kept by the device.  Sizes and bounds are
+  // in bytes.
+
+  void typeBasic(Datatype type, int basic) ;
+
+  void typeContiguous(Datatype type, int count, Datatype oldtype)
+                                                      throws MPIException ;
+
+  void typeVector(Datatype type, int count, int blocklength, int stride,
+                  Datatype oldtype, boolean unitsOfOldExtent)
+                                                      throws MPIException ;
+
+  void typeIndexed(Datatype type, int [] blocklengths, int [] displacements,
+                   Datatype oldtype, boolean unitsOfOldExtent)
+                                                      throws MPIException ;
+
+  void typeStruct(Datatype type, int [] blocklengths, int [] displacements,
+                  Datatype [] types,
+                  boolean lbSet, int lb, boolean ubSet, int ub)
+                                                      throws MPIException ;
+
+  int typeExtent(Datatype type) throws MPIException ;
+
+  int typeSize(Datatype type) throws MPIException ;
+
+  int typeLb(Datatype type) throws MPIException ;
+
+  int typeUb(Datatype type) throws MPIException ;
+
+  void typeCommit(Datatype type) throws MPIException ;
+
+
+  // Communicators
+
+  void setType(Comm comm, int type) ;
+
+  /*
+   * The communicator that collectives done by the bindings themselves
+   * use for their messages.
+   */
+
+  Comm shadow(Intracomm comm) ;
+
+  Comm dup(Comm comm) throws MPIException ;
+
+  void free(Comm comm) throws MPIException ;
+
+  boolean isNull(Comm comm) ;
+
+  int size(Comm comm) throws MPIException ;
+
+  int rank(Comm comm) throws MPIException ;
+
+  int compare(Comm comm1, Comm comm2) throws MPIException ;
+
+  Group group(Comm comm) throws MPIException ;
+
+  boolean testInter(Comm comm) throws MPIException ;
+
+  int topoTest(Comm comm) throws MPIException ;
+
+  Intracomm split(Intracomm comm, int colour, int key) throws MPIException ;
+
+  Intracomm creat(Intracomm comm, Group group) throws MPIException ;
+
+  Intercomm createIntercomm(Comm peer, Comm local, int localLeader,
+                            int remoteLeader, int tag) throws MPIException ;
+
+  int remoteSize(Intercomm comm) throws MPIException ;
+
+  Group remoteGroup(Intercomm comm) throws MPIException ;
+
+  Intracomm merge(Intercomm comm, boolean high) throws MPIException ;
+
+  Cartcomm createCart(Intracomm comm, int [] dims, boolean [] periods,
+                      boolean reorder) throws MPIException ;
+
+  Graphcomm createGraph(Intracomm comm, int [] index, int [] edges,
+                        boolean reorder) throws MPIException ;
+
+  CartParms cartGet(Cartcomm comm) throws MPIException ;
+
+  int cartRank(Cartcomm comm, int [] coords) throws MPIException ;
+
+  int [] cartCoords(Cartcomm comm, int rank) throws MPIException ;
+
+  ShiftParms cartShift(Cartcomm comm, int direction, int disp)
+                                                      throws MPIException ;
+
+  Cartcomm cartSub(Cartcomm comm, boolean [] remain) throws MPIException ;
+
+  int cartMap(Cartcomm comm, int [] dims, boolean [] periods)
+                                                      throws MPIException ;
+
+  void dimsCreate(int nnodes, int [] dims) throws MPIException ;
+
+  GraphParms graphGet(Graphcomm comm) throws MPIException ;
+
+  int [] neighbours(Graphcomm comm, int rank) throws MPIException ;
+
+  int graphMap(Graphcomm comm, int [] index, int [] edges)
+                                                      throws MPIException ;
+
+
+  // Groups
+
+  void newGroup(Group group, int type) ;
+
+  int groupSize(Group group) throws MPIException ;
+
+  int groupRank(Group group) throws MPIException ;
+
+  int [] translateRanks(Group group1, int [] ranks1, Group group2)
+                                                      throws MPIException ;
+
+  int groupCompare(Group group1, Group group2) throws MPIException ;
+
+  Group union(Group group1, Group group2) throws MPIException ;
+
+  Group intersection(Group group1, Group group2) throws MPIException ;
+
+  Group difference(Group group1, Group group2) throws MPIException ;
+
+  Group incl(Group group, int [] ranks) throws MPIException ;
+
+  Group excl(Group group, int [] ranks) throws MPIException ;
+
+  Group rangeIncl(Group group, int [][] ranges) throws MPIException ;
+
+  Group rangeExcl(Group group, int [][] ranges) throws MPIException ;
+}
@@ -0,0 +1,32 @@
+/*
+ * File         : Double_function.java
+ * Created      : Mon Oct 19 2026
+ */
+
+package mpi;
+
+public interface Double_function {
+
+  /**
+   * User-defined function for a new <tt>Op</tt> on <tt>double</tt> buffers.
+   * It combines <tt>count</tt> consecutive elements, leaving
+   * <tt>invec[inoffset + i] op inoutvec[inoutoffset + i]</tt> in
+   * <tt>inoutvec</tt>.  Elements of derived datatypes are passed as runs
+   * of consecutive elements, so the function need not look at the type.
+   * <p>
+   * <table>
+   * <tr><td><tt> invec       </tt></td><td> array of values to combine with
+   *                                         <tt>inoutvec</tt> elements </tr>
+   * <tr><td><tt> inoffset    </tt></td><td> initial offset in
+   *                                         <tt>invec<tt> </tr>
+   * <tr><td><tt> inoutvec    </tt></td><td> in-out array of accumulator
+   *                                         locations </tr>
+   * <tr><td><tt> inoutoffset </tt></td><td> initial offset in
+   *                                         <tt>inoutvec<tt> </tr>
+   * <tr><td><tt> count       </tt></td><td> number of elements </tr>
+   * </table>
+   */
+
+  void Call(double [] invec, int inoffset, double [] inoutvec, int inoutoffset,
+            int count) ;
+}
@@ -0,0 +1,2047 @@
+/*
+ * File         : Engine.java
+ * Created      : Sun Oct 18 2026
+ */
+
+/*
+ * Pure-Java device, doing everything that is otherwise done by the
+ * native library.  It is used when the ranks of a job are started by
+ * `Mpirun', or as a job of one rank if `mpi.device' is `java'.
+ *
+ * Every rank has a mailbox holding the receives it has posted that no
+ * send has matched yet, and the sends that reached it before a matching
+ * receive.  Whichever of a send and its receive comes second copies the
+ * data straight from the sender's array into the receiver's, so nothing
+ * is pinned or copied to native memory and most messages are copied
+ * exactly once.  Only a standard send of at most `mpi.eager' bytes
+ * (default 64K), or a buffered send, that finds no receive waiting is
+ * first copied into an array of its own, so that the sender can go on.
+ *
+ * Communicators, groups, datatypes and ops keep their state in Java
+ * fields instead of native handles.  Collectives are built from the
+ * point-to-point operations, in the context after the communicator's
+ * own so that they never match its user messages.
+ *
+ * When the ranks are separate processes each engine holds one rank,
+ * `home', and messages to the others go through a `Link'.  Messages
+ * from them are added to the home mailbox like any other send.
+ */
+
+package mpi;
+
+import java.lang.reflect.Array ;
+import java.net.InetAddress ;
+import java.nio.ByteBuffer ;
+import java.util.Arrays ;
+import java.util.Iterator ;
+import java.util.LinkedList ;
+
+class Engine implements Device {
+
+  /*
+   * Set by `Mpirun' before `MPI' is loaded, or by `MPI' when it makes
+   * its own.
+   */
+
+  static Engine started ;
+
+  // Contexts taken by an intracommunicator: its own, its collectives',
+  // and the two of its shadow.  An intercommunicator takes twice as
+  // many, the second half for the intracommunicator of its local group.
+
+  final static int CONTEXTS = 4 ;
+
+  // Tags of the messages of each collective.
+
+  private final static int BARRIER   = 1 ;
+  private final static int BCAST     = 2 ;
+  private final static int GATHER    = 3 ;
+  private final static int SCATTER   = 4 ;
+  private final static int ALLGATHER = 5 ;
+  private final static int ALLTOALL  = 6 ;
+  private final static int REDUCE    = 7 ;
+  private final static int SCAN      = 8 ;
+  private final static int LEADERS   = 9 ;
+
+  // Polls of a link that moved nothing before a rank that waits sleeps.
+
+  private final static int POLLS = 20000 ;
+
+  final int size ;                  // ranks in COMM_WORLD
+  final int eager ;                 // largest send copied if unmatched
+
+  private final Mailbox [] boxes ;
+  private final int [] nextContext ;      // first context free, by rank
+  private final boolean [] initialized ;
+  private final InheritableThreadLocal<Integer> self =
+                                    new InheritableThreadLocal<Integer>() ;
+  private String processorName ;
+
+  private final int home ;                // the only rank here, or -1
+  private final Link link ;               // to the other ranks, if any
+
+  Engine(int size) {
+    this(size, -1, null) ;
+  }
+
+  Engine(int size, int home, Link link) {
+    this.size = size ;
+    this.home = home ;
+    this.link = link ;
+    eager = Integer.getInteger("mpi.eager", 65536) ;
+
+    boxes = new Mailbox [size] ;
+    for (int i = 0 ; i < size ; i++)
+      boxes [i] = new Mailbox() ;
+
+    nextContext = new int [size] ;
+    Arrays.fill(nextContext, CONTEXTS) ;  // COMM_WORLD has the first ones
+    initialized = new boolean [size] ;
+
+    if (link != null)
+      link.start(this) ;
+  }
+
+  /*
+   * One send or receive.  A request of the bindings refers to the
+   * transfer it started, and the mailboxes hold transfers.
+   */
+
+  static class Transfer {
+    boolean send ;
+    int mode ;             // of a send, one of `Prequest.MODE_...'
+    boolean copied ;       // an eager copy, whose send is already done
+    int owner ;            // world rank that waits for this
+    int destination ;      // world rank a send goes to
+    int context ;
+    int source ;           // rank of the sender in its group
+    int peer ;             // of a receive, rank asked for or ANY_SOURCE
+    int tag ;              // of a receive, perhaps ANY_TAG
+    Object buf ;
+    int offset ;
+    int count ;
+    Datatype type ;        // null for contiguous basic elements
+    boolean remote ;       // came from another process, with
+    int kind ;             //   the type of its elements,
+    int id ;               //   nonzero if its sender waits for the match,
+    int origin ;           //   and the world rank it came from
+
+    volatile boolean done ;
+    boolean cancelled ;
+    int statusSource, statusTag, elements ;
+    String error ;
+  }
+
+  static class Mailbox {
+    final LinkedList<Transfer> posted  = new LinkedList<Transfer>() ;
+    final LinkedList<Transfer> arrived = new LinkedList<Transfer>() ;
+
+    // Notified whenever a transfer of this rank completes.
+
+    final Object signal = new Object() ;
+  }
+
+  /*
+   * Makes the calling thread, and the threads it starts, rank `rank'.
+   */
+
+  void attach(int rank) {
+    self.set(rank) ;
+  }
+
+  public int rank() {
+    Integer rank = self.get() ;
+    if (rank == null && home >= 0)
+      return home ;
+    if (rank == null)
+      throw new IllegalStateException("MPI called from a thread that " +
+                                      "is not one of the ranks") ;
+    return rank ;
+  }
+
+
+  // Environment
+
+  public boolean nativeHandles() {
+    return false ;
+  }
+
+  public void setConstants() {
+    MPI.GRAPH          = 1 ;
+    MPI.CART           = 2 ;
+    MPI.ANY_SOURCE     = -2 ;
+    MPI.ANY_TAG        = -1 ;
+    MPI.PROC_NULL      = -1 ;
+    MPI.BSEND_OVERHEAD = 0 ;
+    MPI.UNDEFINED      = -32766 ;
+    MPI.IDENT          = 0 ;
+    MPI.CONGRUENT      = 1 ;
+    MPI.SIMILAR        = 2 ;
+    MPI.UNEQUAL        = 3 ;
+    MPI.TAG_UB         = 0 ;
+    MPI.HOST           = 1 ;
+    MPI.IO             = 2 ;
+  }
+
+  public String [] init(String [] args) {
+    initialized [rank()] = true ;
+    return args ;
+  }
+
+  public boolean initialized() {
+    return initialized [rank()] ;
+  }
+
+  public void finish() throws MPIException {
+    barrier(MPI.COMM_WORLD) ;
+    if (link != null)
+      link.drain() ;
+  }
+
+  public double wtime() {
+    return System.nanoTime() / 1e9 ;
+  }
+
+  public double wtick() {
+    return 1e-9 ;
+  }
+
+  public synchronized String processorName() {
+    if (processorName == null) {
+      try {
+        processorName = InetAddress.getLocalHost().getHostName() ;
+      }
+      catch (java.io.IOException e) {
+        processorName = "localhost" ;
+      }
+    }
+    return processorName ;
+  }
+
+  public void bufferAttach(byte [] buffer) {}
+
+  public void bufferDetach(byte [] buffer) {}
+
+  public void abort(Comm comm, int errorcode) {
+    System.exit(errorcode) ;
+  }
+
+  public int attrGet(Comm comm, int keyval) {
+    if (keyval == MPI.TAG_UB)
+      return Integer.MAX_VALUE ;
+    if (keyval == MPI.HOST)
+      return MPI.PROC_NULL ;
+    if (keyval == MPI.IO)
+      return MPI.ANY_SOURCE ;
+    return 0 ;
+  }
+
+  public void newErrhandler(Errhandler errhandler, int type) {
+    errhandler.handle = type ;
+  }
+
+  public void errhandlerSet(Comm comm, Errhandler errhandler) {
+    comm.errhandler = errhandler ;
+  }
+
+  public Errhandler errhandlerGet(Comm comm) {
+    return comm.errhandler != null ? comm.errhandler : MPI.ERRORS_RETURN ;
+  }
+
+
+  // Copying
+
+  /*
+   * Bytes taken by one element of a primitive array.
+   */
+
+  static int sizeOf(Object array) {
+    if (array instanceof double [] || array instanceof long [])
+      return 8 ;
+    if (array instanceof int [] || array instanceof float [])
+      return 4 ;
+    if (array instanceof short [] || array instanceof char [])
+      return 2 ;
+    return 1 ;
+  }
+
+  static Object newArray(Object like, int length) {
+    return Array.newInstance(like.getClass().getComponentType(), length) ;
+  }
+
+  static int size(Datatype type) throws MPIException {
+    return type == null ? 1 : type.Size() ;
+  }
+
+  private static int extent(Datatype type) throws MPIException {
+    return type == null ? 1 : type.Extent() ;
+  }
+
+  /*
+   * True if the basic elements of consecutive items of type follow one
+   * another in the array, as they do for basic and contiguous types.
+   */
+
+  static boolean contiguous(Datatype type) throws MPIException {
+    if (type == null)
+      return true ;
+
+    int [] displacements = type.displacements ;
+    if (type.Extent() != displacements.length)
+      return false ;
+    for (int k = 0 ; k < displacements.length ; k++)
+      if (displacements [k] != k)
+        return false ;
+    return true ;
+  }
+
+  /*
+   * Position in the array of basic element i of items of type that
+   * start at offset.
+   */
+
+  static int position(Datatype type, int extent, int offset, int i) {
+    if (type == null)
+      return offset + i ;
+
+    int n = type.displacements.length ;
+    return offset + (i / n) * extent + type.displacements [i % n] ;
+  }
+
+  /*
+   * Copies the basic elements of scount items of stype at soffset in
+   * src into dcount items of dtype at doffset in dst, and returns how
+   * many there were.  Runs of elements contiguous on both sides are
+   * moved by one `System.arraycopy'.
+   */
+
+  static int copy(Object src, int soffset, int scount, Datatype stype,
+                  Object dst, int doffset, int dcount, Datatype dtype)
+                                                      throws MPIException {
+    int elements = scount * size(stype) ;
+    if (elements > dcount * size(dtype))
+      throw new MPIException("Message truncated: " + elements +
+                             " elements for room for " +
+                             dcount * size(dtype)) ;
+    try {
+      if (contiguous(stype) && contiguous(dtype)) {
+        System.arraycopy(src, soffset, dst, doffset, elements) ;
+        return elements ;
+      }
+
+      int sextent = extent(stype), dextent = extent(dtype) ;
+      int i = 0 ;
+      while (i < elements) {
+        int s = position(stype, sextent, soffset, i) ;
+        int d = position(dtype, dextent, doffset, i) ;
+        int run = 1 ;
+        while (i + run < elements &&
+               position(stype, sextent, soffset, i + run) == s + run &&
+               position(dtype, dextent, doffset, i + run) == d + run)
+          run++ ;
+        System.arraycopy(src, s, dst, d, run) ;
+        i += run ;
+      }
+      return elements ;
+    }
+    catch (ArrayStoreException e) {
+      throw new MPIException("Buffers of different types: " +
+                             e.getMessage()) ;
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new MPIException("Buffer too short: " + e.getMessage()) ;
+    }
+  }
+
+
+  // Point-to-point
+
+  private static boolean matches(Transfer send, Transfer recv) {
+    return send.context == recv.context &&
+           (recv.peer == MPI.ANY_SOURCE || recv.peer == send.source) &&
+           (recv.tag == MPI.ANY_TAG || recv.tag == send.tag) ;
+  }
+
+  /*
+   * Removes and returns the first transfer of queue that matches t, or
+   * returns null.  Matching in queue order is what keeps messages
+   * between two ranks from overtaking one another.
+   */
+
+  private static Transfer take(LinkedList<Transfer> queue, Transfer t) {
+    Iterator<Transfer> it = queue.iterator() ;
+    while (it.hasNext()) {
+      Transfer other = it.next() ;
+      if (t.send ? matches(t, other) : matches(other, t)) {
+        it.remove() ;
+        return other ;
+      }
+    }
+    return null ;
+  }
+
+  /*
+   * World rank of rank `rank' of the group comm sends to, or -1 for
+   * PROC_NULL.
+   */
+
+  private int world(Comm comm, int rank) throws MPIException {
+    if (rank == MPI.PROC_NULL)
+      return -1 ;
+
+    int [] peers = comm.remote != null ? comm.remote : comm.members ;
+    if (rank < 0 || rank >= peers.length)
+      throw new MPIException("Invalid rank " + rank) ;
+    return peers [rank] ;
+  }
+
+  Transfer startSend(int context, int source, int destination, int mode,
+                     Object buf, int offset, int count, Datatype type,
+                     int tag) throws MPIException {
+    Transfer t = new Transfer() ;
+    t.send        = true ;
+    t.mode        = mode ;
+    t.owner       = rank() ;
+    t.destination = destination ;
+    t.context     = context ;
+    t.source      = source ;
+    t.tag         = tag ;
+    t.buf         = buf ;
+    t.offset      = offset ;
+    t.count       = count ;
+    t.type        = type ;
+
+    if (destination < 0) {
+      complete(t) ;
+      return t ;
+    }
+    if (link != null && destination != home) {
+      link.send(t) ;
+      return t ;
+    }
+
+    Mailbox box = boxes [destination] ;
+    Transfer recv ;
+    synchronized (box) {
+      recv = take(box.posted, t) ;
+      if (recv == null) {
+        int bytes = count * size(type) * sizeOf(buf) ;
+        if (mode == Prequest.MODE_BUFFERED ||
+            mode != Prequest.MODE_SYNCHRONOUS && bytes <= eager) {
+          box.arrived.add(eagerCopy(t)) ;
+          complete(t) ;
+        }
+        else
+          box.arrived.add(t) ;
+        box.notifyAll() ;
+        return t ;
+      }
+    }
+    deliver(t, recv) ;
+    return t ;
+  }
+
+  private static Transfer eagerCopy(Transfer t) throws MPIException {
+    int elements = t.count * size(t.type) ;
+
+    Transfer c = new Transfer() ;
+    c.send    = true ;
+    c.copied  = true ;
+    c.context = t.context ;
+    c.source  = t.source ;
+    c.tag     = t.tag ;
+    c.buf     = newArray(t.buf, elements) ;
+    c.count   = elements ;
+    copy(t.buf, t.offset, t.count, t.type, c.buf, 0, elements, null) ;
+    return c ;
+  }
+
+  Transfer startRecv(int context, int peer, Object buf, int offset,
+                     int count, Datatype type, int tag)
+                                                      throws MPIException {
+    Transfer t = new Transfer() ;
+    t.owner   = rank() ;
+    t.context = context ;
+    t.peer    = peer ;
+    t.tag     = tag ;
+    t.buf     = buf ;
+    t.offset  = offset ;
+    t.count   = count ;
+    t.type    = type ;
+
+    if (peer == MPI.PROC_NULL) {
+      t.statusSource = MPI.PROC_NULL ;
+      t.statusTag    = MPI.ANY_TAG ;
+      complete(t) ;
+      return t ;
+    }
+
+    Mailbox box = boxes [t.owner] ;
+    Transfer send ;
+    synchronized (box) {
+      send = take(box.arrived, t) ;
+      if (send == null) {
+        box.posted.add(t) ;
+        return t ;
+      }
+    }
+    deliver(send, t) ;
+    return t ;
+  }
+
+  /*
+   * Adds a message from another process to the home mailbox, or hands
+   * it to the receive waiting for it.
+   */
+
+  void arrive(Transfer send) {
+    Mailbox box = boxes [home] ;
+    Transfer recv ;
+    synchronized (box) {
+      recv = take(box.posted, send) ;
+      if (recv == null) {
+        box.arrived.add(send) ;
+        box.notifyAll() ;
+        return ;
+      }
+    }
+    deliver(send, recv) ;
+  }
+
+  /*
+   * Copies the data of a matched pair, outside any lock since neither
+   * is in a queue any more, then completes both.
+   */
+
+  private void deliver(Transfer send, Transfer recv) {
+    recv.statusSource = send.source ;
+    recv.statusTag    = send.tag ;
+    try {
+      if (!send.remote)
+        recv.elements = copy(send.buf, send.offset, send.count, send.type,
+                             recv.buf, recv.offset, recv.count, recv.type) ;
+      else if (!link.receive(send, recv))
+        return ;                    // the link completes it when it can
+    }
+    catch (MPIException e) {
+      recv.error = e.getMessage() ;
+    }
+    complete(recv) ;
+    if (!send.copied)
+      complete(send) ;
+  }
+
+  /*
+   * Marks t done and wakes its rank if it waits.  Signals are only ever
+   * held for a moment, so this is safe under a mailbox lock.
+   */
+
+  void complete(Transfer t) {
+    t.done = true ;
+    Object signal = boxes [t.owner].signal ;
+    synchronized (signal) {
+      signal.notifyAll() ;
+    }
+  }
+
+  private static void pause(Object monitor) throws MPIException {
+    try {
+      monitor.wait() ;
+    }
+    catch (InterruptedException e) {
+      throw new MPIException("Interrupted while waiting") ;
+    }
+  }
+
+  /*
+   * Polls the link, if it can be, until t or one of reqs is done or
+   * POLLS polls have moved nothing.
+   */
+
+  private void poll(Transfer t, Request [] reqs) {
+    if (link == null || !link.pollable())
+      return ;
+
+    int idle = 0 ;
+    while (t != null ? !t.done : firstDone(reqs) == -1) {
+      if (link.poll())
+        idle = 0 ;
+      else if (++idle < POLLS)
+        link.idle(idle) ;
+      else
+        return ;
+    }
+  }
+
+  private void waitFor(Transfer t) throws MPIException {
+    if (t.done)
+      return ;
+
+    poll(t, null) ;
+    Object signal = boxes [t.owner].signal ;
+    synchronized (signal) {
+      while (!t.done)
+        pause(signal) ;
+    }
+  }
+
+  void await(Transfer t) throws MPIException {
+    waitFor(t) ;
+    if (t.error != null)
+      throw new MPIException(t.error) ;
+  }
+
+  private void awaitAll(Transfer [] ts) throws MPIException {
+    for (int i = 0 ; i < ts.length ; i++)
+      if (ts [i] != null)
+        await(ts [i]) ;
+  }
+
+  private static Status fill(Transfer t, Status status) throws MPIException {
+    if (t.error != null)
+      throw new MPIException(t.error) ;
+
+    status.source    = t.statusSource ;
+    status.tag       = t.statusTag ;
+    status.elements  = t.elements ;
+    status.cancelled = t.cancelled ;
+    return status ;
+  }
+
+  public Request isend(Comm comm, int mode, Object buf, int offset, int count,
+                       Datatype type, int dest, int tag, Request req)
+                                                      throws MPIException {
+    req.transfer = startSend(comm.context, comm.ranks [rank()],
+                             world(comm, dest), mode,
+                             buf, offset, count, type, tag) ;
+    return req ;
+  }
+
+  public Request irecv(Comm comm, Object buf, int offset, int count,
+                       Datatype type, int source, int tag, Request req)
+                                                      throws MPIException {
+    if (source != MPI.ANY_SOURCE)
+      world(comm, source) ;
+    req.transfer = startRecv(comm.context, source,
+                             buf, offset, count, type, tag) ;
+    return req ;
+  }
+
+  public void send(Comm comm, int mode, Object buf, int offset, int count,
+                   Datatype type, int dest, int tag) throws MPIException {
+    await(startSend(comm.context, comm.ranks [rank()], world(comm, dest),
+                    mode, buf, offset, count, type, tag)) ;
+  }
+
+  public Status recv(Comm comm, Object buf, int offset, int count,
+                     Datatype type, int source, int tag, Status status)
+                                                      throws MPIException {
+    Request req = irecv(comm, buf, offset, count, type, source, tag,
+                        new Request()) ;
+    return wait(req, status) ;
+  }
+
+  public Status sendrecv(Comm comm,
+                         Object sbuf, int soffset, int scount, Datatype stype,
+                         int dest, int stag,
+                         Object rbuf, int roffset, int rcount, Datatype rtype,
+                         int source, int rtag, Status status)
+                                                      throws MPIException {
+    Transfer send = startSend(comm.context, comm.ranks [rank()],
+                              world(comm, dest), Prequest.MODE_STANDARD,
+                              sbuf, soffset, scount, stype, stag) ;
+    Status result = recv(comm, rbuf, roffset, rcount, rtype, source, rtag,
+                         status) ;
+    await(send) ;
+    return result ;
+  }
+
+  /*
+   * The send is buffered, so it has left `buf' before the receive
+   * writes over it.
+   */
+
+  public Status sendrecvReplace(Comm comm, Object buf, int offset, int count,
+                                Datatype type, int dest, int stag,
+                                int source, int rtag, Status status)
+                                                      throws MPIException {
+    Transfer send = startSend(comm.context, comm.ranks [rank()],
+                              world(comm, dest), Prequest.MODE_BUFFERED,
+                              buf, offset, count, type, stag) ;
+    Status result = recv(comm, buf, offset, count, type, source, rtag,
+                         status) ;
+    await(send) ;
+    return result ;
+  }
+
+  public Status iprobe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException {
+    Mailbox box = boxes [rank()] ;
+    synchronized (box) {
+      return peek(box, comm.context, source, tag, status) ;
+    }
+  }
+
+  public Status probe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException {
+    Mailbox box = boxes [rank()] ;
+    synchronized (box) {
+      Status found ;
+      while ((found = peek(box, comm.context, source, tag, status)) == null)
+        pause(box) ;
+      return found ;
+    }
+  }
+
+  private static Status peek(Mailbox box, int context, int source, int tag,
+                             Status status) throws MPIException {
+    Transfer probe = new Transfer() ;
+    probe.context = context ;
+    probe.peer    = source ;
+    probe.tag     = tag ;
+
+    for (Transfer send : box.arrived)
+      if (matches(send, probe)) {
+        status.source   = send.source ;
+        status.tag      = send.tag ;
+        status.elements = send.count * size(send.type) ;
+        return status ;
+      }
+    return null ;
+  }
+
+
+  // Requests
+
+  private static Status empty(Status status) {
+    status.source   = MPI.ANY_SOURCE ;
+    status.tag      = MPI.ANY_TAG ;
+    status.elements = 0 ;
+    return status ;
+  }
+
+  /*
+   * Completed requests become inactive, like MPI_REQUEST_NULL.
+   */
+
+  private static Status finish(Request req, Status status)
+                                                      throws MPIException {
+    Transfer t = req.transfer ;
+    req.transfer = null ;
+    return fill(t, status) ;
+  }
+
+  public Status wait(Request req, Status status) throws MPIException {
+    if (req.transfer == null)
+      return empty(status) ;
+
+    waitFor(req.transfer) ;
+    return finish(req, status) ;
+  }
+
+  public Status test(Request req, Status status) throws MPIException {
+    if (req.transfer == null)
+      return empty(status) ;
+
+    return req.transfer.done ? finish(req, status) : null ;
+  }
+
+  /*
+   * Index of the first complete request of reqs, -1 if some are still
+   * active but none is complete, or UNDEFINED if none is active.
+   */
+
+  private static int firstDone(Request [] reqs) {
+    boolean active = false ;
+    for (int i = 0 ; i < reqs.length ; i++) {
+      Transfer t = reqs [i] == null ? null : reqs [i].transfer ;
+      if (t != null) {
+        if (t.done)
+          return i ;
+        active = true ;
+      }
+    }
+    return active ? -1 : MPI.UNDEFINED ;
+  }
+
+  public Status waitany(Request [] reqs, Status status) throws MPIException {
+    poll(null, reqs) ;
+    Object signal = boxes [rank()].signal ;
+    int index ;
+    synchronized (signal) {
+      while ((index = firstDone(reqs)) == -1)
+        pause(signal) ;
+    }
+    return any(reqs, index, status) ;
+  }
+
+  public Status testany(Request [] reqs, Status status) throws MPIException {
+    int index = firstDone(reqs) ;
+    return index == -1 ? null : any(reqs, index, status) ;
+  }
+
+  private static Status any(Request [] reqs, int index, Status status)
+                                                      throws MPIException {
+    if (index == MPI.UNDEFINED)
+      empty(status) ;
+    else
+      finish(reqs [index], status) ;
+    status.index = index ;
+    return status ;
+  }
+
+  public Status [] waitall(Request [] reqs) throws MPIException {
+    Status [] result = new Status [reqs.length] ;
+    for (int i = 0 ; i < reqs.length ; i++)
+      if (reqs [i] != null && reqs [i].transfer != null) {
+        waitFor(reqs [i].transfer) ;
+        result [i] = finish(reqs [i], new Status()) ;
+        result [i].index = i ;
+      }
+    return result ;
+  }
+
+  public Status [] testall(Request [] reqs) throws MPIException {
+    for (int i = 0 ; i < reqs.length ; i++)
+      if (reqs [i] != null && reqs [i].transfer != null &&
+          !reqs [i].transfer.done)
+        return null ;
+    return waitall(reqs) ;
+  }
+
+  public Status [] waitsome(Request [] reqs) throws MPIException {
+    poll(null, reqs) ;
+    Object signal = boxes [rank()].signal ;
+    synchronized (signal) {
+      while (firstDone(reqs) == -1)
+        pause(signal) ;
+    }
+    return testsome(reqs) ;
+  }
+
+  public Status [] testsome(Request [] reqs) throws MPIException {
+    int done = 0 ;
+    for (int i = 0 ; i < reqs.length ; i++)
+      if (reqs [i] != null && reqs [i].transfer != null &&
+          reqs [i].transfer.done)
+        done++ ;
+
+    Status [] result = new Status [done] ;
+    done = 0 ;
+    for (int i = 0 ; i < reqs.length ; i++)
+      if (reqs [i] != null && reqs [i].transfer != null &&
+          reqs [i].transfer.done) {
+        result [done] = finish(reqs [i], new Status()) ;
+        result [done++].index = i ;
+      }
+    return result ;
+  }
+
+  /*
+   * Only a transfer still waiting in a queue can be cancelled.  An eager
+   * send has already gone.
+   */
+
+  public void cancel(Request req) {
+    Transfer t = req.transfer ;
+    if (t == null || t.done)
+      return ;
+
+    Mailbox box = boxes [t.send ? t.destination : t.owner] ;
+    boolean removed ;
+    synchronized (box) {
+      removed = (t.send ? box.arrived : box.posted).remove(t) ;
+    }
+    if (removed) {
+      t.cancelled = true ;
+      complete(t) ;
+    }
+  }
+
+  public void free(Request req) {
+    req.transfer = null ;
+  }
+
+  public void newRequest(Request req, int type) {}
+
+  public boolean isNull(Request req) {
+    return req.transfer == null ;
+  }
+
+  public void newStatus(Status status) {}
+
+  public int getCount(Status status, Datatype type) throws MPIException {
+    int size = type.Size() ;
+    if (size == 0)
+      return 0 ;
+    return status.elements % size == 0 ? status.elements / size
+                                       : MPI.UNDEFINED ;
+  }
+
+  public int getElements(Status status, Datatype type) {
+    return status.elements ;
+  }
+
+  public boolean testCancelled(Status status) {
+    return status.cancelled ;
+  }
+
+
+  // Pack and Unpack
+
+  /*
+   * Writes n elements of a primitive array from offset into out,
+   * big-endian, starting at the position of out.
+   */
+
+  static void encode(Object array, int offset, int n, ByteBuffer out)
+                                                      throws MPIException {
+    if (array instanceof double [])
+      out.asDoubleBuffer().put((double []) array, offset, n) ;
+    else if (array instanceof long [])
+      out.asLongBuffer().put((long []) array, offset, n) ;
+    else if (array instanceof int [])
+      out.asIntBuffer().put((int []) array, offset, n) ;
+    else if (array instanceof float [])
+      out.asFloatBuffer().put((float []) array, offset, n) ;
+    else if (array instanceof short [])
+      out.asShortBuffer().put((short []) array, offset, n) ;
+    else if (array instanceof char [])
+      out.asCharBuffer().put((char []) array, offset, n) ;
+    else if (array instanceof byte [])
+      out.duplicate().put((byte []) array, offset, n) ;
+    else if (array instanceof boolean []) {
+      boolean [] flags = (boolean []) array ;
+      int at = out.position() ;
+      for (int i = 0 ; i < n ; i++)
+        out.put(at + i, flags [offset + i] ? (byte) 1 : (byte) 0) ;
+    }
+    else
+      throw new MPIException("Cannot encode " + array.getClass()) ;
+  }
+
+  /*
+   * Reads n elements written by `encode' into a primitive array at
+   * offset.
+   */
+
+  static void decode(ByteBuffer in, Object array, int offset, int n)
+                                                      throws MPIException {
+    if (array instanceof double [])
+      in.asDoubleBuffer().get((double []) array, offset, n) ;
+    else if (array instanceof long [])
+      in.asLongBuffer().get((long []) array, offset, n) ;
+    else if (array instanceof int [])
+      in.asIntBuffer().get((int []) array, offset, n) ;
+    else if (array instanceof float [])
+      in.asFloatBuffer().get((float []) array, offset, n) ;
+    else if (array instanceof short [])
+      in.asShortBuffer().get((short []) array, offset, n) ;
+    else if (array instanceof char [])
+      in.asCharBuffer().get((char []) array, offset, n) ;
+    else if (array instanceof byte [])
+      in.duplicate().get((byte []) array, offset, n) ;
+    else if (array instanceof boolean []) {
+      boolean [] flags = (boolean []) array ;
+      int at = in.position() ;
+      for (int i = 0 ; i < n ; i++)
+        flags [offset + i] = in.get(at + i) != 0 ;
+    }
+    else
+      throw new MPIException("Cannot decode " + array.getClass()) ;
+  }
+
+  public int pack(Comm comm, Object inbuf, int offset, int incount,
+                  Datatype type, byte [] outbuf, int position)
+                                                      throws MPIException {
+    int elements = incount * type.Size() ;
+    int bytes = elements * sizeOf(inbuf) ;
+
+    Object flat = inbuf ;
+    if (!contiguous(type)) {
+      flat = newArray(inbuf, elements) ;
+      copy(inbuf, offset, incount, type, flat, 0, elements, null) ;
+      offset = 0 ;
+    }
+    try {
+      encode(flat, offset, elements, ByteBuffer.wrap(outbuf, position, bytes)) ;
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new MPIException("Pack buffer too short") ;
+    }
+    return position + bytes ;
+  }
+
+  public int unpack(Comm comm, byte [] inbuf, int position, Object outbuf,
+                    int offset, int outcount, Datatype type)
+                                                      throws MPIException {
+    int elements = outcount * type.Size() ;
+    int bytes = elements * sizeOf(outbuf) ;
+
+    try {
+      ByteBuffer in = ByteBuffer.wrap(inbuf, position, bytes) ;
+      if (contiguous(type))
+        decode(in, outbuf, offset, elements) ;
+      else {
+        Object flat = newArray(outbuf, elements) ;
+        decode(in, flat, 0, elements) ;
+        copy(flat, 0, elements, null, outbuf, offset, outcount, type) ;
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new MPIException("Unpack buffer too short") ;
+    }
+    return position + bytes ;
+  }
+
+  public int packSize(Comm comm, int incount, Datatype type)
+                                                      throws MPIException {
+    return incount * type.Size() * type.baseSize ;
+  }
+
+
+  // Predefined ops
+
+  private static long combine(int code, long a, long b)
+                                                      throws MPIException {
+    switch (code) {
+      case Op.MAX  : return Math.max(a, b) ;
+      case Op.MIN  : return Math.min(a, b) ;
+      case Op.SUM  : return a + b ;
+      case Op.PROD : return a * b ;
+      case Op.LAND : return (a != 0 && b != 0) ? 1 : 0 ;
+      case Op.LOR  : return (a != 0 || b != 0) ? 1 : 0 ;
+      case Op.LXOR : return ((a != 0) != (b != 0)) ? 1 : 0 ;
+      case Op.BAND : return a & b ;
+      case Op.BOR  : return a | b ;
+      case Op.BXOR : return a ^ b ;
+    }
+    throw new MPIException("Invalid op") ;
+  }
+
+  private static double combine(int code, double a, double b)
+                                                      throws MPIException {
+    switch (code) {
+      case Op.MAX  : return Math.max(a, b) ;
+      case Op.MIN  : return Math.min(a, b) ;
+      case Op.SUM  : return a + b ;
+      case Op.PROD : return a * b ;
+    }
+    throw new MPIException("Op is not defined for floating point") ;
+  }
+
+  private static boolean combine(int code, boolean a, boolean b)
+                                                      throws MPIException {
+    switch (code) {
+      case Op.LAND : case Op.BAND : return a && b ;
+      case Op.LOR  : case Op.BOR  : return a || b ;
+      case Op.LXOR : case Op.BXOR : return a != b ;
+    }
+    throw new MPIException("Op is not defined for booleans") ;
+  }
+
+  /*
+   * inout [i] = in [i] op inout [i] for the first n elements, with a
+   * predefined op.
+   */
+
+  static void apply(Op op, Object in, Object inout, int n)
+                                                      throws MPIException {
+    int code = op.code ;
+
+    if (in instanceof double []) {
+      double [] a = (double []) in, b = (double []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = combine(code, a [i], b [i]) ;
+    }
+    else if (in instanceof float []) {
+      float [] a = (float []) in, b = (float []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = (float) combine(code, (double) a [i], (double) b [i]) ;
+    }
+    else if (in instanceof long []) {
+      long [] a = (long []) in, b = (long []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = combine(code, a [i], b [i]) ;
+    }
+    else if (in instanceof int []) {
+      int [] a = (int []) in, b = (int []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = (int) combine(code, (long) a [i], (long) b [i]) ;
+    }
+    else if (in instanceof short []) {
+      short [] a = (short []) in, b = (short []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = (short) combine(code, (long) a [i], (long) b [i]) ;
+    }
+    else if (in instanceof byte []) {
+      byte [] a = (byte []) in, b = (byte []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = (byte) combine(code, (long) a [i], (long) b [i]) ;
+    }
+    else if (in instanceof char []) {
+      char [] a = (char []) in, b = (char []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = (char) combine(code, (long) a [i], (long) b [i]) ;
+    }
+    else if (in instanceof boolean []) {
+      boolean [] a = (boolean []) in, b = (boolean []) inout ;
+      for (int i = 0 ; i < n ; i++)
+        b [i] = combine(code, a [i], b [i]) ;
+    }
+    else
+      throw new MPIException("Op is not defined for " + in.getClass()) ;
+  }
+
+  public void newOp(Op op, int type) {}
+
+
+  // Collectives
+
+  private Transfer collSend(Comm comm, Object buf, int offset, int count,
+                            Datatype type, int dest, int tag)
+                                                      throws MPIException {
+    return startSend(comm.context + 1, comm.ranks [rank()],
+                     comm.members [dest], Prequest.MODE_STANDARD,
+                     buf, offset, count, type, tag) ;
+  }
+
+  private Transfer collRecv(Comm comm, Object buf, int offset, int count,
+                            Datatype type, int source, int tag)
+                                                      throws MPIException {
+    return startRecv(comm.context + 1, source, buf, offset, count, type,
+                     tag) ;
+  }
+
+  /*
+   * Dissemination barrier: in round k every rank signals the one 2^k
+   * ahead of it.
+   */
+
+  public void barrier(Intracomm comm) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int [] none = new int [0] ;
+
+    for (int k = 1 ; k < n ; k <<= 1) {
+      Transfer recv = collRecv(comm, none, 0, 0, MPI.INT, (me - k + n) % n,
+                               BARRIER) ;
+      await(collSend(comm, none, 0, 0, MPI.INT, (me + k) % n, BARRIER)) ;
+      await(recv) ;
+    }
+  }
+
+  /*
+   * Binomial tree: a rank receives from the rank that differs from it in
+   * its lowest set bit, counted from root, then passes the data on to
+   * the ranks below that bit.
+   */
+
+  public void bcast(Intracomm comm, Object buf, int offset, int count,
+                    Datatype type, int root) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int vr = (me - root + n) % n ;
+
+    int mask = 1 ;
+    while (mask < n) {
+      if ((vr & mask) != 0) {
+        await(collRecv(comm, buf, offset, count, type,
+                       (vr - mask + root) % n, BCAST)) ;
+        break ;
+      }
+      mask <<= 1 ;
+    }
+
+    Transfer [] sends = new Transfer [32] ;
+    int k = 0 ;
+    for (mask >>= 1 ; mask > 0 ; mask >>= 1)
+      if (vr + mask < n)
+        sends [k++] = collSend(comm, buf, offset, count, type,
+                               (vr + mask + root) % n, BCAST) ;
+    awaitAll(sends) ;
+  }
+
+  private static int [] uniform(int n, int count) {
+    int [] displs = new int [n] ;
+    for (int i = 0 ; i < n ; i++)
+      displs [i] = i * count ;
+    return displs ;
+  }
+
+  private static int [] same(int n, int count) {
+    int [] counts = new int [n] ;
+    Arrays.fill(counts, count) ;
+    return counts ;
+  }
+
+  public void gather(Intracomm comm,
+                     Object sendbuf, int sendoffset, int sendcount,
+                     Datatype sendtype,
+                     Object recvbuf, int recvoffset, int recvcount,
+                     Datatype recvtype, int root) throws MPIException {
+    int n = comm.members.length ;
+    gatherv(comm, sendbuf, sendoffset, sendcount, sendtype,
+            recvbuf, recvoffset, same(n, recvcount), uniform(n, recvcount),
+            recvtype, root) ;
+  }
+
+  /*
+   * The root posts a receive straight into its place in recvbuf for
+   * every other rank.
+   */
+
+  public void gatherv(Intracomm comm,
+                      Object sendbuf, int sendoffset, int sendcount,
+                      Datatype sendtype,
+                      Object recvbuf, int recvoffset, int [] recvcount,
+                      int [] displs, Datatype recvtype, int root)
+                                                      throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+
+    if (me != root) {
+      await(collSend(comm, sendbuf, sendoffset, sendcount, sendtype, root,
+                     GATHER)) ;
+      return ;
+    }
+
+    int extent = extent(recvtype) ;
+    Transfer [] recvs = new Transfer [n] ;
+    for (int i = 0 ; i < n ; i++)
+      if (i != root)
+        recvs [i] = collRecv(comm, recvbuf, recvoffset + displs [i] * extent,
+                             recvcount [i], recvtype, i, GATHER) ;
+    copy(sendbuf, sendoffset, sendcount, sendtype,
+         recvbuf, recvoffset + displs [root] * extent, recvcount [root],
+         recvtype) ;
+    awaitAll(recvs) ;
+  }
+
+  public void scatter(Intracomm comm,
+                      Object sendbuf, int sendoffset, int sendcount,
+                      Datatype sendtype,
+                      Object recvbuf, int recvoffset, int recvcount,
+                      Datatype recvtype, int root) throws MPIException {
+    int n = comm.members.length ;
+    scatterv(comm, sendbuf, sendoffset, same(n, sendcount),
+             uniform(n, sendcount), sendtype,
+             recvbuf, recvoffset, recvcount, recvtype, root) ;
+  }
+
+  public void scatterv(Intracomm comm,
+                       Object sendbuf, int sendoffset, int [] sendcount,
+                       int [] displs, Datatype sendtype,
+                       Object recvbuf, int recvoffset, int recvcount,
+                       Datatype recvtype, int root) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+
+    if (me != root) {
+      await(collRecv(comm, recvbuf, recvoffset, recvcount, recvtype, root,
+                     SCATTER)) ;
+      return ;
+    }
+
+    int extent = extent(sendtype) ;
+    Transfer [] sends = new Transfer [n] ;
+    for (int i = 0 ; i < n ; i++)
+      if (i != root)
+        sends [i] = collSend(comm, sendbuf, sendoffset + displs [i] * extent,
+                             sendcount [i], sendtype, i, SCATTER) ;
+    copy(sendbuf, sendoffset + displs [root] * extent, sendcount [root],
+         sendtype, recvbuf, recvoffset, recvcount, recvtype) ;
+    awaitAll(sends) ;
+  }
+
+  public void allgather(Intracomm comm,
+                        Object sendbuf, int sendoffset, int sendcount,
+                        Datatype sendtype,
+                        Object recvbuf, int recvoffset, int recvcount,
+                        Datatype recvtype) throws MPIException {
+    int n = comm.members.length ;
+    allgatherv(comm, sendbuf, sendoffset, sendcount, sendtype,
+               recvbuf, recvoffset, same(n, recvcount),
+               uniform(n, recvcount), recvtype) ;
+  }
+
+  /*
+   * Every rank posts its receives from all the others, then sends its
+   * own part to each of them.  With the receives already waiting every
+   * part is copied once, straight into place.
+   */
+
+  public void allgatherv(Intracomm comm,
+                         Object sendbuf, int sendoffset, int sendcount,
+                         Datatype sendtype,
+                         Object recvbuf, int recvoffset, int [] recvcount,
+                         int [] displs, Datatype recvtype) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int extent = extent(recvtype) ;
+
+    Transfer [] ts = new Transfer [2 * n] ;
+    for (int i = 0 ; i < n ; i++)
+      if (i != me)
+        ts [i] = collRecv(comm, recvbuf, recvoffset + displs [i] * extent,
+                          recvcount [i], recvtype, i, ALLGATHER) ;
+    for (int k = 1 ; k < n ; k++) {
+      int i = (me + k) % n ;
+      ts [n + i] = collSend(comm, sendbuf, sendoffset, sendcount, sendtype,
+                            i, ALLGATHER) ;
+    }
+    copy(sendbuf, sendoffset, sendcount, sendtype,
+         recvbuf, recvoffset + displs [me] * extent, recvcount [me],
+         recvtype) ;
+    awaitAll(ts) ;
+  }
+
+  public void alltoall(Intracomm comm,
+                       Object sendbuf, int sendoffset, int sendcount,
+                       Datatype sendtype,
+                       Object recvbuf, int recvoffset, int recvcount,
+                       Datatype recvtype) throws MPIException {
+    int n = comm.members.length ;
+    alltoallv(comm, sendbuf, sendoffset, same(n, sendcount),
+              uniform(n, sendcount), sendtype,
+              recvbuf, recvoffset, same(n, recvcount),
+              uniform(n, recvcount), recvtype) ;
+  }
+
+  public void alltoallv(Intracomm comm,
+                        Object sendbuf, int sendoffset, int [] sendcount,
+                        int [] sdispls, Datatype sendtype,
+                        Object recvbuf, int recvoffset, int [] recvcount,
+                        int [] rdispls, Datatype recvtype) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int sextent = extent(sendtype), rextent = extent(recvtype) ;
+
+    Transfer [] ts = new Transfer [2 * n] ;
+    for (int i = 0 ; i < n ; i++)
+      if (i != me)
+        ts [i] = collRecv(comm, recvbuf, recvoffset + rdispls [i] * rextent,
+                          recvcount [i], recvtype, i, ALLTOALL) ;
+    for (int k = 1 ; k < n ; k++) {
+      int i = (me + k) % n ;
+      ts [n + i] = collSend(comm, sendbuf, sendoffset + sdispls [i] * sextent,
+                            sendcount [i], sendtype, i, ALLTOALL) ;
+    }
+    copy(sendbuf, sendoffset + sdispls [me] * sextent, sendcount [me],
+         sendtype, recvbuf, recvoffset + rdispls [me] * rextent,
+         recvcount [me], recvtype) ;
+    awaitAll(ts) ;
+  }
+
+  /*
+   * Reduces count items of type from every rank with a predefined op
+   * along a binomial tree, and returns the result at root as contiguous
+   * basic elements, or null at the other ranks.
+   */
+
+  private Object combine(Intracomm comm, Object sendbuf, int sendoffset,
+                         int count, Datatype type, Op op, int root)
+                                                      throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int elements = count * type.Size() ;
+
+    Object acc = newArray(sendbuf, elements) ;
+    copy(sendbuf, sendoffset, count, type, acc, 0, elements, null) ;
+
+    Object in = null ;
+    int vr = (me - root + n) % n ;
+    for (int mask = 1 ; mask < n ; mask <<= 1) {
+      if ((vr & mask) != 0) {
+        await(collSend(comm, acc, 0, elements, null, (vr - mask + root) % n,
+                       REDUCE)) ;
+        return null ;
+      }
+      if (vr + mask < n) {
+        if (in == null)
+          in = newArray(sendbuf, elements) ;
+        await(collRecv(comm, in, 0, elements, null, (vr + mask + root) % n,
+                       REDUCE)) ;
+        apply(op, in, acc, elements) ;
+      }
+    }
+    return acc ;
+  }
+
+  public void reduce(Intracomm comm, Object sendbuf, int sendoffset,
+                     Object recvbuf, int recvoffset, int count,
+                     Datatype type, Op op, int root) throws MPIException {
+    Object acc = combine(comm, sendbuf, sendoffset, count, type, op, root) ;
+    if (acc != null)
+      copy(acc, 0, count * type.Size(), null,
+           recvbuf, recvoffset, count, type) ;
+  }
+
+  public void allreduce(Intracomm comm, Object sendbuf, int sendoffset,
+                        Object recvbuf, int recvoffset, int count,
+                        Datatype type, Op op) throws MPIException {
+    int elements = count * type.Size() ;
+
+    Object acc = combine(comm, sendbuf, sendoffset, count, type, op, 0) ;
+    if (acc == null)
+      acc = newArray(sendbuf, elements) ;
+    bcast(comm, acc, 0, elements, null, 0) ;
+    copy(acc, 0, elements, null, recvbuf, recvoffset, count, type) ;
+  }
+
+  public void reduceScatter(Intracomm comm, Object sendbuf, int sendoffset,
+                            Object recvbuf, int recvoffset, int [] recvcounts,
+                            Datatype type, Op op) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int size = type.Size() ;
+
+    int [] counts = new int [n], displs = new int [n] ;
+    int total = 0 ;
+    for (int i = 0 ; i < n ; i++) {
+      counts [i] = recvcounts [i] * size ;
+      displs [i] = total * size ;
+      total += recvcounts [i] ;
+    }
+
+    Object acc = combine(comm, sendbuf, sendoffset, total, type, op, 0) ;
+    scatterv(comm, acc, 0, counts, displs, null,
+             recvbuf, recvoffset, recvcounts [me], type, 0) ;
+  }
+
+  /*
+   * Each rank takes the partial result of the ranks before it, adds its
+   * own and passes it on.
+   */
+
+  public void scan(Intracomm comm, Object sendbuf, int sendoffset,
+                   Object recvbuf, int recvoffset, int count,
+                   Datatype type, Op op) throws MPIException {
+    int n = comm.members.length, me = comm.ranks [rank()] ;
+    int elements = count * type.Size() ;
+
+    Object acc = newArray(sendbuf, elements) ;
+    copy(sendbuf, sendoffset, count, type, acc, 0, elements, null) ;
+    if (me > 0) {
+      Object in = newArray(sendbuf, elements) ;
+      await(collRecv(comm, in, 0, elements, null, me - 1, SCAN)) ;
+      apply(op, in, acc, elements) ;
+    }
+    if (me < n - 1)
+      await(collSend(comm, acc, 0, elements, null, me + 1, SCAN)) ;
+    copy(acc, 0, elements, null, recvbuf, recvoffset, count, type) ;
+  }
+
+
+  // Datatypes.  Every layout is kept by `Datatype' itself, counted in
+  // elements, so only basic types are set up here.
+
+  public void typeBasic(Datatype type, int basic) {
+    type.displacements = new int [] {0} ;
+    type.lb = 0 ;
+    type.ub = 1 ;
+    type.lbSet = false ;
+    type.ubSet = false ;
+    type.baseSize = Datatype.basicSize(basic) ;
+  }
+
+  private static MPIException javaLayout() {
+    return new MPIException("Derived datatypes are laid out by Datatype") ;
+  }
+
+  public void typeContiguous(Datatype type, int count, Datatype oldtype)
+                                                      throws MPIException {
+    throw javaLayout() ;
+  }
+
+  public void typeVector(Datatype type, int count, int blocklength,
+                         int stride, Datatype oldtype,
+                         boolean unitsOfOldExtent) throws MPIException {
+    throw javaLayout() ;
+  }
+
+  public void typeIndexed(Datatype type, int [] blocklengths,
+                          int [] displacements, Datatype oldtype,
+                          boolean unitsOfOldExtent) throws MPIException {
+    throw javaLayout() ;
+  }
+
+  public void typeStruct(Datatype type, int [] blocklengths,
+                         int [] displacements, Datatype [] types,
+                         boolean lbSet, int lb, boolean ubSet, int ub)
+                                                      throws MPIException {
+    throw javaLayout() ;
+  }
+
+  public int typeExtent(Datatype type) {
+    return (type.ub - type.lb) * type.baseSize ;
+  }
+
+  public int typeSize(Datatype type) {
+    return type.displacements.length * type.baseSize ;
+  }
+
+  public int typeLb(Datatype type) {
+    return type.lb * type.baseSize ;
+  }
+
+  public int typeUb(Datatype type) {
+    return type.ub * type.baseSize ;
+  }
+
+  public void typeCommit(Datatype type) {}
+
+
+  // Communicators
+
+  public void setType(Comm comm, int type) {
+    int [] all = new int [size] ;
+    for (int i = 0 ; i < size ; i++)
+      all [i] = i ;
+    comm.setMembers(0, all) ;
+  }
+
+  /*
+   * The shadow of an intracommunicator takes the last two of its
+   * contexts.
+   */
+
+  public Comm shadow(Intracomm comm) {
+    return new Comm(comm.context + 2, comm.members) ;
+  }
+
+  public boolean isNull(Comm comm) {
+    return comm.members == null ;
+  }
+
+  public Group group(Comm comm) {
+    return new Group(comm.members) ;
+  }
+
+  public boolean testInter(Comm comm) {
+    return comm.remote != null ;
+  }
+
+  /*
+   * Rank in the group of each world rank, or UNDEFINED.
+   */
+
+  int [] ranksOf(int [] members) {
+    int [] ranks = new int [size] ;
+    Arrays.fill(ranks, MPI.UNDEFINED) ;
+    for (int i = 0 ; i < members.length ; i++)
+      ranks [members [i]] = i ;
+    return ranks ;
+  }
+
+  public int size(Comm comm) {
+    return comm.members.length ;
+  }
+
+  public int rank(Comm comm) {
+    return comm.ranks [rank()] ;
+  }
+
+  /*
+   * Agrees with the other ranks of comm on the first of `width' new
+   * contexts, one that none of them is using yet.
+   */
+
+  private int newContext(Intracomm comm, int width) throws MPIException {
+    int me = rank() ;
+    int [] next = { nextContext [me] } ;
+    allreduce(comm, next, 0, next, 0, 1, MPI.INT, MPI.MAX) ;
+    nextContext [me] = next [0] + width ;
+    return next [0] ;
+  }
+
+  /*
+   * The same across both groups: each agrees on its own, then the
+   * leaders swap and keep the larger.
+   */
+
+  private int newContext(Intercomm comm, int width) throws MPIException {
+    int me = rank() ;
+    int [] next = { nextContext [me] } ;
+    allreduce(comm.local, next, 0, next, 0, 1, MPI.INT, MPI.MAX) ;
+    if (comm.local.ranks [me] == 0)
+      next [0] = Math.max(next [0], swapWithLeader(comm, next [0])) ;
+    bcast(comm.local, next, 0, 1, MPI.INT, 0) ;
+    nextContext [me] = next [0] + width ;
+    return next [0] ;
+  }
+
+  private int swapWithLeader(Intercomm comm, int value) throws MPIException {
+    int [] mine = { value }, theirs = new int [1] ;
+    Transfer recv = startRecv(comm.context + 1, 0, theirs, 0, 1, null,
+                              LEADERS) ;
+    await(startSend(comm.context + 1, 0, comm.remote [0],
+                    Prequest.MODE_STANDARD, mine, 0, 1, null, LEADERS)) ;
+    await(recv) ;
+    return theirs [0] ;
+  }
+
+  public Comm dup(Comm comm) throws MPIException {
+    if (comm instanceof Intercomm) {
+      Intercomm inter = (Intercomm) comm ;
+      int context = newContext(inter, 2 * CONTEXTS) ;
+      return new Intercomm(context, inter.members, inter.remote,
+                           new Intracomm(context + CONTEXTS, inter.members)) ;
+    }
+    if (!(comm instanceof Intracomm))
+      throw new MPIException("Cannot duplicate a shadow communicator") ;
+
+    int context = newContext((Intracomm) comm, CONTEXTS) ;
+    if (comm instanceof Cartcomm) {
+      Cartcomm cart = (Cartcomm) comm ;
+      return new Cartcomm(context, cart.members, cart.dims, cart.periods) ;
+    }
+    if (comm instanceof Graphcomm) {
+      Graphcomm graph = (Graphcomm) comm ;
+      return new Graphcomm(context, graph.members, graph.index, graph.edges) ;
+    }
+    return new Intracomm(context, comm.members) ;
+  }
+
+  public void free(Comm comm) {
+    comm.members = null ;
+  }
+
+  public int compare(Comm comm1, Comm comm2) {
+    if (comm1 == comm2 || comm1.context == comm2.context &&
+                          Arrays.equals(comm1.members, comm2.members))
+      return MPI.IDENT ;
+
+    int result = compare(comm1.members, comm2.members) ;
+    return result == MPI.IDENT ? MPI.CONGRUENT : result ;
+  }
+
+  public int topoTest(Comm comm) {
+    if (comm instanceof Cartcomm)
+      return MPI.CART ;
+    if (comm instanceof Graphcomm)
+      return MPI.GRAPH ;
+    return MPI.UNDEFINED ;
+  }
+
+  /*
+   * Ranks of comm with colour, in order of key and then of rank.
+   */
+
+  private static int [] chosen(Intracomm comm, int [] colourKeys,
+                               int colour) {
+    int n = comm.members.length, count = 0 ;
+    int [] order = new int [n] ;
+    for (int i = 0 ; i < n ; i++) {
+      if (colourKeys [2 * i] != colour)
+        continue ;
+      int j = count++ ;
+      while (j > 0 &&
+             colourKeys [2 * order [j - 1] + 1] > colourKeys [2 * i + 1]) {
+        order [j] = order [j - 1] ;
+        j-- ;
+      }
+      order [j] = i ;
+    }
+
+    int [] members = new int [count] ;
+    for (int j = 0 ; j < count ; j++)
+      members [j] = comm.members [order [j]] ;
+    return members ;
+  }
+
+  private int [] splitMembers(Intracomm comm, int colour, int key)
+                                                      throws MPIException {
+    int n = comm.members.length ;
+    int [] all = new int [2 * n] ;
+    allgather(comm, new int [] { colour, key }, 0, 2, MPI.INT,
+              all, 0, 2, MPI.INT) ;
+    return chosen(comm, all, colour) ;
+  }
+
+  public Intracomm split(Intracomm comm, int colour, int key)
+                                                      throws MPIException {
+    int [] members = splitMembers(comm, colour, key) ;
+    int context = newContext(comm, CONTEXTS) ;
+    return colour == MPI.UNDEFINED ? null : new Intracomm(context, members) ;
+  }
+
+  public Intracomm creat(Intracomm comm, Group group) throws MPIException {
+    int context = newContext(comm, CONTEXTS) ;
+    for (int i = 0 ; i < group.members.length ; i++)
+      if (group.members [i] == rank())
+        return new Intracomm(context, group.members) ;
+    return null ;
+  }
+
+  public Intercomm createIntercomm(Comm peer, Comm localComm,
+                                   int localLeader, int remoteLeader, int tag)
+                                                      throws MPIException {
+    Intracomm local = (Intracomm) localComm ;
+    int me = rank() ;
+    int [] next = { nextContext [me] } ;
+    allreduce(local, next, 0, next, 0, 1, MPI.INT, MPI.MAX) ;
+
+    int [] header = new int [2] ;  // context, size of remote group
+    int [] remote = null ;
+    if (local.ranks [me] == localLeader) {
+      int [] mine = { next [0], local.members.length } ;
+      int [] theirs = new int [2] ;
+      sendrecv(peer, mine, 0, 2, MPI.INT, remoteLeader, tag,
+               theirs, 0, 2, MPI.INT, remoteLeader, tag, new Status()) ;
+      remote = new int [theirs [1]] ;
+      sendrecv(peer, local.members, 0, local.members.length, MPI.INT,
+               remoteLeader, tag,
+               remote, 0, remote.length, MPI.INT, remoteLeader, tag,
+               new Status()) ;
+      header [0] = Math.max(next [0], theirs [0]) ;
+      header [1] = remote.length ;
+    }
+    bcast(local, header, 0, 2, MPI.INT, localLeader) ;
+    if (remote == null)
+      remote = new int [header [1]] ;
+    bcast(local, remote, 0, remote.length, MPI.INT, localLeader) ;
+
+    int context = header [0] ;
+    nextContext [me] = context + 2 * CONTEXTS ;
+    return new Intercomm(context, local.members, remote,
+                         new Intracomm(context + CONTEXTS, local.members)) ;
+  }
+
+  /*
+   * The low group comes first.  If both groups asked for the same, the
+   * one whose leader has the lower world rank does.
+   */
+
+  public int remoteSize(Intercomm comm) {
+    return comm.remote.length ;
+  }
+
+  public Group remoteGroup(Intercomm comm) {
+    return new Group(comm.remote) ;
+  }
+
+  public Intracomm merge(Intercomm comm, boolean high) throws MPIException {
+    int [] flags = { high ? 1 : 0, 0 } ;
+    if (comm.local.ranks [rank()] == 0)
+      flags [1] = swapWithLeader(comm, flags [0]) ;
+    bcast(comm.local, flags, 0, 2, MPI.INT, 0) ;
+
+    boolean localFirst = flags [0] != flags [1]
+                         ? !high : comm.members [0] < comm.remote [0] ;
+    int [] first  = localFirst ? comm.members : comm.remote ;
+    int [] second = localFirst ? comm.remote  : comm.members ;
+    int [] members = new int [first.length + second.length] ;
+    System.arraycopy(first, 0, members, 0, first.length) ;
+    System.arraycopy(second, 0, members, first.length, second.length) ;
+
+    return new Intracomm(newContext(comm, CONTEXTS), members) ;
+  }
+
+
+  // Topologies
+
+  private static int product(int [] dims) {
+    int nodes = 1 ;
+    for (int d = 0 ; d < dims.length ; d++)
+      nodes *= dims [d] ;
+    return nodes ;
+  }
+
+  public Cartcomm createCart(Intracomm comm, int [] dims, boolean [] periods,
+                             boolean reorder) throws MPIException {
+    int nodes = product(dims) ;
+    if (nodes > comm.members.length)
+      throw new MPIException("Grid has more nodes than the communicator") ;
+
+    int context = newContext(comm, CONTEXTS) ;
+    if (comm.ranks [rank()] >= nodes)
+      return null ;
+    return new Cartcomm(context, Arrays.copyOf(comm.members, nodes),
+                        dims.clone(), periods.clone()) ;
+  }
+
+  public Graphcomm createGraph(Intracomm comm, int [] index, int [] edges,
+                               boolean reorder) throws MPIException {
+    int nodes = index.length ;
+    if (nodes > comm.members.length)
+      throw new MPIException("Graph has more nodes than the communicator") ;
+
+    int context = newContext(comm, CONTEXTS) ;
+    if (comm.ranks [rank()] >= nodes)
+      return null ;
+    return new Graphcomm(context, Arrays.copyOf(comm.members, nodes),
+                         index.clone(), edges.clone()) ;
+  }
+
+  public CartParms cartGet(Cartcomm comm) {
+    CartParms parms = new CartParms() ;
+    parms.dims    = comm.dims.clone() ;
+    parms.periods = comm.periods.clone() ;
+    parms.coords  = cartCoords(comm, rank(comm)) ;
+    return parms ;
+  }
+
+  public int cartRank(Cartcomm comm, int [] coords) throws MPIException {
+    int rank = 0 ;
+    for (int d = 0 ; d < comm.dims.length ; d++) {
+      int n = comm.dims [d], c = coords [d] ;
+      if (comm.periods [d])
+        c = (c % n + n) % n ;
+      else if (c < 0 || c >= n)
+        throw new MPIException("Coordinate " + c + " outside the grid") ;
+      rank = rank * n + c ;
+    }
+    return rank ;
+  }
+
+  public int [] cartCoords(Cartcomm comm, int rank) {
+    int [] coords = new int [comm.dims.length] ;
+    for (int d = comm.dims.length - 1 ; d >= 0 ; d--) {
+      coords [d] = rank % comm.dims [d] ;
+      rank /= comm.dims [d] ;
+    }
+    return coords ;
+  }
+
+  public ShiftParms cartShift(Cartcomm comm, int direction, int disp)
+                                                      throws MPIException {
+    int [] coords = cartCoords(comm, rank(comm)) ;
+    ShiftParms parms = new ShiftParms() ;
+    parms.rank_source = neighbour(comm, coords, direction, -disp) ;
+    parms.rank_dest   = neighbour(comm, coords, direction, disp) ;
+    return parms ;
+  }
+
+  private int neighbour(Cartcomm comm, int [] coords, int direction,
+                        int disp) throws MPIException {
+    int [] moved = coords.clone() ;
+    moved [direction] += disp ;
+    if (!comm.periods [direction] &&
+        (moved [direction] < 0 || moved [direction] >= comm.dims [direction]))
+      return MPI.PROC_NULL ;
+    return cartRank(comm, moved) ;
+  }
+
+  /*
+   * Ranks that share their coordinates in the dimensions that are not
+   * kept make up one subgrid.
+   */
+
+  public Cartcomm cartSub(Cartcomm comm, boolean [] remain)
+                                                      throws MPIException {
+    int [] coords = cartCoords(comm, rank(comm)) ;
+    int colour = 0, key = 0, kept = 0 ;
+    for (int d = 0 ; d < comm.dims.length ; d++)
+      if (remain [d]) {
+        key = key * comm.dims [d] + coords [d] ;
+        kept++ ;
+      }
+      else
+        colour = colour * comm.dims [d] + coords [d] ;
+
+    int [] dims = new int [kept] ;
+    boolean [] periods = new boolean [kept] ;
+    kept = 0 ;
+    for (int d = 0 ; d < comm.dims.length ; d++)
+      if (remain [d]) {
+        dims [kept] = comm.dims [d] ;
+        periods [kept++] = comm.periods [d] ;
+      }
+
+    int [] members = splitMembers(comm, colour, key) ;
+    return new Cartcomm(newContext(comm, CONTEXTS), members, dims, periods) ;
+  }
+
+  int map(Comm comm, int nodes) {
+    int me = rank(comm) ;
+    return me < nodes ? me : MPI.UNDEFINED ;
+  }
+
+  public int cartMap(Cartcomm comm, int [] dims, boolean [] periods) {
+    return map(comm, product(dims)) ;
+  }
+
+  /*
+   * Splits what is left of nnodes after the dimensions already set as
+   * evenly as possible between the others: each prime factor, largest
+   * first, goes to the dimension that is smallest so far.
+   */
+
+  public void dimsCreate(int nnodes, int [] dims) throws MPIException {
+    int rest = nnodes, free = 0 ;
+    for (int d = 0 ; d < dims.length ; d++)
+      if (dims [d] > 0) {
+        if (rest % dims [d] != 0)
+          throw new MPIException("Dimensions do not divide " + nnodes) ;
+        rest /= dims [d] ;
+      }
+      else if (dims [d] == 0)
+        free++ ;
+      else
+        throw new MPIException("Negative dimension") ;
+    if (free == 0)
+      return ;
+
+    int [] primes = new int [32] ;
+    int count = 0 ;
+    for (int p = 2 ; p * p <= rest ; p++)
+      while (rest % p == 0) {
+        primes [count++] = p ;
+        rest /= p ;
+      }
+    if (rest > 1)
+      primes [count++] = rest ;
+
+    int [] factors = new int [free] ;
+    Arrays.fill(factors, 1) ;
+    for (int i = count - 1 ; i >= 0 ; i--) {
+      int smallest = 0 ;
+      for (int f = 1 ; f < free ; f++)
+        if (factors [f] < factors [smallest])
+          smallest = f ;
+      factors [smallest] *= primes [i] ;
+    }
+    Arrays.sort(factors) ;
+
+    int f = free - 1 ;
+    for (int d = 0 ; d < dims.length ; d++)
+      if (dims [d] == 0)
+        dims [d] = factors [f--] ;
+  }
+
+  public GraphParms graphGet(Graphcomm comm) {
+    GraphParms parms = new GraphParms() ;
+    parms.index = comm.index.clone() ;
+    parms.edges = comm.edges.clone() ;
+    return parms ;
+  }
+
+  public int [] neighbours(Graphcomm comm, int rank) {
+    int from = rank == 0 ? 0 : comm.index [rank - 1] ;
+    return Arrays.copyOfRange(comm.edges, from, comm.index [rank]) ;
+  }
+
+  public int graphMap(Graphcomm comm, int [] index, int [] edges) {
+    return map(comm, index.length) ;
+  }
+
+
+  // Groups
+
+  public void newGroup(Group group, int type) {
+    group.members = new int [0] ;
+  }
+
+  public int groupSize(Group group) {
+    return group.members.length ;
+  }
+
+  public int groupRank(Group group) {
+    int me = rank() ;
+    for (int i = 0 ; i < group.members.length ; i++)
+      if (group.members [i] == me)
+        return i ;
+    return MPI.UNDEFINED ;
+  }
+
+  private static int indexOf(int [] members, int world) {
+    for (int i = 0 ; i < members.length ; i++)
+      if (members [i] == world)
+        return i ;
+    return MPI.UNDEFINED ;
+  }
+
+  public int [] translateRanks(Group group1, int [] ranks1,
+                               Group group2) {
+    int [] ranks2 = new int [ranks1.length] ;
+    for (int i = 0 ; i < ranks1.length ; i++)
+      ranks2 [i] = indexOf(group2.members, group1.members [ranks1 [i]]) ;
+    return ranks2 ;
+  }
+
+  static int compare(int [] members1, int [] members2) {
+    if (Arrays.equals(members1, members2))
+      return MPI.IDENT ;
+    if (members1.length != members2.length)
+      return MPI.UNEQUAL ;
+    for (int i = 0 ; i < members1.length ; i++)
+      if (indexOf(members2, members1 [i]) == MPI.UNDEFINED)
+        return MPI.UNEQUAL ;
+    return MPI.SIMILAR ;
+  }
+
+  public int groupCompare(Group group1, Group group2) {
+    return compare(group1.members, group2.members) ;
+  }
+
+  /*
+   * Members of group1 that are (or are not) also in group2, in the
+   * order of group1.
+   */
+
+  private static int [] filter(int [] members1, int [] members2,
+                               boolean in) {
+    int [] result = new int [members1.length] ;
+    int count = 0 ;
+    for (int i = 0 ; i < members1.length ; i++)
+      if ((indexOf(members2, members1 [i]) != MPI.UNDEFINED) == in)
+        result [count++] = members1 [i] ;
+    return Arrays.copyOf(result, count) ;
+  }
+
+  public Group union(Group group1, Group group2) {
+    int [] extra = filter(group2.members, group1.members, false) ;
+    int [] result = Arrays.copyOf(group1.members,
+                                  group1.members.length + extra.length) ;
+    System.arraycopy(extra, 0, result, group1.members.length, extra.length) ;
+    return new Group(result) ;
+  }
+
+  public Group intersection(Group group1, Group group2) {
+    return new Group(filter(group1.members, group2.members, true)) ;
+  }
+
+  public Group difference(Group group1, Group group2) {
+    return new Group(filter(group1.members, group2.members, false)) ;
+  }
+
+  public Group incl(Group group, int [] ranks) {
+    int [] result = new int [ranks.length] ;
+    for (int i = 0 ; i < ranks.length ; i++)
+      result [i] = group.members [ranks [i]] ;
+    return new Group(result) ;
+  }
+
+  public Group excl(Group group, int [] ranks) {
+    int [] excluded = new int [ranks.length] ;
+    for (int i = 0 ; i < ranks.length ; i++)
+      excluded [i] = group.members [ranks [i]] ;
+    return new Group(filter(group.members, excluded, false)) ;
+  }
+
+  public Group rangeIncl(Group group, int [][] ranges) {
+    return incl(group, ranges(ranges)) ;
+  }
+
+  public Group rangeExcl(Group group, int [][] ranges) {
+    return excl(group, ranges(ranges)) ;
+  }
+
+  /*
+   * Ranks given by triplets of first, last and stride.
+   */
+
+  static int [] ranges(int [][] ranges) {
+    int count = 0 ;
+    for (int i = 0 ; i < ranges.length ; i++)
+      count += (ranges [i][1] - ranges [i][0]) / ranges [i][2] + 1 ;
+
+    int [] ranks = new int [count] ;
+    count = 0 ;
+    for (int i = 0 ; i < ranges.length ; i++)
+      for (int r = ranges [i][0] ;
+           ranges [i][2] > 0 ? r <= ranges [i][1] : r >= ranges [i][1] ;
+           r += ranges [i][2])
+        ranks [count++] = r ;
+    return ranks ;
+  }
+}
+
+// Things to do:
+//
+//   Intercommunicator collectives, as the bindings have none yet.
+//
+//   `reorder' is ignored by `createCart' and `createGraph'.
@@ -18,7 +18,9 @@ public class Errhandler{
   private static native void init();
 
   //public Errhandler() {}
-  public Errhandler(int Type) { GetErrhandler(Type);}
+  public Errhandler(int Type) {
+    MPI.device.newErrhandler(this, Type) ;
+  }
   public Errhandler(long _handle) { handle = _handle;}  
 
   protected native void GetErrhandler(int Type);
@@ -26,7 +28,8 @@ public class Errhandler{
   protected long handle;
 
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }
 
 }
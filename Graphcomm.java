@@ -16,9 +16,16 @@ public class Graphcomm extends Intracomm {
     super(handle) ;
   }
 
+  Graphcomm(int context, int [] members, int [] index, int [] edges) {
+    super(context, members) ;
+
+    this.index = index ;
+    this.edges = edges ;
+  }
+
   public Object clone() {
     try {
-      return new Graphcomm(super.dup()) ;
+      return MPI.device.dup(this) ;
     }
     catch (MPIException e) {
       throw new RuntimeException(e.getMessage()) ;
@@ -40,7 +47,11 @@ public class Graphcomm extends Intracomm {
    * of the returned object.
    */
 
-  public native GraphParms Get() throws MPIException ;
+  public GraphParms Get() throws MPIException {
+    return MPI.device.graphGet(this) ;
+  }
+
+  native GraphParms GetNative() throws MPIException ;
 
   /**
    * Provides adjacency information for general graph topology.
@@ -58,7 +69,11 @@ public class Graphcomm extends Intracomm {
    * The number of neighbours can be extracted from the size of the result.
    */
 
-  public native int [] Neighbours(int rank) throws MPIException ;
+  public int [] Neighbours(int rank) throws MPIException {
+    return MPI.device.neighbours(this, rank) ;
+  }
+
+  native int [] NeighboursNative(int rank) throws MPIException ;
 
   /**
    * Compute an optimal placement.
@@ -75,7 +90,15 @@ public class Graphcomm extends Intracomm {
    * The number of nodes is taken to be size of the <tt>index</tt> argument.
    */
 
-  public native int Map(int [] index, int [] edges) throws MPIException ;
+  public int Map(int [] index, int [] edges) throws MPIException {
+    return MPI.device.graphMap(this, index, edges) ;
+  }
+
+  native int MapNative(int [] index, int [] edges) throws MPIException ;
+
+  // The graph, under the engine.
 
+  int [] index ;
+  int [] edges ;
 }
 
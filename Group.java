@@ -18,9 +18,15 @@ public class Group extends Freeable {
   protected long handle;
 
   //public Group() {}
-  protected Group(int Type) { GetGroup(Type); }
+  protected Group(int Type) { GetGroupDispatch(Type); }
   protected Group(long _handle) { handle = _handle;}
-  private native void GetGroup(int Type);
+  Group(int [] members) { this.members = members ; }
+
+  private void GetGroupDispatch(int Type) {
+    MPI.device.newGroup(this, Type) ;
+  }
+
+  native void GetGroup(int Type);
 
   /**
    * Size of group.
@@ -33,7 +39,11 @@ public class Group extends Freeable {
    * Java binding of the MPI operation <tt>MPI_GROUP_SIZE</tt>.
    */
 
-  public native int Size() throws MPIException ;
+  public int Size() throws MPIException {
+    return MPI.device.groupSize(this) ;
+  }
+
+  native int SizeNative() throws MPIException ;
 
   /**
    * Rank of this process in group.
@@ -49,7 +59,11 @@ public class Group extends Freeable {
    * a member of the group.
    */
 
-  public native int Rank() throws MPIException ;
+  public int Rank() throws MPIException {
+    return MPI.device.groupRank(this) ;
+  }
+
+  native int RankNative() throws MPIException ;
 
   /**
    * Destructor.
@@ -58,6 +72,8 @@ public class Group extends Freeable {
    */
 
   public void finalize() throws MPIException {
+      if(!MPI.device.nativeHandles())
+        return ;
       synchronized(MPI.class) {
           MPI.freeList.addFirst(this) ;
       }
@@ -83,9 +99,16 @@ public class Group extends Freeable {
    * exists.
    */
 
-  public static native int [] Translate_ranks(Group group1,int [] ranks1,
-	                                      Group group2)
-                                                     throws MPIException ;
+  public static int [] Translate_ranks(Group group1,int [] ranks1,
+                                       Group group2)
+                                                     throws MPIException {
+    return MPI.device.translateRanks(group1, ranks1, group2) ;
+  }
+
+  static native int [] Translate_ranksNative(Group group1,
+                                             int [] ranks1,
+                                             Group group2)
+                                             throws MPIException ;
 
   /**
    * Compare two groups.
@@ -104,8 +127,13 @@ public class Group extends Freeable {
    * <tt>MPI.UNEQUAL</tt> results otherwise.
    */
 
-  public static native int Compare(Group group1, Group group2)
-                                                     throws MPIException ;
+  public static int Compare(Group group1, Group group2)
+                                                     throws MPIException {
+    return MPI.device.groupCompare(group1, group2) ;
+  }
+
+  static native int CompareNative(Group group1, Group group2)
+                                             throws MPIException ;
  
   /**
    * Set union of two groups.
@@ -120,10 +148,10 @@ public class Group extends Freeable {
    */
 
   public static Group Union(Group group1, Group group2) throws MPIException {
-    return new Group(union(group1, group2)) ;
+    return MPI.device.union(group1, group2) ;
   }
 
-  private static native long union(Group group1, Group group2);
+  static native long union(Group group1, Group group2);
 
   /**
    * Set intersection of two groups.
@@ -139,10 +167,10 @@ public class Group extends Freeable {
 
   public static Group Intersection(Group group1,Group group2)
                                                         throws MPIException {
-    return new Group(intersection(group1, group2)) ;
+    return MPI.device.intersection(group1, group2) ;
   }
 
-  private static native long intersection(Group group1, Group group2);
+  static native long intersection(Group group1, Group group2);
 
   /**
    * Result contains all elements of the first group that are not in the
@@ -159,10 +187,10 @@ public class Group extends Freeable {
 
   public static Group Difference(Group group1, Group group2)
                                                         throws MPIException {
-    return new Group(difference(group1, group2)) ;
+    return MPI.device.difference(group1, group2) ;
   }
 
-  private static native long difference(Group group1, Group group2) ;
+  static native long difference(Group group1, Group group2) ;
 
   /**
    * Create a subset group including specified processes.
@@ -177,10 +205,10 @@ public class Group extends Freeable {
    */
 
   public Group Incl(int [] ranks) throws MPIException {
-    return new Group(incl(ranks)) ;
+    return MPI.device.incl(this, ranks) ;
   }
 
-  private native long incl(int [] ranks);
+  native long incl(int [] ranks);
 
   /**
    * Create a subset group excluding specified processes.
@@ -195,10 +223,10 @@ public class Group extends Freeable {
    */
 
   public Group Excl(int [] ranks) throws MPIException {
-    return new Group(excl(ranks)) ;
+    return MPI.device.excl(this, ranks) ;
   }
 
-  private native long excl(int [] ranks) ;
+  native long excl(int [] ranks) ;
 
   /**
    * Create a subset group including processes specified
@@ -218,10 +246,10 @@ public class Group extends Freeable {
    */
 
   public Group Range_incl(int [][] ranges) throws MPIException {
-    return new Group(range_incl(ranges)) ;
+    return MPI.device.rangeIncl(this, ranges) ;
   }
 
-  private native long range_incl(int [][] ranges) ;
+  native long range_incl(int [][] ranges) ;
 
   /**
    * Create a subset group excluding processes specified
@@ -239,13 +267,18 @@ public class Group extends Freeable {
    */
 
   public Group Range_excl(int [][] ranges) throws MPIException {
-    return new Group(range_excl(ranges)) ;
+    return MPI.device.rangeExcl(this, ranges) ;
   }
 
-  private native long range_excl(int [][] ranges) ;
+  native long range_excl(int [][] ranges) ;
+
+  // World ranks of the members, under the engine.
+
+  int [] members ;
 
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }          
 
 }
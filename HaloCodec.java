@@ -0,0 +1,255 @@
+/*
+    HaloCodec
+    Compact encoding of the ghost columns sent to one neighbor, so a halo
+    message moves fewer bytes than halo * size doubles
+
+    Every value is first turned into a symbol:
+        FLOAT   the bits of the value as a float, written as 4 bytes
+        FIXED   the value rounded to a multiple of 2 * error, written as
+                the difference from the previous one in as few bytes as
+                it needs, so smooth columns take one or two bytes a value
+    Symbols then go out in runs, each starting with a count. An odd count
+    is count / 2 copies of the one symbol that follows, which is how
+    stretches of zeros or of one value are sent, an even count is
+    count / 2 symbols that follow one by one
+*/
+public class HaloCodec
+{
+    final static int FLOAT = 1;
+    final static int FIXED = 2;
+
+    final static int MIN_RUN = 3;   // shortest stretch sent as a run
+
+    private int mode;
+    private double step;            // FIXED values are multiples of step
+    private long[] symbols;         // reused for every message
+
+    byte[] sent;                    // encoded columns going out
+    byte[] received;                // encoded columns coming in
+    private int position;           // next byte to read or write
+
+
+
+
+    /*
+        HaloCodec
+        Makes a codec for messages of up to values values. error is how far
+        a FIXED value may be from the one that was sent
+    */
+    public HaloCodec(int mode, double error, int values)
+    {
+        this.mode = mode;
+        this.step = 2 * error;
+
+        //a varint takes at most 10 bytes, and there can be no more counts
+        //than symbols
+        symbols = new long[values];
+        sent = new byte[values * 15 + 10];
+        received = new byte[sent.length];
+    }
+
+
+
+
+    /*
+        encode
+        Encodes columns first to first + columns - 1 of field into sent and
+        returns the number of bytes to send
+    */
+    public int encode(final double[][] field, int first, int columns,
+            int size)
+    {
+        int values = columns * size;
+        long previous = 0;
+        for(int c = 0; c < columns; c++)
+        {
+            double[] column = field[first + c];
+            for(int y = 0; y < size; y++)
+            {
+                if(mode == FLOAT)
+                {
+                    symbols[c * size + y] =
+                            Float.floatToIntBits((float) column[y]);
+                }
+                else
+                {
+                    long q = Math.round(column[y] / step);
+                    symbols[c * size + y] = q - previous;
+                    previous = q;
+                }
+            }
+        }
+
+        position = 0;
+        int i = 0;
+        while(i < values)
+        {
+            int run = runLength(i, values);
+            if(run >= MIN_RUN)
+            {
+                writeVarint(2L * run + 1);
+                writeSymbol(symbols[i]);
+                i += run;
+                continue;
+            }
+
+            //symbols up to the next stretch worth a run
+            int end = i + run;
+            while(end < values && runLength(end, values) < MIN_RUN)
+            {
+                end += runLength(end, values);
+            }
+            writeVarint(2L * (end - i));
+            for(; i < end; i++)
+            {
+                writeSymbol(symbols[i]);
+            }
+        }
+        return position;
+    }
+
+
+
+
+    /*
+        decode
+        Decodes bytes bytes of received straight into columns first to
+        first + columns - 1 of field
+    */
+    public void decode(int bytes, double[][] field, int first, int columns,
+            int size)
+    {
+        position = 0;
+        long previous = 0;
+        int i = 0;
+        while(position < bytes)
+        {
+            long count = readVarint();
+            boolean repeated = (count & 1) == 1;
+            int n = (int) (count / 2);
+
+            long symbol = repeated ? readSymbol() : 0;
+            for(int k = 0; k < n; k++, i++)
+            {
+                if(!repeated)
+                {
+                    symbol = readSymbol();
+                }
+
+                double value;
+                if(mode == FLOAT)
+                {
+                    value = Float.intBitsToFloat((int) symbol);
+                }
+                else
+                {
+                    previous += symbol;
+                    value = previous * step;
+                }
+                field[first + i / size][i % size] = value;
+            }
+        }
+    }
+
+
+
+
+    /*
+        runLength
+        Number of symbols from i on that are the same as symbols[i]
+    */
+    private int runLength(int i, int values)
+    {
+        int j = i + 1;
+        while(j < values && symbols[j] == symbols[i])
+        {
+            j++;
+        }
+        return j - i;
+    }
+
+
+
+
+    /*
+        writeSymbol
+        Writes one symbol in the form used by the mode
+    */
+    private void writeSymbol(long symbol)
+    {
+        if(mode == FLOAT)
+        {
+            for(int shift = 24; shift >= 0; shift -= 8)
+            {
+                sent[position++] = (byte) (symbol >>> shift);
+            }
+        }
+        else
+        {
+            //zigzag, so small negative differences stay small
+            writeVarint((symbol << 1) ^ (symbol >> 63));
+        }
+    }
+
+
+
+
+    /*
+        readSymbol
+        Reads one symbol written by writeSymbol
+    */
+    private long readSymbol()
+    {
+        if(mode == FLOAT)
+        {
+            int bits = 0;
+            for(int b = 0; b < 4; b++)
+            {
+                bits = (bits << 8) | (received[position++] & 0xff);
+            }
+            return bits;
+        }
+
+        long zigzag = readVarint();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+
+
+
+    /*
+        writeVarint
+        Writes value seven bits at a time, lowest first, the top bit of
+        each byte set when more follow
+    */
+    private void writeVarint(long value)
+    {
+        while((value & ~0x7fL) != 0)
+        {
+            sent[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        sent[position++] = (byte) value;
+    }
+
+
+
+
+    /*
+        readVarint
+        Reads a value written by writeVarint
+    */
+    private long readVarint()
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = received[position++];
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+}
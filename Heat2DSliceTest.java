@@ -0,0 +1,69 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/*
+    Heat2DSliceTest
+    Runs Heat2D_mpi on four ranks run as threads and Heat2D on the same
+    arguments, as in
+        java Heat2DSliceTest
+    and compares every printed step. The field is cut at 0,4,5,6,10, so
+    two machines hold a single column each, which needs the ghost columns
+    of both sides before it can be computed. Prints "passed", or the first
+    line that differs and exits with status 1
+*/
+public class Heat2DSliceTest
+{
+    final static String[] ARGS = { "10", "30", "10", "1" };
+    final static String BOUNDS = "0,4,5,6,10";
+    final static int MACHINES = 4;
+
+
+
+
+    public static void main(String[] args) throws Exception
+    {
+        PrintStream console = System.out;
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(sequential, true));
+        Heat2D.main(ARGS.clone());
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(parallel, true));
+        System.setProperty("heat2d.bounds", BOUNDS);
+        String[] run = new String[ARGS.length + 3];
+        run[0] = "-np";
+        run[1] = String.valueOf(MACHINES);
+        run[2] = "Heat2D_mpi";
+        System.arraycopy(ARGS, 0, run, 3, ARGS.length);
+        mpi.Mpirun.main(run);
+        System.setOut(console);
+
+        String[] expected = steps(sequential.toString());
+        String[] actual = steps(parallel.toString());
+        for(int i = 0; i < Math.max(expected.length, actual.length); i++)
+        {
+            String e = (i < expected.length) ? expected[i] : "nothing";
+            String a = (i < actual.length) ? actual[i] : "nothing";
+            if(!e.equals(a))
+            {
+                System.out.println("line " + (i + 1) + ": expected " + e
+                        + ", got " + a);
+                System.exit(1);
+            }
+        }
+        System.out.println("passed");
+    }
+
+
+
+
+    /*
+        steps
+        The lines printed, without the elapsed time which differs
+    */
+    private static String[] steps(String printed)
+    {
+        return printed.replaceAll("(?m)^Elapsed.*\\R", "").split("\\R");
+    }
+}
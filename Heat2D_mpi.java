@@ -1,4 +1,16 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import mpi.*;
 
 public class Heat2D_mpi
@@ -6,12 +18,81 @@ public class Heat2D_mpi
     private static double a = 1.0;  // heat speed
     private static double dt = 1.0; // time quantum
     private static double dd = 2.0; // change in system
-    private static int rank;        // rank of this machine
-    private static int startPos;    // starting position of square for machine
-    private static int endPos;      // ending position of square for machine
+    private static int rank;        // rank of this machine in comm
+    
+    //the machines in a line across the field, neighbors in it share 
+    //boundaries. Used for all message passing instead of COMM_WORLD
+    private static Cartcomm comm;
+    
+    //which columns each machine has, replaced when the partition changes
+    private static Decomposition decomp;
+    
+    //load balancing, the partition is adjusted every window steps from the
+    //time each machine spent computing since the last adjustment
+    private static int window;
+    private static AtomicLong busyTime = new AtomicLong(); // nanoseconds 
+                                                           // spent computing
+    
+    //threads computing this machine's columns, only the main thread makes
+    //MPI calls. There is no pool when there is only one thread
+    private static int threads;
+    private static ExecutorService workers;
+    
+    //a machine is quiet while every column it holds is still zero, it then
+    //skips it's columns and tells it's neighbors instead of sending zeros
+    private static boolean quiet = true;
+    
+    //boundary exchange, one buffer and one request for each direction. 
+    //LEFT and RIGHT are the sides of this machine's columns
+    final static int LEFT = 0;
+    final static int RIGHT = 1;
+    private static double[][] sendBuffers = new double[2][];
+    private static double[][] recvBuffers = new double[2][];
+    private static HaloCodec[] codecs;      // set when halos are encoded
+    private static Request[] sends = new Request[2];
+    private static Request[] receives;      // receives not yet arrived
+    private static int[] receiveSides;      // which side each one is from
+    private static int arrived;             // entries of receives handled
+    
+    //printed steps are collected into these two frames in turn, so one can
+    //be printed while the next is still arriving
+    private static Frame[] frames = new Frame[2];
+    private static int framesCollected = 0;  // frames started so far
+    private static int framesPrinted = 0;    // frames handed to the printer
+    private static ExecutorService printer;  // master's printing thread
+    
+    //printed steps go straight to this file instead when it is set
+    private static SnapshotFile snapshot;
+    private static int framesWritten = 0;    // frames in the snapshot file
+    
+    //the field is saved to this file every checkpointEvery steps when set
+    private static String checkpointPath;
+    private static int checkpointEvery;
+    
+    //service machines, split off from the rest to do all of the output.
+    //Printed steps are streamed to them through service when it is set
+    private static Intercomm service;
+    
+    //time the main thread spends on each part of a step, in nanoseconds. 
+    //Every part is timed as a lap since the end of the one before it
+    final static int STENCIL = 0;      // boundary rules and Euler sweeps
+    final static int WAITING = 1;      // blocked on boundaries or balancing
+    final static int COLLECTING = 2;   // handing the field over for output
+    final static int PRINTING = 3;     // handing frames to the printer
+    final static int OTHER = 4;        // checkpoints
+    final static String[] PARTS = new String[] { "stencil", "waiting", 
+        "collecting", "printing", "other" };
+    private static long[] stepTime = new long[PARTS.length];  // this step
+    private static long[] totalTime = new long[PARTS.length];
+    private static long[] worstTime = new long[PARTS.length]; // any step
+    private static long lapStart;
     
     //used for message passing
     final static int id = 1;
+    final static int frameId = 2;   // frames, kept apart from boundaries
+    final static int balanceId = 3; // columns moved between machines
+    final static int serviceId = 4; // frames sent to service machines
+    final static int turnId = 5;    // service machines' turns to print
     
 
 
@@ -43,66 +124,309 @@ public class Heat2D_mpi
 	double r = a * dt / ( dd * dd );
         
         
-        //determine rank
-        rank = MPI.COMM_WORLD.Rank();
+        //machines set aside for output, set with -Dheat2d.service=n. They
+        //are the last n and never compute, so there is always one that does
+        int worldSize = MPI.COMM_WORLD.Size();
+        int worldRank = MPI.COMM_WORLD.Rank();
+        int services = Math.max(0, Math.min(worldSize - 1, 
+                Integer.getInteger("heat2d.service", 0)));
+        boolean serving = worldRank >= worldSize - services;
+        Intracomm group = MPI.COMM_WORLD;
+        if(services > 0)
+        {
+            group = MPI.COMM_WORLD.Split(serving ? 1 : 0, worldRank);
+            service = MPI.COMM_WORLD.Create_intercomm(group, 0, 
+                    serving ? 0 : worldSize - services, serviceId);
+        }
+        if(serving)
+        {
+            serve(group, size);
+            MPI.Finalize( );
+            return;
+        }
+        
+        //determine rank, and who this machine's neighbors are
+        comm = createTopology(group);
+        rank = comm.Rank();
+        ShiftParms shift = comm.Shift(0, 1);
+        int left = (shift.rank_source == MPI.PROC_NULL) ? Decomposition.NONE
+                : shift.rank_source;
+        int right = (shift.rank_dest == MPI.PROC_NULL) ? Decomposition.NONE
+                : shift.rank_dest;
+        
+        //threads per machine, set with -Dheat2d.threads=n
+        threads = Math.max(1, Integer.getInteger("heat2d.threads", 1));
+        if(threads > 1)
+        {
+            workers = Executors.newFixedThreadPool(threads);
+        }
+        
+        //steps between load balancing, set with -Dheat2d.balance=steps
+        window = Integer.getInteger("heat2d.balance", 0);
+        
+        //every machine starts with the same number of blocks of columns, 
+        //set with -Dheat2d.blocks=n. Load is balanced by moving whole
+        //blocks, so balancing wants several. -Dheat2d.bounds=0,b1,...,size
+        //gives the first column of every machine instead, one block each
+        String given = System.getProperty("heat2d.bounds");
+        if(given == null)
+        {
+            decomp = Decomposition.even(rank, comm.Size(), size,
+                    chooseHalo(size),
+                    Integer.getInteger("heat2d.blocks", window > 0 ? 8 : 1),
+                    left, right);
+        }
+        else
+        {
+            decomp = Decomposition.given(rank, comm.Size(), size,
+                    chooseHalo(size), parseBounds(given, comm.Size(), size),
+                    left, right);
+        }
+        int halo = decomp.halo;
+        
+	// create a space, only the columns this machine holds are allocated
+	double[][][] z = new double[2][size][];
+        allocateColumns(z, size, true);
+        
+        for(int side = LEFT; side <= RIGHT; side++)
+        {
+            sendBuffers[side] = new double[halo * size];
+            recvBuffers[side] = new double[halo * size];
+        }
         
-	// create a space
-	double[][][] z = new double[2][size][size];
-	for ( int p = 0; p < 2; p++ )
+        //compact halo messages, set with -Dheat2d.encoding=float or 
+        //-Dheat2d.encoding=fixed. Fixed values are within -Dheat2d.error
+        //of the ones sent
+        String encoding = System.getProperty("heat2d.encoding", "double");
+        if(!encoding.equals("double"))
         {
-            for ( int x = 0; x < size; x++ )
+            int mode = encoding.equals("fixed") ? HaloCodec.FIXED 
+                    : HaloCodec.FLOAT;
+            double error = Double.parseDouble(
+                    System.getProperty("heat2d.error", "1e-6"));
+            codecs = new HaloCodec[2];
+            for(int side = LEFT; side <= RIGHT; side++)
             {
-        	for ( int y = 0; y < size; y++ )
-                {
-                    z[p][x][y] = 0.0; // no heat or cold
-                }    
+                codecs[side] = new HaloCodec(mode, error, halo * size);
             }
         }
-
-	
-        int slice = size / MPI.COMM_WORLD.Size();
-        int remainder = size % MPI.COMM_WORLD.Size();
         
-        startPos = slice * rank;
-        endPos = startPos + slice - 1;
+        //the partition can only change when boundaries are shared, so the
+        //balancing window is rounded up to a multiple of the ghost width
+        window = (window + halo - 1) / halo * halo;
         
-        if(rank == MPI.COMM_WORLD.Size() - 1 && remainder != 0)
+        //binary snapshot file, set with -Dheat2d.snapshot=path. Every 
+        //machine writes it's own columns so nothing is collected
+        String snapshotPath = System.getProperty("heat2d.snapshot");
+        if(snapshotPath != null && service == null)
         {
-            endPos = size - 1;
+            openSnapshot(snapshotPath, size);
+        }
+        else
+        {
+            for(int f = 0; f < frames.length; f++)
+            {
+                frames[f] = new Frame(size);
+            }
+            if(rank == 0 && service == null)
+            {
+                printer = Executors.newSingleThreadExecutor();
+            }
+        }
+        
+        //checkpoints, set with -Dheat2d.checkpoint=path and 
+        //-Dheat2d.checkpoint.every=steps. A run carries on from one with 
+        //-Dheat2d.restart=path, on any number of machines
+        checkpointPath = System.getProperty("heat2d.checkpoint");
+        checkpointEvery = Integer.getInteger("heat2d.checkpoint.every", 0);
+        int start = 0;
+        String restartPath = System.getProperty("heat2d.restart");
+        if(restartPath != null)
+        {
+            start = readCheckpoint(restartPath, z, size);
         }
         
 	// start a timer
 	Date startTime = new Date( );
+        lapStart = System.nanoTime();
 	
 	// simulate heat diffusion
-	for ( int t = 0; t < max_time; t++ )
+	for ( int t = start; t < max_time; t++ )
         {
 	    int p = t % 2; // p = 0 or 1: indicates the phase
 	    
+            //number of steps taken since the last boundary exchange
+            int step = t % halo;
             
-            //the first three loops to be done on all machines
-	    universalLoops(z, p, size, t, heat_time);
+            //the field as it is at the start of this step
+            if(checkpointPath != null && checkpointEvery > 0 && 
+                    t > start && t % checkpointEvery == 0)
+            {
+                writeCheckpoint(z, p, t, size);
+            }
+            lap(OTHER);
             
-
-            //share boundary information between machines
-            shareBoundaryData(size, z, p);
+            //moves columns from slower machines to faster ones
+            if(window > 0 && t > start && t % window == 0)
+            {
+                balanceLoad(size, z, p);
+            }
+            lap(WAITING);
+            
+            boolean heating = t < heat_time && decomp.heater;
+            if(heating)
+            {
+                quiet = false;
+            }
+            
+            ColumnWork rules = universalLoops(z, p, size, heating);
+            ColumnWork euler = forwardEulerMethod(p, size, z, r);
+            
+	    // perform forward Euler method on first to last, keeping enough
+            // ghost columns up to date for the steps left before the next 
+            // exchange
+            int ahead = halo - 1 - step;
+            int startPos = decomp.startPos;
+            int endPos = decomp.endPos;
+            int first = Math.max(1, startPos - ahead);
+            int last = Math.min(size - 2, endPos + ahead);
+            
+            //the columns next to the ghost columns on each side, which 
+            //wait for the ghost columns to arrive on exchange steps. A 
+            //machine with a single column needs both sides for it, so it
+            //is left out of both and waits for the ghost columns of both
+            boolean single = startPos == endPos;
+            int[] edgeFirst = new int[] { first, 
+                    Math.max(first, Math.max(startPos + 1, endPos)) };
+            int[] edgeLast = new int[] { 
+                    Math.min(last, single ? startPos - 1 : startPos), last };
+            
+            List<Future<?>> work = new ArrayList<Future<?>>();
+            if(step == 0)
+            {
+                if(!quiet)
+                {
+                    //the first three loops to be done on all machines
+                    finishColumns(startColumns(rules, startPos, endPos));
+                    
+                    //blocks that need none of the ghost columns are 
+                    //computed while boundary information is shared
+                    work = startColumns(euler, startPos + 1, endPos - 1);
+                }
+                lap(STENCIL);
+                
+                //share boundary information between machines. A quiet 
+                //machine's columns all stay zero, only the neighbors' 
+                //boundaries can bring heat
+                shareBoundaryData(size, z, p);
+                lap(WAITING);
+            }
+            else if(!quiet)
+            {
+                //ghost columns still valid after the last exchange are 
+                //advanced redundantly, so apply the same three loops to them
+                int depth = halo - step;
+                finishColumns(startColumns(rules, 
+                        Math.max(0, startPos - depth), 
+                        Math.min(size - 1, endPos + depth)));
+                work = startColumns(euler, first, last);
+                lap(STENCIL);
+            }
             
 
-	    // updates the Master z[][][] with all other's
-            //machine's slices
-            updateMaster(size, z, p);
-
-
-	    // display intermediate results
-            if(rank == 0)
+	    // display intermediate results, the field is only collected
+            // on the master when it is going to be printed
+	    if ( interval != 0 && 
+		 ( t % interval == 0 || t == max_time - 1 ) )
+            {
+                if(service != null)
+                {
+                    streamFrame(size, z, p, t);
+                }
+                else if(snapshot != null)
+                {
+                    writeSnapshot(z, p, t);
+                }
+                else
+                {
+                    updateMaster(size, z, p, t);
+                }
+            }
+            lap(COLLECTING);
+            
+            //hands frames that have fully arrived to the printer
+            if(printer != null)
             {
-                printMaster(interval, t, max_time, size, z, p);
+                printFrames(false);
             }
+            lap(PRINTING);
             
+            //each edge block is started as soon as it's ghost columns 
+            //arrive. If heat only just arrived, the edge that had already
+            //arrived is started then and the other blocks are still zero
+            if(step == 0)
+            {
+                boolean[] ready = new boolean[2];
+                boolean[] started = new boolean[2];
+                boolean singleStarted = false;
+                int side;
+                while((side = receiveBoundaryData(size, z, p)) != -1)
+                {
+                    lap(WAITING);
+                    ready[side] = true;
+                    for(int s = LEFT; s <= RIGHT && !quiet; s++)
+                    {
+                        if(ready[s] && !started[s])
+                        {
+                            work.addAll(startColumns(euler, edgeFirst[s], 
+                                    edgeLast[s]));
+                            started[s] = true;
+                        }
+                    }
+                    if(single && !quiet && !singleStarted 
+                            && ready[LEFT] && ready[RIGHT])
+                    {
+                        work.addAll(startColumns(euler, 
+                                Math.max(first, startPos), 
+                                Math.min(last, endPos)));
+                        singleStarted = true;
+                    }
+                    lap(STENCIL);
+                }
+                finishBoundaryData();
+                lap(WAITING);
+            }
             
-	    // perform forward Euler method
-	    forwardEulerMethod(p, size, z, r);
+            finishColumns(work);
+            lap(STENCIL);
+            endStep();
 	} // end of simulation
+        
+        if(workers != null)
+        {
+            workers.shutdown();
+        }
+        
+        //waits for the last frames to be collected and printed
+        if(service != null)
+        {
+            finishStream();
+        }
+        else if(snapshot != null)
+        {
+            closeSnapshot();
+        }
+        else
+        {
+            finishFrames();
+        }
+        lap(PRINTING);
+        
+        //where the time went on every machine, set with -Dheat2d.timing
+        if(Boolean.getBoolean("heat2d.timing"))
+        {
+            reportTiming();
+        }
 	
 	// finish the timer
             if(rank == 0)
@@ -111,210 +435,1268 @@ public class Heat2D_mpi
                 System.out.println( "Elapsed time = " + 
 		( endTime.getTime( ) - startTime.getTime( ) ) );
             }
-        
-	// Terminate the MPI library.
-        MPI.Finalize( );
+        
+	// Terminate the MPI library.
+        MPI.Finalize( );
+    }
+    
+
+
+
+    /*
+        ColumnWork
+        Work done on a range of columns, so it can be split between threads
+    */
+    private static abstract class ColumnWork
+    {
+        abstract void run(int first, int last);
+    }
+    
+
+
+
+    /*
+        startColumns
+        Starts work on columns first to last. With more than one thread 
+        every block in the range is started on it's own, ghost columns 
+        going with the blocks at either end, and the futures are returned.
+        A machine with fewer blocks than threads splits them further. 
+        Otherwise the work is done before returning
+        The time spent on it counts towards this machine's busy time
+    */
+    public static List<Future<?>> startColumns(final ColumnWork work, 
+            int first, int last)
+    {
+        List<Future<?>> started = new ArrayList<Future<?>>();
+        if(last < first)
+        {
+            return started;
+        }
+        if(workers == null)
+        {
+            timeColumns(work, first, last);
+            return started;
+        }
+        
+        int[] edges = decomp.edges;
+        int blocks = 1;
+        for(int i = 0; i < edges.length; i++)
+        {
+            if(edges[i] > first && edges[i] <= last)
+            {
+                blocks++;
+            }
+        }
+        int chunks = (threads + blocks - 1) / blocks;
+        
+        int from = first;
+        for(int i = 0; i < edges.length; i++)
+        {
+            if(edges[i] > from && edges[i] <= last)
+            {
+                startChunks(started, work, from, edges[i] - 1, chunks);
+                from = edges[i];
+            }
+        }
+        startChunks(started, work, from, last, chunks);
+        return started;
+    }
+    
+
+
+
+    /*
+        startChunks
+        Splits columns first to last into the given number of chunks and 
+        hands each of them to the workers, adding their futures to started
+    */
+    public static void startChunks(List<Future<?>> started, 
+            final ColumnWork work, int first, int last, int chunks)
+    {
+        int chunk = (last - first + chunks) / chunks;
+        for(int f = first; f <= last; f += chunk)
+        {
+            final int from = f;
+            final int to = Math.min(last, f + chunk - 1);
+            started.add(workers.submit(new Runnable()
+            {
+                public void run()
+                {
+                    timeColumns(work, from, to);
+                }
+            }));
+        }
+    }
+    
+
+
+
+    /*
+        timeColumns
+        Does work on columns first to last and adds how long it took to 
+        this machine's busy time
+    */
+    public static void timeColumns(ColumnWork work, int first, int last)
+    {
+        long start = System.nanoTime();
+        work.run(first, last);
+        busyTime.addAndGet(System.nanoTime() - start);
+    }
+    
+
+
+
+    /*
+        finishColumns
+        Waits for started chunks of work to be done
+    */
+    public static void finishColumns(List<Future<?>> started)
+    {
+        try
+        {
+            for(int i = 0; i < started.size(); i++)
+            {
+                started.get(i).get();
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in finishColumns");
+        }
+    }
+    
+
+
+
+    /*
+        forwardEulerMethod
+        Gives the work of computing the next state of z[][][] for phase p, 
+        so it can be run on ranges of columns
+    */
+    public static ColumnWork forwardEulerMethod(final int p, final int size,
+            final double[][][] z, final double r)
+    {
+        return new ColumnWork()
+        {
+            void run(int first, int last)
+            {
+                forwardEulerMethod(p, size, z, r, first, last);
+            }
+        };
+    }
+    
+
+
+
+    /*
+        forwardEulerMethod
+        Computes the next state of z[][][] by using the neighboring elements
+        to each element and saves them on the non-active dimension 
+        (if p=1, p2 = 0, and vice-versa)
+        Only columns from first to last are computed. The caller keeps them
+        within 1 and size - 2 so the outermost columns are never computed
+    */
+    public static void forwardEulerMethod(int p, int size, double[][][] z,
+            double r, int first, int last)
+    {
+        int p2 = (p + 1) % 2;
+        
+        for ( int h = first; h <= last; h++ )
+        {
+            for ( int v = 1; v < size - 1; v++ )
+            {
+                z[p2][h][v] = z[p][h][v] + 
+                r * ( z[p][h+1][v] - 2 * z[p][h][v] + z[p][h-1][v] ) +
+                r * ( z[p][h][v+1] - 2 * z[p][h][v] + z[p][h][v-1] );
+            }  
+        }
+    }
+    
+
+
+
+    /*
+        Frame
+        Holds one printed step while it is collected and printed. Every 
+        machine snapshots it's columns into slab. The master receives each 
+        other machine's columns into their own array in parts, since 
+        outstanding receives should not share one array
+    */
+    private static class Frame
+    {
+        int size;              // length of each column
+        int t;                 // step held by this frame
+        int[] lengths;         // doubles from each machine for this step
+        double[] slab;         // this machine's columns, top-down
+        double[][] parts;      // every machine's columns, only on the master
+        Request[] requests;    // outstanding sends or receives
+        Future<?> printed;     // printing of this frame on the master
+        int[] header;          // step and columns, sent to service machines
+        
+        //a frame filled in by hand, on a service machine
+        Frame()
+        {
+        }
+        
+        Frame(int size)
+        {
+            this.size = size;
+            lengths = new int[decomp.machines];
+            slab = new double[decomp.counts[rank]];
+            
+            if(service != null)
+            {
+                header = new int[3];
+                requests = new Request[2];
+            }
+            else if(rank == 0)
+            {
+                parts = new double[decomp.machines][];
+                parts[0] = slab;
+                for(int i = 1; i < parts.length; i++)
+                {
+                    parts[i] = new double[decomp.counts[i]];
+                }
+                requests = new Request[parts.length - 1];
+            }
+            else
+            {
+                requests = new Request[1];
+            }
+        }
+    }
+    
+
+
+
+    /*
+        printMaster
+        Prints out a collected frame after every interval or right before 
+        max_time is reached. Runs a small math function to divide every 
+        number by 2 and floor them as ints
+        Each machine's columns are one after the other, each top-down. The
+        frame is printed in one go so the printer thread writes it quickly
+    */
+    public static void printMaster(final Frame frame)
+    {
+        System.out.print( formatFrame(frame) );
+    }
+    
+
+
+
+    /*
+        formatFrame
+        The text printMaster prints for a collected frame
+    */
+    public static StringBuilder formatFrame(final Frame frame)
+    {
+        int size = frame.size;
+        StringBuilder out = new StringBuilder();
+        out.append( "time = " ).append( frame.t ).append( '\n' );
+        for ( int y = 0; y < size; y++ )
+        {
+            for ( int i = 0; i < frame.parts.length; i++ )
+            {
+                double[] part = frame.parts[i];
+                for ( int c = y; c < frame.lengths[i]; c += size )
+                {
+                    out.append( (int)( Math.floor(part[c] / 2) ) )
+                       .append( ' ' );
+                }
+            }
+            out.append( '\n' );
+        }
+        out.append( '\n' );
+        return out;
+    }
+    
+
+
+
+    /*
+        updateMaster
+        Starts collecting this machine's slice on the master for step t
+        Every machine copies it's columns into the next free frame and sends
+        it without waiting. The master posts a receive for every other 
+        machine and returns, the frame is printed once it has arrived
+    */
+    public static void updateMaster(int size, double[][][] z, int p, int t)
+    {
+        try
+        {
+            Frame frame = frames[framesCollected % frames.length];
+            
+            //the frame is still in use by the step collected two prints ago
+            if(rank == 0)
+            {
+                while(framesPrinted < framesCollected - 1)
+                {
+                    printFrames(true);
+                }
+                if(frame.printed != null)
+                {
+                    frame.printed.get();
+                }
+            }
+            else if(frame.requests[0] != null)
+            {
+                frame.requests[0].Wait();
+            }
+            
+            //slices may have grown since the frame was last used
+            int[] counts = decomp.counts;
+            System.arraycopy(counts, 0, frame.lengths, 0, counts.length);
+            if(frame.slab.length < counts[rank])
+            {
+                frame.slab = new double[counts[rank]];
+            }
+            
+            //packs this machine's columns one after the other
+            int count = 0;
+            for(int h = decomp.startPos; h <= decomp.endPos; h++)
+            {
+                System.arraycopy(z[p][h], 0, frame.slab, count, size);
+                count += size;
+            }
+            frame.t = t;
+            
+            if(rank == 0)
+            {
+                frame.parts[0] = frame.slab;
+                for(int i = 1; i < frame.parts.length; i++)
+                {
+                    if(frame.parts[i].length < counts[i])
+                    {
+                        frame.parts[i] = new double[counts[i]];
+                    }
+                    
+
+                    frame.requests[i - 1] = comm.Irecv(
+                            frame.parts[i], 0, counts[i], MPI.DOUBLE, i, 
+                            frameId);
+                }
+            }
+            else
+            {
+                frame.requests[0] = comm.Isend(frame.slab, 0, 
+                        count, MPI.DOUBLE, 0, frameId);
+            }
+            framesCollected++;
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in updateMaster");
+        }    
+    }
+
+
+
+
+    /*
+        printFrames
+        Used by the master to hand the oldest collected frame to the 
+        printer thread once all of it's columns have arrived. Only checks 
+        for them unless wait is set
+    */
+    public static void printFrames(boolean wait) throws MPIException
+    {
+        if(framesPrinted == framesCollected)
+        {
+            return;
+        }
+        
+        final Frame frame = frames[framesPrinted % frames.length];
+        if(frame.requests.length > 0)
+        {
+            if(wait)
+            {
+                Request.Waitall(frame.requests);
+            }
+            else if(Request.Testall(frame.requests) == null)
+            {
+                return;
+            }
+        }
+        
+        frame.printed = printer.submit(new Runnable()
+        {
+            public void run()
+            {
+                printMaster(frame);
+            }
+        });
+        framesPrinted++;
+    }
+
+
+
+
+    /*
+        finishFrames
+        Waits for every outstanding frame to be sent, or on the master to
+        be received and printed
+    */
+    public static void finishFrames()
+    {
+        try
+        {
+            if(rank == 0)
+            {
+                while(framesPrinted < framesCollected)
+                {
+                    printFrames(true);
+                }
+                printer.shutdown();
+                while(!printer.isTerminated())
+                {
+                    printer.awaitTermination(1, TimeUnit.SECONDS);
+                }
+            }
+            else
+            {
+                for(int f = 0; f < frames.length; f++)
+                {
+                    if(frames[f].requests[0] != null)
+                    {
+                        frames[f].requests[0].Wait();
+                    }
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in finishFrames");
+        }
+    }
+
+
+
+
+    /*
+        createTopology
+        Orders the computing machines of group in a line so that 
+        neighbors, who share boundaries every exchange, are on the same host
+        wherever they can be. Every machine shares it's processor name,
+        machines are grouped by host in the order the hosts first appear,
+        and a one-dimensional Cartesian communicator is made over that
+        order. Names are compared whole, so no two hosts are taken for one.
+        reorder lets the MPI library improve on the placement further
+    */
+    public static Cartcomm createTopology(Intracomm group) 
+            throws MPIException
+    {
+        int machines = group.Size();
+        Object[] host = new Object[] { MPI.Get_processor_name() };
+        Object[] hosts = new Object[machines];
+        group.Allgather(host, 0, 1, MPI.OBJECT, hosts, 0, 1, MPI.OBJECT);
+        
+        //number of hosts that appear before this machine's host does
+        int order = 0;
+        for(int i = 0; i < machines && !hosts[i].equals(host[0]); i++)
+        {
+            boolean firstSeen = true;
+            for(int j = 0; j < i; j++)
+            {
+                firstSeen = firstSeen && !hosts[j].equals(hosts[i]);
+            }
+            if(firstSeen)
+            {
+                order++;
+            }
+        }
+        
+        Intracomm grouped = group.Split(0, order * machines + group.Rank());
+        return grouped.Create_cart(new int[] { machines }, 
+                new boolean[] { false }, true);
+    }
+
+
+
+
+    /*
+        lap
+        Adds the time since the last lap to part of this step
+    */
+    public static void lap(int part)
+    {
+        long now = System.nanoTime();
+        stepTime[part] += now - lapStart;
+        lapStart = now;
+    }
+
+
+
+
+    /*
+        endStep
+        Adds this step's times to the totals and remembers the longest 
+        step for each part
+    */
+    public static void endStep()
+    {
+        for(int i = 0; i < PARTS.length; i++)
+        {
+            totalTime[i] += stepTime[i];
+            worstTime[i] = Math.max(worstTime[i], stepTime[i]);
+            stepTime[i] = 0;
+        }
+    }
+
+
+
+
+    /*
+        reportTiming
+        Gathers every machine's times on the master, which prints them on 
+        the error stream. Imbalance is the slowest machine's stencil time 
+        over the mean. The machine on the critical path is the one that 
+        spent the least time waiting, as everyone else was waiting for it
+    */
+    public static void reportTiming()
+    {
+        try
+        {
+            endStep();
+            int parts = PARTS.length;
+            long[] mine = new long[2 * parts];
+            System.arraycopy(totalTime, 0, mine, 0, parts);
+            System.arraycopy(worstTime, 0, mine, parts, parts);
+            long[] all = new long[2 * parts * decomp.machines];
+            comm.Gather(mine, 0, mine.length, MPI.LONG, 
+                    all, 0, mine.length, MPI.LONG, 0);
+            if(rank != 0)
+            {
+                return;
+            }
+            
+            StringBuilder out = new StringBuilder();
+            out.append("Milliseconds per machine, total (longest step)\n");
+            out.append(String.format("%-8s", "machine"));
+            for(int i = 0; i < parts; i++)
+            {
+                out.append(String.format("%20s", PARTS[i]));
+            }
+            out.append('\n');
+            
+            double stencil = 0;
+            int slowest = 0;
+            int critical = 0;
+            for(int m = 0; m < decomp.machines; m++)
+            {
+                int at = m * 2 * parts;
+                out.append(String.format("%-8d", m));
+                for(int i = 0; i < parts; i++)
+                {
+                    out.append(String.format("%11.1f (%6.2f)", 
+                            all[at + i] / 1e6, all[at + parts + i] / 1e6));
+                }
+                out.append('\n');
+                
+                stencil += all[at + STENCIL];
+                if(all[at + STENCIL] > all[slowest * 2 * parts + STENCIL])
+                {
+                    slowest = m;
+                }
+                if(all[at + WAITING] < all[critical * 2 * parts + WAITING])
+                {
+                    critical = m;
+                }
+            }
+            stencil /= decomp.machines;
+            
+            out.append(String.format("Imbalance: machine %d spent %.2f " +
+                    "times the mean stencil time\n", slowest, 
+                    all[slowest * 2 * parts + STENCIL] / 
+                    Math.max(1.0, stencil)));
+            out.append("Critical path: machine " + critical + 
+                    ", which waited least\n");
+            System.err.print(out);
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in reportTiming");
+        }
+    }
+
+
+
+
+    /*
+        parseBounds
+        The first column of every machine followed by size, as given with
+        -Dheat2d.bounds. Every machine needs at least one column, otherwise
+        the program exits
+    */
+    public static int[] parseBounds(String given, int machines, int size)
+    {
+        String[] parts = given.split(",");
+        int[] bounds = new int[machines + 1];
+        boolean valid = parts.length == bounds.length;
+        for(int i = 0; i < bounds.length && valid; i++)
+        {
+            try
+            {
+                bounds[i] = Integer.parseInt(parts[i].trim());
+            }
+            catch(NumberFormatException e)
+            {
+                valid = false;
+            }
+            valid = valid && (i == 0 || bounds[i] > bounds[i - 1]);
+        }
+        
+        if(!valid || bounds[0] != 0 || bounds[machines] != size)
+        {
+            System.out.println("heat2d.bounds needs " + (machines + 1) + 
+                    " increasing columns from 0 to " + size);
+            System.exit(-1);
+        }
+        return bounds;
+    }
+
+
+
+
+    /*
+        chooseHalo
+        The ghost width, set with -Dheat2d.halo=k. With -Dheat2d.halo=auto
+        it is picked from a calibration of the network and the stencil on
+        these machines instead, and the pick is cached for the same 
+        machines and size in -Dheat2d.calibration=path. The master reports
+        the pick on the error stream, which leaves the printed field alone
+    */
+    public static int chooseHalo(int size) throws MPIException
+    {
+        String setting = System.getProperty("heat2d.halo", "1");
+        if(!setting.equals("auto"))
+        {
+            return Integer.parseInt(setting);
+        }
+        
+        String path = System.getProperty("heat2d.calibration", 
+                "heat2d-calibration.properties");
+        String configuration = Calibration.configuration(comm, size);
+        
+        //the master reads the cache so every machine uses the same pick
+        int[] halo = new int[] { 
+            (rank == 0) ? Calibration.load(path, configuration) : 0 };
+        comm.Bcast(halo, 0, 1, MPI.INT, 0);
+        if(halo[0] > 0)
+        {
+            if(rank == 0)
+            {
+                System.err.println("Ghost width " + halo[0] + 
+                        " cached for " + configuration);
+            }
+            return halo[0];
+        }
+        
+        Calibration c = Calibration.measure(comm, size, threads);
+        halo[0] = c.bestHalo(size, size / comm.Size());
+        if(rank == 0)
+        {
+            System.err.println(String.format("Calibrated %s: latency " +
+                    "%.1f us, %.1f MB/s, %.3f us per column, ghost width %d",
+                    configuration, c.latency * 1e6, 
+                    1 / c.secondsPerByte / 1e6, c.columnTime * 1e6, 
+                    halo[0]));
+            Calibration.save(path, configuration, halo[0]);
+        }
+        return halo[0];
+    }
+
+
+
+
+    /*
+        allocateColumns
+        Makes sure both layers of z[][][] hold an array for every column 
+        this machine owns or keeps as a ghost column. If drop is set the 
+        columns it no longer needs are let go. Newly allocated columns hold 
+        no heat
+    */
+    public static void allocateColumns(double[][][] z, int size, 
+            boolean drop)
+    {
+        for(int p = 0; p < 2; p++)
+        {
+            for(int x = 0; x < size; x++)
+            {
+                if(x < decomp.ghostStart || x > decomp.ghostEnd)
+                {
+                    if(drop)
+                    {
+                        z[p][x] = null;
+                    }
+                }
+                else if(z[p][x] == null)
+                {
+                    z[p][x] = new double[size];
+                }
+            }
+        }
+    }
+
+
+
+
+    /*
+        balanceLoad
+        Every machine shares how long it took per column since the last 
+        call. Each boundary between two machines is then moved half way 
+        towards where both would take as long as each other, and the columns
+        that change hands are sent to their new machine. A boundary moves 
+        less than half of the smaller of it's two slices, so columns only
+        ever move between neighbors and no slice gets narrower than the 
+        ghost width
+    */
+    public static void balanceLoad(int size, double[][][] z, int p)
+    {
+        try
+        {
+            int machines = decomp.machines;
+            if(machines == 1)
+            {
+                return;
+            }
+            int[] bounds = decomp.bounds;
+            int startPos = decomp.startPos;
+            int endPos = decomp.endPos;
+            
+            //time per column of every machine
+            double[] cost = new double[] {
+                Math.max(1.0, busyTime.get()) / (endPos - startPos + 1) };
+            double[] costs = new double[machines];
+            comm.Allgather(cost, 0, 1, MPI.DOUBLE, 
+                    costs, 0, 1, MPI.DOUBLE);
+            busyTime.set(0);
+            
+            //every machine works out the same new bounds from the same costs
+            double totalSpeed = 0;
+            for(int i = 0; i < machines; i++)
+            {
+                totalSpeed += 1 / costs[i];
+            }
+            
+            int[] newBounds = bounds.clone();
+            double target = 0;
+            for(int i = 1; i < machines; i++)
+            {
+                target += size * (1 / costs[i - 1]) / totalSpeed;
+                
+                int left = bounds[i] - bounds[i - 1];
+                int right = bounds[i + 1] - bounds[i];
+                int limit = (Math.min(left, right) - decomp.halo) / 2;
+                int move = (int) Math.round((target - bounds[i]) / 2);
+                
+                //whole blocks move, as many as fit in the move
+                newBounds[i] = decomp.edgeTowards(bounds[i], bounds[i] + 
+                        Math.max(-limit, Math.min(limit, move)));
+            }
+            
+            //the columns taken over are allocated before they arrive, the
+            //columns given away are kept until they have gone
+            decomp = decomp.withBounds(newBounds);
+            allocateColumns(z, size, false);
+            
+            //sends columns given away and receives columns taken over
+            Request[] requests = new Request[2];
+            double[][] moved = new double[2][];
+            for(int side = 0; side < 2; side++)
+            {
+                int edge = rank + side;          // boundary on this side
+                int neighbor = (side == 0) ? decomp.left : decomp.right;
+                if(edge == 0 || edge == machines)
+                {
+                    continue;
+                }
+                
+                int first = Math.min(bounds[edge], newBounds[edge]);
+                int last = Math.max(bounds[edge], newBounds[edge]) - 1;
+                int count = (last - first + 1) * size;
+                if(count == 0)
+                {
+                    continue;
+                }
+                
+                moved[side] = new double[count];
+                boolean giving = (first >= startPos && last <= endPos);
+                if(giving)
+                {
+                    for(int h = first; h <= last; h++)
+                    {
+                        System.arraycopy(z[p][h], 0, moved[side], 
+                                (h - first) * size, size);
+                    }
+                    requests[side] = comm.Isend(moved[side], 0, 
+                            count, MPI.DOUBLE, neighbor, balanceId);
+                }
+                else
+                {
+                    requests[side] = comm.Irecv(moved[side], 0,
+                            count, MPI.DOUBLE, neighbor, balanceId);
+                }
+            }
+            
+            for(int side = 0; side < 2; side++)
+            {
+                if(requests[side] == null)
+                {
+                    continue;
+                }
+                requests[side].Wait();
+                
+                int edge = rank + side;
+                int first = Math.min(bounds[edge], newBounds[edge]);
+                int last = Math.max(bounds[edge], newBounds[edge]) - 1;
+                if(!(first >= startPos && last <= endPos))
+                {
+                    for(int h = first; h <= last; h++)
+                    {
+                        System.arraycopy(moved[side], (h - first) * size, 
+                                z[p][h], 0, size);
+                    }
+                    
+                    //columns taken over may bring heat with them
+                    for(int i = 0; quiet && i < moved[side].length; i++)
+                    {
+                        quiet = (moved[side][i] == 0.0);
+                    }
+                }
+            }
+            
+            allocateColumns(z, size, true);
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in balanceLoad");
+        }
+    }
+
+
+
+
+    /*
+        writeCheckpoint
+        Every machine writes it's columns of z[p], the field at the start of
+        step t, into a new checkpoint that the master creates with an index
+        of who wrote which columns. Once all are written the master puts it
+        in place of the last checkpoint, so a failed write never leaves a
+        broken checkpoint behind
+    */
+    public static void writeCheckpoint(double[][][] z, int p, int t, 
+            int size)
+    {
+        try
+        {
+            String temporary = checkpointPath + ".tmp";
+            CheckpointFile file = null;
+            if(rank == 0)
+            {
+                file = CheckpointFile.create(temporary, size, t, 
+                        decomp.bounds);
+            }
+            comm.Barrier();
+            if(rank != 0)
+            {
+                file = CheckpointFile.open(temporary, true);
+            }
+            file.writeColumns(z[p], decomp.startPos, decomp.endPos);
+            file.close();
+            
+            comm.Barrier();
+            if(rank == 0)
+            {
+                Files.move(Paths.get(temporary), Paths.get(checkpointPath),
+                        StandardCopyOption.REPLACE_EXISTING, 
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in writeCheckpoint: " + 
+                    e.getMessage());
+        }
+    }
+
+
+
+
+    /*
+        readCheckpoint
+        Every machine reads the columns it holds, ghost columns included, 
+        from the checkpoint at path into the layer of z for the step it was
+        written at, and returns that step. Only those columns are read, 
+        wherever the machines that wrote them had them
+    */
+    public static int readCheckpoint(String path, double[][][] z, int size)
+    {
+        try
+        {
+            CheckpointFile file = CheckpointFile.open(path, false);
+            if(file.size != size)
+            {
+                throw new IOException(path + " holds a field of " +
+                        "size " + file.size);
+            }
+            int t = file.step;
+            file.readColumns(z[t % 2], decomp.ghostStart, decomp.ghostEnd);
+            file.close();
+            
+            //a machine the heat had not reached stays quiet
+            for(int x = decomp.ghostStart; x <= decomp.ghostEnd; x++)
+            {
+                for(int y = 0; y < size && quiet; y++)
+                {
+                    quiet = (z[t % 2][x][y] == 0.0);
+                }
+            }
+            return t;
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in readCheckpoint: " + 
+                    e.getMessage());
+            System.exit( -1 );
+            return 0;
+        }
+    }
+
+
+
+
+    /*
+        streamFrame
+        Sends this machine's columns for step t to a service machine without
+        waiting, each printed step going to the next service machine in 
+        turn. A header with the step and the columns goes first, since 
+        slices change size when the load is balanced
+    */
+    public static void streamFrame(int size, double[][][] z, int p, int t)
+    {
+        try
+        {
+            Frame frame = frames[framesCollected % frames.length];
+            
+            //the frame is still being sent for the step two prints ago
+            if(frame.requests[0] != null)
+            {
+                Request.Waitall(frame.requests);
+            }
+            
+            int count = decomp.counts[rank];
+            if(frame.slab.length < count)
+            {
+                frame.slab = new double[count];
+            }
+            for(int h = decomp.startPos; h <= decomp.endPos; h++)
+            {
+                System.arraycopy(z[p][h], 0, frame.slab, 
+                        (h - decomp.startPos) * size, size);
+            }
+            frame.header[0] = t;
+            frame.header[1] = decomp.startPos;
+            frame.header[2] = decomp.endPos;
+            
+            int to = framesCollected % service.Remote_size();
+            frame.requests[0] = service.Isend(frame.header, 0, 3, MPI.INT, 
+                    to, serviceId);
+            frame.requests[1] = service.Isend(frame.slab, 0, count, 
+                    MPI.DOUBLE, to, serviceId);
+            framesCollected++;
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in streamFrame");
+        }
+    }
+
+
+
+
+    /*
+        finishStream
+        Waits for the last frames to be sent, then tells every service 
+        machine there are no more with a header for step -1
+    */
+    public static void finishStream()
+    {
+        try
+        {
+            for(int f = 0; f < frames.length; f++)
+            {
+                if(frames[f].requests[0] != null)
+                {
+                    Request.Waitall(frames[f].requests);
+                }
+            }
+            
+            int[] end = new int[] { -1, 0, 0 };
+            for(int i = 0; i < service.Remote_size(); i++)
+            {
+                service.Send(end, 0, 3, MPI.INT, i, serviceId);
+            }
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in finishStream");
+        }
     }
-    
+
 
 
 
     /*
-        forwardEulerMethod
-        Computes the next state of z[][][] by using the neighboring elements
-        to each element and saves them on the non-active dimension 
-        (if p=1, p2 = 0, and vice-versa)
+        serve
+        What a service machine does instead of computing. It gathers every
+        printed step it is sent from all computing machines, and either 
+        writes it to the snapshot file or formats and prints it. Formatting
+        goes on in parallel on all service machines, but each waits for the
+        one with the step before to print before printing it's own. When 
+        the computing machines are done the master reports how many steps
+        there were and the hottest point seen, on the error stream
     */
-    public static void forwardEulerMethod(int p, int size, double[][][] z,
-            double r)
+    public static void serve(Intracomm group, int size)
     {
-        int p2 = (p + 1) % 2;
-        
         try
         {
-            //if there is only one machine, this machine is both first and last
-            if(MPI.COMM_WORLD.Size() == 1)
+            int services = group.Size();
+            int me = group.Rank();
+            int machines = service.Remote_size();
+            
+            String snapshotPath = System.getProperty("heat2d.snapshot");
+            if(snapshotPath != null)
             {
-                for ( int h = 1; h < size - 1; h++ )
+                if(me == 0)
                 {
-                    for ( int v = 1; v < size - 1; v++ )
-                    {
-                        z[p2][h][v] = z[p][h][v] + 
-                        r * ( z[p][h+1][v] - 2 * z[p][h][v] + z[p][h-1][v] ) +
-                        r * ( z[p][h][v+1] - 2 * z[p][h][v] + z[p][h][v-1] );
-                    }  
+                    snapshot = new SnapshotFile(snapshotPath, size, true);
+                }
+                group.Barrier();
+                if(me != 0)
+                {
+                    snapshot = new SnapshotFile(snapshotPath, size, false);
                 }
             }
-            //if first machine, you have to ignore the first element
-            else if(rank == 0)
+            
+            Frame frame = new Frame();
+            frame.size = size;
+            frame.lengths = new int[machines];
+            frame.parts = new double[machines][0];
+            int[] header = new int[3];
+            int[] firsts = new int[machines];
+            int[] turn = new int[1];
+            Request passed = null;
+            double peak = 0;
+            
+            //this machine is sent every services-th frame, starting at me
+            int served = 0;
+            for(int k = me; ; k += services)
             {
-                for ( int h = 1; h <= endPos; h++ )
+                boolean done = false;
+                for(int i = 0; i < machines; i++)
                 {
-                    for ( int v = 1; v < size - 1; v++ )
+                    service.Recv(header, 0, 3, MPI.INT, i, serviceId);
+                    if(header[0] == -1)
                     {
-                        z[p2][h][v] = z[p][h][v] + 
-                        r * ( z[p][h+1][v] - 2 * z[p][h][v] + z[p][h-1][v] ) +
-                         r * ( z[p][h][v+1] - 2 * z[p][h][v] + z[p][h][v-1] );
-                    }  
+                        done = true;
+                        continue;
+                    }
+                    
+                    frame.t = header[0];
+                    firsts[i] = header[1];
+                    frame.lengths[i] = (header[2] - header[1] + 1) * size;
+                    if(frame.parts[i].length < frame.lengths[i])
+                    {
+                        frame.parts[i] = new double[frame.lengths[i]];
+                    }
+                    service.Recv(frame.parts[i], 0, frame.lengths[i], 
+                            MPI.DOUBLE, i, serviceId);
+                    
+                    for(int c = 0; c < frame.lengths[i]; c++)
+                    {
+                        peak = Math.max(peak, frame.parts[i][c]);
+                    }
                 }
-            }
-            //if last machine, you have to ignore the last element
-            else if(rank == MPI.COMM_WORLD.Size() - 1)
-            {
-                for ( int h = startPos; h < size - 1; h++ )
+                if(done)
+                {
+                    break;
+                }
+                served++;
+                
+                if(snapshot != null)
+                {
+                    snapshot.writeFrameHeader(k, frame.t);
+                    for(int i = 0; i < machines; i++)
+                    {
+                        snapshot.writeSlab(k, frame.parts[i], firsts[i], 
+                                frame.lengths[i] / size);
+                    }
+                    continue;
+                }
+                
+                StringBuilder out = formatFrame(frame);
+                if(k > 0 && services > 1)
+                {
+                    group.Recv(turn, 0, 1, MPI.INT, 
+                            (me + services - 1) % services, turnId);
+                }
+                System.out.print( out );
+                System.out.flush();
+                if(services > 1)
                 {
-                    for ( int v = 1; v < size - 1; v++ )
+                    if(passed != null)
                     {
-                        z[p2][h][v] = z[p][h][v] + 
-                        r * ( z[p][h+1][v] - 2 * z[p][h][v] + z[p][h-1][v] ) +
-                        r * ( z[p][h][v+1] - 2 * z[p][h][v] + z[p][h][v-1] );
-                    }  
+                        passed.Wait();
+                    }
+                    passed = group.Isend(turn, 0, 1, MPI.INT, 
+                            (me + 1) % services, turnId);
                 }
             }
-            //else you are a middle machine and don't need to worry
-            else
+            
+            //the turn passed on after the last frame has nobody waiting 
+            //for it, so the machine whose frame it would have been takes it
+            int[] mine = new int[] { served };
+            int[] total = new int[1];
+            group.Allreduce(mine, 0, total, 0, 1, MPI.INT, MPI.SUM);
+            if(snapshot == null && services > 1 && total[0] > 0 && 
+                    total[0] % services == me)
+            {
+                group.Recv(turn, 0, 1, MPI.INT, 
+                        (me + services - 1) % services, turnId);
+            }
+            if(passed != null)
             {
-                for ( int h = startPos; h <= endPos; h++ )
+                passed.Wait();
+            }
+            
+            double[] hottest = new double[] { peak };
+            double[] overall = new double[1];
+            group.Reduce(hottest, 0, overall, 0, 1, MPI.DOUBLE, MPI.MAX, 0);
+            if(me == 0)
+            {
+                if(snapshot != null)
                 {
-                    for ( int v = 1; v < size - 1; v++ )
-                    {
-                        z[p2][h][v] = z[p][h][v] + 
-                        r * ( z[p][h+1][v] - 2 * z[p][h][v] + z[p][h-1][v] ) +
-                        r * ( z[p][h][v+1] - 2 * z[p][h][v] + z[p][h][v-1] );
-                    }  
+                    snapshot.writeFrameCount(total[0]);
                 }
+                System.err.println("Served " + total[0] + " steps, " + 
+                        "hottest point " + overall[0]);
+            }
+            if(snapshot != null)
+            {
+                snapshot.close();
             }
         }
-        catch(MPIException e)
+        catch(Exception e)
         {
-            System.out.println("An error occured in forwardEulerMethod");
+            System.out.println("An error occured in serve: " + 
+                    e.getMessage());
         }
     }
-    
+
 
 
 
     /*
-        printMaster
-        Prints out z[][][] after every interval or right before max_time 
-        is reached. Runs a small math function to divide every number by
-        2 and floor them as ints
+        openSnapshot
+        The master creates the snapshot file and writes it's header, then 
+        every other machine opens it once it exists
     */
-    public static void printMaster(int interval, int t, int max_time, int size, 
-            double[][][] z, int p)
+    public static void openSnapshot(String path, int size)
     {
-        if(interval != 0 && 
-		 ( t % interval == 0 || t == max_time - 1 ) )
+        try
         {
-            System.out.println( "time = " + t );
-            for ( int y = 0; y < size; y++ )
+            if(rank == 0)
             {
-                for ( int x = 0; x < size; x++ )
-                {
-                    System.out.print( (int)( Math.floor(z[p][x][y] / 2) ) 
-					  + " " );
-                }
-            System.out.println( );
+                snapshot = new SnapshotFile(path, size, true);
             }
-	System.out.println( );
-	}
+            comm.Barrier();
+            if(rank != 0)
+            {
+                snapshot = new SnapshotFile(path, size, false);
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in openSnapshot: " + 
+                    e.getMessage());
+            System.exit( -1 );
+        }
     }
-    
+
 
 
 
     /*
-        updateMaster
-        Updates the master machine's z[][][] double array by receiving every
-        other machine's slice
-        Master machine communicates with the other machine's in order, inquiring
-        about their start and end positions, generating a buffer based on that,
-        and filling that buffer with their slices
+        writeSnapshot
+        Every machine writes it's columns for step t at their place in the
+        next frame of the snapshot file, the master also writes the frame's
+        header. The barrier makes sure the frame is complete before anyone 
+        moves on
     */
-    public static void updateMaster(int size, double[][][] z, int p)
+    public static void writeSnapshot(double[][][] z, int p, int t)
     {
         try
         {
-            //if machine is the master, inquire for all other machine's slices
             if(rank == 0)
             {
-                //Master inquires for slice information from other machines
-                for(int i = 1; i < MPI.COMM_WORLD.Size(); i++)
-                {
-                    //asks machine rank i for it's start and end positions
-                    int[] startEnd = new int[2];
-                    MPI.COMM_WORLD.Send(startEnd, 0, 2, MPI.INT, i, id);
-
-                    //receives machine rank i's start and end positions
-                    MPI.COMM_WORLD.Recv(startEnd, 0, 2, MPI.INT, i, id);
-                    
-                    //uses this information to generate a buffer of an appropriate
-                    //size
-                    int bufferSize = (startEnd[1] - startEnd[0] + 1) * size;
+                snapshot.writeFrameHeader(framesWritten, t);
+            }
+            snapshot.writeColumns(framesWritten, z[p], decomp.startPos, 
+                    decomp.endPos);
+            framesWritten++;
+            
+            comm.Barrier();
+        }
+        catch(Exception e)
+        {
+            System.out.println("An error occured in writeSnapshot");
+        }
+    }
 
-                    //System.out.println("bufferSize: " + bufferSize);
 
-                    double[] buffer = new double[bufferSize];
 
-                    //asks machine rank i for it's slice information
-                    MPI.COMM_WORLD.Send(buffer, 0, bufferSize, MPI.DOUBLE, i, id);
 
-                    //receive's machine rank i's slice information
-                    MPI.COMM_WORLD.Recv(buffer, 0, bufferSize, MPI.DOUBLE, i, id);
-                          
-                    //modifies master's z[][][] with buffer
-                    int counter = 0;
-                    for(int h = startEnd[0]; h <= startEnd[1]; h++)
-                    {
-                        for(int v = 0; v < size; v++)
-                        {
-                            z[p][h][v] = buffer[counter];
-                            counter++;
-                        }
-                    }
-                }
-            }
-            
-            //all other machines send information to master
-            else
+    /*
+        closeSnapshot
+        The master records how many frames were written, then every machine
+        closes the snapshot file
+    */
+    public static void closeSnapshot()
+    {
+        try
+        {
+            if(rank == 0)
             {
-                //generates int[] with start and end positions
-                int[] startEnd = new int[]{startPos, endPos};
-                int[] temp = new int[2];
-                
-                
-                //waits for master to ask for start and end positions
-                MPI.COMM_WORLD.Recv(temp, 0, 2, MPI.INT, 0, id);
-                
-                //sends start and end positions to master
-                MPI.COMM_WORLD.Send(startEnd, 0, 2, MPI.INT, 0, id);
-                
-                //generates array representing it's values
-                int bufferSize = (endPos - startPos + 1) * size;
-                double[] buffer = new double[bufferSize];
-                
-                //waits to be asked for their slice information
-                MPI.COMM_WORLD.Recv(buffer, 0, bufferSize, MPI.DOUBLE, 0, id);
-                
-                //populates said array
-                int count = 0;
-                for(int h = startPos; h <= endPos; h++)
-                {
-                    for(int v = 0; v < size; v++)
-                    {
-                        buffer[count] = z[p][h][v];
-                        count++;
-                    }
-                }
-                
-                //sends slice information
-                MPI.COMM_WORLD.Send(buffer, 0, bufferSize, MPI.DOUBLE, 0, id);
-            }  
+                snapshot.writeFrameCount(framesWritten);
+            }
+            snapshot.close();
         }
-        catch(MPIException e)
+        catch(Exception e)
         {
-            System.out.println("An error occured in updateMaster");
-        }    
+            System.out.println("An error occured in closeSnapshot");
+        }
+    }
+
+
+
+
+    /*
+        universalLoops
+        Gives the work of the three loops below for phase p, so they can be
+        run on ranges of columns. heating is whether the heater is on and 
+        reaches this machine's columns
+    */
+    public static ColumnWork universalLoops(final double[][][] z, 
+            final int p, final int size, final boolean heating)
+    {
+        return new ColumnWork()
+        {
+            void run(int first, int last)
+            {
+                universalLoops(z, p, size, heating, first, last);
+            }
+        };
     }
 
 
@@ -324,42 +1706,34 @@ public class Heat2D_mpi
         universalLoops
         These loops are to be run in all the machines as applicable.
         These simulate the heat be diffused and consists of three functions.
+        They are applied to columns first to last, which is the machine's
+        slice plus any ghost columns that are being advanced redundantly
     */
-    public static void universalLoops(double[][][] z, int p, int size, int t,
-            int heat_time)
+    public static void universalLoops(double[][][] z, int p, int size, 
+            boolean heating, int first, int last)
     {
         //FIRST LOOP
         // two left-most and two right-most columns are identical
-	// this loop is to be handled with the outermost machines, or by
-        // only the master machine if only one machine is in use
+	// this loop is to be handled by whichever machines hold the 
+        // outermost columns
         for ( int y = 0; y < size; y++ )
         {
-            try
+            if(first == 0)
             {
-                //check for master first
-                if(rank == 0)
-                {
-                    z[p][0][y] = z[p][1][y];
-                }
-                //check for last machine
-                //could also be the master if only one machine
-                if(rank == MPI.COMM_WORLD.Size() - 1)
-                {
-                    z[p][size - 1][y] = z[p][size - 2][y];
-                }
+                z[p][0][y] = z[p][1][y];
             }
-            catch(MPIException e)
+            if(last == size - 1)
             {
-                System.out.println("An error occurred in the first loop");
+                z[p][size - 1][y] = z[p][size - 2][y];
             }
 	}
 
 
         //SECOND LOOP
 	// two upper and lower rows are identical
-        // every machine goes through it's slice and changes the top two
+        // every machine goes through it's columns and changes the top two
         // and bottom two rows
-        for(int i = startPos; i <= endPos; i++)
+        for(int i = first; i <= last; i++)
         {
             z[p][i][0] = z[p][i][1];
             z[p][i][size - 1] = z[p][i][size -2];
@@ -368,51 +1742,18 @@ public class Heat2D_mpi
 
         //THIRD LOOP
 	// keep heating the bottom until t < heat_time
-        try
+        // every machine heats the part of the heater that overlaps it's
+        // columns
+        if(heating)
         {
-            if(t < heat_time)
+            int heatStart = Math.max(first, size / 3);
+            int heatEnd = Math.min(last, size / 3 * 2 - 1);
+            
+            for ( int x = heatStart; x <= heatEnd; x++ )
             {
-                //odd # of computers
-                if(MPI.COMM_WORLD.Size() % 2 == 1)
-                {
-                     //if machine is the middle most one
-                     if(rank == MPI.COMM_WORLD.Size() / 2)
-                     {
-                         for ( int x = size /3; x < size / 3 * 2; x++ )
-                         {
-                            z[p][x][0] = 19.0; // heat
-                         }
-
-                     }
-                 }
-             //even # of computers
-             else
-             {
-                //selects two innermost machines
-                if(rank == MPI.COMM_WORLD.Size() / 2)
-                {
-                    if ( t < heat_time )
-                    {
-                        for ( int x = startPos; x < size / 3 * 2; x++ )
-                        {
-                            z[p][x][0] = 19.0; // heat
-                        }
-                    }
-                    }
-                    else if(rank == MPI.COMM_WORLD.Size() / 2 - 1)
-                    {
-                        for ( int x = size / 3; x <= endPos; x++ )
-                        {
-                            z[p][x][0] = 19.0; // heat
-                        }
-                    }
-                }
+                z[p][x][0] = 19.0; // heat
             }
         }
-        catch(MPIException e)
-        {
-            System.out.println("An error occured in the third loop");
-        }
     }
 
 
@@ -420,134 +1761,162 @@ public class Heat2D_mpi
 
     /*
         shareBoundaryData
-        Every machine sends and sets the boundary data immediately outside of 
-        it's start and end positions as applicable. This is accomplished by 
-        dividing the machines into two groups, one that first sends and then 
-        receives, the other that first receives then sends
+        Every machine starts receiving the boundary data immediately outside
+        of it's start and end positions and starts sending it's own to its
+        neighbors as applicable. None of it waits, so work goes on while the
+        data is in flight and receiveBoundaryData hands over each side as it
+        arrives
+        halo columns are shared in one message on each side, so the ghost
+        columns stay usable for that many steps. Columns that are all zero 
+        are sent as an empty message
     */
     public static void shareBoundaryData(int size, double[][][] z, int p)
     {
-            //master machines sends boundary data to the right and receives some
-            //from the right
         try
         {
-            double[] workingColumn = new double[size]; // double[] used to send
-                                                       // and receive boundaries
-            
+            int halo = decomp.halo;
+            int count = halo * size; // doubles in one message
+            int[] neighbors = new int[] { decomp.left, decomp.right };
             
-            //if there is only one machine working, no need to share data
-            if(MPI.COMM_WORLD.Size() > 1)
+            //a side without a neighbor has nothing to wait for
+            receives = new Request[2];
+            receiveSides = new int[2];
+            int waiting = 0;
+            for(int side = LEFT; side <= RIGHT; side++)
             {
-                if(rank % 2 == 0)
+                if(neighbors[side] != Decomposition.NONE)
                 {
-                    
-                    //Even-ranked machines send to the left and right as 
-                    //applicable first
-                    
-                    //if you're not the last machine, send to the right
-                    if(rank != MPI.COMM_WORLD.Size() - 1)
+                    if(codecs == null)
                     {
-                        //converts last column to one-dimensional 
-                        workingColumn = convertColumn(endPos, size, z, p);
-
-                        //sends last column to machine to the right
-                        MPI.COMM_WORLD.Send(workingColumn, 0, size, MPI.DOUBLE, 
-                                rank + 1, id);
-                        //System.out.println("sent to machine " + (rank + 1));
+                        receives[waiting] = comm.Irecv(
+                                recvBuffers[side], 0, count, MPI.DOUBLE, 
+                                neighbors[side], id);
                     }
-                    //if you're not first machine, send to the left
-                    if(rank != 0)
+                    else
                     {
-                        //converts first column to one-dimensional array
-                        workingColumn = convertColumn(startPos, size, z, p);
-
-                        //sends first column to machine to the left
-                        MPI.COMM_WORLD.Send(workingColumn, 0, size, MPI.DOUBLE,
-                                rank - 1, id);
-                        //System.out.println("sent to machine " + (rank - 1));
+                        byte[] bytes = codecs[side].received;
+                        receives[waiting] = comm.Irecv(bytes, 0,
+                                bytes.length, MPI.BYTE, neighbors[side], id);
                     }
-                    
-                    //Even-ranked machines receive from left and right as
-                    //applicable second
-                    
-                    //if you're not the last machine, receive from the right
-                    if(rank != MPI.COMM_WORLD.Size() - 1)
+                    receiveSides[waiting++] = side;
+                }
+            }
+            for(int side = LEFT; side <= RIGHT; side++)
+            {
+                if(neighbors[side] == Decomposition.NONE)
+                {
+                    receiveSides[waiting++] = side;
+                }
+            }
+            arrived = 0;
+            
+            //first columns go to the left, last columns to the right
+            int[] from = new int[] { decomp.startPos, 
+                    decomp.endPos - halo + 1 };
+            for(int side = LEFT; side <= RIGHT; side++)
+            {
+                sends[side] = null;
+                if(neighbors[side] != Decomposition.NONE)
+                {
+                    int sent = packColumns(from[side], size, z, p, side);
+                    if(codecs == null)
                     {
-                        //receives right machine's first column
-                        MPI.COMM_WORLD.Recv(workingColumn, 0, size, MPI.DOUBLE, 
-                                rank + 1, id);
-
-                        //sets received column in machine's z[][][]
-                        setColumn(endPos + 1, size, z, p, workingColumn);
-
+                        sends[side] = comm.Isend(sendBuffers[side],
+                                0, sent, MPI.DOUBLE, neighbors[side], id);
                     }
-                    //if you're not the first machine, receive from the left
-                    if(rank != 0)
+                    else
                     {
-                        //receives left machine's last column
-                        MPI.COMM_WORLD.Recv(workingColumn, 0, size, MPI.DOUBLE, 
-                                rank - 1, id);
-
-                        //sets received column in machine's z[][][]
-                        setColumn(startPos - 1, size, z, p, workingColumn);
+                        sends[side] = comm.Isend(
+                                codecs[side].sent, 0, sent, MPI.BYTE, 
+                                neighbors[side], id);
                     }
                 }
+            }
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in shareBoundaryData()");
+        }
+    }
+
+
+
+
+    /*
+        receiveBoundaryData
+        Waits for whichever side's ghost columns arrive first, sets them in 
+        z[p] and returns the side. Sides without a neighbor come last. 
+        Returns -1 once both sides have been handed over
+    */
+    public static int receiveBoundaryData(int size, double[][][] z, int p)
+    {
+        try
+        {
+            if(arrived == 2)
+            {
+                return -1;
+            }
+            
+            int side;
+            if(receives[arrived] == null)
+            {
+                side = receiveSides[arrived];
+            }
+            else
+            {
+                //receives that have arrived are no longer active, so only 
+                //the ones still waiting can be picked
+                int waiting = (receives[1] == null) ? 1 : 2;
+                Request[] pending = new Request[waiting - arrived];
+                System.arraycopy(receives, arrived, pending, 0, 
+                        pending.length);
+                Status status = Request.Waitany(pending);
                 
-                else
-                {
-                    //Odd-ranked machines receive from the left and right as 
-                    //applicable first
-                    
-                    //if you're not the last machine, receive from the right
-                    if(rank != MPI.COMM_WORLD.Size() - 1)
-                    {
-                        //receives right machine's first column
-                        MPI.COMM_WORLD.Recv(workingColumn, 0, size, MPI.DOUBLE, 
-                                rank + 1, id);
-                        
-                        //sets received column in machine's z[][][]
-                        setColumn(endPos + 1, size, z, p, workingColumn);
-                    }
-                    //if you're not the first machine, receive from the left
-                    if(rank != 0)
-                    {
-                        //receives left machine's last column
-                        MPI.COMM_WORLD.Recv(workingColumn, 0, size, MPI.DOUBLE,
-                                rank - 1, id);
+                //moves the arrived receive in front of the ones waiting
+                int index = arrived + status.index;
+                side = receiveSides[index];
+                receiveSides[index] = receiveSides[arrived];
+                receives[index] = receives[arrived];
+                receiveSides[arrived] = side;
+                
+                int[] at = new int[] { decomp.startPos - decomp.halo, 
+                        decomp.endPos + 1 };
+                unpackColumns(at[side], size, z, p, side, status.Get_count(
+                        codecs == null ? MPI.DOUBLE : MPI.BYTE));
+            }
+            arrived++;
+            return side;
+        }
+        catch(MPIException e)
+        {
+            System.out.println("An error occured in receiveBoundaryData()");
+            return -1;
+        }
+    }
 
-                        //sets received column in machine's z[][][]
-                        setColumn(startPos - 1, size, z, p, workingColumn);
 
-                    }
-                    //Odd-ranked machines send to the left and right as 
-                    //applicable second
-                    
-                    //if you're not the last machine, send to the right
-                    if(rank != MPI.COMM_WORLD.Size() - 1)
-                    {
-                        //converts last column to one-dimensional 
-                        workingColumn = convertColumn(endPos, size, z, p);
 
-                        //sends last column to machine to the right
-                        MPI.COMM_WORLD.Send(workingColumn, 0, size, MPI.DOUBLE,
-                                rank + 1, id);
-                    }
-                    //if you're not first machine, send to the left
-                    if(rank != 0)
-                    {
-                        //converts first column to one-dimensional array
-                        workingColumn = convertColumn(startPos, size, z, p);
 
-                        //sends first column to machine to the left
-                        MPI.COMM_WORLD.Send(workingColumn, 0, size, MPI.DOUBLE,
-                                rank - 1, id);
-                    }
+    /*
+        finishBoundaryData
+        Waits for this machine's boundary data to have been sent, so the 
+        send buffers can be reused
+    */
+    public static void finishBoundaryData()
+    {
+        try
+        {
+            for(int side = LEFT; side <= RIGHT; side++)
+            {
+                if(sends[side] != null)
+                {
+                    sends[side].Wait();
                 }
             }
         }
         catch(MPIException e)
         {
-            System.out.println("An error occured in shareBoundaryData()");
+            System.out.println("An error occured in finishBoundaryData()");
         }
     }
 
@@ -555,16 +1924,16 @@ public class Heat2D_mpi
 
 
     /*
-        setColumn
-        takes a one-dimensional array of doubles and changes
-        z[p][pos][<variable>] to it
+        setColumns
+        takes a one-dimensional array of doubles holding halo columns and 
+        copies them into z[p][pos][<variable>] onwards
     */
-    public static void setColumn(int pos, int size, double[][][] z, int p,
-            final double[] column)
+    public static void setColumns(int pos, int size, double[][][] z, int p,
+            final double[] columns)
     {
-        for(int i = 0; i < size; i++)
+        for(int c = 0; c < decomp.halo; c++)
         {
-            z[p][pos][i] = column[i];
+            System.arraycopy(columns, c * size, z[p][pos + c], 0, size);
         }
     }
 
@@ -572,79 +1941,91 @@ public class Heat2D_mpi
 
 
     /*
-        convertColumn
-        Converts an entire column of one of the layers of the three dimensional
-        array into a one-dimensional array. This array represents this column
-        in a top-down fashion
+        convertColumns
+        Converts halo columns starting at pos of one of the layers of the three
+        dimensional array into a one-dimensional array. Each column is 
+        represented in a top-down fashion, one after the other
     
     */
-    public static double[] convertColumn(int pos, int size, 
-            final double[][][] z, int p)
+    public static void convertColumns(int pos, int size, 
+            final double[][][] z, int p, double[] columns)
     {
-        double[] workingColumn = new double[size];
-        for(int i = 0; i < size; i++)
+        for(int c = 0; c < decomp.halo; c++)
         {
-            workingColumn[i] = z[p][pos][i];
+            System.arraycopy(z[p][pos + c], 0, columns, c * size, size);
         }
-        return workingColumn;
     }
 
 
 
 
     /*
-        determinePositions
-        Determines the start and end positions of a square that a machine is
-        responsible for
-        Used by the master machine, who then communicates this information to
-        other computers
+        packColumns
+        Puts halo columns starting at pos into the send buffer for side and
+        returns how many doubles, or bytes when encoded, to send. Nothing is
+        sent when they are all zero, which a quiet machine knows without 
+        looking
     */
-    public static void determinePositions(int size)
+    public static int packColumns(int pos, int size, final double[][][] z, 
+            int p, int side)
     {
-        //System.out.println("Master entered determinePositions");
-        try
+        if(quiet)
         {
-            int numOfMachines = MPI.COMM_WORLD.Size();
-            int remainder = size % numOfMachines;
-            Boolean remainderPresent = (remainder != 0);
-            int partition = size / numOfMachines;
-            int start = 0;
-            int end = 0;
-            
-            for(int i = 0; i < numOfMachines; i++)
+            return 0;
+        }
+        
+        boolean zero = true;
+        for(int c = 0; c < decomp.halo && zero; c++)
+        {
+            for(int y = 0; y < size && zero; y++)
             {
-                end += partition - 1;
-                
-                //if size of square is not evenly divisible into numOfMachines,
-                //allocate the remainder to the last machines
-                if(i == numOfMachines - 1 && remainderPresent)
-                {
-                    end = size - 1;
-                }
-                
-                int[] positions = new int[]{start, end};
-                
-                //sends position information to appropriate machine
-                if(i == 0)
-                {
-                    //do not send to self
-                    startPos = positions[0];
-                    endPos = positions[1];
-                }
-                else
-                {
-                    //send position information to other machines
-                    MPI.COMM_WORLD.Send(positions, 0, 2, MPI.INT, i, id);
-                }
-                
-                //sets start and end to be 1 further
-                start = end + 1;
-                end++;
-            } 
+                zero = (z[p][pos + c][y] == 0.0);
+            }
         }
-        catch(MPIException e)
+        if(zero)
+        {
+            return 0;
+        }
+        
+        if(codecs != null)
+        {
+            return codecs[side].encode(z[p], pos, decomp.halo, size);
+        }
+        convertColumns(pos, size, z, p, sendBuffers[side]);
+        return decomp.halo * size;
+    }
+
+
+
+
+    /*
+        unpackColumns
+        Sets the halo columns starting at pos from the message of count 
+        doubles, or bytes when encoded, received on side. An empty message
+        means the columns are all zero, anything else means heat has 
+        reached this machine
+    */
+    public static void unpackColumns(int pos, int size, double[][][] z, 
+            int p, int side, int count)
+    {
+        if(count == 0)
+        {
+            for(int c = 0; c < decomp.halo; c++)
+            {
+                Arrays.fill(z[p][pos + c], 0.0);
+            }
+        }
+        else
         {
-            System.out.println("An exception occured in determinePosition");
+            if(codecs != null)
+            {
+                codecs[side].decode(count, z[p], pos, decomp.halo, size);
+            }
+            else
+            {
+                setColumns(pos, size, z, p, recvBuffers[side]);
+            }
+            quiet = false;
         }
     }
 }
@@ -15,8 +15,15 @@ public class Intercomm extends Comm {
 
   protected Intercomm(long handle) {super(handle) ;}
 
+  Intercomm(int context, int [] members, int [] remote, Intracomm local) {
+    super(context, members) ;
+
+    this.remote = remote ;
+    this.local  = local ;
+  }
+
   public Object clone() {
-    return new Intercomm(super.dup());
+    return super.clone() ;
   }
 
   // Inter-Communication
@@ -32,7 +39,11 @@ public class Intercomm extends Comm {
    * Java binding of the MPI operation <tt>MPI_COMM_REMOTE_SIZE</tt>.
    */
 
-  public native int Remote_size() throws MPIException ;
+  public int Remote_size() throws MPIException {
+    return MPI.device.remoteSize(this) ;
+  }
+
+  native int Remote_sizeNative() throws MPIException ;
 
   /**
    * Return the remote group.
@@ -46,10 +57,10 @@ public class Intercomm extends Comm {
    */
 
   public Group Remote_group() throws MPIException {
-    return new Group(remote_group());
+    return MPI.device.remoteGroup(this) ;
   }
 
-  private native long remote_group();
+  native long remote_group();
 
   /**
    * Create an inter-communicator.
@@ -64,9 +75,14 @@ public class Intercomm extends Comm {
    */
 
   public Intracomm Merge(boolean high) throws MPIException {
-    return new Intracomm(merge(high)) ;
+    return MPI.device.merge(this, high) ;
   }
 
-  private native long merge(boolean high);
+  native long merge(boolean high);
+
+  // Communicator of the local group, used by the engine to agree on
+  // contexts with the remote group.
+
+  Intracomm local ;
 }
 
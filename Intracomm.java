@@ -10,14 +10,21 @@
 
 package mpi;
 
+import java.util.ArrayList;
+
 public class Intracomm extends Comm {
 
+  // Temporary buffers of the collectives: at most 4 of each size, none
+  // over 4M and 8M in all.
+
+  final BufferPool pool = new BufferPool(4, 1 << 22, 1 << 23) ;
+
   Intracomm() {}
 
   void setType(int type) {
     super.setType(type) ;
 
-    shadow = new Comm(dup()) ;
+    shadow = MPI.device.shadow(this) ;
   }
 
   protected Intracomm(long handle) throws MPIException {
@@ -26,9 +33,15 @@ public class Intracomm extends Comm {
     shadow = new Comm(dup()) ;
   }
 
+  Intracomm(int context, int [] members) {
+    super(context, members) ;
+
+    shadow = new Comm(context + 2, members) ;
+  }
+
   public Object clone() {
     try {
-      return new Intracomm(dup()) ;
+      return MPI.device.dup(this) ;
     }
     catch (MPIException e) {
       throw new RuntimeException(e.getMessage()) ;
@@ -49,14 +62,10 @@ public class Intracomm extends Comm {
    */
 
   public Intracomm Split(int colour, int key) throws MPIException {
-    long splitHandle = split(colour,key) ;
-    if(splitHandle == nullHandle)
-      return null ;
-    else
-      return new Intracomm(splitHandle) ;
+    return MPI.device.split(this, colour, key) ;
   }
 
-  private native long split(int colour, int key);
+  native long split(int colour, int key);
 
   /**
    * Create a new communicator.
@@ -71,14 +80,10 @@ public class Intracomm extends Comm {
    */
 
   public Intracomm Creat(Group group) throws MPIException {
-    long creatHandle = creat(group) ;
-    if(creatHandle == nullHandle)
-      return null ;
-    else
-      return new Intracomm(creatHandle) ;
+    return MPI.device.creat(this, group) ;
   }
 
-  private native long creat(Group group);
+  native long creat(Group group);
 
   // Collective Communication
 
@@ -89,12 +94,21 @@ public class Intracomm extends Comm {
    * Java binding of the MPI operation <tt>MPI_BARRIER</tt>.
    */
 
-  public native void Barrier() throws MPIException ;
+  public void Barrier() throws MPIException {
+    MPI.device.barrier(this) ;
+  }
+
+  native void BarrierNative() throws MPIException ;
 
   /*
    * The type signature of `incount * intype' must be equal to the type
    * signature of `outcount * outtype' (ie they must represent the same
    * number of basic elements of the same type).
+   *
+   * Primitive buffers are copied by `System.arraycopy': in one piece if
+   * both types are contiguous, and otherwise in runs of consecutive
+   * elements along their displacements.  Only layouts kept by the device
+   * itself go through `Pack' and `Unpack'.
    */
 
   private void copyBuffer(Object inbuf,
@@ -122,42 +136,209 @@ public class Intracomm extends Comm {
         }
       }
     }
+    else if(inbuf.getClass() == outbuf.getClass() &&
+            intype.contiguous() && outtype.contiguous()) {
+      System.arraycopy(inbuf, inoffset, outbuf, outoffset,
+                       incount * intype.Size()) ;
+    }
+    else if(inbuf.getClass() == outbuf.getClass() &&
+            intype.displacements != null && outtype.displacements != null) {
+      int [] indisps = intype.displacements, outdisps = outtype.displacements ;
+      int inextent = intype.Extent(), outextent = outtype.Extent() ;
+
+      int inbase = inoffset, outbase = outoffset ;
+      int k = 0, kout = 0 ;
+      int left = incount * indisps.length ;
+      while (left > 0) {
+        int run = 1 ;
+        while (run < left &&
+               k + run < indisps.length && kout + run < outdisps.length &&
+               indisps [k + run] == indisps [k] + run &&
+               outdisps [kout + run] == outdisps [kout] + run)
+          run++ ;
+
+        System.arraycopy(inbuf, inbase + indisps [k],
+                         outbuf, outbase + outdisps [kout], run) ;
+        left -= run ;
+
+        k += run ;
+        if (k == indisps.length) {
+          k = 0 ;
+          inbase += inextent ;
+        }
+        kout += run ;
+        if (kout == outdisps.length) {
+          kout = 0 ;
+          outbase += outextent ;
+        }
+      }
+    }
     else {
-      byte [] tmpbuf = new byte [Pack_size(incount, intype)] ;
-      Pack(inbuf, inoffset, incount, intype, tmpbuf, 0) ;
-      Unpack(tmpbuf, 0, outbuf, outoffset, outcount, outtype) ;
+      byte [] tmpbuf = pool.bytes(Pack_size(incount, intype)) ;
+      try {
+        Pack(inbuf, inoffset, incount, intype, tmpbuf, 0) ;
+        Unpack(tmpbuf, 0, outbuf, outoffset, outcount, outtype) ;
+      }
+      finally {
+        pool.release(tmpbuf) ;
+      }
     }
   }
 
-  private Object newBuffer(Object template) {
-    if(template instanceof Object[])
-      return new Object [((Object[]) template).length] ;
+  // Object buffers are serialized once, at the rank that holds them, and
+  // the messages move as bytes on binomial trees over the ranks relative
+  // to the root.  A rank passes bytes on to the ranks below it before it
+  // deserializes its own, so the receivers deserialize in parallel.
 
-    if(template instanceof byte[])
-      return new byte [((byte[]) template).length] ;
+  /*
+   * Broadcasts `message' from root, and returns it at every rank.
+   */
 
-    if(template instanceof char[])
-      return new char [((char[]) template).length] ;
+  private byte [] bcastMessage(byte [] message, int root)
+                                                      throws MPIException {
+    int n = Size(), me = (Rank() - root + n) % n ;
+    int mask = 1 ;
+    while (mask < n) {
+      if ((me & mask) != 0) {
+        message = shadow.recvMessage((me - mask + root) % n, 0) ;
+        break ;
+      }
+      mask <<= 1 ;
+    }
+    for (mask >>= 1 ; mask > 0 ; mask >>= 1)
+      if (me + mask < n)
+        shadow.sendMessage(Prequest.MODE_STANDARD, message,
+                           (me + mask + root) % n, 0) ;
+    return message ;
+  }
 
-    if(template instanceof short[])
-      return new short [((short[]) template).length] ;
+  /*
+   * Scatters from root, where `messages' holds a message for each rank
+   * but root by rank relative to it.  Returns a bundle that starts with
+   * the message of this rank, or null at root.
+   */
 
-    if(template instanceof boolean[])
-      return new boolean [((boolean[]) template).length] ;
+  private byte [] scatterMessages(byte [] [] messages, int root)
+                                                      throws MPIException {
+    int n = Size(), me = (Rank() - root + n) % n ;
+    byte [] bundle = null ;
+    int mask = 1 ;
+    while (mask < n) {
+      if ((me & mask) != 0) {
+        bundle = shadow.recvMessage((me - mask + root) % n, 0) ;
+        break ;
+      }
+      mask <<= 1 ;
+    }
+    for (mask >>= 1 ; mask > 0 ; mask >>= 1) {
+      int below = me + mask ;
+      if (below < n) {
+        int count = Math.min(mask, n - below) ;
+        byte [] part = me == 0
+            ? ObjectMessage.bundle(messages, below, below + count)
+            : ObjectMessage.part(bundle, mask, count) ;
+        try {
+          shadow.sendMessage(Prequest.MODE_STANDARD, part,
+                             (below + root) % n, 0) ;
+        }
+        finally {
+          ObjectMessage.release(part) ;
+        }
+      }
+    }
+    return bundle ;
+  }
 
-    if(template instanceof int[])
-      return new int [((int[]) template).length] ;
+  /*
+   * Gathers `message' of every rank but root to root.  Returns at root a
+   * bundle of them by rank relative to root, and null elsewhere.
+   */
 
-    if(template instanceof long[])
-      return new long [((long[]) template).length] ;
+  private byte [] gatherMessages(byte [] message, int root)
+                                                      throws MPIException {
+    int n = Size(), me = (Rank() - root + n) % n ;
+    ArrayList<byte []> bundles = new ArrayList<byte []>() ;
+    try {
+      if (message != null)
+        bundles.add(ObjectMessage.bundle(new byte [] [] {message}, 0, 1)) ;
+      for (int mask = 1 ; mask < n ; mask <<= 1) {
+        if ((me & mask) != 0) {
+          byte [] bundle = ObjectMessage.join(bundles) ;
+          try {
+            shadow.sendMessage(Prequest.MODE_STANDARD, bundle,
+                               (me - mask + root) % n, 0) ;
+          }
+          finally {
+            ObjectMessage.release(bundle) ;
+          }
+          return null ;
+        }
+        if (me + mask < n)
+          bundles.add(shadow.recvMessage((me + mask + root) % n, 0)) ;
+      }
+      return ObjectMessage.join(bundles) ;
+    }
+    finally {
+      for (byte [] bundle : bundles)
+        ObjectMessage.release(bundle) ;
+    }
+  }
+
+  // User ops are applied on trees too.  `op.apply(in, inout)' leaves
+  // `in op inout' in inout, so a rank that holds the values of a range of
+  // ranks combines them with those of the range just above it by
+  // apply(own, received), and then takes the received buffer as its own.
+  // Each call takes its temporary buffers from `pool' once, holding the
+  // items from offset 0, and swaps them between rounds.
+
+  private void reduceUser(Object sendbuf, int sendoffset,
+                          Object recvbuf, int recvoffset, int count,
+                          Datatype datatype, Op op, int root)
+                                                      throws MPIException {
+
+    // The tree is over the ranks relative to root if the op commutes,
+    // and otherwise over the ranks in order, with the result sent on
+    // from rank 0 to root.
 
-    if(template instanceof float[])
-      return new float [((float[]) template).length] ;
+    op.check(sendbuf) ;
 
-    if(template instanceof double[])
-      return new double [((double[]) template).length] ;
+    int n = Size(), base = op.commute ? root : 0 ;
+    int me = (Rank() - base + n) % n ;
+
+    int span = datatype.span(count) ;
+    Object acc = pool.take(sendbuf, span), tmp = pool.take(sendbuf, span) ;
+    try {
+      copyBuffer(sendbuf, sendoffset, count, datatype,
+                 acc, 0, count, datatype) ;
+      for (int mask = 1 ; mask < n ; mask <<= 1) {
+        if ((me & mask) != 0) {
+          shadow.Send(acc, 0, count, datatype, (me - mask + base) % n, 0) ;
+          break ;
+        }
+        if (me + mask < n) {
+          shadow.Recv(tmp, 0, count, datatype, (me + mask + base) % n, 0) ;
+          op.apply(acc, 0, tmp, 0, count, datatype) ;
+          Object t = acc ; acc = tmp ; tmp = t ;
+        }
+      }
 
-    return null ;
+      if (base != root) {
+        if (me == 0)
+          shadow.Send(acc, 0, count, datatype, root, 0) ;
+        else if (Rank() == root) {
+          shadow.Recv(tmp, 0, count, datatype, base, 0) ;
+          Object t = acc ; acc = tmp ; tmp = t ;
+        }
+      }
+
+      if (Rank() == root)
+        copyBuffer(acc, 0, count, datatype,
+                   recvbuf, recvoffset, count, datatype) ;
+    }
+    finally {
+      pool.release(acc) ;
+      pool.release(tmp) ;
+    }
   }
 
   /**
@@ -183,23 +364,27 @@ public class Intracomm extends Comm {
                     int      root) throws MPIException {
 
     if (type.isObject()){
-      if (Rank() == root){
-        for (int dst = 0; dst < Size(); dst++)
-          if (dst != root)
-            shadow.Send(buf, offset, count, type, dst, 0);
+      byte [] message = null ;
+      if (Rank() == root)
+        message = ObjectMessage.write(buf, offset, count, type) ;
+      try {
+        message = bcastMessage(message, root) ;
+        if (Rank() != root)
+          ObjectMessage.read(message, 0, buf, offset, type) ;
+      }
+      finally {
+        ObjectMessage.release(message) ;
       }
-      else
-        shadow.Recv(buf, offset, count, type, root, 0);
     }
     else
-       bcast(buf, offset*type.Size(), count, type, root);   
+      MPI.device.bcast(this, buf, offset, count, type, root) ;
   }
 
-  private native void bcast(Object   buf, 
-                            int      offset, 
-                            int      count, 
-                            Datatype type,
-                            int      root);
+  native void bcast(Object   buf, 
+                    int      offset, 
+                    int      count, 
+                    Datatype type,
+                    int      root);
 
   /**
    * Each process sends the contents of its send buffer to the
@@ -234,34 +419,45 @@ public class Intracomm extends Comm {
                      int      root) throws MPIException {
   
     if (sendtype.isObject()) {
-      if (Rank() == root) {
-        for (int src = 0; src < Size(); src++) {
-          int dstOffset = recvoffset + recvcount * recvtype.Extent() * src ;
-          if (src == root)
-            copyBuffer(sendbuf, sendoffset, sendcount, sendtype,
-                       recvbuf, dstOffset, recvcount, recvtype) ;
-          else
-            shadow.Recv(recvbuf, dstOffset, recvcount, recvtype, src, 0);
-	}
+      int n = Size() ;
+      byte [] message = null, bundle = null ;
+      if (Rank() != root)
+        message = ObjectMessage.write(sendbuf, sendoffset, sendcount,
+                                      sendtype) ;
+      try {
+        bundle = gatherMessages(message, root) ;
+        if (Rank() == root) {
+          copyBuffer(sendbuf, sendoffset, sendcount, sendtype,
+                     recvbuf, recvoffset + recvcount * recvtype.Extent() * root,
+                     recvcount, recvtype) ;
+          int at = ObjectMessage.BUNDLE ;
+          for (int i = 1 ; i < n ; i++) {
+            int src = (i + root) % n ;
+            int dstOffset = recvoffset + recvcount * recvtype.Extent() * src ;
+            ObjectMessage.read(bundle, at, recvbuf, dstOffset, recvtype) ;
+            at += ObjectMessage.length(bundle, at) ;
+          }
+        }
+      }
+      finally {
+        ObjectMessage.release(message) ;
+        ObjectMessage.release(bundle) ;
       }
-      else
-        shadow.Send(sendbuf, sendoffset, sendcount, sendtype, root, 0);
     }
     else
-      gather(sendbuf, sendoffset*sendtype.Size(), sendcount,sendtype,
-	     recvbuf, recvoffset*recvtype.Size(), recvcount,recvtype,
-             root);
+      MPI.device.gather(this, sendbuf, sendoffset, sendcount, sendtype,
+                        recvbuf, recvoffset, recvcount, recvtype, root) ;
   }
 
-  private native void gather(Object   sendbuf, 
-                             int      sendoffset, 
-                             int      sendcount,
+  native void gather(Object   sendbuf, 
+                     int      sendoffset, 
+                     int      sendcount,
 	                     Datatype sendtype, 
-                             Object   recvbuf, 
-                             int      recvoffset, 
-                             int      recvcount,
+                     Object   recvbuf, 
+                     int      recvoffset, 
+                     int      recvcount,
 	                     Datatype recvtype, 
-                             int      root);
+                     int      root);
 
   /**
    * Extends functionality of <tt>Gather</tt> by allowing varying
@@ -319,23 +515,21 @@ public class Intracomm extends Comm {
         shadow.Send(sendbuf, sendoffset, sendcount, sendtype, root, 0);
     }
     else
-      gatherv(sendbuf  , sendoffset*sendtype.Size(), 
-              sendcount, sendtype,
-              recvbuf  , recvoffset*recvtype.Size(),
-              recvcount, displs,
-              recvtype , root);
+      MPI.device.gatherv(this, sendbuf, sendoffset, sendcount, sendtype,
+                         recvbuf, recvoffset, recvcount, displs, recvtype,
+                         root) ;
   }
 
-  private native void gatherv(Object   sendbuf, 
-                              int      sendoffset, 
-                              int      sendcount,
+  native void gatherv(Object   sendbuf, 
+                      int      sendoffset, 
+                      int      sendcount,
   	                      Datatype sendtype, 
-                              Object   recvbuf, 
-                              int      recvoffset, 
-                              int []   recvcount,
+                      Object   recvbuf, 
+                      int      recvoffset, 
+                      int []   recvcount,
  	                      int []   displs, 
-                              Datatype recvtype, 
-                              int      root);
+                      Datatype recvtype, 
+                      int      root);
 
   /**
    * Inverse of the operation <tt>Gather</tt>.
@@ -369,34 +563,49 @@ public class Intracomm extends Comm {
                       int      root) throws MPIException {
 
     if (sendtype.isObject()){
-      if (Rank() == root){
-        for (int dst = 0; dst < Size() ; dst++){
-          int srcOffset = sendoffset + sendcount * sendtype.Extent() * dst ;
-          if (dst == root)
-            copyBuffer(sendbuf, srcOffset, sendcount, sendtype,
-                       recvbuf, recvoffset, recvcount, recvtype);
-          else 
-            shadow.Send(sendbuf, srcOffset, sendcount, sendtype, dst, 0);
+      int n = Size() ;
+      byte [] [] messages = null ;
+      byte [] bundle = null ;
+      try {
+        if (Rank() == root) {
+          messages = new byte [n] [] ;
+          for (int i = 1 ; i < n ; i++) {
+            int dst = (i + root) % n ;
+            int srcOffset = sendoffset + sendcount * sendtype.Extent() * dst ;
+            messages [i] = ObjectMessage.write(sendbuf, srcOffset, sendcount,
+                                               sendtype) ;
+          }
         }
+        bundle = scatterMessages(messages, root) ;
+        if (Rank() == root)
+          copyBuffer(sendbuf, sendoffset + sendcount * sendtype.Extent() * root,
+                     sendcount, sendtype,
+                     recvbuf, recvoffset, recvcount, recvtype) ;
+        else
+          ObjectMessage.read(bundle, ObjectMessage.BUNDLE, recvbuf,
+                             recvoffset, recvtype) ;
+      }
+      finally {
+        if (messages != null)
+          for (byte [] message : messages)
+            ObjectMessage.release(message) ;
+        ObjectMessage.release(bundle) ;
       }
-      else 
-        shadow.Recv(recvbuf, recvoffset, recvcount, recvtype, root, 0); 
     }
-    else 
-      scatter(sendbuf, sendoffset*sendtype.Size(), sendcount, sendtype, 
-              recvbuf, recvoffset*recvtype.Size(), recvcount, recvtype, 
-              root);
+    else
+      MPI.device.scatter(this, sendbuf, sendoffset, sendcount, sendtype,
+                         recvbuf, recvoffset, recvcount, recvtype, root) ;
   }
 
-  private native void scatter(Object   sendbuf, 
-                              int      sendoffset, 
-                              int      sendcount,
-                              Datatype sendtype, 
-                              Object   recvbuf, 
-                              int      recvoffset, 
-                              int      recvcount,
-                              Datatype recvtype, 
-                              int      root);
+  native void scatter(Object   sendbuf, 
+                      int      sendoffset, 
+                      int      sendcount,
+                      Datatype sendtype, 
+                      Object   recvbuf, 
+                      int      recvoffset, 
+                      int      recvcount,
+                      Datatype recvtype, 
+                      int      root);
 
   /**
    * Inverse of the operation <tt>Gatherv</tt>.
@@ -447,23 +656,22 @@ public class Intracomm extends Comm {
       else 
         shadow.Recv(recvbuf, recvoffset, recvcount, recvtype, root, 0); 
     }
-    else 
-      scatterv(sendbuf, sendoffset * sendtype.Size(), sendcount,
-               displs, sendtype,
-               recvbuf, recvoffset * recvtype.Size(), recvcount, recvtype,
-               root);
+    else
+      MPI.device.scatterv(this, sendbuf, sendoffset, sendcount, displs,
+                          sendtype, recvbuf, recvoffset, recvcount, recvtype,
+                          root) ;
   }
 
-  private native void scatterv(Object   sendbuf, 
-                               int      sendoffset, 
-          	               int []   sendcount,
-                               int []   displs,
-                               Datatype sendtype, 
-                               Object   recvbuf, 
-                               int      recvoffset, 
-                               int      recvcount,
-                               Datatype recvtype, 
-                               int      root);
+  native void scatterv(Object   sendbuf, 
+                       int      sendoffset, 
+  	               int []   sendcount,
+                       int []   displs,
+                       Datatype sendtype, 
+                       Object   recvbuf, 
+                       int      recvoffset, 
+                       int      recvcount,
+                       Datatype recvtype, 
+                       int      root);
 
   /**
    * Similar to <tt>Gather</tt>, but all processes receive the result.
@@ -499,21 +707,19 @@ public class Intracomm extends Comm {
              recvbuf, recvoffset, recvcount, recvtype, 0);
       Bcast(recvbuf, recvoffset, Size() * recvcount, recvtype, 0);
     }
-    else 
-      allgather(sendbuf,   sendoffset*sendtype.Size(), 
-                sendcount, sendtype, 
-                recvbuf,   recvoffset*recvtype.Size(), 
-                recvcount, recvtype);
+    else
+      MPI.device.allgather(this, sendbuf, sendoffset, sendcount, sendtype,
+                           recvbuf, recvoffset, recvcount, recvtype) ;
   }
 
-  private native void allgather(Object   sendbuf, 
-                                int      sendoffset, 
-                                int      sendcount,
-                                Datatype sendtype, 
-                                Object   recvbuf, 
-                                int      recvoffset, 
-                                int      recvcount,
-                                Datatype recvtype);
+  native void allgather(Object   sendbuf, 
+                        int      sendoffset, 
+                        int      sendcount,
+                        Datatype sendtype, 
+                        Object   recvbuf, 
+                        int      recvoffset, 
+                        int      recvcount,
+                        Datatype recvtype);
 
 
   /**
@@ -558,23 +764,21 @@ public class Intracomm extends Comm {
         Bcast(recvbuf, dstOffset, recvcount[src], recvtype, 0);
       }
     }
-    else 
-      allgatherv(sendbuf  , sendoffset*sendtype.Size(), 
-                 sendcount, sendtype, 
-                 recvbuf  , recvoffset*recvtype.Size(), 
-                 recvcount, displs, 
-                 recvtype);
+    else
+      MPI.device.allgatherv(this, sendbuf, sendoffset, sendcount, sendtype,
+                            recvbuf, recvoffset, recvcount, displs,
+                            recvtype) ;
   }
 
-  private native void allgatherv(Object   sendbuf, 
-                                 int      sendoffset, 
-                                 int      sendcount,
-                                 Datatype sendtype, 
-                                 Object   recvbuf, 
-                                 int      recvoffset, 
-                                 int []   recvcount,
-                                 int []   displs, 
-                                 Datatype recvtype);
+  native void allgatherv(Object   sendbuf, 
+                         int      sendoffset, 
+                         int      sendcount,
+                         Datatype sendtype, 
+                         Object   recvbuf, 
+                         int      recvoffset, 
+                         int []   recvcount,
+                         int []   displs, 
+                         Datatype recvtype);
 
   /**
    * Extension of <tt>Allgather</tt> to the case where each process sends
@@ -613,21 +817,19 @@ public class Intracomm extends Comm {
         Gather(sendbuf, srcOffset, sendcount, sendtype, 
                recvbuf, recvoffset, recvcount, recvtype, dst);
       }
-    else 
-      alltoall(sendbuf,   sendoffset*sendtype.Size(), 
-               sendcount, sendtype, 
-               recvbuf,   recvoffset*recvtype.Size(), 
-               recvcount, recvtype);
+    else
+      MPI.device.alltoall(this, sendbuf, sendoffset, sendcount, sendtype,
+                          recvbuf, recvoffset, recvcount, recvtype) ;
   }
 
-  private native void alltoall(Object   sendbuf, 
-                               int      sendoffset, 
-                               int      sendcount,
-                               Datatype sendtype, 
-                               Object   recvbuf, 
-                               int      recvoffset, 
-                               int      recvcount,
-                               Datatype recvtype);
+  native void alltoall(Object   sendbuf, 
+                       int      sendoffset, 
+                       int      sendcount,
+                       Datatype sendtype, 
+                       Object   recvbuf, 
+                       int      recvoffset, 
+                       int      recvcount,
+                       Datatype recvtype);
 
   /**
    * Adds flexibility to <tt>Alltoall</tt>: location of data for send is
@@ -673,23 +875,22 @@ public class Intracomm extends Comm {
         Gatherv(sendbuf, srcOffset, sendcount[dst], sendtype, 
                 recvbuf, recvoffset, recvcount, rdispls, recvtype, dst);
       }
-    else 
-      alltoallv(sendbuf,   sendoffset*sendtype.Size(), 
-                sendcount, sdispls, sendtype, 
-                recvbuf,   recvoffset*recvtype.Size(), 
-                recvcount, rdispls, recvtype);
+    else
+      MPI.device.alltoallv(this, sendbuf, sendoffset, sendcount, sdispls,
+                           sendtype, recvbuf, recvoffset, recvcount, rdispls,
+                           recvtype) ;
   }
 
-  private native void alltoallv(Object   sendbuf, 
-                                int      sendoffset, 
-                                int []   sendcount,
-           	                int []   sdispls,
-                                Datatype sendtype, 
-                                Object   recvbuf, 
-                                int      recvoffset, 
-                                int []   recvcount,
-                                int []   displs, 
-                                Datatype recvtype);
+  native void alltoallv(Object   sendbuf, 
+                        int      sendoffset, 
+                        int []   sendcount,
+   	                int []   sdispls,
+                        Datatype sendtype, 
+                        Object   recvbuf, 
+                        int      recvoffset, 
+                        int []   recvcount,
+                        int []   displs, 
+                        Datatype recvtype);
 
   /**
    * Combine elements in input buffer of each process using the reduce
@@ -722,28 +923,17 @@ public class Intracomm extends Comm {
                      Datatype datatype, Op op, int root) throws MPIException {
 
     if (op.isUser()) {
-      if (Rank() == root) {
-        copyBuffer(sendbuf,sendoffset,count,datatype,
-                   recvbuf,recvoffset,count,datatype);
-
-        Object tempbuf = newBuffer(recvbuf) ;
-        for (int src = 0; src < Size(); src++)
-          if(src != root) {
-            shadow.Recv(tempbuf, 0, count, datatype, src, 0);
-            op.Call(tempbuf, 0, recvbuf, recvoffset, count, datatype);
-          }
-      }
-      else
-        shadow.Send(sendbuf, sendoffset, count, datatype, root, 0);
+      reduceUser(sendbuf, sendoffset, recvbuf, recvoffset, count,
+                 datatype, op, root) ;
     }
     else
-      reduce(sendbuf, sendoffset, recvbuf, recvoffset, count,
-             datatype, op, root) ;
+      MPI.device.reduce(this, sendbuf, sendoffset, recvbuf, recvoffset, count,
+                        datatype, op, root) ;
   }
 
-  private native void reduce(Object sendbuf, int sendoffset, 
-                             Object recvbuf, int recvoffset, int count,
-                             Datatype datatype, Op op, int root);
+  native void reduce(Object sendbuf, int sendoffset, 
+                     Object recvbuf, int recvoffset, int count,
+                     Datatype datatype, Op op, int root);
 
   /**
    * Same as <tt>reduce</tt> except that the result appears in receive
@@ -769,20 +959,73 @@ public class Intracomm extends Comm {
                         Datatype datatype, Op op) throws MPIException {
 
     if (op.isUser()){
-      Reduce(sendbuf, sendoffset,
-             recvbuf, recvoffset, count, datatype, op, 0);
 
-      Bcast(recvbuf, recvoffset, count, datatype, 0);
-    }
-    else {
-      allreduce(sendbuf, sendoffset, recvbuf, recvoffset, count,
-                datatype, op) ;
+      // Recursive doubling over a power of two of the ranks.  Below
+      // 2 * rem, each even rank first folds its values into the odd rank
+      // above it, and gets the result back from it at the end.
+
+      op.check(sendbuf) ;
+
+      int n = Size(), rank = Rank() ;
+      int pof2 = Integer.highestOneBit(n), rem = n - pof2 ;
+
+      int span = datatype.span(count) ;
+      Object acc = pool.take(sendbuf, span) ;
+      Object tmp = pool.take(sendbuf, span) ;
+      try {
+        copyBuffer(sendbuf, sendoffset, count, datatype,
+                   acc, 0, count, datatype) ;
+
+        int me = rank - rem ;
+        if (rank < 2 * rem) {
+          if (rank % 2 == 0) {
+            shadow.Send(acc, 0, count, datatype, rank + 1, 0) ;
+            me = -1 ;
+          }
+          else {
+            shadow.Recv(tmp, 0, count, datatype, rank - 1, 0) ;
+            op.apply(tmp, 0, acc, 0, count, datatype) ;
+            me = rank / 2 ;
+          }
+        }
+
+        if (me >= 0)
+          for (int mask = 1 ; mask < pof2 ; mask <<= 1) {
+            int partner = me ^ mask ;
+            int dst = partner < rem ? partner * 2 + 1 : partner + rem ;
+            shadow.Sendrecv(acc, 0, count, datatype, dst, 0,
+                            tmp, 0, count, datatype, dst, 0) ;
+            if (partner < me)
+              op.apply(tmp, 0, acc, 0, count, datatype) ;
+            else {
+              op.apply(acc, 0, tmp, 0, count, datatype) ;
+              Object t = acc ; acc = tmp ; tmp = t ;
+            }
+          }
+
+        if (rank < 2 * rem) {
+          if (rank % 2 == 0)
+            shadow.Recv(acc, 0, count, datatype, rank + 1, 0) ;
+          else
+            shadow.Send(acc, 0, count, datatype, rank - 1, 0) ;
+        }
+
+        copyBuffer(acc, 0, count, datatype,
+                   recvbuf, recvoffset, count, datatype) ;
+      }
+      finally {
+        pool.release(acc) ;
+        pool.release(tmp) ;
+      }
     }
+    else
+      MPI.device.allreduce(this, sendbuf, sendoffset, recvbuf, recvoffset,
+                           count, datatype, op) ;
   }
 
-  private native void allreduce(Object sendbuf, int sendoffset, 
-                                Object recvbuf, int recvoffset, int count,
-                                Datatype datatype, Op op) ;
+  native void allreduce(Object sendbuf, int sendoffset, 
+                        Object recvbuf, int recvoffset, int count,
+                        Datatype datatype, Op op) ;
 
   /**
    * Combine elements in input buffer of each process using the reduce
@@ -817,24 +1060,25 @@ public class Intracomm extends Comm {
         count += recvcounts [i] ;
       }
 
-      Object tempbuf = newBuffer(sendbuf) ;
-      copyBuffer(sendbuf,sendoffset,count,datatype,
-                 tempbuf,sendoffset,count,datatype);
+      Object tempbuf = pool.take(sendbuf, datatype.span(count)) ;
+      try {
+        Reduce(sendbuf, sendoffset, tempbuf, 0, count, datatype, op, 0);
 
-      Reduce(tempbuf, sendoffset, sendbuf, sendoffset, count,
-             datatype, op, 0);
-      
-      Scatterv(tempbuf, sendoffset, recvcounts, displs, datatype, 
-               recvbuf, recvoffset, recvcounts[Rank()], datatype, 0);
+        Scatterv(tempbuf, 0, recvcounts, displs, datatype,
+                 recvbuf, recvoffset, recvcounts[Rank()], datatype, 0);
+      }
+      finally {
+        pool.release(tempbuf) ;
+      }
     }
-    else 
-      reduce_scatter(sendbuf, sendoffset, recvbuf, recvoffset, recvcounts, 
-	             datatype, op) ;
+    else
+      MPI.device.reduceScatter(this, sendbuf, sendoffset, recvbuf, recvoffset,
+                               recvcounts, datatype, op) ;
   }
 
-  private native void reduce_scatter(Object sendbuf, int sendoffset, 
-                                     Object recvbuf, int recvoffset,
-                                     int [] recvcounts, 
+  native void reduce_scatter(Object sendbuf, int sendoffset, 
+                             Object recvbuf, int recvoffset,
+                             int [] recvcounts, 
 	                             Datatype datatype, Op op) ;
 
   /**
@@ -861,24 +1105,53 @@ public class Intracomm extends Comm {
                    Datatype datatype, Op op) throws MPIException {
 
     if (op.isUser()){
-      if (Rank() == 0)
-        copyBuffer(sendbuf,sendoffset,count,datatype,
-                        recvbuf,recvoffset,count,datatype);
-      else{
-        shadow.Recv(recvbuf, recvoffset, count, datatype, Rank() - 1, 0);
 
-        op.Call(sendbuf, sendoffset, recvbuf, recvoffset, count, datatype);
+      // Recursive doubling: `partial' holds the values of a block of
+      // ranks around this one that doubles each round, and recvbuf those
+      // of the part of it up to this rank.
+
+      op.check(sendbuf) ;
+
+      int n = Size(), me = Rank() ;
+
+      int span = datatype.span(count) ;
+      Object partial = pool.take(sendbuf, span) ;
+      Object tmp = pool.take(sendbuf, span) ;
+      try {
+        copyBuffer(sendbuf, sendoffset, count, datatype,
+                   partial, 0, count, datatype) ;
+        copyBuffer(sendbuf, sendoffset, count, datatype,
+                   recvbuf, recvoffset, count, datatype) ;
+
+        for (int mask = 1 ; mask < n ; mask <<= 1) {
+          int dst = me ^ mask ;
+          if (dst < n) {
+            shadow.Sendrecv(partial, 0, count, datatype, dst, 0,
+                            tmp, 0, count, datatype, dst, 0) ;
+            if (dst < me) {
+              op.apply(tmp, 0, recvbuf, recvoffset, count, datatype) ;
+              op.apply(tmp, 0, partial, 0, count, datatype) ;
+            }
+            else {
+              op.apply(partial, 0, tmp, 0, count, datatype) ;
+              Object t = partial ; partial = tmp ; tmp = t ;
+            }
+          }
+        }
+      }
+      finally {
+        pool.release(partial) ;
+        pool.release(tmp) ;
       }
-      if (Rank() < Size() - 1) 
-        shadow.Send(recvbuf, recvoffset, count, datatype, Rank() + 1, 0);
     }
     else
-      scan(sendbuf, sendoffset, recvbuf, recvoffset, count, datatype, op);
+      MPI.device.scan(this, sendbuf, sendoffset, recvbuf, recvoffset, count,
+                      datatype, op) ;
   }
 
-  private native void scan(Object sendbuf, int sendoffset, 
-                           Object recvbuf, int recvoffset, int count,
-                           Datatype datatype, Op op) ;
+  native void scan(Object sendbuf, int sendoffset, 
+                   Object recvbuf, int recvoffset, int count,
+                   Datatype datatype, Op op) ;
 
   // Topology Constructors
 
@@ -907,15 +1180,11 @@ public class Intracomm extends Comm {
 
   public Cartcomm Create_cart(int [] dims, boolean [] periods, 
 	                      boolean reorder) throws MPIException {
-    long cartHandle = GetCart(dims, periods, reorder) ;
-    if(cartHandle == nullHandle)
-      return null ;
-    else
-      return new Cartcomm(cartHandle) ;
+    return MPI.device.createCart(this, dims, periods, reorder) ;
   }
 
-  private native long GetCart(int [] dims, boolean [] periods,
-                              boolean reorder) ;
+  native long GetCart(int [] dims, boolean [] periods,
+                      boolean reorder) ;
 
   /**
    * Create a graph topology communicator whose group is a subset
@@ -938,14 +1207,10 @@ public class Intracomm extends Comm {
 
   public Graphcomm Create_graph(int [] index, int [] edges, boolean reorder)
                                                          throws MPIException {
-    long graphHandle = GetGraph(index,edges,reorder) ;
-    if(graphHandle == nullHandle)
-      return null ;
-    else
-      return new Graphcomm(graphHandle) ;
+    return MPI.device.createGraph(this, index, edges, reorder) ;
   }
 
-  private native long GetGraph(int [] index,int [] edges, boolean reorder);
+  native long GetGraph(int [] index,int [] edges, boolean reorder);
 
   private Comm shadow ;  // Used by non-native collectives.
 }
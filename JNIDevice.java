@@ -0,0 +1,633 @@
+/*
+ * File         : JNIDevice.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * The device of the native library: every call goes to the native
+ * method of the binding class that used to make it, on the object's
+ * handle.  Offsets of collectives are passed to the library in basic
+ * elements, as it counts them.
+ */
+
+package mpi;
+
+class JNIDevice implements Device {
+
+  JNIDevice() {
+    System.loadLibrary("savesignals");
+          // Actually only needed for JVMs that don't provide
+          // JDK 1.4-like signal chaining, but doesn't do any harm.
+
+    MPI.saveSignalHandlers();
+
+    System.loadLibrary("mpijava");
+    System.loadLibrary("mpijavanatives");
+          // Entry points for the natives renamed to make way for the
+          // public bindings; see natives.c.
+
+    MPI.restoreSignalHandlers();
+          // On SP2, JVM signal handlers overridden during loadLibrary().
+  }
+
+  public boolean nativeHandles() {
+    return true ;
+  }
+
+
+  // Environment
+
+  public void setConstants() {
+    MPI.SetConstant() ;
+  }
+
+  public String [] init(String [] args) {
+    String [] newArgs = MPI.InitNative(args) ;
+
+    MPI.restoreSignalHandlers();
+          // On MPICH, etc, JVM signal handlers overridden during MPI_Init().
+
+    return newArgs ;
+  }
+
+  public boolean initialized() throws MPIException {
+    return MPI.InitializedNative() ;
+  }
+
+  public void finish() throws MPIException {
+    MPI.FinalizeNative() ;
+  }
+
+  public double wtime() {
+    return MPI.WtimeNative() ;
+  }
+
+  public double wtick() {
+    return MPI.WtickNative() ;
+  }
+
+  public String processorName() {
+    byte [] buf = new byte [MPI.MAX_PROCESSOR_NAME] ;
+    int length = MPI.Get_processor_name(buf) ;
+    return new String(buf, 0, length) ;
+  }
+
+  public void bufferAttach(byte [] buffer) {
+    MPI.Buffer_attach_native(buffer) ;
+  }
+
+  public void bufferDetach(byte [] buffer) {
+    MPI.Buffer_detach_native(buffer) ;
+  }
+
+  public void abort(Comm comm, int errorcode) throws MPIException {
+    comm.AbortNative(errorcode) ;
+  }
+
+  public int attrGet(Comm comm, int keyval) throws MPIException {
+    return comm.Attr_getNative(keyval) ;
+  }
+
+  public void newErrhandler(Errhandler errhandler, int type) {
+    errhandler.GetErrhandler(type) ;
+  }
+
+  public void errhandlerSet(Comm comm, Errhandler errhandler)
+                                                      throws MPIException {
+    comm.Errhandler_setNative(errhandler) ;
+  }
+
+  public Errhandler errhandlerGet(Comm comm) {
+    return new Errhandler(comm.errorhandler_get()) ;
+  }
+
+
+  // Point-to-point
+
+  public void send(Comm comm, int mode, Object buf, int offset, int count,
+                   Datatype type, int dest, int tag) throws MPIException {
+    switch (mode) {
+      case Prequest.MODE_BUFFERED :
+        comm.bsend(buf, offset, count, type, dest, tag) ;
+        break ;
+      case Prequest.MODE_SYNCHRONOUS :
+        comm.ssend(buf, offset, count, type, dest, tag) ;
+        break ;
+      case Prequest.MODE_READY :
+        comm.rsend(buf, offset, count, type, dest, tag) ;
+        break ;
+      default :
+        comm.send(buf, offset, count, type, dest, tag) ;
+    }
+  }
+
+  public Status recv(Comm comm, Object buf, int offset, int count,
+                     Datatype type, int source, int tag, Status status) {
+    return comm.Recv(buf, offset, count, type, source, tag, status) ;
+  }
+
+  public Status sendrecv(Comm comm,
+                         Object sbuf, int soffset, int scount,
+                         Datatype stype, int dest, int stag,
+                         Object rbuf, int roffset, int rcount,
+                         Datatype rtype, int source, int rtag,
+                         Status status) {
+    return comm.Sendrecv(sbuf, soffset, scount, stype, dest, stag,
+                         rbuf, roffset, rcount, rtype, source, rtag,
+                         status) ;
+  }
+
+  public Status sendrecvReplace(Comm comm, Object buf, int offset,
+                                int count, Datatype type, int dest,
+                                int stag, int source, int rtag,
+                                Status status) {
+    return comm.Sendrecv_replace(buf, offset, count, type, dest, stag,
+                                 source, rtag, status) ;
+  }
+
+  public Request isend(Comm comm, int mode, Object buf, int offset,
+                       int count, Datatype type, int dest, int tag,
+                       Request req) {
+    switch (mode) {
+      case Prequest.MODE_BUFFERED :
+        return comm.Ibsend(buf, offset, count, type, dest, tag, req) ;
+      case Prequest.MODE_SYNCHRONOUS :
+        return comm.Issend(buf, offset, count, type, dest, tag, req) ;
+      case Prequest.MODE_READY :
+        return comm.Irsend(buf, offset, count, type, dest, tag, req) ;
+      default :
+        return comm.Isend(buf, offset, count, type, dest, tag, req) ;
+    }
+  }
+
+  public Request irecv(Comm comm, Object buf, int offset, int count,
+                       Datatype type, int source, int tag, Request req) {
+    return comm.Irecv(buf, offset, count, type, source, tag, req) ;
+  }
+
+  public Status iprobe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException {
+    return comm.Iprobe(source, tag, status) ;
+  }
+
+  public Status probe(Comm comm, int source, int tag, Status status)
+                                                      throws MPIException {
+    return comm.Probe(source, tag, status) ;
+  }
+
+  public int pack(Comm comm, Object inbuf, int offset, int incount,
+                  Datatype type, byte [] outbuf, int position) {
+    return comm.pack(inbuf, offset, incount, type, outbuf, position) ;
+  }
+
+  public int unpack(Comm comm, byte [] inbuf, int position, Object outbuf,
+                    int offset, int outcount, Datatype type) {
+    return comm.unpack(inbuf, position, outbuf, offset, outcount, type) ;
+  }
+
+  public int packSize(Comm comm, int incount, Datatype type)
+                                                      throws MPIException {
+    return comm.Pack_sizeNative(incount, type) ;
+  }
+
+
+  // Progress
+
+  public void newRequest(Request req, int type) {
+    req.GetReq(type) ;
+  }
+
+  public boolean isNull(Request req) {
+    return req.Is_nullNative() ;
+  }
+
+  public void free(Request req) throws MPIException {
+    req.FreeNative() ;
+  }
+
+  public void cancel(Request req) throws MPIException {
+    req.CancelNative() ;
+  }
+
+  public Status wait(Request req, Status status) {
+    return req.Wait(status) ;
+  }
+
+  public Status test(Request req, Status status) {
+    return req.Test(status) ;
+  }
+
+  public Status waitany(Request [] reqs, Status status) {
+    return Request.Waitany(reqs, status) ;
+  }
+
+  public Status testany(Request [] reqs, Status status) {
+    return Request.Testany(reqs, status) ;
+  }
+
+  public Status [] waitall(Request [] reqs) {
+    return Request.waitall(reqs) ;
+  }
+
+  public Status [] testall(Request [] reqs) {
+    return Request.testall(reqs) ;
+  }
+
+  public Status [] waitsome(Request [] reqs) {
+    return Request.waitsome(reqs) ;
+  }
+
+  public Status [] testsome(Request [] reqs) {
+    return Request.testsome(reqs) ;
+  }
+
+  public void newStatus(Status status) {
+    status.alloc() ;
+  }
+
+  public int getCount(Status status, Datatype type) {
+    return status.get_count(type) ;
+  }
+
+  public int getElements(Status status, Datatype type) {
+    return status.get_elements(type) ;
+  }
+
+  public boolean testCancelled(Status status) throws MPIException {
+    return status.Test_cancelledNative() ;
+  }
+
+
+  // Collectives
+
+  public void barrier(Intracomm comm) throws MPIException {
+    comm.BarrierNative() ;
+  }
+
+  public void bcast(Intracomm comm, Object buf, int offset, int count,
+                    Datatype type, int root) throws MPIException {
+    comm.bcast(buf, offset * type.Size(), count, type, root) ;
+  }
+
+  public void gather(Intracomm comm,
+                     Object sendbuf, int sendoffset, int sendcount,
+                     Datatype sendtype,
+                     Object recvbuf, int recvoffset, int recvcount,
+                     Datatype recvtype, int root) throws MPIException {
+    comm.gather(sendbuf, sendoffset * sendtype.Size(), sendcount, sendtype,
+                recvbuf, recvoffset * recvtype.Size(), recvcount, recvtype,
+                root) ;
+  }
+
+  public void gatherv(Intracomm comm,
+                      Object sendbuf, int sendoffset, int sendcount,
+                      Datatype sendtype,
+                      Object recvbuf, int recvoffset, int [] recvcount,
+                      int [] displs, Datatype recvtype, int root)
+                                                      throws MPIException {
+    comm.gatherv(sendbuf, sendoffset * sendtype.Size(), sendcount, sendtype,
+                 recvbuf, recvoffset * recvtype.Size(), recvcount, displs,
+                 recvtype, root) ;
+  }
+
+  public void scatter(Intracomm comm,
+                      Object sendbuf, int sendoffset, int sendcount,
+                      Datatype sendtype,
+                      Object recvbuf, int recvoffset, int recvcount,
+                      Datatype recvtype, int root) throws MPIException {
+    comm.scatter(sendbuf, sendoffset * sendtype.Size(), sendcount, sendtype,
+                 recvbuf, recvoffset * recvtype.Size(), recvcount, recvtype,
+                 root) ;
+  }
+
+  public void scatterv(Intracomm comm,
+                       Object sendbuf, int sendoffset, int [] sendcount,
+                       int [] displs, Datatype sendtype,
+                       Object recvbuf, int recvoffset, int recvcount,
+                       Datatype recvtype, int root) throws MPIException {
+    comm.scatterv(sendbuf, sendoffset * sendtype.Size(), sendcount, displs,
+                  sendtype, recvbuf, recvoffset * recvtype.Size(), recvcount,
+                  recvtype, root) ;
+  }
+
+  public void allgather(Intracomm comm,
+                        Object sendbuf, int sendoffset, int sendcount,
+                        Datatype sendtype,
+                        Object recvbuf, int recvoffset, int recvcount,
+                        Datatype recvtype) throws MPIException {
+    comm.allgather(sendbuf, sendoffset * sendtype.Size(), sendcount,
+                   sendtype, recvbuf, recvoffset * recvtype.Size(),
+                   recvcount, recvtype) ;
+  }
+
+  public void allgatherv(Intracomm comm,
+                         Object sendbuf, int sendoffset, int sendcount,
+                         Datatype sendtype,
+                         Object recvbuf, int recvoffset, int [] recvcount,
+                         int [] displs, Datatype recvtype)
+                                                      throws MPIException {
+    comm.allgatherv(sendbuf, sendoffset * sendtype.Size(), sendcount,
+                    sendtype, recvbuf, recvoffset * recvtype.Size(),
+                    recvcount, displs, recvtype) ;
+  }
+
+  public void alltoall(Intracomm comm,
+                       Object sendbuf, int sendoffset, int sendcount,
+                       Datatype sendtype,
+                       Object recvbuf, int recvoffset, int recvcount,
+                       Datatype recvtype) throws MPIException {
+    comm.alltoall(sendbuf, sendoffset * sendtype.Size(), sendcount,
+                  sendtype, recvbuf, recvoffset * recvtype.Size(),
+                  recvcount, recvtype) ;
+  }
+
+  public void alltoallv(Intracomm comm,
+                        Object sendbuf, int sendoffset, int [] sendcount,
+                        int [] sdispls, Datatype sendtype,
+                        Object recvbuf, int recvoffset, int [] recvcount,
+                        int [] rdispls, Datatype recvtype)
+                                                      throws MPIException {
+    comm.alltoallv(sendbuf, sendoffset * sendtype.Size(), sendcount,
+                   sdispls, sendtype, recvbuf, recvoffset * recvtype.Size(),
+                   recvcount, rdispls, recvtype) ;
+  }
+
+  public void reduce(Intracomm comm, Object sendbuf, int sendoffset,
+                     Object recvbuf, int recvoffset, int count,
+                     Datatype type, Op op, int root) {
+    comm.reduce(sendbuf, sendoffset, recvbuf, recvoffset, count, type, op,
+                root) ;
+  }
+
+  public void allreduce(Intracomm comm, Object sendbuf, int sendoffset,
+                        Object recvbuf, int recvoffset, int count,
+                        Datatype type, Op op) {
+    comm.allreduce(sendbuf, sendoffset, recvbuf, recvoffset, count, type,
+                   op) ;
+  }
+
+  public void reduceScatter(Intracomm comm, Object sendbuf, int sendoffset,
+                            Object recvbuf, int recvoffset,
+                            int [] recvcounts, Datatype type, Op op) {
+    comm.reduce_scatter(sendbuf, sendoffset, recvbuf, recvoffset,
+                        recvcounts, type, op) ;
+  }
+
+  public void scan(Intracomm comm, Object sendbuf, int sendoffset,
+                   Object recvbuf, int recvoffset, int count,
+                   Datatype type, Op op) {
+    comm.scan(sendbuf, sendoffset, recvbuf, recvoffset, count, type, op) ;
+  }
+
+  public void newOp(Op op, int type) {
+    op.GetOp(type) ;
+  }
+
+
+  // Datatypes
+
+  public void typeBasic(Datatype type, int basic) {
+    type.GetDatatype(basic) ;
+    type.baseSize = type.size() ;
+  }
+
+  public void typeContiguous(Datatype type, int count, Datatype oldtype) {
+    type.GetContiguous(count, oldtype) ;
+  }
+
+  public void typeVector(Datatype type, int count, int blocklength,
+                         int stride, Datatype oldtype,
+                         boolean unitsOfOldExtent) {
+    if (unitsOfOldExtent)
+      type.GetVector(count, blocklength, stride, oldtype) ;
+    else
+      type.GetHvector(count, blocklength, stride, oldtype) ;
+  }
+
+  public void typeIndexed(Datatype type, int [] blocklengths,
+                          int [] displacements, Datatype oldtype,
+                          boolean unitsOfOldExtent) {
+    if (unitsOfOldExtent)
+      type.GetIndexed(blocklengths, displacements, oldtype) ;
+    else
+      type.GetHindexed(blocklengths, displacements, oldtype) ;
+  }
+
+  public void typeStruct(Datatype type, int [] blocklengths,
+                         int [] displacements, Datatype [] types,
+                         boolean lbSet, int lb, boolean ubSet, int ub) {
+    type.GetStruct(blocklengths, displacements, types, lbSet, lb, ubSet, ub) ;
+  }
+
+  public int typeExtent(Datatype type) {
+    return type.extent() ;
+  }
+
+  public int typeSize(Datatype type) {
+    return type.size() ;
+  }
+
+  public int typeLb(Datatype type) {
+    return type.lB() ;
+  }
+
+  public int typeUb(Datatype type) {
+    return type.uB() ;
+  }
+
+  public void typeCommit(Datatype type) {
+    type.commit() ;
+  }
+
+
+  // Communicators
+
+  public void setType(Comm comm, int type) {
+    comm.GetComm(type) ;
+  }
+
+  public Comm shadow(Intracomm comm) {
+    return new Comm(comm.dup()) ;
+  }
+
+  public Comm dup(Comm comm) throws MPIException {
+    if (comm instanceof Intercomm)
+      return new Intercomm(comm.dup()) ;
+    if (comm instanceof Cartcomm)
+      return new Cartcomm(comm.dup()) ;
+    if (comm instanceof Graphcomm)
+      return new Graphcomm(comm.dup()) ;
+    if (comm instanceof Intracomm)
+      return new Intracomm(comm.dup()) ;
+    return new Comm(comm.dup()) ;
+  }
+
+  public void free(Comm comm) throws MPIException {
+    comm.FreeNative() ;
+  }
+
+  public boolean isNull(Comm comm) {
+    return comm.Is_nullNative() ;
+  }
+
+  public int size(Comm comm) throws MPIException {
+    return comm.SizeNative() ;
+  }
+
+  public int rank(Comm comm) throws MPIException {
+    return comm.RankNative() ;
+  }
+
+  public int compare(Comm comm1, Comm comm2) throws MPIException {
+    return Comm.CompareNative(comm1, comm2) ;
+  }
+
+  public Group group(Comm comm) {
+    return new Group(comm.group()) ;
+  }
+
+  public boolean testInter(Comm comm) throws MPIException {
+    return comm.Test_interNative() ;
+  }
+
+  public int topoTest(Comm comm) throws MPIException {
+    return comm.Topo_testNative() ;
+  }
+
+  public Intracomm split(Intracomm comm, int colour, int key)
+                                                      throws MPIException {
+    long handle = comm.split(colour, key) ;
+    return handle == Comm.nullHandle ? null : new Intracomm(handle) ;
+  }
+
+  public Intracomm creat(Intracomm comm, Group group) throws MPIException {
+    long handle = comm.creat(group) ;
+    return handle == Comm.nullHandle ? null : new Intracomm(handle) ;
+  }
+
+  public Intercomm createIntercomm(Comm peer, Comm local, int localLeader,
+                                   int remoteLeader, int tag) {
+    return new Intercomm(peer.GetIntercomm(local, localLeader, remoteLeader,
+                                           tag)) ;
+  }
+
+  public int remoteSize(Intercomm comm) throws MPIException {
+    return comm.Remote_sizeNative() ;
+  }
+
+  public Group remoteGroup(Intercomm comm) {
+    return new Group(comm.remote_group()) ;
+  }
+
+  public Intracomm merge(Intercomm comm, boolean high) throws MPIException {
+    return new Intracomm(comm.merge(high)) ;
+  }
+
+  public Cartcomm createCart(Intracomm comm, int [] dims, boolean [] periods,
+                             boolean reorder) throws MPIException {
+    long handle = comm.GetCart(dims, periods, reorder) ;
+    return handle == Comm.nullHandle ? null : new Cartcomm(handle) ;
+  }
+
+  public Graphcomm createGraph(Intracomm comm, int [] index, int [] edges,
+                               boolean reorder) throws MPIException {
+    long handle = comm.GetGraph(index, edges, reorder) ;
+    return handle == Comm.nullHandle ? null : new Graphcomm(handle) ;
+  }
+
+  public CartParms cartGet(Cartcomm comm) throws MPIException {
+    return comm.GetNative() ;
+  }
+
+  public int cartRank(Cartcomm comm, int [] coords) throws MPIException {
+    return comm.RankNative(coords) ;
+  }
+
+  public int [] cartCoords(Cartcomm comm, int rank) throws MPIException {
+    return comm.CoordsNative(rank) ;
+  }
+
+  public ShiftParms cartShift(Cartcomm comm, int direction, int disp)
+                                                      throws MPIException {
+    return comm.ShiftNative(direction, disp) ;
+  }
+
+  public Cartcomm cartSub(Cartcomm comm, boolean [] remain)
+                                                      throws MPIException {
+    return new Cartcomm(comm.sub(remain)) ;
+  }
+
+  public int cartMap(Cartcomm comm, int [] dims, boolean [] periods)
+                                                      throws MPIException {
+    return comm.MapNative(dims, periods) ;
+  }
+
+  public void dimsCreate(int nnodes, int [] dims) throws MPIException {
+    Cartcomm.Dims_createNative(nnodes, dims) ;
+  }
+
+  public GraphParms graphGet(Graphcomm comm) throws MPIException {
+    return comm.GetNative() ;
+  }
+
+  public int [] neighbours(Graphcomm comm, int rank) throws MPIException {
+    return comm.NeighboursNative(rank) ;
+  }
+
+  public int graphMap(Graphcomm comm, int [] index, int [] edges)
+                                                      throws MPIException {
+    return comm.MapNative(index, edges) ;
+  }
+
+
+  // Groups
+
+  public void newGroup(Group group, int type) {
+    group.GetGroup(type) ;
+  }
+
+  public int groupSize(Group group) throws MPIException {
+    return group.SizeNative() ;
+  }
+
+  public int groupRank(Group group) throws MPIException {
+    return group.RankNative() ;
+  }
+
+  public int [] translateRanks(Group group1, int [] ranks1, Group group2)
+                                                      throws MPIException {
+    return Group.Translate_ranksNative(group1, ranks1, group2) ;
+  }
+
+  public int groupCompare(Group group1, Group group2) throws MPIException {
+    return Group.CompareNative(group1, group2) ;
+  }
+
+  public Group union(Group group1, Group group2) {
+    return new Group(Group.union(group1, group2)) ;
+  }
+
+  public Group intersection(Group group1, Group group2) {
+    return new Group(Group.intersection(group1, group2)) ;
+  }
+
+  public Group difference(Group group1, Group group2) {
+    return new Group(Group.difference(group1, group2)) ;
+  }
+
+  public Group incl(Group group, int [] ranks) {
+    return new Group(group.incl(ranks)) ;
+  }
+
+  public Group excl(Group group, int [] ranks) {
+    return new Group(group.excl(ranks)) ;
+  }
+
+  public Group rangeIncl(Group group, int [][] ranges) {
+    return new Group(group.range_incl(ranges)) ;
+  }
+
+  public Group rangeExcl(Group group, int [][] ranges) {
+    return new Group(group.range_excl(ranges)) ;
+  }
+}
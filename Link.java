@@ -0,0 +1,297 @@
+/*
+ * File         : Link.java
+ * Created      : Sun Oct 18 2026
+ */
+
+/*
+ * What the transports between rank processes have in common: the
+ * header of a frame, the pool of buffers that messages are encoded
+ * into, and decoding a message into its receive.  The thread of a link
+ * is its progress thread, which moves frames while the ranks compute.
+ */
+
+package mpi;
+
+import java.nio.ByteBuffer ;
+import java.nio.ByteOrder ;
+import java.util.ArrayDeque ;
+import java.util.ArrayList ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+abstract class Link extends Thread {
+
+  // Header of a frame: frame kind, context, source, tag, element type,
+  // elements, id of a send that waits for its match, and one unused int.
+
+  final static int HEADER = 32 ;
+
+  final static int DATA = 0 ;           // a message and its elements
+  final static int ACK  = 1 ;           // a message with an id was matched
+
+  final int home ;                      // rank of this process
+  final Pool pool = new Pool() ;
+  Engine engine ;
+
+  // Sends that wait for something from the rank they went to, by id.
+
+  private final AtomicInteger lastId = new AtomicInteger() ;
+  final ConcurrentHashMap<Integer, Engine.Transfer> unmatched =
+                          new ConcurrentHashMap<Integer, Engine.Transfer>() ;
+
+  Link(int home) {
+    super("mpi progress") ;
+    setDaemon(true) ;
+    this.home = home ;
+  }
+
+  void start(Engine engine) {
+    this.engine = engine ;
+    start() ;
+  }
+
+  /*
+   * Starts a send to another process.  The link completes it.
+   */
+
+  abstract void send(Engine.Transfer t) throws MPIException ;
+
+  /*
+   * Tells rank `rank' that its message with this id was matched.
+   */
+
+  abstract void acknowledge(int rank, int id) throws MPIException ;
+
+  /*
+   * Waits until everything sent has left this process.
+   */
+
+  abstract void drain() throws MPIException ;
+
+  /*
+   * A link that can be polled lets a rank that waits move messages
+   * itself for a while before it sleeps.
+   */
+
+  boolean pollable() {
+    return false ;
+  }
+
+  /*
+   * Moves what can be moved without waiting, and returns true if
+   * anything did.
+   */
+
+  boolean poll() {
+    return false ;
+  }
+
+  /*
+   * Passes the time between polls that moved nothing, `round' being how
+   * many there have been.
+   */
+
+  void idle(int round) {
+    Thread.yield() ;
+  }
+
+  int register(Engine.Transfer t) {
+    int id = lastId.incrementAndGet() ;
+    unmatched.put(id, t) ;
+    return id ;
+  }
+
+  ByteBuffer header(int frame, int context, int source, int tag, int kind,
+                    int elements, int id) {
+    ByteBuffer h = pool.take(HEADER) ;
+    h.putInt(frame).putInt(context).putInt(source).putInt(tag)
+     .putInt(kind).putInt(elements).putInt(id).putInt(0) ;
+    h.flip() ;
+    return h ;
+  }
+
+  /*
+   * A message from rank `origin' as the engine queues it, from its
+   * header.
+   */
+
+  Engine.Transfer arrival(ByteBuffer h, int origin) {
+    Engine.Transfer t = new Engine.Transfer() ;
+    t.send        = true ;
+    t.copied      = true ;
+    t.remote      = true ;
+    t.destination = home ;
+    t.origin      = origin ;
+    t.context     = h.getInt(4) ;
+    t.source      = h.getInt(8) ;
+    t.tag         = h.getInt(12) ;
+    t.kind        = h.getInt(16) ;
+    t.count       = h.getInt(20) ;
+    t.id          = h.getInt(24) ;
+    return t ;
+  }
+
+  /*
+   * Encodes the elements of a send into a pooled buffer.
+   */
+
+  ByteBuffer encode(Engine.Transfer t, int elements) throws MPIException {
+    ByteBuffer payload = pool.take(elements * Engine.sizeOf(t.buf)) ;
+    try {
+      runs(t.buf, t.offset, t.type, elements, payload, true) ;
+      return payload ;
+    }
+    catch (IndexOutOfBoundsException e) {
+      pool.release(payload) ;
+      throw new MPIException("Buffer too short: " + e.getMessage()) ;
+    }
+    catch (MPIException e) {
+      pool.release(payload) ;
+      throw e ;
+    }
+  }
+
+  /*
+   * Decodes the elements of a message that came from another process
+   * into its receive, gives the buffer back to the pool, and tells the
+   * sender if it waits for the match.  Returns false if the receive
+   * is left for the link to complete.
+   */
+
+  boolean receive(Engine.Transfer send, Engine.Transfer recv)
+                                                      throws MPIException {
+    ByteBuffer payload = (ByteBuffer) send.buf ;
+    try {
+      check(send, recv) ;
+      runs(recv.buf, recv.offset, recv.type, send.count, payload, false) ;
+      recv.elements = send.count ;
+      return true ;
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new MPIException("Buffer too short: " + e.getMessage()) ;
+    }
+    finally {
+      pool.release(payload) ;
+      if (send.id != 0)
+        acknowledge(send.origin, send.id) ;
+    }
+  }
+
+  static void check(Engine.Transfer send, Engine.Transfer recv)
+                                                      throws MPIException {
+    if (kindOf(recv.buf) != send.kind)
+      throw new MPIException("Buffers of different types") ;
+    if (send.count > recv.count * Engine.size(recv.type))
+      throw new MPIException("Message truncated: " + send.count +
+                             " elements for room for " +
+                             recv.count * Engine.size(recv.type)) ;
+  }
+
+
+  // Encoding
+
+  /*
+   * Encodes the first `elements' basic elements of items of type at
+   * offset in array into buffer, or decodes them from it, a run of
+   * elements contiguous in the array at a time.
+   */
+
+  static void runs(Object array, int offset, Datatype type, int elements,
+                   ByteBuffer buffer, boolean encode) throws MPIException {
+    if (Engine.contiguous(type)) {
+      buffer.position(0) ;
+      if (encode)
+        Engine.encode(array, offset, elements, buffer) ;
+      else
+        Engine.decode(buffer, array, offset, elements) ;
+      return ;
+    }
+
+    int unit = Engine.sizeOf(array), extent = type.Extent() ;
+    int i = 0 ;
+    while (i < elements) {
+      int at  = Engine.position(type, extent, offset, i) ;
+      int run = 1 ;
+      while (i + run < elements &&
+             Engine.position(type, extent, offset, i + run) == at + run)
+        run++ ;
+      buffer.position(i * unit) ;
+      if (encode)
+        Engine.encode(array, at, run, buffer) ;
+      else
+        Engine.decode(buffer, array, at, run) ;
+      i += run ;
+    }
+    buffer.position(0) ;
+  }
+
+  static int kindOf(Object array) throws MPIException {
+    if (array instanceof byte [])    return 0 ;
+    if (array instanceof char [])    return 1 ;
+    if (array instanceof short [])   return 2 ;
+    if (array instanceof boolean []) return 3 ;
+    if (array instanceof int [])     return 4 ;
+    if (array instanceof long [])    return 5 ;
+    if (array instanceof float [])   return 6 ;
+    if (array instanceof double [])  return 7 ;
+    throw new MPIException("Cannot send " + array.getClass() +
+                           " to another process") ;
+  }
+
+  static int unit(int kind) {
+    switch (kind) {
+      case 1 : case 2 : return 2 ;
+      case 4 : case 6 : return 4 ;
+      case 5 : case 7 : return 8 ;
+    }
+    return 1 ;
+  }
+
+  /*
+   * Direct buffers kept for reuse, in classes of powers of two bytes,
+   * at most KEEP of each.  Buffers are in native order, since every rank
+   * is on the same host.
+   */
+
+  static class Pool {
+    private final static int KEEP = 8 ;
+    private final ArrayList<ArrayDeque<ByteBuffer>> free =
+                                     new ArrayList<ArrayDeque<ByteBuffer>>() ;
+
+    Pool() {
+      for (int c = 0 ; c < 32 ; c++)
+        free.add(new ArrayDeque<ByteBuffer>()) ;
+    }
+
+    private static int classOf(int bytes) {
+      return 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 32) - 1) ;
+    }
+
+    /*
+     * A buffer whose limit is `bytes'.  Its capacity is a multiple of 8
+     * of at least `bytes'.
+     */
+
+    ByteBuffer take(int bytes) {
+      int c = classOf(bytes) ;
+      ByteBuffer b ;
+      synchronized (this) {
+        b = free.get(c).poll() ;
+      }
+      if (b == null)
+        b = ByteBuffer.allocateDirect(1 << c).order(ByteOrder.nativeOrder()) ;
+      b.clear() ;
+      b.limit(bytes) ;
+      return b ;
+    }
+
+    void release(ByteBuffer b) {
+      ArrayDeque<ByteBuffer> list =
+          free.get(Integer.numberOfTrailingZeros(b.capacity())) ;
+      synchronized (this) {
+        if (list.size() < KEEP)
+          list.add(b) ;
+      }
+    }
+  }
+}
@@ -41,20 +41,21 @@ public class MPI {
 
   static Errhandler ERRORS_ARE_FATAL, ERRORS_RETURN;
 
-  static {
-   
-      System.loadLibrary("savesignals");
-            // Actually only needed for JVMs that don't provide
-            // JDK 1.4-like signal chaining, but doesn't do any harm.
+  // What the bindings pass their calls to, chosen by `select'.
 
-      saveSignalHandlers();
-      
-      System.loadLibrary("mpijava");
+  static Device device ;
 
-      restoreSignalHandlers();
-            // On SP2, JVM signal handlers overridden during loadLibrary().
+  // What writes and reads the items of `OBJECT' buffers, chosen by
+  // `serializer'.
 
+  static Serializer serializer ;
+
+  static {
+   
     try {
+      device = select() ;
+      serializer = serializer() ;
+
       BYTE    = new Datatype();
       CHAR    = new Datatype();
       SHORT   = new Datatype();
@@ -92,7 +93,7 @@ public class MPI {
       REQUEST_NULL = new Request(Request.NULL);
       
       // Constant
-      SetConstant(); 
+      device.setConstants() ;
 
       ERRORS_ARE_FATAL = new Errhandler(Errhandler.FATAL);
       ERRORS_RETURN    = new Errhandler(Errhandler.RETURN);       
@@ -105,8 +106,74 @@ public class MPI {
     }
   }
 
-    static private native void saveSignalHandlers();
-    static private native void restoreSignalHandlers(); 
+    static native void saveSignalHandlers();
+    static native void restoreSignalHandlers(); 
+
+  /*
+   * The device named by the property `mpi.device', under the layers
+   * listed before it.  A job started by `Mpirun' always runs on its
+   * engine.
+   */
+
+  private static Device select() throws MPIException {
+    String [] names = System.getProperty("mpi.device", "jni").split(",") ;
+    String base = names [names.length - 1].trim() ;
+
+    Device device ;
+    if(Engine.started != null)
+      device = Engine.started ;
+    else if(base.equals("jni"))
+      device = new JNIDevice() ;
+    else if(base.equals("java"))
+      device = Engine.started = new Engine(1, 0, null) ;
+    else
+      device = create(base, null) ;
+
+    for (int i = names.length - 2; i >= 0; i--)
+      device = create(names [i].trim(), device) ;
+    return device ;
+  }
+
+  /*
+   * An instance of the device class `name', on top of `below' if that
+   * is not null.
+   */
+
+  private static Device create(String name, Device below)
+                                                      throws MPIException {
+    try {
+      Class<?> c = Class.forName(name) ;
+      if(below == null)
+        return (Device) c.getConstructor().newInstance() ;
+      return (Device) c.getConstructor(Device.class).newInstance(below) ;
+    }
+    catch (ReflectiveOperationException e) {
+      throw new MPIException("Cannot make device " + name + ": " + e) ;
+    }
+    catch (ClassCastException e) {
+      throw new MPIException(name + " is not a device") ;
+    }
+  }
+
+  /*
+   * The serializer named by the property `mpi.serializer', or else a
+   * `DefaultSerializer'.
+   */
+
+  private static Serializer serializer() throws MPIException {
+    String name = System.getProperty("mpi.serializer") ;
+    if(name == null)
+      return new DefaultSerializer() ;
+    try {
+      return (Serializer) Class.forName(name).getConstructor().newInstance() ;
+    }
+    catch (ReflectiveOperationException e) {
+      throw new MPIException("Cannot make serializer " + name + ": " + e) ;
+    }
+    catch (ClassCastException e) {
+      throw new MPIException(name + " is not a serializer") ;
+    }
+  }
 
   /**
    * Initialize MPI.
@@ -120,11 +187,25 @@ public class MPI {
 
   static public String [] Init(String[] args) throws MPIException {
 
-    String [] newArgs = InitNative(args);
+    String [] newArgs = device.init(args) ;
+
+    setUp() ;
 
-    restoreSignalHandlers();
-          // On MPICH, etc, JVM signal handlers overridden during MPI_Init().
+    return newArgs ;
+  }
+
+  private static boolean ready ;
+
+  /*
+   * Completes the predefined datatypes and COMM_WORLD once MPI is
+   * running.  Only done once: when ranks are threads `Mpirun' does it,
+   * before any rank starts.
+   */
 
+  static synchronized void setUp() throws MPIException {
+
+    if(ready)
+      return ;
 
     BYTE.setBasic(1);
     CHAR.setBasic(2);
@@ -153,11 +234,11 @@ public class MPI {
 
     COMM_WORLD.setType(Intracomm.WORLD);
 
-    return newArgs ;
+    ready = true ;
   }
 
-  static private native String [] InitNative(String[] args);
-  static private native void SetConstant();
+  static native String [] InitNative(String[] args);
+  static native void SetConstant();
 
   /**
    * Finalize MPI.
@@ -165,7 +246,11 @@ public class MPI {
    * Java binding of the MPI operation <tt>MPI_FINALIZE</tt>.
    */
 
-  static public native void Finalize() throws MPIException ;
+  static public void Finalize() throws MPIException {
+    device.finish() ;
+  }
+
+  static native void FinalizeNative() throws MPIException ;
 
   /**
    * Returns wallclock time.
@@ -178,7 +263,11 @@ public class MPI {
    * Java binding of the MPI operation <tt>MPI_WTIME</tt>.
    */
 
-  static public native double Wtime();
+  static public double Wtime() {
+    return device.wtime() ;
+  }
+
+  static native double WtimeNative();
 
   /**
    * Returns resolution of timer.
@@ -191,7 +280,11 @@ public class MPI {
    * Java binding of the MPI operation <tt>MPI_WTICK</tt>.
    */
 
-  static public native double Wtick();
+  static public double Wtick() {
+    return device.wtick() ;
+  }
+
+  static native double WtickNative();
 
   /**
    * Returns the name of the processor on which it is called.
@@ -205,12 +298,10 @@ public class MPI {
    */
 
   static public String Get_processor_name() throws MPIException {
-    byte[] buf = new byte[MAX_PROCESSOR_NAME] ;
-    int lengh = Get_processor_name(buf) ;
-    return new String(buf,0,lengh) ;
+    return device.processorName() ;
   }
 
-  static private native int Get_processor_name(byte[] buf) ;
+  static native int Get_processor_name(byte[] buf) ;
 
   /**
    * Test if MPI has been initialized.
@@ -224,7 +315,11 @@ public class MPI {
    * Java binding of the MPI operation <tt>MPI_INITIALIZED</tt>.
    */
 
-  static public native boolean Initialized() throws MPIException ;
+  static public boolean Initialized() throws MPIException {
+    return device.initialized() ;
+  }
+
+  static native boolean InitializedNative() throws MPIException ;
 
   // Buffer allocation
 
@@ -238,10 +333,10 @@ public class MPI {
 
   static public void Buffer_attach(byte[] buffer) throws MPIException {
     MPI.buffer = buffer ;
-    Buffer_attach_native(buffer);
+    device.bufferAttach(buffer) ;
   }
 
-  static private native void Buffer_attach_native(byte[] buffer);
+  static native void Buffer_attach_native(byte[] buffer);
 
 
   /**
@@ -250,13 +345,13 @@ public class MPI {
    */
 
   static public byte[] Buffer_detach() throws MPIException {
-    Buffer_detach_native(buffer);
+    device.bufferDetach(buffer) ;
     byte [] result = MPI.buffer ;
     MPI.buffer = null ;
     return result ;
   }
 
-  static private native void Buffer_detach_native(byte[] buffer);
+  static native void Buffer_detach_native(byte[] buffer);
 
   static LinkedList freeList = new LinkedList() ;
 
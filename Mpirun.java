@@ -0,0 +1,318 @@
+/*
+ * File         : Mpirun.java
+ * Created      : Sun Oct 18 2026
+ */
+
+package mpi;
+
+import java.io.DataInputStream ;
+import java.io.DataOutputStream ;
+import java.io.File ;
+import java.lang.management.ManagementFactory ;
+import java.lang.reflect.InvocationTargetException ;
+import java.lang.reflect.Method ;
+import java.net.InetAddress ;
+import java.net.MalformedURLException ;
+import java.net.ServerSocket ;
+import java.net.Socket ;
+import java.net.URL ;
+import java.net.URLClassLoader ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+
+/**
+ * Runs the ranks of a job as threads of this JVM, on the pure-Java
+ * engine instead of the native library.
+ * <p>
+ * <tt>java -cp &lt;path&gt; mpi.Mpirun -np &lt;ranks&gt; [-tcp | -shm]
+ * &lt;class&gt; [args]</tt>
+ * <p>
+ * Each rank loads the classes of the program afresh, so their static
+ * fields are no more shared between ranks than they would be between
+ * processes.  Classes of the <tt>mpi</tt> package and of the JDK are
+ * shared.  Messages between ranks are copied from array to array.
+ * <p>
+ * With <tt>-tcp</tt> or <tt>-shm</tt> every rank is instead a JVM of
+ * its own, started with the same class path and options.  The ranks
+ * send each other messages over loopback TCP connections, or through
+ * rings in files mapped by each pair of ranks.  The rings hold
+ * <tt>mpi.shm.ring</tt> bytes each, by default 1M.
+ */
+
+public class Mpirun {
+
+  public static void main(String [] args) throws Exception {
+    int np = 1, first = 0, home = -1, registry = 0 ;
+    String link = null, files = null ;
+    while(first < args.length && args [first].startsWith("-")) {
+      if(args [first].equals("-tcp") || args [first].equals("-shm"))
+        link = args [first] ;
+      else if(first + 1 == args.length)
+        break ;
+      else if(args [first].equals("-np"))
+        np = Integer.parseInt(args [++first]) ;
+      else if(args [first].equals("-rank"))
+        home = Integer.parseInt(args [++first]) ;
+      else if(args [first].equals("-registry"))
+        registry = Integer.parseInt(args [++first]) ;
+      else if(args [first].equals("-files"))
+        files = args [++first] ;
+      else
+        break ;
+      first++ ;
+    }
+    if(args.length <= first || np < 1) {
+      System.out.println("usage: java mpi.Mpirun -np <ranks> " +
+                         "[-tcp | -shm] <class> [args]") ;
+      System.exit(1) ;
+    }
+
+    final String program = args [first] ;
+    final String [] programArgs =
+        Arrays.copyOfRange(args, first + 1, args.length) ;
+
+    if(link != null)
+      System.exit(spawn(np, link,
+                        Arrays.copyOfRange(args, first, args.length))) ;
+    if(home >= 0) {
+      runRank(np, home, registry, files, program, programArgs) ;
+      return ;
+    }
+
+    // The engine has to be in place before `MPI' is loaded.
+
+    final Engine engine = new Engine(np) ;
+    Engine.started = engine ;
+    MPI.setUp() ;
+
+    final URL [] path = classPath() ;
+    Thread [] ranks = new Thread [np] ;
+    for (int r = 0 ; r < np ; r++) {
+      final int rank = r ;
+      ranks [r] = new Thread("rank " + r) {
+        public void run() {
+          engine.attach(rank) ;
+          try {
+            ClassLoader loader =
+                new RankLoader(path, Mpirun.class.getClassLoader()) ;
+            setContextClassLoader(loader) ;
+
+            Method main = loader.loadClass(program).getMethod("main",
+                                                          String [].class) ;
+            main.invoke(null, (Object) programArgs.clone()) ;
+          }
+          catch (InvocationTargetException e) {
+            System.err.println("Rank " + rank + " failed:") ;
+            e.getCause().printStackTrace() ;
+            System.exit(1) ;
+          }
+          catch (Exception e) {
+            System.err.println("Rank " + rank + " could not start " +
+                               program + ": " + e) ;
+            System.exit(1) ;
+          }
+        }
+      } ;
+    }
+
+    for (int r = 0 ; r < np ; r++)
+      ranks [r].start() ;
+    for (int r = 0 ; r < np ; r++)
+      ranks [r].join() ;
+  }
+
+  /*
+   * Starts a JVM for each rank and waits for them all.  If any fails the
+   * rest are stopped.  Returns the exit status of the first that failed,
+   * or 0.
+   */
+
+  private static int spawn(int np, String link, String [] program)
+                                                       throws Exception {
+    ServerSocket registry = null ;
+    String files = null ;
+    if(link.equals("-tcp"))
+      registry = new ServerSocket(0, np, InetAddress.getLoopbackAddress()) ;
+    else
+      files = ShmLink.create(np, Integer.getInteger("mpi.shm.ring", 1 << 20)) ;
+
+    ArrayList<String> command = new ArrayList<String>() ;
+    command.add(System.getProperty("java.home") + File.separator + "bin" +
+                File.separator + "java") ;
+    command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments()) ;
+    command.add("-cp") ;
+    command.add(System.getProperty("java.class.path")) ;
+    command.add(Mpirun.class.getName()) ;
+    command.add("-np") ;
+    command.add(Integer.toString(np)) ;
+    if(registry != null) {
+      command.add("-registry") ;
+      command.add(Integer.toString(registry.getLocalPort())) ;
+    }
+    else {
+      command.add("-files") ;
+      command.add(files) ;
+    }
+    command.add("-rank") ;
+    int at = command.size() ;
+    command.add("") ;
+    command.addAll(Arrays.asList(program)) ;
+
+    // Whatever ends this JVM ends the ranks and removes their files.
+
+    final Process [] ranks = new Process [np] ;
+    final String shared = files ;
+    final int size = np ;
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      public void run() {
+        for (int r = 0 ; r < size ; r++)
+          if(ranks [r] != null)
+            ranks [r].destroy() ;
+        if(shared != null)
+          ShmLink.remove(shared, size) ;
+      }
+    }) ;
+
+    for (int r = 0 ; r < np ; r++) {
+      command.set(at, Integer.toString(r)) ;
+      ranks [r] = new ProcessBuilder(command).inheritIO().start() ;
+    }
+    if(registry != null)
+      exchangePorts(registry, np) ;
+    return waitFor(ranks) ;
+  }
+
+  /*
+   * Tells every rank the ports the others listen on.
+   */
+
+  private static void exchangePorts(ServerSocket registry, int np)
+                                                       throws Exception {
+    Socket [] sockets = new Socket [np] ;
+    int [] ports = new int [np] ;
+    for (int k = 0 ; k < np ; k++) {
+      Socket socket = registry.accept() ;
+      DataInputStream in = new DataInputStream(socket.getInputStream()) ;
+      int r = in.readInt() ;
+      ports [r]   = in.readInt() ;
+      sockets [r] = socket ;
+    }
+    registry.close() ;
+    for (int r = 0 ; r < np ; r++) {
+      DataOutputStream out =
+          new DataOutputStream(sockets [r].getOutputStream()) ;
+      for (int k = 0 ; k < np ; k++)
+        out.writeInt(ports [k]) ;
+      out.flush() ;
+      sockets [r].close() ;
+    }
+  }
+
+  /*
+   * Waits for whichever rank ends first, until one fails or all are
+   * done.
+   */
+
+  private static int waitFor(final Process [] ranks) throws Exception {
+    int np = ranks.length ;
+    final int [] failed = { 0 } ;
+    Thread [] waiters = new Thread [np] ;
+    for (int r = 0 ; r < np ; r++) {
+      final Process process = ranks [r] ;
+      waiters [r] = new Thread() {
+        public void run() {
+          int status ;
+          try {
+            status = process.waitFor() ;
+          }
+          catch (InterruptedException e) {
+            return ;
+          }
+          if(status != 0)
+            synchronized(failed) {
+              if(failed [0] == 0)
+                failed [0] = status ;
+              for (int k = 0 ; k < ranks.length ; k++)
+                ranks [k].destroy() ;
+            }
+        }
+      } ;
+      waiters [r].start() ;
+    }
+    for (int r = 0 ; r < np ; r++)
+      waiters [r].join() ;
+    return failed [0] ;
+  }
+
+  /*
+   * Runs rank `rank' of a job started by `spawn' in this JVM.
+   */
+
+  private static void runRank(int np, int rank, int registry, String files,
+                              String program, String [] programArgs)
+                                                       throws Exception {
+    Link link = files != null ? ShmLink.open(rank, np, files)
+                              : TcpLink.connect(rank, np, registry) ;
+    Engine engine = new Engine(np, rank, link) ;
+    Engine.started = engine ;
+    MPI.setUp() ;
+    engine.attach(rank) ;
+
+    try {
+      Method main = Class.forName(program).getMethod("main",
+                                                     String [].class) ;
+      main.invoke(null, (Object) programArgs) ;
+    }
+    catch (InvocationTargetException e) {
+      System.err.println("Rank " + rank + " failed:") ;
+      e.getCause().printStackTrace() ;
+      System.exit(1) ;
+    }
+  }
+
+  private static URL [] classPath() throws MalformedURLException {
+    String [] entries =
+        System.getProperty("java.class.path").split(File.pathSeparator) ;
+    URL [] urls = new URL [entries.length] ;
+    for (int i = 0 ; i < entries.length ; i++)
+      urls [i] = new File(entries [i]).toURI().toURL() ;
+    return urls ;
+  }
+
+  /*
+   * Loads classes itself before asking its parent, except for those
+   * that all ranks must share.
+   */
+
+  static class RankLoader extends URLClassLoader {
+
+    RankLoader(URL [] urls, ClassLoader parent) {
+      super(urls, parent) ;
+    }
+
+    private static boolean shared(String name) {
+      return name.startsWith("java.") || name.startsWith("javax.") ||
+             name.startsWith("jdk.")  || name.startsWith("sun.")   ||
+             name.startsWith("mpi.") ;
+    }
+
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+                                             throws ClassNotFoundException {
+      if(shared(name))
+        return super.loadClass(name, resolve) ;
+
+      Class<?> c = findLoadedClass(name) ;
+      if(c == null) {
+        try {
+          c = findClass(name) ;
+        }
+        catch (ClassNotFoundException e) {
+          return super.loadClass(name, resolve) ;
+        }
+      }
+      if(resolve)
+        resolveClass(c) ;
+      return c ;
+    }
+  }
+}
@@ -0,0 +1,726 @@
+/*
+ * File         : ObjectMessage.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * The message that carries the items of an `MPI.OBJECT' buffer.  It
+ * starts with a header of three ints: the bytes of the whole message,
+ * the number of items, and the bytes of its data section.  The data
+ * section holds what `MPI.serializer' writes for each element.  Objects
+ * that it leaves to Java serialization go to an object section after
+ * it, written by one `ObjectOutputStream' per thread that is reset for
+ * every message rather than made anew, and read by one
+ * `ObjectInputStream' per thread in the same way.
+ *
+ * A message is sent as one message of at most FIRST bytes, header
+ * included, and a second one with the rest if it is longer, so that its
+ * receive can be posted before its length is known and a short message
+ * needs no other.  Messages are built in, and received into, byte arrays
+ * kept in a pool.
+ */
+
+package mpi;
+
+import java.io.ByteArrayInputStream ;
+import java.io.ByteArrayOutputStream ;
+import java.io.EOFException ;
+import java.io.IOException ;
+import java.io.InvalidClassException ;
+import java.io.ObjectInput ;
+import java.io.ObjectInputStream ;
+import java.io.ObjectOutput ;
+import java.io.ObjectOutputStream ;
+import java.io.ObjectStreamClass ;
+import java.io.ObjectStreamConstants ;
+import java.lang.reflect.Array ;
+import java.nio.ByteBuffer ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
+
+class ObjectMessage {
+
+  final static int HEADER = 12 ;
+  final static int FIRST  = 16384 ;
+
+  private final static ThreadLocal<Output> outputs =
+                                                  new ThreadLocal<Output>() {
+    protected Output initialValue() {
+      return new Output() ;
+    }
+  } ;
+
+  private final static ThreadLocal<Input> inputs = new ThreadLocal<Input>() {
+    protected Input initialValue() {
+      return new Input() ;
+    }
+  } ;
+
+  /*
+   * The message holding `count' items of type at offset in buf, in a
+   * pooled array that may be longer than the message.
+   */
+
+  static byte [] write(Object buf, int offset, int count, Datatype type)
+                                                      throws MPIException {
+    Output out = outputs.get() ;
+    if (out.busy)                       // a serializer that sends objects
+      out = new Output() ;
+    return out.message(buf, offset, count, type) ;
+  }
+
+  /*
+   * Reads the items of the message at `at' in bytes into buf, and
+   * returns their number.
+   */
+
+  static int read(byte [] bytes, int at, Object buf, int offset,
+                  Datatype type) throws MPIException {
+    Input in = inputs.get() ;
+    if (in.busy)
+      in = new Input() ;
+    return in.message(bytes, at, buf, offset, type) ;
+  }
+
+  static int length(byte [] bytes, int at) {
+    return ByteBuffer.wrap(bytes).getInt(at) ;
+  }
+
+  static int length(byte [] bytes) {
+    return length(bytes, 0) ;
+  }
+
+
+  // Bundles
+
+  // Several messages moved as one by the collectives: an int with the
+  // bytes of the whole bundle, and then the messages one after another.
+  // A bundle is sent and received as a message is.
+
+  final static int BUNDLE = 4 ;
+
+  /*
+   * A bundle of `messages' from first up to last, in a pooled array.
+   */
+
+  static byte [] bundle(byte [] [] messages, int first, int last) {
+    int length = BUNDLE ;
+    for (int i = first ; i < last ; i++)
+      length += length(messages [i]) ;
+
+    byte [] bundle = take(length) ;
+    ByteBuffer.wrap(bundle).putInt(0, length) ;
+    int at = BUNDLE ;
+    for (int i = first ; i < last ; i++) {
+      int bytes = length(messages [i]) ;
+      System.arraycopy(messages [i], 0, bundle, at, bytes) ;
+      at += bytes ;
+    }
+    return bundle ;
+  }
+
+  /*
+   * A bundle of the messages of `bundles', in order, in a pooled array.
+   */
+
+  static byte [] join(ArrayList<byte []> bundles) {
+    int length = BUNDLE ;
+    for (byte [] b : bundles)
+      length += length(b) - BUNDLE ;
+
+    byte [] bundle = take(length) ;
+    ByteBuffer.wrap(bundle).putInt(0, length) ;
+    int at = BUNDLE ;
+    for (byte [] b : bundles) {
+      int bytes = length(b) - BUNDLE ;
+      System.arraycopy(b, BUNDLE, bundle, at, bytes) ;
+      at += bytes ;
+    }
+    return bundle ;
+  }
+
+  /*
+   * A bundle of `count' messages of bundle from message `first' on, in a
+   * pooled array.
+   */
+
+  static byte [] part(byte [] bundle, int first, int count) {
+    int from = at(bundle, first) ;
+    int to = from ;
+    for (int i = 0 ; i < count ; i++)
+      to += length(bundle, to) ;
+
+    byte [] part = take(BUNDLE + to - from) ;
+    ByteBuffer.wrap(part).putInt(0, BUNDLE + to - from) ;
+    System.arraycopy(bundle, from, part, BUNDLE, to - from) ;
+    return part ;
+  }
+
+  /*
+   * Where message `index' of bundle starts.
+   */
+
+  static int at(byte [] bundle, int index) {
+    int at = BUNDLE ;
+    for (int i = 0 ; i < index ; i++)
+      at += length(bundle, at) ;
+    return at ;
+  }
+
+
+  // Pool
+
+  // Arrays kept for reuse by all messages: at most 8 of each size, none
+  // longer than 16M and 64M in all.
+
+  private final static BufferPool pool =
+                                new BufferPool(8, 1 << 24, 1 << 26) ;
+
+  /*
+   * An array of at least `bytes' bytes.
+   */
+
+  static byte [] take(int bytes) {
+    return pool.bytes(bytes) ;
+  }
+
+  static void release(byte [] b) {
+    pool.release(b) ;
+  }
+
+
+  // Streams
+
+  /*
+   * What the object stream of every message starts with.  The reading
+   * stream is made over it once, and later fed the object sections of
+   * messages.
+   */
+
+  private final static byte [] STREAM_HEADER =
+      ByteBuffer.allocate(4).putShort(ObjectStreamConstants.STREAM_MAGIC)
+                .putShort(ObjectStreamConstants.STREAM_VERSION).array() ;
+
+  private static class Sink extends ByteArrayOutputStream {
+    byte [] array() {
+      return buf ;
+    }
+
+    /*
+     * Empties the sink, dropping its array if a message made it large.
+     */
+
+    void clear() {
+      count = 0 ;
+      if (buf.length > FIRST)
+        buf = new byte [256] ;
+    }
+  }
+
+  private static class Source extends ByteArrayInputStream {
+    Source() {
+      super(STREAM_HEADER) ;
+    }
+
+    void set(byte [] bytes, int from, int length) {
+      buf   = bytes ;
+      pos   = from ;
+      mark  = from ;
+      count = from + length ;
+    }
+
+    byte [] array() {
+      return buf ;
+    }
+
+    int position() {
+      return pos ;
+    }
+
+    int end() {
+      return count ;
+    }
+  }
+
+  /*
+   * The stream that serializers write a message to.
+   */
+
+  static class Output implements ObjectOutput {
+    private byte [] bytes ;
+    private ByteBuffer buffer ;
+    private boolean busy ;
+
+    private final Sink objects = new Sink() ;
+    private ObjectOutputStream stream ;
+    private boolean streaming ;         // the message has an object section
+
+    private final HashMap<Class<?>, Integer> classes =
+                                          new HashMap<Class<?>, Integer>() ;
+
+    byte [] message(Object buf, int offset, int count, Datatype type)
+                                                      throws MPIException {
+      busy = true ;
+      bytes = take(FIRST) ;
+      buffer = ByteBuffer.wrap(bytes) ;
+      buffer.position(HEADER) ;
+      objects.clear() ;
+      streaming = false ;
+      classes.clear() ;
+
+      boolean done = false ;
+      try {
+        Object [] items = (Object []) buf ;
+        if (type.Size() != 0) {
+          int extent = type.Extent() ;
+          for (int i = 0 ; i < count ; i++)
+            for (int j = 0 ; j < type.displacements.length ; j++)
+              writeObject(items [offset + extent * i +
+                                 type.displacements [j]]) ;
+        }
+        if (streaming)
+          stream.flush() ;
+
+        int data = buffer.position() - HEADER ;
+        write(objects.array(), 0, objects.size()) ;
+        buffer.putInt(0, buffer.position()).putInt(4, count)
+              .putInt(8, data) ;
+        done = true ;
+        return bytes ;
+      }
+      catch (IOException e) {
+        throw new MPIException("Cannot serialize: " + e) ;
+      }
+      finally {
+        if (!done) {
+          release(bytes) ;
+          stream = null ;               // may be part way through an object
+        }
+        bytes  = null ;
+        buffer = null ;
+        busy   = false ;
+      }
+    }
+
+    private void ensure(int n) {
+      if (buffer.remaining() >= n)
+        return ;
+      int at = buffer.position() ;
+      byte [] grown = take(Math.max(2 * bytes.length, at + n)) ;
+      System.arraycopy(bytes, 0, grown, 0, at) ;
+      release(bytes) ;
+      bytes = grown ;
+      buffer = ByteBuffer.wrap(bytes) ;
+      buffer.position(at) ;
+    }
+
+    /*
+     * Writes a string as its length and its chars.
+     */
+
+    void writeString(String s) {
+      int n = s.length() ;
+      writeInt(n) ;
+      ensure(2 * n) ;
+      buffer.asCharBuffer().put(s) ;
+      buffer.position(buffer.position() + 2 * n) ;
+    }
+
+    /*
+     * Writes an array of primitives as the kind of its elements, as in
+     * `Link.kindOf', its length, and its elements.
+     */
+
+    void writeArray(Object array) throws IOException {
+      try {
+        int n = Array.getLength(array), bytes = n * Engine.sizeOf(array) ;
+        writeByte(Link.kindOf(array)) ;
+        writeInt(n) ;
+        ensure(bytes) ;
+        Engine.encode(array, 0, n, buffer) ;
+        buffer.position(buffer.position() + bytes) ;
+      }
+      catch (MPIException e) {
+        throw new IOException(e.getMessage()) ;
+      }
+    }
+
+    /*
+     * Writes a class by name the first time in a message, and later by
+     * its place among those.
+     */
+
+    void writeClass(Class<?> c) {
+      Integer index = classes.get(c) ;
+      if (index != null) {
+        writeInt(index) ;
+        return ;
+      }
+      writeInt(-1) ;
+      writeString(c.getName()) ;
+      classes.put(c, classes.size()) ;
+    }
+
+    /*
+     * Writes an object to the object section by Java serialization.
+     */
+
+    void serialize(Object obj) throws IOException {
+      if (!streaming) {
+        if (stream == null)
+          stream = new ObjectOutputStream(objects) ;
+        objects.clear() ;               // the header the reader has
+        stream.reset() ;
+        streaming = true ;
+      }
+      stream.writeObject(obj) ;
+    }
+
+    public void writeObject(Object obj) throws IOException {
+      MPI.serializer.write(this, obj) ;
+    }
+
+    public void write(int b) {
+      ensure(1) ;
+      buffer.put((byte) b) ;
+    }
+
+    public void write(byte [] b) {
+      write(b, 0, b.length) ;
+    }
+
+    public void write(byte [] b, int off, int len) {
+      ensure(len) ;
+      buffer.put(b, off, len) ;
+    }
+
+    public void writeBoolean(boolean v) {
+      write(v ? 1 : 0) ;
+    }
+
+    public void writeByte(int v) {
+      write(v) ;
+    }
+
+    public void writeShort(int v) {
+      ensure(2) ;
+      buffer.putShort((short) v) ;
+    }
+
+    public void writeChar(int v) {
+      ensure(2) ;
+      buffer.putChar((char) v) ;
+    }
+
+    public void writeInt(int v) {
+      ensure(4) ;
+      buffer.putInt(v) ;
+    }
+
+    public void writeLong(long v) {
+      ensure(8) ;
+      buffer.putLong(v) ;
+    }
+
+    public void writeFloat(float v) {
+      ensure(4) ;
+      buffer.putFloat(v) ;
+    }
+
+    public void writeDouble(double v) {
+      ensure(8) ;
+      buffer.putDouble(v) ;
+    }
+
+    public void writeBytes(String s) {
+      ensure(s.length()) ;
+      for (int i = 0 ; i < s.length() ; i++)
+        buffer.put((byte) s.charAt(i)) ;
+    }
+
+    public void writeChars(String s) {
+      ensure(2 * s.length()) ;
+      buffer.asCharBuffer().put(s) ;
+      buffer.position(buffer.position() + 2 * s.length()) ;
+    }
+
+    /*
+     * Only `Input' reads these streams, so strings need not be limited
+     * to what modified UTF-8 can hold.
+     */
+
+    public void writeUTF(String s) {
+      writeString(s) ;
+    }
+
+    public void flush() {}
+
+    public void close() {}
+  }
+
+  /*
+   * The stream that serializers read a message from.
+   */
+
+  static class Input implements ObjectInput {
+    private ByteBuffer buffer ;
+    private boolean busy ;
+
+    private final Source objects = new Source() ;
+    private ObjectInputStream stream ;
+
+    private final ArrayList<Class<?>> classes = new ArrayList<Class<?>>() ;
+
+    // Element types of arrays by kind, as in `Link.kindOf'.
+
+    private final static Class<?> [] kinds = {
+      byte.class, char.class, short.class, boolean.class,
+      int.class, long.class, float.class, double.class
+    } ;
+
+    // Classes read by name, as resolved by `loadedBy'.  Ranks run as
+    // threads each load the program's classes themselves, so the classes
+    // are kept per thread and dropped when its loader changes.
+
+    private final HashMap<String, Class<?>> loaded =
+                                           new HashMap<String, Class<?>>() ;
+    private ClassLoader loadedBy ;
+
+    int message(byte [] bytes, int at, Object buf, int offset,
+                Datatype type) throws MPIException {
+      ByteBuffer header = ByteBuffer.wrap(bytes) ;
+      int length = header.getInt(at), count = header.getInt(at + 4) ;
+      int data = header.getInt(at + 8) ;
+
+      busy = true ;
+      buffer = ByteBuffer.wrap(bytes, at + HEADER, data) ;
+      objects.set(bytes, at + HEADER + data, length - HEADER - data) ;
+      classes.clear() ;
+
+      boolean done = false ;
+      try {
+        Object [] items = (Object []) buf ;
+        if (type.Size() != 0) {
+          int extent = type.Extent() ;
+          for (int i = 0 ; i < count ; i++)
+            for (int j = 0 ; j < type.displacements.length ; j++)
+              items [offset + extent * i + type.displacements [j]] =
+                  readObject() ;
+        }
+        done = true ;
+        return count ;
+      }
+      catch (IOException e) {
+        throw new MPIException("Cannot deserialize: " + e) ;
+      }
+      catch (ClassNotFoundException e) {
+        throw new MPIException("Cannot deserialize: " + e) ;
+      }
+      finally {
+        if (!done)
+          stream = null ;
+        buffer = null ;
+        objects.set(STREAM_HEADER, 0, 0) ;
+        busy = false ;
+      }
+    }
+
+    private void need(int n) throws EOFException {
+      if (buffer.remaining() < n)
+        throw new EOFException("Object message too short") ;
+    }
+
+    String readString() throws IOException {
+      int n = readInt() ;
+      need(2 * n) ;
+      char [] chars = new char [n] ;
+      buffer.asCharBuffer().get(chars) ;
+      buffer.position(buffer.position() + 2 * n) ;
+      return new String(chars) ;
+    }
+
+    Object readArray() throws IOException {
+      try {
+        int kind = readByte(), n = readInt() ;
+        Object array = Array.newInstance(kinds [kind], n) ;
+        int bytes = n * Link.unit(kind) ;
+        need(bytes) ;
+        Engine.decode(buffer, array, 0, n) ;
+        buffer.position(buffer.position() + bytes) ;
+        return array ;
+      }
+      catch (MPIException e) {
+        throw new IOException(e.getMessage()) ;
+      }
+      catch (ArrayIndexOutOfBoundsException e) {
+        throw new InvalidClassException("Unknown kind of array") ;
+      }
+    }
+
+    Class<?> readClass() throws IOException, ClassNotFoundException {
+      int index = readInt() ;
+      if (index >= 0)
+        return classes.get(index) ;
+
+      String name = readString() ;
+      ClassLoader loader = loader() ;
+      if (loader != loadedBy) {
+        loaded.clear() ;
+        loadedBy = loader ;
+      }
+      Class<?> c = loaded.get(name) ;
+      if (c == null) {
+        c = Class.forName(name, false, loader) ;
+        loaded.put(name, c) ;
+      }
+      classes.add(c) ;
+      return c ;
+    }
+
+    /*
+     * The loader of the thread's classes: a rank's own under `Mpirun'.
+     */
+
+    private static ClassLoader loader() {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader() ;
+      return loader != null ? loader : ObjectMessage.class.getClassLoader() ;
+    }
+
+    /*
+     * Reads an object from the object section by Java serialization.
+     * Classes are resolved by the thread's loader, like `readClass', not
+     * by the loader of the caller on the stack.
+     */
+
+    Object deserialize() throws IOException, ClassNotFoundException {
+      if (stream == null) {
+        byte [] section = objects.array() ;
+        int from = objects.position(), to = objects.end() ;
+        objects.set(STREAM_HEADER, 0, STREAM_HEADER.length) ;
+        stream = new ObjectInputStream(objects) {
+          protected Class<?> resolveClass(ObjectStreamClass desc)
+                               throws IOException, ClassNotFoundException {
+            try {
+              return Class.forName(desc.getName(), false, loader()) ;
+            }
+            catch (ClassNotFoundException e) {
+              return super.resolveClass(desc) ;     // primitive types
+            }
+          }
+        } ;
+        objects.set(section, from, to - from) ;
+      }
+      return stream.readObject() ;
+    }
+
+    public Object readObject() throws IOException, ClassNotFoundException {
+      return MPI.serializer.read(this) ;
+    }
+
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1 ;
+    }
+
+    public int read(byte [] b) {
+      return read(b, 0, b.length) ;
+    }
+
+    public int read(byte [] b, int off, int len) {
+      int n = Math.min(len, buffer.remaining()) ;
+      if (n == 0 && len > 0)
+        return -1 ;
+      buffer.get(b, off, n) ;
+      return n ;
+    }
+
+    public long skip(long n) {
+      int k = (int) Math.max(0, Math.min(n, buffer.remaining())) ;
+      buffer.position(buffer.position() + k) ;
+      return k ;
+    }
+
+    public int available() {
+      return buffer.remaining() ;
+    }
+
+    public void close() {}
+
+    public void readFully(byte [] b) throws IOException {
+      readFully(b, 0, b.length) ;
+    }
+
+    public void readFully(byte [] b, int off, int len) throws IOException {
+      need(len) ;
+      buffer.get(b, off, len) ;
+    }
+
+    public int skipBytes(int n) {
+      return (int) skip(n) ;
+    }
+
+    public boolean readBoolean() throws IOException {
+      return readByte() != 0 ;
+    }
+
+    public byte readByte() throws IOException {
+      need(1) ;
+      return buffer.get() ;
+    }
+
+    public int readUnsignedByte() throws IOException {
+      return readByte() & 0xff ;
+    }
+
+    public short readShort() throws IOException {
+      need(2) ;
+      return buffer.getShort() ;
+    }
+
+    public int readUnsignedShort() throws IOException {
+      return readShort() & 0xffff ;
+    }
+
+    public char readChar() throws IOException {
+      need(2) ;
+      return buffer.getChar() ;
+    }
+
+    public int readInt() throws IOException {
+      need(4) ;
+      return buffer.getInt() ;
+    }
+
+    public long readLong() throws IOException {
+      need(8) ;
+      return buffer.getLong() ;
+    }
+
+    public float readFloat() throws IOException {
+      need(4) ;
+      return buffer.getFloat() ;
+    }
+
+    public double readDouble() throws IOException {
+      need(8) ;
+      return buffer.getDouble() ;
+    }
+
+    public String readLine() {
+      if (!buffer.hasRemaining())
+        return null ;
+      StringBuilder line = new StringBuilder() ;
+      while (buffer.hasRemaining()) {
+        char c = (char) (buffer.get() & 0xff) ;
+        if (c == '\n')
+          break ;
+        if (c != '\r')
+          line.append(c) ;
+      }
+      return line.toString() ;
+    }
+
+    public String readUTF() throws IOException {
+      return readString() ;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import mpi.*;
+
+/*
+    ObjectMessageTest
+    Sends objects of the program's own classes between ranks run as
+    threads, as in
+        java mpi.Mpirun -np 4 ObjectMessageTest
+    Every rank loads these classes with a loader of its own, so a received
+    object must be of the receiving rank's class, not the sender's or that
+    of whichever rank read one first. Prints "passed" on rank 0, or what
+    went wrong on each rank and exits with status 1
+*/
+public class ObjectMessageTest
+{
+    final static int ROUNDS = 3;
+
+
+
+
+    /*
+        Payload
+        Left to Java serialization
+    */
+    static class Payload implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int rank;
+        String text;
+
+        Payload(int rank)
+        {
+            this.rank = rank;
+            this.text = "from " + rank;
+        }
+    }
+
+
+
+
+    /*
+        Record
+        Written by the serializer itself
+    */
+    public static class Record implements Externalizable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int rank;
+        double[] values;
+
+        public Record()
+        {
+        }
+
+        Record(int rank)
+        {
+            this.rank = rank;
+            this.values = new double[] { rank, rank + 0.5 };
+        }
+
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            out.writeInt(rank);
+            out.writeObject(values);
+        }
+
+        public void readExternal(ObjectInput in)
+                throws IOException, ClassNotFoundException
+        {
+            rank = in.readInt();
+            values = (double[]) in.readObject();
+        }
+    }
+
+
+
+
+    public static void main(String[] args) throws MPIException
+    {
+        MPI.Init(args);
+        Intracomm comm = MPI.COMM_WORLD;
+        int rank = comm.Rank();
+        int size = comm.Size();
+        int next = (rank + 1) % size;
+        int previous = (rank + size - 1) % size;
+
+        int failures = 0;
+        for(int round = 0; round < ROUNDS; round++)
+        {
+            Object[] out = new Object[] { new Payload(rank), new Record(rank) };
+            Object[] in = new Object[2];
+            comm.Sendrecv(out, 0, 2, MPI.OBJECT, next, round,
+                    in, 0, 2, MPI.OBJECT, previous, round);
+            failures += check(rank, in, previous);
+
+            Object[] sent = new Object[2];
+            if(rank == 0)
+            {
+                sent[0] = new Payload(0);
+                sent[1] = new Record(0);
+            }
+            comm.Bcast(sent, 0, 2, MPI.OBJECT, 0);
+            failures += check(rank, sent, 0);
+        }
+
+        int[] mine = new int[] { failures };
+        int[] all = new int[1];
+        comm.Allreduce(mine, 0, all, 0, 1, MPI.INT, MPI.SUM);
+        if(rank == 0)
+        {
+            System.out.println(all[0] == 0 ? "passed" : all[0] + " failures");
+        }
+        MPI.Finalize();
+        if(all[0] != 0)
+        {
+            System.exit(1);
+        }
+    }
+
+
+
+
+    /*
+        check
+        The number of things wrong with the objects received from rank
+        from, each reported on standard error
+    */
+    private static int check(int rank, Object[] received, int from)
+    {
+        int failures = 0;
+        if(received[0] == null || received[0].getClass() != Payload.class)
+        {
+            failures++;
+            System.err.println(rank + ": " + describe(received[0])
+                    + " is not this rank's Payload");
+        }
+        else
+        {
+            Payload p = (Payload) received[0];
+            if(p.rank != from || !p.text.equals("from " + from))
+            {
+                failures++;
+                System.err.println(rank + ": wrong Payload " + p.text);
+            }
+        }
+
+        if(received[1] == null || received[1].getClass() != Record.class)
+        {
+            failures++;
+            System.err.println(rank + ": " + describe(received[1])
+                    + " is not this rank's Record");
+        }
+        else
+        {
+            Record r = (Record) received[1];
+            if(r.rank != from || r.values[1] != from + 0.5)
+            {
+                failures++;
+                System.err.println(rank + ": wrong Record from " + r.rank);
+            }
+        }
+        return failures;
+    }
+
+
+
+
+    private static String describe(Object o)
+    {
+        if(o == null)
+        {
+            return "null";
+        }
+        return o.getClass().getName() + " of " + o.getClass().getClassLoader();
+    }
+}
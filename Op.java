@@ -11,18 +11,22 @@
 package mpi;
 //import mpi.*;
 
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
 public class Op extends Freeable {
   private final static int NULL  = 0;
-  private final static int MAX   = 1;
-  private final static int MIN   = 2;
-  private final static int SUM   = 3;
-  private final static int PROD  = 4;
-  private final static int LAND  = 5;
-  private final static int BAND  = 6;
-  private final static int LOR   = 7;
-  private final static int BOR   = 8;
-  private final static int LXOR  = 9;
-  private final static int BXOR  =10;
+  final static int MAX   = 1;
+  final static int MIN   = 2;
+  final static int SUM   = 3;
+  final static int PROD  = 4;
+  final static int LAND  = 5;
+  final static int BAND  = 6;
+  final static int LOR   = 7;
+  final static int BOR   = 8;
+  final static int LXOR  = 9;
+  final static int BXOR  =10;
   private final static int MINLOC=11;
   private final static int MAXLOC=12;
 
@@ -30,7 +34,19 @@ public class Op extends Freeable {
 
   private User_function uf = null ;
 
-  protected Op(int Type) { GetOp(Type);}
+  // Functions on buffers of one primitive type.  At most one of these
+  // and `uf' is set.
+
+  private Double_function df = null ;
+  private Long_function   lf = null ;
+  private Int_function    nf = null ;
+
+  boolean commute = true ;
+
+  protected Op(int Type) {
+    code = Type ;
+    MPI.device.newOp(this, Type) ;
+  }
 
   /**
    * Bind a user-defined global reduction operation to an <tt>Op</tt> object.
@@ -46,23 +62,222 @@ public class Op extends Freeable {
 
   public Op(User_function function, boolean commute) throws MPIException {
     uf = function;
+    this.commute = commute;
+  }
+
+  /**
+   * Bind a user-defined global reduction operation on <tt>double</tt>
+   * buffers to an <tt>Op</tt> object.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(Double_function function, boolean commute) {
+    df = function;
+    this.commute = commute;
+  }
+
+  /**
+   * Bind a user-defined global reduction operation on <tt>long</tt>
+   * buffers to an <tt>Op</tt> object.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(Long_function function, boolean commute) {
+    lf = function;
+    this.commute = commute;
+  }
+
+  /**
+   * Bind a user-defined global reduction operation on <tt>int</tt>
+   * buffers to an <tt>Op</tt> object.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(Int_function function, boolean commute) {
+    nf = function;
+    this.commute = commute;
+  }
+
+  /**
+   * Bind a user-defined operation on pairs of <tt>double</tt> elements,
+   * applied element by element, to an <tt>Op</tt> object.  The result
+   * for elements <tt>in</tt> and <tt>inout</tt> is
+   * <tt>function.applyAsDouble(in, inout)</tt>.  The elements are
+   * combined by one loop shared by all such ops, where a
+   * <tt>Double_function</tt> runs a loop of its own.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(final DoubleBinaryOperator function, boolean commute) {
+    this(new Double_function() {
+      public void Call(double [] invec, int inoffset,
+                       double [] inoutvec, int inoutoffset, int count) {
+        for (int i = 0 ; i < count ; i++)
+          inoutvec [inoutoffset + i] =
+              function.applyAsDouble(invec [inoffset + i],
+                                     inoutvec [inoutoffset + i]) ;
+      }
+    }, commute) ;
+  }
+
+  /**
+   * Bind a user-defined operation on pairs of <tt>long</tt> elements,
+   * applied element by element, to an <tt>Op</tt> object.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(final LongBinaryOperator function, boolean commute) {
+    this(new Long_function() {
+      public void Call(long [] invec, int inoffset,
+                       long [] inoutvec, int inoutoffset, int count) {
+        for (int i = 0 ; i < count ; i++)
+          inoutvec [inoutoffset + i] =
+              function.applyAsLong(invec [inoffset + i],
+                                   inoutvec [inoutoffset + i]) ;
+      }
+    }, commute) ;
+  }
+
+  /**
+   * Bind a user-defined operation on pairs of <tt>int</tt> elements,
+   * applied element by element, to an <tt>Op</tt> object.
+   * <p>
+   * <table>
+   * <tr><td><tt> function </tt></td><td> user defined function </tr>
+   * <tr><td><tt> commute  </tt></td><td> <tt>true</tt> if commutative,
+   *                                      <tt>false</tt> otherwise </tr>
+   * </table>
+   */
+
+  public Op(final IntBinaryOperator function, boolean commute) {
+    this(new Int_function() {
+      public void Call(int [] invec, int inoffset,
+                       int [] inoutvec, int inoutoffset, int count) {
+        for (int i = 0 ; i < count ; i++)
+          inoutvec [inoutoffset + i] =
+              function.applyAsInt(invec [inoffset + i],
+                                  inoutvec [inoutoffset + i]) ;
+      }
+    }, commute) ;
   }
   
   protected boolean isUser() {
-    return uf != null ;
+    return uf != null || df != null || lf != null || nf != null ;
   }
 
   public final void Call(Object invec, int inoffset,
                          Object outvec, int outoffset,
                          int count, Datatype datatype) {
-    uf.Call(invec, inoffset, outvec, outoffset, count, datatype);
+    if(uf != null) {
+      uf.Call(invec, inoffset, outvec, outoffset, count, datatype);
+      return ;
+    }
+    try {
+      apply(invec, inoffset, outvec, outoffset, count, datatype) ;
+    }
+    catch (MPIException e) {
+      throw new RuntimeException(e.getMessage()) ;
+    }
+  }
+
+  /*
+   * Applies a user op to `count' items of datatype, as the collectives
+   * do.  A function on primitive buffers is called once for each run of
+   * consecutive elements: once in all for a datatype without gaps.
+   */
+
+  void apply(Object invec, int inoffset, Object outvec, int outoffset,
+             int count, Datatype datatype) throws MPIException {
+    if(uf != null) {
+      uf.Call(invec, inoffset, outvec, outoffset, count, datatype);
+      return ;
+    }
+
+    if(datatype.contiguous()) {
+      call(invec, inoffset, outvec, outoffset, count * datatype.Size()) ;
+      return ;
+    }
+
+    int extent = datatype.Extent() ;
+    int [] disps = datatype.displacements ;
+    if(disps == null)
+      throw new MPIException("Op of " + (df != null ? "double" :
+                                         lf != null ? "long" : "int") +
+                             " elements needs a datatype without gaps") ;
+
+    for (int j = 0 ; j < count ; j++) {
+      int k = 0 ;
+      while (k < disps.length) {
+        int run = 1 ;
+        while (k + run < disps.length && disps [k + run] == disps [k] + run)
+          run++ ;
+        call(invec, inoffset + j * extent + disps [k],
+             outvec, outoffset + j * extent + disps [k], run) ;
+        k += run ;
+      }
+    }
   }
 
-  private native void GetOp(int Type);
+  /*
+   * Fails unless the op can be applied to buf, so that a collective fails
+   * at every rank before any of them sends.
+   */
+
+  void check(Object buf) throws MPIException {
+    if(df != null && !(buf instanceof double[]) ||
+       lf != null && !(buf instanceof long[]) ||
+       nf != null && !(buf instanceof int[]))
+      throw new MPIException("Op does not match the type of the buffer") ;
+  }
+
+  private void call(Object invec, int inoffset, Object outvec, int outoffset,
+                    int count) throws MPIException {
+    if(df != null && invec instanceof double[] && outvec instanceof double[])
+      df.Call((double []) invec, inoffset, (double []) outvec, outoffset,
+              count) ;
+    else if(lf != null && invec instanceof long[] &&
+            outvec instanceof long[])
+      lf.Call((long []) invec, inoffset, (long []) outvec, outoffset, count) ;
+    else if(nf != null && invec instanceof int[] && outvec instanceof int[])
+      nf.Call((int []) invec, inoffset, (int []) outvec, outoffset, count) ;
+    else
+      throw new MPIException("Op does not match the type of the buffer") ;
+  }
+
+  native void GetOp(int Type);
 
   protected long handle ;
 
+  int code ;  // predefined op, as used by the engine
+
   public void finalize() throws MPIException {
+      if(!MPI.device.nativeHandles())
+        return ;
       synchronized(MPI.class) {
           MPI.freeList.addFirst(this) ;
       }
@@ -71,7 +286,8 @@ public class Op extends Freeable {
   native void free() ;
 
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }
 }
 
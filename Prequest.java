@@ -52,12 +52,8 @@ public class Prequest extends Request {
     this.tag    = tag;
     this.comm   = comm ;
 
-    if(type.isObject()) {
+    if(type.isObject())
       typeTag    = Request.TYPE_OBJECT ;
-
-      length_buf = new int [2] ;
-      hdrReq     = new Request() ;
-    }
     else
       typeTag    = Request.TYPE_NORMAL ;
   }
@@ -79,11 +75,8 @@ public class Prequest extends Request {
     this.tag    = tag;
     this.comm   = comm;
 
-    if(type.isObject()) {
+    if(type.isObject())
       typeTag    = Request.TYPE_OBJECT ;
-
-      length_buf = new int [2] ;
-    }
     else
       typeTag    = Request.TYPE_NORMAL ;
   }
@@ -106,26 +99,26 @@ public class Prequest extends Request {
 
             switch(mode) {
               case MODE_STANDARD :
-	        comm.Isend(buf, offset, count, type, dest, tag, this);
+	        comm.IsendDispatch(buf, offset, count, type, dest, tag, this);
 
                 break;
               case MODE_BUFFERED :
-	        comm.Ibsend(buf, offset, count, type, dest, tag, this);
+	        comm.IbsendDispatch(buf, offset, count, type, dest, tag, this);
 
                 break;
               case MODE_SYNCHRONOUS :
-	        comm.Issend(buf, offset, count, type, dest, tag, this);
+	        comm.IssendDispatch(buf, offset, count, type, dest, tag, this);
 
                 break;
               case MODE_READY :
-	        comm.Irsend(buf, offset, count, type, dest, tag, this);
+	        comm.IrsendDispatch(buf, offset, count, type, dest, tag, this);
 
                 break;
             }
 
             break ;
           case OP_RECV :
-            comm.Irecv(buf, offset, count, type, src, tag, this) ;
+            comm.IrecvDispatch(buf, offset, count, type, src, tag, this) ;
 
             break ;
         }
@@ -134,42 +127,13 @@ public class Prequest extends Request {
       case TYPE_OBJECT :
         switch(opTag) {
           case OP_SEND :
-
-            byte [] byte_buf = comm.Object_Serialize(buf,offset,count,type);
-
-            length_buf[0] = byte_buf.length;
-            length_buf[1] = count ;
-
-            switch(mode) {
-              case MODE_STANDARD :
-                comm.Isend(length_buf, 0, 2, MPI.INT, dest, tag, hdrReq) ;
-	        comm.Isend(byte_buf, 0, byte_buf.length,
-		           MPI.BYTE, dest, tag, this);
-
-                break;
-              case MODE_BUFFERED :
-                comm.Ibsend(length_buf, 0, 2, MPI.INT, dest, tag, hdrReq) ;
-                comm.Ibsend(byte_buf, 0, byte_buf.length, 
-                            MPI.BYTE, dest, tag, this);
-
-                break;
-              case MODE_SYNCHRONOUS :
-                comm.Issend(length_buf, 0, 2, MPI.INT, dest, tag, hdrReq) ;
-	        comm.Isend(byte_buf, 0, byte_buf.length,
-		           MPI.BYTE, dest, tag, this);
-
-                break;
-              case MODE_READY :
-                comm.Irsend(length_buf, 0, 2, MPI.INT, dest, tag, hdrReq) ;
-                comm.Isend(byte_buf, 0, byte_buf.length, 
-                           MPI.BYTE, dest, tag, this);
-
-                break;
-            }
+            comm.isendObjects(mode,
+                              ObjectMessage.write(buf, offset, count, type),
+                              dest, tag, this) ;
 
             break ;
           case OP_RECV :
-            comm.Irecv(length_buf, 0, 2, MPI.INT, src, tag, this) ;
+            comm.irecvObjects(src, tag, this) ;
 
             break ;
         }
@@ -8,13 +8,14 @@
  */
 
 /*
- * Note: in a send request for a buffer containing objects, the primary
- * `MPI_Request' referenced by `handle' is the request to send the data.
- * The request to send the header is in the secondary field, `hdrReq'.
- * Conversely, in a *receive* request for a buffer containing objects
- * the primary `MPI_Request' is the request to send the header.
- * The receive of the data is not initiated until a `wait' or `test'
- * operation succeeds.
+ * Note: a buffer containing objects goes as an `ObjectMessage', whose
+ * first part carries the header.  In a send request for such a buffer
+ * the primary `MPI_Request' referenced by `handle' is the request to
+ * send the first part, and the request to send the rest, if any, is in
+ * the secondary field, `restReq'.  In a *receive* request the primary
+ * `MPI_Request' is the request to receive the first part.  The receive
+ * of the rest is not initiated until a `wait' or `test' operation
+ * succeeds.  The message is in `message' until then.
  */
 
 /*
@@ -35,7 +36,7 @@ public class Request {
   protected final static int OP_SEND     = 0;
   protected final static int OP_RECV     = 1;
 
-  protected Request hdrReq ;
+  protected Request restReq ;
   protected int typeTag = TYPE_NORMAL   ;
   protected int opTag ;
   protected int mode ;
@@ -46,28 +47,32 @@ public class Request {
   protected int dest;
   protected int tag;
   protected Comm comm;
-  protected int[] length_buf;
+  protected byte[] message;
 
 
   private static native void init();
  
-  private native void GetReq(int Type);
+  private void GetReqDispatch(int Type) {
+    MPI.device.newRequest(this, Type) ;
+  }
+
+  native void GetReq(int Type);
 
 
   protected Request() {}
 
-  protected Request(int Type) { GetReq(Type); }
+  protected Request(int Type) { GetReqDispatch(Type); }
 
   /**
    * Constructor used by <tt>Isend</tt>, etc.
    */
 
-  protected Request(Request hdrReq) {
+  protected Request(byte [] message) {
 
     typeTag = Request.TYPE_OBJECT ;
     opTag   = Request.OP_SEND ;
 
-    this.hdrReq = hdrReq ;
+    this.message = message ;
   }
 
   /**
@@ -75,8 +80,7 @@ public class Request {
    */
 
   protected Request(Object buf, int offset, int count, Datatype type,
-                    int tag, Comm comm,
-                    int [] length_buf) {
+                    Comm comm) {
 
     typeTag = Request.TYPE_OBJECT ;
     opTag   = Request.OP_RECV ;
@@ -85,10 +89,7 @@ public class Request {
     this.offset = offset;
     this.count  = count;
     this.type   = type;
-    this.tag    = tag;
     this.comm   = comm;
-
-    this.length_buf = length_buf;
   }
 
 
@@ -97,14 +98,22 @@ public class Request {
    * Java binding of the MPI operation <tt>MPI_REQUEST_FREE</tt>.
    */
 
-  public native void Free() throws MPIException ;
+  public void Free() throws MPIException {
+    MPI.device.free(this) ;
+  }
+
+  native void FreeNative() throws MPIException ;
 
   /**
    * Mark a pending nonblocking communication for cancellation.
    * Java binding of the MPI operation <tt>MPI_CANCEL</tt>.
    */
 
-  public native void Cancel() throws MPIException ;
+  public void Cancel() throws MPIException {
+    MPI.device.cancel(this) ;
+  }
+
+  native void CancelNative() throws MPIException ;
 
   /**
    * Test if request object is void.
@@ -115,7 +124,11 @@ public class Request {
    * </table>
    */
 
-  public native boolean Is_null();
+  public boolean Is_null() {
+    return MPI.device.isNull(this) ;
+  }
+
+  native boolean Is_nullNative();
 
   /*
    * After initial wait succeeds with some status, complete as necessary.
@@ -129,22 +142,22 @@ public class Request {
       case TYPE_OBJECT :
         switch(opTag) {
           case OP_SEND :
-            hdrReq.Wait(new Status()) ;  // Data has already gone, but must
-                                         // still do `wait' on header send.
+            if(restReq != null)
+              restReq.WaitDispatch(new Status()) ;
+                  // First part has gone, but must still do `wait' on the
+                  // rest.
+            ObjectMessage.release(message) ;
+            message = null ;
             break;
           case OP_RECV :
 
             int index = status.index ;
 
-            // Header has arrived, now read the actual data.
+            // Header has arrived, now read the rest and the objects.
 
-            byte[] byte_buf = new byte[length_buf[0]];
-            status = comm.Recv(byte_buf, 0, length_buf[0], MPI.BYTE,
-                               status.source, tag) ;
-            comm.Object_Deserialize(buf, byte_buf, offset, length_buf[1],
-                                    type);
+            status = comm.recvObjects(message, status, buf, offset, type) ;
+            message = null ;
 
-            status.object_count = length_buf[1];
             status.index        = index ;
 
             break;
@@ -169,12 +182,16 @@ public class Request {
 
   public Status Wait() throws MPIException {
     Status result = new Status();
-    Wait(result);
+    WaitDispatch(result);
 
     return complete(result) ;
   }
 
-  private native Status Wait(Status stat);
+  private Status WaitDispatch(Status stat) throws MPIException {
+    return MPI.device.wait(this, stat) ;
+  }
+
+  native Status Wait(Status stat);
 
   /**
    * Returns a status object if the operation identified by the request
@@ -193,13 +210,17 @@ public class Request {
   public Status Test() throws MPIException {
 
     Status result = new Status();
-    if (Test(result) == null)
+    if (TestDispatch(result) == null)
       return null;
     else
       return complete(result) ;
   }
 
-  private native Status Test(Status stat);
+  private Status TestDispatch(Status stat) throws MPIException {
+    return MPI.device.test(this, stat) ;
+  }
+
+  native Status Test(Status stat);
 
   /**
    * Blocks until one of the operations associated with the active
@@ -221,7 +242,7 @@ public class Request {
   public static Status Waitany(Request [] array_of_request)
                                                       throws MPIException {
     Status result = new Status();
-    Waitany(array_of_request, result);
+    WaitanyDispatch(array_of_request, result);
     
     if(result == null)
       return null;
@@ -229,8 +250,13 @@ public class Request {
       return array_of_request[result.index].complete(result) ; 
   }
 
-  private static native Status Waitany(Request [] array_of_request, 
-                                       Status stat);
+  private static Status WaitanyDispatch(Request [] array_of_request, 
+                                        Status stat) throws MPIException {
+    return MPI.device.waitany(array_of_request, stat) ;
+  }
+
+  static native Status Waitany(Request [] array_of_request, 
+                               Status stat);
 
   /**
    * Tests for completion of either one or none of the operations associated
@@ -255,7 +281,7 @@ public class Request {
                                                       throws MPIException {
  
     Status result = new Status();
-    result = Testany(array_of_request, result);
+    result = TestanyDispatch(array_of_request, result);
     
     if(result == null)
       return null;
@@ -263,8 +289,13 @@ public class Request {
       return array_of_request[result.index].complete(result) ; 
   }
 
-  private static native Status Testany(Request [] array_of_request, 
-                                       Status     stat);
+  private static Status TestanyDispatch(Request [] array_of_request, 
+                                        Status     stat) throws MPIException {
+    return MPI.device.testany(array_of_request, stat) ;
+  }
+
+  static native Status Testany(Request [] array_of_request, 
+                               Status     stat);
 
   /**
    * Blocks until all of the operations associated with the active
@@ -285,7 +316,7 @@ public class Request {
 
   public static Status[] Waitall (Request [] array_of_request)
                                                       throws MPIException {
-    Status result[] = waitall(array_of_request);
+    Status result[] = waitallDispatch(array_of_request);
             
     for (int i = 0 ; i < array_of_request.length ; i++)
       result [i] = array_of_request [i].complete(result [i]) ; 
@@ -293,7 +324,12 @@ public class Request {
     return result;
   }
 
-  private static native Status[] waitall(Request [] array_of_request);
+  private static Status[] waitallDispatch(Request [] array_of_request)
+                                                      throws MPIException {
+    return MPI.device.waitall(array_of_request) ;
+  }
+
+  static native Status[] waitall(Request [] array_of_request);
 
   /**
    * Tests for completion of <em>all</em> of the operations associated
@@ -314,7 +350,7 @@ public class Request {
 
   public static Status[] Testall(Request [] array_of_request)
                                                       throws MPIException {
-    Status result[] = testall(array_of_request);
+    Status result[] = testallDispatch(array_of_request);
 
     if (result == null)
       return null;
@@ -326,7 +362,12 @@ public class Request {
     }
   }
 
-  private static native Status[] testall(Request [] array_of_request);
+  private static Status[] testallDispatch(Request [] array_of_request)
+                                                      throws MPIException {
+    return MPI.device.testall(array_of_request) ;
+  }
+
+  static native Status[] testall(Request [] array_of_request);
 
   /**
    * Blocks until at least one of the operations associated with the active
@@ -348,7 +389,7 @@ public class Request {
 
   public static Status[] Waitsome(Request [] array_of_request)
                                                       throws MPIException {
-    Status result[] = waitsome(array_of_request);                         
+    Status result[] = waitsomeDispatch(array_of_request);
             
     for (int i = 0 ; i < result.length ; i++)
       result [i] = array_of_request [result [i].index].complete(result [i]) ; 
@@ -356,7 +397,12 @@ public class Request {
     return result;    
   }
 
-  private static native Status[] waitsome(Request [] array_of_request);
+  private static Status[] waitsomeDispatch(Request [] array_of_request)
+                                                      throws MPIException {
+    return MPI.device.waitsome(array_of_request) ;
+  }
+
+  static native Status[] waitsome(Request [] array_of_request);
 
   /**
    * Behaves like <tt>Waitsome</tt>, except that it returns immediately.
@@ -375,7 +421,7 @@ public class Request {
 
   public static Status[] Testsome(Request [] array_of_request)
                                                       throws MPIException {
-    Status result[] = testsome(array_of_request);
+    Status result[] = testsomeDispatch(array_of_request);
 
     if (result  == null)
       return null;
@@ -387,7 +433,12 @@ public class Request {
     }
   }
 
-  private static native Status[] testsome(Request [] array_of_request);
+  private static Status[] testsomeDispatch(Request [] array_of_request)
+                                                      throws MPIException {
+    return MPI.device.testsome(array_of_request) ;
+  }
+
+  static native Status[] testsome(Request [] array_of_request);
 
   // Fields manipulated only by native methods...
 
@@ -404,8 +455,14 @@ public class Request {
   protected int baseTypeSave ;
   protected long commSave, typeSave ;
 
+  // Under the engine, the send or receive this request started, or null
+  // once it is complete or if it never started.
+
+  Engine.Transfer transfer ;
+
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }          
 }
 
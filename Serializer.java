@@ -0,0 +1,32 @@
+/*
+ * File         : Serializer.java
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * Turns the elements of `MPI.OBJECT' buffers into bytes and back.  The
+ * serializer in use is chosen when `MPI' is loaded by the property
+ * `mpi.serializer', the name of a class with a public constructor that
+ * takes no arguments; by default it is a `DefaultSerializer'.  Every
+ * rank of a job must use the same one.
+ *
+ * `write' is called for every element of a buffer with the stream of
+ * the message, and `read' for every element when it arrives.  The
+ * streams are kept from one message to the next, so a serializer must
+ * not hold on to them.  Their `writeObject' and `readObject' go back to
+ * the serializer, so an object may write the objects it refers to with
+ * them.
+ */
+
+package mpi;
+
+import java.io.IOException ;
+import java.io.ObjectInput ;
+import java.io.ObjectOutput ;
+
+public interface Serializer {
+
+  void write(ObjectOutput out, Object obj) throws IOException ;
+
+  Object read(ObjectInput in) throws IOException, ClassNotFoundException ;
+}
@@ -0,0 +1,626 @@
+/*
+ * File         : ShmLink.java
+ * Created      : Sun Oct 18 2026
+ */
+
+/*
+ * Carries the messages of the engine between ranks that are processes
+ * on one host through shared memory, when `Mpirun' is run with `-shm'.
+ *
+ * Every pair of ranks maps a file of its own, made by `Mpirun' in
+ * /dev/shm, holding a ring for each direction.  A ring has one writer
+ * and one reader, which publish how far they have got by a release
+ * store and see how far the other has by an acquire load, so the two
+ * processes share no lock.  Frames are those of `TcpLink', padded to a
+ * multiple of 8 bytes so that elements in a ring are always aligned.
+ *
+ * A small message is copied into the ring whole, and out of it by the
+ * reader into a pooled buffer, since it may come before its receive.
+ * A send of more than `mpi.eager' bytes from a double [] sends only its
+ * header at first, and the receiver asks for the elements once the
+ * message is matched.  They are then copied from the sender's array
+ * into the ring and from the ring into the receiver's array, a part
+ * at a time if there are more than the ring holds.
+ *
+ * The progress thread polls the rings, spinning for a while after
+ * anything moved before it starts to sleep between polls.  A rank that
+ * waits polls them as well before it sleeps, so that on a quiet host a
+ * message is matched by the thread that waits for it.  Spinning is
+ * only done if there is more than one processor; otherwise pollers
+ * yield to whatever else could run.
+ */
+
+package mpi;
+
+import java.io.File ;
+import java.io.IOException ;
+import java.io.RandomAccessFile ;
+import java.lang.invoke.MethodHandles ;
+import java.lang.invoke.VarHandle ;
+import java.lang.reflect.Array ;
+import java.nio.ByteBuffer ;
+import java.nio.ByteOrder ;
+import java.nio.DoubleBuffer ;
+import java.nio.MappedByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.file.Paths ;
+import java.nio.file.StandardOpenOption ;
+import java.util.ArrayDeque ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.locks.LockSupport ;
+import java.util.concurrent.locks.ReentrantLock ;
+
+class ShmLink extends Link {
+
+  private final static int RTS  = 2 ;   // header of a large message
+  private final static int CTS  = 3 ;   // its receiver has matched it
+  private final static int BULK = 4 ;   // its elements
+
+  // Polls with nothing moving before yielding, then before sleeping
+  // PARK nanoseconds between polls.
+
+  private final static int SPIN  = Integer.getInteger("mpi.shm.spin",
+      Runtime.getRuntime().availableProcessors() > 1 ? 20000 : 0) ;
+  private final static int YIELD = 1000 ;
+  private final static long PARK = 20000 ;
+
+  private final Peer [] peers ;         // by world rank, null for home
+
+  /*
+   * One direction of the file of a pair.  The number of bytes written
+   * and the number read so far come first, a cache line apart, then
+   * the bytes of the ring.
+   */
+
+  static class Ring {
+    final static int WRITTEN = 0 ;
+    final static int READ    = 64 ;
+    final static int DATA    = 128 ;
+
+    private final static VarHandle COUNT =
+        MethodHandles.byteBufferViewVarHandle(long [].class,
+                                              ByteOrder.nativeOrder()) ;
+
+    private final ByteBuffer control ;
+    private final ByteBuffer bytes ;
+    private final DoubleBuffer doubles ;
+    private final int capacity ;        // a power of two
+    long count ;                        // bytes written, or read, by us
+
+    Ring(MappedByteBuffer file, int at, int capacity) {
+      control       = file.slice(at, DATA).order(ByteOrder.nativeOrder()) ;
+      bytes         = file.slice(at + DATA, capacity)
+                          .order(ByteOrder.nativeOrder()) ;
+      doubles       = bytes.asDoubleBuffer() ;
+      this.capacity = capacity ;
+    }
+
+    private int room() {
+      long read = (long) COUNT.getAcquire(control, READ) ;
+      return capacity - (int) (count - read) ;
+    }
+
+    private int ready() {
+      return (int) ((long) COUNT.getAcquire(control, WRITTEN) - count) ;
+    }
+
+    /*
+     * Writes as much of what remains of src as there is room for, and
+     * returns how many bytes that was.
+     */
+
+    int put(ByteBuffer src) {
+      int n = Math.min(src.remaining(), room()) ;
+      if (n == 0)
+        return 0 ;
+
+      int at = (int) count & (capacity - 1) ;
+      int first = Math.min(n, capacity - at) ;
+      bytes.put(at, src, src.position(), first) ;
+      bytes.put(0, src, src.position() + first, n - first) ;
+      src.position(src.position() + n) ;
+
+      count += n ;
+      COUNT.setRelease(control, WRITTEN, count) ;
+      return n ;
+    }
+
+    /*
+     * Reads as much as has been written, up to what remains of dst.
+     */
+
+    int get(ByteBuffer dst) {
+      int n = Math.min(dst.remaining(), ready()) ;
+      if (n == 0)
+        return 0 ;
+
+      int at = (int) count & (capacity - 1) ;
+      int first = Math.min(n, capacity - at) ;
+      dst.put(dst.position(), bytes, at, first) ;
+      dst.put(dst.position() + first, bytes, 0, n - first) ;
+      dst.position(dst.position() + n) ;
+
+      count += n ;
+      COUNT.setRelease(control, READ, count) ;
+      return n ;
+    }
+
+    /*
+     * Writes as many of n elements of src from offset as there is room
+     * for, and returns how many.
+     */
+
+    int put(double [] src, int offset, int n) {
+      n = Math.min(n, room() >> 3) ;
+      if (n == 0)
+        return 0 ;
+
+      int at = ((int) count & (capacity - 1)) >> 3 ;
+      int first = Math.min(n, (capacity >> 3) - at) ;
+      doubles.put(at, src, offset, first) ;
+      doubles.put(0, src, offset + first, n - first) ;
+
+      count += n << 3 ;
+      COUNT.setRelease(control, WRITTEN, count) ;
+      return n ;
+    }
+
+    int get(double [] dst, int offset, int n) {
+      n = Math.min(n, ready() >> 3) ;
+      if (n == 0)
+        return 0 ;
+
+      int at = ((int) count & (capacity - 1)) >> 3 ;
+      int first = Math.min(n, (capacity >> 3) - at) ;
+      doubles.get(at, dst, offset, first) ;
+      doubles.get(0, dst, offset + first, n - first) ;
+
+      count += n << 3 ;
+      COUNT.setRelease(control, READ, count) ;
+      return n ;
+    }
+  }
+
+  /*
+   * Something to write into a ring: a header, then either a payload
+   * or elements straight from the sender's array.
+   */
+
+  static class Frame {
+    ByteBuffer header ;
+    ByteBuffer payload ;
+    double [] array ;
+    int at, left ;
+    Engine.Transfer done ;              // a send complete once written
+  }
+
+  /*
+   * The rings shared with one other rank.  The writing end and the
+   * frames queued for it are guarded by the peer's lock, the reading
+   * end and what is being read by `reading'.
+   */
+
+  static class Peer {
+    int rank ;
+    Ring out, in ;
+    final ArrayDeque<Frame> queue = new ArrayDeque<Frame>() ;
+
+    final ByteBuffer header =
+        ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder()) ;
+    final ReentrantLock reading = new ReentrantLock() ;
+    Engine.Transfer arriving ;          // small message being read
+    Engine.Transfer filling ;           // receive of a large one
+    ByteBuffer bulk ;                   // its elements, if not straight
+    int at, left ;                      // in its array, if straight
+
+    // Receives of large messages whose elements were asked for, by the
+    // id the peer gave them.
+
+    final ConcurrentHashMap<Integer, Engine.Transfer> pulling =
+                          new ConcurrentHashMap<Integer, Engine.Transfer>() ;
+  }
+
+  private ShmLink(int home, Peer [] peers) {
+    super(home) ;
+    this.peers = peers ;
+  }
+
+
+  // Files
+
+  private static String file(String prefix, int rank1, int rank2) {
+    return prefix + "." + Math.min(rank1, rank2) + "." +
+           Math.max(rank1, rank2) ;
+  }
+
+  /*
+   * Makes the files of a job of `size' ranks, with rings of at least
+   * `ring' bytes, and returns the prefix of their names.
+   */
+
+  static String create(int size, int ring) throws IOException {
+    File dir = new File("/dev/shm") ;
+    if (!dir.isDirectory() || !dir.canWrite())
+      dir = new File(System.getProperty("java.io.tmpdir")) ;
+    String prefix = new File(dir, "mpi-" + ProcessHandle.current().pid())
+                        .getPath() ;
+
+    int capacity = Integer.highestOneBit(Math.max(ring, 4096) - 1) << 1 ;
+    for (int r1 = 0 ; r1 < size ; r1++)
+      for (int r2 = r1 + 1 ; r2 < size ; r2++) {
+        RandomAccessFile f = new RandomAccessFile(file(prefix, r1, r2), "rw") ;
+        f.setLength(2L * (Ring.DATA + capacity)) ;
+        f.close() ;
+      }
+    return prefix ;
+  }
+
+  static void remove(String prefix, int size) {
+    for (int r1 = 0 ; r1 < size ; r1++)
+      for (int r2 = r1 + 1 ; r2 < size ; r2++)
+        new File(file(prefix, r1, r2)).delete() ;
+  }
+
+  /*
+   * Maps the files that rank `rank' of `size' shares with the others.
+   */
+
+  static ShmLink open(int rank, int size, String prefix) throws IOException {
+    Peer [] peers = new Peer [size] ;
+    for (int r = 0 ; r < size ; r++) {
+      if (r == rank)
+        continue ;
+
+      FileChannel channel = FileChannel.open(Paths.get(file(prefix, rank, r)),
+                                             StandardOpenOption.READ,
+                                             StandardOpenOption.WRITE) ;
+      MappedByteBuffer map =
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()) ;
+      channel.close() ;
+
+      int half = map.capacity() / 2 ;
+      Ring up   = new Ring(map, 0, half - Ring.DATA) ;
+      Ring down = new Ring(map, half, half - Ring.DATA) ;
+
+      Peer p = new Peer() ;
+      p.rank = r ;
+      p.out  = rank < r ? up : down ;
+      p.in   = rank < r ? down : up ;
+      peers [r] = p ;
+    }
+    return new ShmLink(rank, peers) ;
+  }
+
+
+  // Sending
+
+  private static int pad(int bytes) {
+    return (bytes + 7) & ~7 ;
+  }
+
+  void send(Engine.Transfer t) throws MPIException {
+    int elements = t.count * Engine.size(t.type) ;
+    int kind     = kindOf(t.buf) ;
+
+    Frame f = new Frame() ;
+    if (t.buf instanceof double [] && elements * 8 > engine.eager) {
+      f.header = header(RTS, t.context, t.source, t.tag, kind, elements,
+                        register(t)) ;
+      post(peers [t.destination], f) ;
+      return ;
+    }
+
+    int id = t.mode == Prequest.MODE_SYNCHRONOUS ? register(t) : 0 ;
+    f.payload = encode(t, elements) ;
+    f.payload.limit(pad(f.payload.limit())) ;
+    f.header  = header(DATA, t.context, t.source, t.tag, kind, elements, id) ;
+    post(peers [t.destination], f) ;
+    if (id == 0)
+      engine.complete(t) ;
+  }
+
+  void acknowledge(int rank, int id) throws MPIException {
+    Frame f = new Frame() ;
+    f.header = header(ACK, 0, 0, 0, 0, 0, id) ;
+    post(peers [rank], f) ;
+  }
+
+  /*
+   * Writes the frame at once if nothing is queued before it and the
+   * ring has room, otherwise queues it for the progress thread.
+   */
+
+  private void post(Peer p, Frame f) {
+    synchronized (p) {
+      if (p.queue.isEmpty() && write(p.out, f)) {
+        written(f) ;
+        return ;
+      }
+      p.queue.add(f) ;
+    }
+    LockSupport.unpark(this) ;
+  }
+
+  /*
+   * Writes as much of f as the ring has room for, and returns true if
+   * that was all of it.
+   */
+
+  private static boolean write(Ring ring, Frame f) {
+    ring.put(f.header) ;
+    if (f.header.hasRemaining())
+      return false ;
+    if (f.payload != null) {
+      ring.put(f.payload) ;
+      if (f.payload.hasRemaining())
+        return false ;
+    }
+    if (f.array != null) {
+      int n = ring.put(f.array, f.at, f.left) ;
+      f.at   += n ;
+      f.left -= n ;
+      if (f.left > 0)
+        return false ;
+    }
+    return true ;
+  }
+
+  private void written(Frame f) {
+    pool.release(f.header) ;
+    if (f.payload != null)
+      pool.release(f.payload) ;
+    if (f.done != null)
+      engine.complete(f.done) ;
+  }
+
+  private boolean flush(Peer p) {
+    synchronized (p) {
+      long before = p.out.count ;
+      while (!p.queue.isEmpty() && write(p.out, p.queue.peek()))
+        written(p.queue.poll()) ;
+      if (p.queue.isEmpty())
+        p.notifyAll() ;
+      return p.out.count != before ;
+    }
+  }
+
+  void drain() throws MPIException {
+    for (int r = 0 ; r < peers.length ; r++) {
+      Peer p = peers [r] ;
+      if (p == null)
+        continue ;
+      synchronized (p) {
+        while (!p.queue.isEmpty()) {
+          LockSupport.unpark(this) ;
+          try {
+            p.wait(1) ;
+          }
+          catch (InterruptedException e) {
+            throw new MPIException("Interrupted while waiting") ;
+          }
+        }
+      }
+    }
+  }
+
+
+  // Receiving
+
+  public void run() {
+    int idle = 0 ;
+    while (true) {
+      if (poll())
+        idle = 0 ;
+      else if (++idle < SPIN + YIELD)
+        idle(idle) ;
+      else
+        LockSupport.parkNanos(PARK) ;
+    }
+  }
+
+  boolean pollable() {
+    return true ;
+  }
+
+  /*
+   * Writes what is queued and reads what has come, on every ring that
+   * no other thread is reading, and returns true if anything moved.
+   */
+
+  boolean poll() {
+    boolean moved = false ;
+    for (int r = 0 ; r < peers.length ; r++) {
+      Peer p = peers [r] ;
+      if (p == null)
+        continue ;
+      moved |= flush(p) ;
+      if (!p.reading.tryLock())
+        continue ;
+      try {
+        moved |= read(p) ;
+      }
+      catch (MPIException e) {
+        System.err.println("Rank " + home + ": " + e.getMessage()) ;
+      }
+      finally {
+        p.reading.unlock() ;
+      }
+    }
+    return moved ;
+  }
+
+  void idle(int round) {
+    if (round < SPIN)
+      Thread.onSpinWait() ;
+    else
+      Thread.yield() ;
+  }
+
+  /*
+   * Reads all that the peer has written so far, and returns true if
+   * there was anything.
+   */
+
+  private boolean read(Peer p) throws MPIException {
+    long before = p.in.count ;
+    while (true) {
+      if (p.left > 0) {
+        int n = p.in.get((double []) p.filling.buf, p.at, p.left) ;
+        if (n == 0)
+          break ;
+        p.at   += n ;
+        p.left -= n ;
+        if (p.left == 0) {
+          engine.complete(p.filling) ;
+          p.filling = null ;
+        }
+        continue ;
+      }
+
+      ByteBuffer into = p.arriving != null ? (ByteBuffer) p.arriving.buf :
+                        p.bulk != null     ? p.bulk : p.header ;
+      p.in.get(into) ;
+      if (into.hasRemaining())
+        break ;
+
+      if (p.arriving != null) {
+        Engine.Transfer t = p.arriving ;
+        p.arriving = null ;
+        engine.arrive(t) ;
+      }
+      else if (p.bulk != null)
+        unload(p) ;
+      else
+        frame(p) ;
+    }
+    return p.in.count != before ;
+  }
+
+  /*
+   * Acts on a header just read.
+   */
+
+  private void frame(Peer p) throws MPIException {
+    ByteBuffer h = p.header ;
+    h.clear() ;
+    int frame = h.getInt(0), id = h.getInt(24) ;
+
+    if (frame == ACK) {
+      Engine.Transfer send = unmatched.remove(id) ;
+      if (send != null)
+        engine.complete(send) ;
+    }
+    else if (frame == CTS)
+      pull(p, unmatched.remove(id), id) ;
+    else if (frame == RTS)
+      engine.arrive(arrival(h, p.rank)) ;
+    else if (frame == DATA) {
+      Engine.Transfer t = arrival(h, p.rank) ;
+      t.buf = pool.take(pad(t.count * unit(t.kind))) ;
+      if (t.count == 0)
+        engine.arrive(t) ;
+      else
+        p.arriving = t ;
+    }
+    else if (frame == BULK) {
+      Engine.Transfer recv = p.pulling.remove(id) ;
+      int count = h.getInt(20) ;
+      p.filling     = recv ;
+      recv.elements = count ;
+      if (recv.error == null && recv.buf instanceof double [] &&
+          Engine.contiguous(recv.type)) {
+        p.at   = recv.offset ;
+        p.left = count ;
+      }
+      else
+        p.bulk = pool.take(count * 8) ;
+    }
+  }
+
+  /*
+   * Sends the elements of a large message once its receiver asks.
+   */
+
+  private void pull(Peer p, Engine.Transfer send, int id)
+                                                      throws MPIException {
+    int elements = send.count * Engine.size(send.type) ;
+
+    Frame f = new Frame() ;
+    f.done   = send ;
+    f.header = header(BULK, 0, 0, 0, 7, elements, id) ;
+    try {
+      if (Engine.contiguous(send.type)) {
+        f.array = (double []) send.buf ;
+        f.at    = send.offset ;
+        f.left  = elements ;
+      }
+      else
+        f.payload = encode(send, elements) ;
+    }
+    catch (MPIException e) {
+      send.error = e.getMessage() ;
+      f.payload  = pool.take(elements * 8) ;
+    }
+    post(p, f) ;
+  }
+
+  /*
+   * Decodes the elements of a large message read into a buffer of
+   * their own, as its receive is not one contiguous double [].  The
+   * engine has already failed a receive with an error.
+   */
+
+  private void unload(Peer p) throws MPIException {
+    Engine.Transfer recv = p.filling ;
+    ByteBuffer bulk = p.bulk ;
+    p.bulk    = null ;
+    p.filling = null ;
+
+    if (recv.error == null) {
+      try {
+        runs(recv.buf, recv.offset, recv.type, recv.elements, bulk, false) ;
+      }
+      catch (IndexOutOfBoundsException e) {
+        recv.error = "Buffer too short: " + e.getMessage() ;
+      }
+      catch (MPIException e) {
+        recv.error = e.getMessage() ;
+      }
+      engine.complete(recv) ;
+    }
+    pool.release(bulk) ;
+  }
+
+  /*
+   * A large message is matched before its elements come: ask for them,
+   * and leave the receive to be completed as they are read.
+   */
+
+  boolean receive(Engine.Transfer send, Engine.Transfer recv)
+                                                      throws MPIException {
+    if (send.buf != null)
+      return super.receive(send, recv) ;
+
+    MPIException failed = null ;
+    try {
+      check(send, recv) ;
+      if (Engine.contiguous(recv.type) &&
+          recv.offset + send.count > Array.getLength(recv.buf))
+        throw new MPIException("Buffer too short") ;
+    }
+    catch (MPIException e) {
+      failed     = e ;
+      recv.error = e.getMessage() ;
+    }
+
+    Peer p = peers [send.origin] ;
+    p.pulling.put(send.id, recv) ;
+    Frame f = new Frame() ;
+    f.header = header(CTS, 0, 0, 0, 0, 0, send.id) ;
+    post(p, f) ;
+
+    if (failed != null)
+      throw failed ;
+    return false ;
+  }
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    SnapshotFile
+    Binary file that every machine writes it's own columns of a printed step
+    into, so the field never has to pass through the master
+
+    Layout, all big-endian:
+        header  magic, size, number of frames, unused      (4 ints)
+        frame   step, unused                                (2 ints)
+                size columns of size doubles, each top-down
+    Every frame has the same length, so where a machine's columns go is
+    known from the frame number and it's first column alone
+*/
+public class SnapshotFile
+{
+    final static int MAGIC = 0x48324453;     // "H2DS"
+    final static int HEADER = 16;            // bytes before the first frame
+    final static int FRAME_HEADER = 8;       // bytes before a frame's columns
+
+    private FileChannel channel;
+    private int size;
+    private ByteBuffer buffer;               // reused for every write
+
+
+
+
+    /*
+        SnapshotFile
+        Opens the file at path for writing columns of length size. Only the
+        machine that creates the file truncates it and writes the header
+    */
+    public SnapshotFile(String path, int size, boolean create)
+            throws IOException
+    {
+        this.size = size;
+
+        if(create)
+        {
+            channel = FileChannel.open(Paths.get(path),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(size).putInt(0).putInt(0);
+            header.flip();
+            write(header, 0);
+        }
+        else
+        {
+            channel = FileChannel.open(Paths.get(path),
+                    StandardOpenOption.WRITE);
+        }
+    }
+
+
+
+
+    /*
+        frameOffset
+        Position of the first byte of frame number frame
+    */
+    public long frameOffset(int frame)
+    {
+        return HEADER + frame * (FRAME_HEADER + 8L * size * size);
+    }
+
+
+
+
+    /*
+        writeFrameHeader
+        Records which step frame number frame holds
+    */
+    public void writeFrameHeader(int frame, int t) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        header.putInt(t).putInt(0);
+        header.flip();
+        write(header, frameOffset(frame));
+    }
+
+
+
+
+    /*
+        writeColumns
+        Writes columns first to last of field into frame number frame, at
+        the place they have in the whole field
+    */
+    public void writeColumns(int frame, final double[][] field, int first,
+            int last) throws IOException
+    {
+        int bytes = (last - first + 1) * size * 8;
+        if(buffer == null || buffer.capacity() < bytes)
+        {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        }
+
+        buffer.clear();
+        DoubleBuffer columns = buffer.asDoubleBuffer();
+        for(int x = first; x <= last; x++)
+        {
+            columns.put(field[x], 0, size);
+        }
+        buffer.limit(bytes);
+
+        write(buffer, frameOffset(frame) + FRAME_HEADER + 8L * first * size);
+    }
+
+
+
+
+    /*
+        writeSlab
+        Writes count columns that are one after the other in slab, the
+        first of them being column first of the field, into frame number
+        frame
+    */
+    public void writeSlab(int frame, final double[] slab, int first,
+            int count) throws IOException
+    {
+        int bytes = count * size * 8;
+        if(buffer == null || buffer.capacity() < bytes)
+        {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        }
+
+        buffer.clear();
+        buffer.asDoubleBuffer().put(slab, 0, count * size);
+        buffer.limit(bytes);
+
+        write(buffer, frameOffset(frame) + FRAME_HEADER + 8L * first * size);
+    }
+
+
+
+
+    /*
+        writeFrameCount
+        Records in the header how many frames the file holds
+    */
+    public void writeFrameCount(int frames) throws IOException
+    {
+        ByteBuffer count = ByteBuffer.allocate(4);
+        count.putInt(frames);
+        count.flip();
+        write(count, 8);
+    }
+
+
+
+
+    /*
+        close
+        Makes sure everything written is on disk and closes the file
+    */
+    public void close() throws IOException
+    {
+        channel.force(false);
+        channel.close();
+    }
+
+
+
+
+    /*
+        write
+        Positional writes may write less than asked for, so keep going
+        until the whole buffer is in the file
+    */
+    private void write(ByteBuffer data, long position) throws IOException
+    {
+        while(data.hasRemaining())
+        {
+            position += channel.write(data, position);
+        }
+    }
+}
@@ -23,10 +23,15 @@ public class Status extends Freeable {
 
 //  protected Status(long _handle) { handle = _handle;}
 
-  public Status() {alloc() ;}
-  private native void alloc() ;
+  public Status() {
+    MPI.device.newStatus(this) ;
+  }
+
+  native void alloc() ;
 
   public void finalize() throws MPIException {
+      if(!MPI.device.nativeHandles())
+        return ;
       synchronized(MPI.class) {
           MPI.freeList.addFirst(this) ;
       }
@@ -51,10 +56,10 @@ public class Status extends Freeable {
     if (datatype.isObject())
       return object_count;    // Is this correct?
     else
-      return get_count(datatype);
+      return MPI.device.getCount(this, datatype) ;
   }
 
-  private native int get_count(Datatype datatype);
+  native int get_count(Datatype datatype);
 
   /**
    * Test if communication was cancelled.
@@ -68,7 +73,11 @@ public class Status extends Freeable {
    * Java binding of the MPI operation <tt>MPI_TEST_CANCELLED</tt>.
    */
 
-  public native boolean Test_cancelled() throws MPIException ;
+  public boolean Test_cancelled() throws MPIException {
+    return MPI.device.testCancelled(this) ;
+  }
+
+  native boolean Test_cancelledNative() throws MPIException ;
 
   /**
    * Retrieve number of basic elements from status.
@@ -86,18 +95,21 @@ public class Status extends Freeable {
   public int Get_elements(Datatype datatype) throws MPIException {
     if(datatype.isObject())
       return MPI.UNDEFINED;  // Is this correct?
-    else 
-      return get_elements(datatype) ;
+    else
+      return MPI.device.getElements(this, datatype) ;
   }
 
-  private native int get_elements(Datatype datatype);
+  native int get_elements(Datatype datatype);
 
   private static native void init(); 
 
   protected long handle;
 
+  boolean cancelled ;  // set by the engine
+
   static {
-    init();
+    if(MPI.device.nativeHandles())
+      init();
   }          
 
 }
@@ -0,0 +1,339 @@
+/*
+ * File         : TcpLink.java
+ * Created      : Sun Oct 18 2026
+ */
+
+/*
+ * Carries the messages of the engine between ranks that are separate
+ * processes, over one TCP connection for each pair of ranks, when
+ * `Mpirun' is run with `-tcp'.  Every process holds one rank.
+ *
+ * A message is a frame of a fixed header followed by its elements,
+ * encoded in bulk into a direct buffer taken from a pool and written
+ * with the header by one gathering write.  The sending thread writes
+ * the frame itself if nothing is queued before it, and otherwise
+ * leaves it to the progress thread, which waits on a selector for
+ * connections that can be read or written.  Frames are read into
+ * pooled buffers and handed to the engine, which decodes them straight
+ * into the buffer of the matching receive.
+ *
+ * Sends are eager: the encoded frame owns its data, so a send is done
+ * as soon as its frame is made, except a synchronous send, which waits
+ * for the receiver to say that the message was matched.
+ */
+
+package mpi;
+
+import java.io.DataInputStream ;
+import java.io.DataOutputStream ;
+import java.io.EOFException ;
+import java.io.IOException ;
+import java.net.InetAddress ;
+import java.net.InetSocketAddress ;
+import java.net.Socket ;
+import java.net.StandardSocketOptions ;
+import java.nio.ByteBuffer ;
+import java.nio.ByteOrder ;
+import java.nio.channels.SelectionKey ;
+import java.nio.channels.Selector ;
+import java.nio.channels.ServerSocketChannel ;
+import java.nio.channels.SocketChannel ;
+import java.util.ArrayDeque ;
+import java.util.ArrayList ;
+import java.util.Iterator ;
+
+class TcpLink extends Link {
+
+  private final Peer [] peers ;         // by world rank, null for home
+  private final Selector selector ;
+
+  /*
+   * The connection to one other rank.  Frames waiting to be written are
+   * guarded by the peer's lock, and only the progress thread reads.
+   */
+
+  static class Peer {
+    int rank ;
+    SocketChannel channel ;
+    SelectionKey key ;
+    final ArrayDeque<ByteBuffer []> out = new ArrayDeque<ByteBuffer []>() ;
+    boolean lost ;
+
+    final ByteBuffer header =
+        ByteBuffer.allocateDirect(HEADER).order(ByteOrder.nativeOrder()) ;
+    Engine.Transfer arriving ;          // whose elements are being read
+  }
+
+  private TcpLink(int home, SocketChannel [] channels) throws IOException {
+    super(home) ;
+
+    selector = Selector.open() ;
+    peers    = new Peer [channels.length] ;
+    for (int r = 0 ; r < channels.length ; r++) {
+      if (r == home)
+        continue ;
+      Peer p = new Peer() ;
+      p.rank    = r ;
+      p.channel = channels [r] ;
+      p.channel.configureBlocking(false) ;
+      p.channel.setOption(StandardSocketOptions.TCP_NODELAY, true) ;
+      p.key     = p.channel.register(selector, SelectionKey.OP_READ, p) ;
+      peers [r] = p ;
+    }
+  }
+
+  /*
+   * Connects rank `rank' of `size' to all the others.  Each rank listens
+   * on a port of the loopback interface and tells `Mpirun', which
+   * listens on `registry', and `Mpirun' answers with the ports of all.
+   * Every rank then connects to those below it and accepts those above.
+   */
+
+  static TcpLink connect(int rank, int size, int registry)
+                                                       throws IOException {
+    InetAddress loopback = InetAddress.getLoopbackAddress() ;
+
+    ServerSocketChannel server = ServerSocketChannel.open() ;
+    server.bind(new InetSocketAddress(loopback, 0), size) ;
+    int port = ((InetSocketAddress) server.getLocalAddress()).getPort() ;
+
+    int [] ports = new int [size] ;
+    Socket socket = new Socket(loopback, registry) ;
+    try {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream()) ;
+      out.writeInt(rank) ;
+      out.writeInt(port) ;
+      out.flush() ;
+      DataInputStream in = new DataInputStream(socket.getInputStream()) ;
+      for (int r = 0 ; r < size ; r++)
+        ports [r] = in.readInt() ;
+    }
+    finally {
+      socket.close() ;
+    }
+
+    SocketChannel [] channels = new SocketChannel [size] ;
+    ByteBuffer id = ByteBuffer.allocate(4) ;
+    for (int r = 0 ; r < rank ; r++) {
+      channels [r] = SocketChannel.open(new InetSocketAddress(loopback,
+                                                              ports [r])) ;
+      id.clear() ;
+      id.putInt(rank).flip() ;
+      while (id.hasRemaining())
+        channels [r].write(id) ;
+    }
+    for (int k = rank + 1 ; k < size ; k++) {
+      SocketChannel channel = server.accept() ;
+      id.clear() ;
+      while (id.hasRemaining())
+        if (channel.read(id) < 0)
+          throw new EOFException("Rank closed its connection at start") ;
+      channels [id.getInt(0)] = channel ;
+    }
+    server.close() ;
+
+    return new TcpLink(rank, channels) ;
+  }
+
+
+  // Sending
+
+  /*
+   * Encodes the elements of a send into a frame and posts it to the
+   * rank the send goes to.
+   */
+
+  void send(Engine.Transfer t) throws MPIException {
+    int elements = t.count * Engine.size(t.type) ;
+    int kind     = kindOf(t.buf) ;
+    ByteBuffer payload = encode(t, elements) ;
+
+    int id = t.mode == Prequest.MODE_SYNCHRONOUS ? register(t) : 0 ;
+    post(peers [t.destination], new ByteBuffer [] {
+      header(DATA, t.context, t.source, t.tag, kind, elements, id),
+      payload
+    }) ;
+    if (id == 0)
+      engine.complete(t) ;
+  }
+
+  void acknowledge(int rank, int id) throws MPIException {
+    post(peers [rank], new ByteBuffer [] {header(ACK, 0, 0, 0, 0, 0, id)}) ;
+  }
+
+  /*
+   * Writes the frame at once if the connection has nothing queued,
+   * otherwise, or if the socket takes only part of it, queues it for
+   * the progress thread.
+   */
+
+  private void post(Peer p, ByteBuffer [] frame) throws MPIException {
+    synchronized (p) {
+      if (p.lost) {
+        release(frame) ;
+        throw new MPIException("Lost the connection to rank " + p.rank) ;
+      }
+      if (p.out.isEmpty()) {
+        try {
+          p.channel.write(frame) ;
+        }
+        catch (IOException e) {
+          release(frame) ;
+          throw new MPIException("Cannot write to rank " + p.rank + ": " +
+                                 e.getMessage()) ;
+        }
+        if (!frame [frame.length - 1].hasRemaining()) {
+          release(frame) ;
+          return ;
+        }
+      }
+      p.out.add(frame) ;
+      if (p.out.size() == 1) {
+        p.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE) ;
+        selector.wakeup() ;
+      }
+    }
+  }
+
+  /*
+   * Writes as much of the queued frames as the socket takes, all of them
+   * by one gathering write.
+   */
+
+  private void flush(Peer p) throws IOException {
+    synchronized (p) {
+      ArrayList<ByteBuffer> all = new ArrayList<ByteBuffer>() ;
+      for (ByteBuffer [] frame : p.out)
+        for (ByteBuffer b : frame)
+          all.add(b) ;
+      p.channel.write(all.toArray(new ByteBuffer [all.size()])) ;
+
+      while (!p.out.isEmpty()) {
+        ByteBuffer [] frame = p.out.peek() ;
+        if (frame [frame.length - 1].hasRemaining())
+          return ;
+        release(p.out.poll()) ;
+      }
+      p.key.interestOps(SelectionKey.OP_READ) ;
+      p.notifyAll() ;
+    }
+  }
+
+  /*
+   * Waits until every queued frame has been written.
+   */
+
+  void drain() throws MPIException {
+    for (int r = 0 ; r < peers.length ; r++) {
+      Peer p = peers [r] ;
+      if (p == null)
+        continue ;
+      synchronized (p) {
+        while (!p.out.isEmpty() && !p.lost) {
+          try {
+            p.wait() ;
+          }
+          catch (InterruptedException e) {
+            throw new MPIException("Interrupted while waiting") ;
+          }
+        }
+      }
+    }
+  }
+
+  private void release(ByteBuffer [] frame) {
+    for (ByteBuffer b : frame)
+      pool.release(b) ;
+  }
+
+
+  // Receiving
+
+  public void run() {
+    try {
+      while (true) {
+        selector.select() ;
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator() ;
+        while (it.hasNext()) {
+          SelectionKey key = it.next() ;
+          it.remove() ;
+          Peer p = (Peer) key.attachment() ;
+          try {
+            if (key.isValid() && key.isReadable())
+              read(p) ;
+            if (key.isValid() && key.isWritable())
+              flush(p) ;
+          }
+          catch (EOFException e) {
+            lose(p, null) ;
+          }
+          catch (IOException e) {
+            lose(p, e) ;
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      System.err.println("Rank " + home + ": progress failed: " + e) ;
+    }
+  }
+
+  /*
+   * Reads what has come from the peer.  The header of a frame is read
+   * into the peer's own buffer and its elements into a pooled one that
+   * goes to the engine with the message.
+   */
+
+  private void read(Peer p) throws IOException {
+    while (true) {
+      Engine.Transfer t = p.arriving ;
+      ByteBuffer into = t != null ? (ByteBuffer) t.buf : p.header ;
+      if (p.channel.read(into) < 0)
+        throw new EOFException() ;
+      if (into.hasRemaining())
+        return ;
+
+      if (t != null) {
+        p.arriving = null ;
+        into.position(0) ;
+        engine.arrive(t) ;
+        continue ;
+      }
+
+      ByteBuffer h = p.header ;
+      int frame = h.getInt(0) ;
+      if (frame == ACK) {
+        Engine.Transfer send = unmatched.remove(h.getInt(24)) ;
+        if (send != null)
+          engine.complete(send) ;
+        h.clear() ;
+        continue ;
+      }
+
+      t     = arrival(h, p.rank) ;
+      t.buf = pool.take(t.count * unit(t.kind)) ;
+      h.clear() ;
+
+      if (t.count == 0)
+        engine.arrive(t) ;
+      else
+        p.arriving = t ;
+    }
+  }
+
+  private void lose(Peer p, IOException e) {
+    synchronized (p) {
+      p.lost = true ;
+      p.key.cancel() ;
+      try {
+        p.channel.close() ;
+      }
+      catch (IOException ignored) {
+      }
+      p.notifyAll() ;
+    }
+    if (e != null)
+      System.err.println("Rank " + home + ": lost the connection to rank " +
+                         p.rank + ": " + e.getMessage()) ;
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * File         : natives.c
+ * Created      : Mon Oct 19 2026
+ */
+
+/*
+ * Entry points for the natives that give way to a Java method of the
+ * same signature.  A public binding such as `Comm.Rank()' has to be a
+ * Java method so that ranks run as threads can be served without the
+ * native library, so its native is declared as `RankNative()' instead.
+ * Each function here takes exactly the arguments of its renamed native
+ * and calls the library's function for the original name, which takes
+ * the same arguments.
+ *
+ * Build it against the library, for instance
+ *
+ *   cc -shared -fPIC -I$JAVA_HOME/include -I$JAVA_HOME/include/linux \
+ *      -o libmpijavanatives.so natives.c -L<dir of libmpijava> -lmpijava \
+ *      -Wl,-rpath,'$ORIGIN'
+ *
+ * and put libmpijavanatives next to libmpijava, where the rpath lets it
+ * find the library.  It is loaded after libmpijava.
+ */
+
+#include <jni.h>
+
+/* MPI */
+
+JNIEXPORT void JNICALL
+Java_mpi_MPI_Finalize(JNIEnv *, jclass) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_MPI_FinalizeNative(JNIEnv *env, jclass clazz) {
+  Java_mpi_MPI_Finalize(env, clazz) ;
+}
+
+JNIEXPORT jdouble JNICALL
+Java_mpi_MPI_Wtime(JNIEnv *, jclass) ;
+
+JNIEXPORT jdouble JNICALL
+Java_mpi_MPI_WtimeNative(JNIEnv *env, jclass clazz) {
+  return Java_mpi_MPI_Wtime(env, clazz) ;
+}
+
+JNIEXPORT jdouble JNICALL
+Java_mpi_MPI_Wtick(JNIEnv *, jclass) ;
+
+JNIEXPORT jdouble JNICALL
+Java_mpi_MPI_WtickNative(JNIEnv *env, jclass clazz) {
+  return Java_mpi_MPI_Wtick(env, clazz) ;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_MPI_Initialized(JNIEnv *, jclass) ;
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_MPI_InitializedNative(JNIEnv *env, jclass clazz) {
+  return Java_mpi_MPI_Initialized(env, clazz) ;
+}
+
+/* Comm */
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Size(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_SizeNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Comm_Size(env, self) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Rank(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_RankNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Comm_Rank(env, self) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Compare(JNIEnv *, jclass, jobject, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_CompareNative(JNIEnv *env, jclass clazz, jobject comm1,
+                            jobject comm2) {
+  return Java_mpi_Comm_Compare(env, clazz, comm1, comm2) ;
+}
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_Free(JNIEnv *, jobject) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_FreeNative(JNIEnv *env, jobject self) {
+  Java_mpi_Comm_Free(env, self) ;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Comm_Is_1null(JNIEnv *, jobject) ;
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Comm_Is_1nullNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Comm_Is_1null(env, self) ;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Comm_Test_1inter(JNIEnv *, jobject) ;
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Comm_Test_1interNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Comm_Test_1inter(env, self) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Pack_1size(JNIEnv *, jobject, jint, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Pack_1sizeNative(JNIEnv *env, jobject self, jint incount,
+                               jobject datatype) {
+  return Java_mpi_Comm_Pack_1size(env, self, incount, datatype) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Attr_1get(JNIEnv *, jobject, jint) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Attr_1getNative(JNIEnv *env, jobject self, jint keyval) {
+  return Java_mpi_Comm_Attr_1get(env, self, keyval) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Topo_1test(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Comm_Topo_1testNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Comm_Topo_1test(env, self) ;
+}
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_Abort(JNIEnv *, jobject, jint) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_AbortNative(JNIEnv *env, jobject self, jint errorcode) {
+  Java_mpi_Comm_Abort(env, self, errorcode) ;
+}
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_Errhandler_1set(JNIEnv *, jobject, jobject) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Comm_Errhandler_1setNative(JNIEnv *env, jobject self,
+                                    jobject errhandler) {
+  Java_mpi_Comm_Errhandler_1set(env, self, errhandler) ;
+}
+
+/* Intracomm */
+
+JNIEXPORT void JNICALL
+Java_mpi_Intracomm_Barrier(JNIEnv *, jobject) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Intracomm_BarrierNative(JNIEnv *env, jobject self) {
+  Java_mpi_Intracomm_Barrier(env, self) ;
+}
+
+/* Intercomm */
+
+JNIEXPORT jint JNICALL
+Java_mpi_Intercomm_Remote_1size(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Intercomm_Remote_1sizeNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Intercomm_Remote_1size(env, self) ;
+}
+
+/* Cartcomm */
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Cartcomm_Get(JNIEnv *, jobject) ;
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Cartcomm_GetNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Cartcomm_Get(env, self) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Cartcomm_Rank(JNIEnv *, jobject, jintArray) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Cartcomm_RankNative(JNIEnv *env, jobject self, jintArray coords) {
+  return Java_mpi_Cartcomm_Rank(env, self, coords) ;
+}
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Cartcomm_Coords(JNIEnv *, jobject, jint) ;
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Cartcomm_CoordsNative(JNIEnv *env, jobject self, jint rank) {
+  return Java_mpi_Cartcomm_Coords(env, self, rank) ;
+}
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Cartcomm_Shift(JNIEnv *, jobject, jint, jint) ;
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Cartcomm_ShiftNative(JNIEnv *env, jobject self, jint direction,
+                              jint disp) {
+  return Java_mpi_Cartcomm_Shift(env, self, direction, disp) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Cartcomm_Map(JNIEnv *, jobject, jintArray, jbooleanArray) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Cartcomm_MapNative(JNIEnv *env, jobject self, jintArray dims,
+                            jbooleanArray periods) {
+  return Java_mpi_Cartcomm_Map(env, self, dims, periods) ;
+}
+
+JNIEXPORT void JNICALL
+Java_mpi_Cartcomm_Dims_1create(JNIEnv *, jclass, jint, jintArray) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Cartcomm_Dims_1createNative(JNIEnv *env, jclass clazz, jint nnodes,
+                                     jintArray dims) {
+  Java_mpi_Cartcomm_Dims_1create(env, clazz, nnodes, dims) ;
+}
+
+/* Graphcomm */
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Graphcomm_Get(JNIEnv *, jobject) ;
+
+JNIEXPORT jobject JNICALL
+Java_mpi_Graphcomm_GetNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Graphcomm_Get(env, self) ;
+}
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Graphcomm_Neighbours(JNIEnv *, jobject, jint) ;
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Graphcomm_NeighboursNative(JNIEnv *env, jobject self, jint rank) {
+  return Java_mpi_Graphcomm_Neighbours(env, self, rank) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Graphcomm_Map(JNIEnv *, jobject, jintArray, jintArray) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Graphcomm_MapNative(JNIEnv *env, jobject self, jintArray index,
+                             jintArray edges) {
+  return Java_mpi_Graphcomm_Map(env, self, index, edges) ;
+}
+
+/* Group */
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_Size(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_SizeNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Group_Size(env, self) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_Rank(JNIEnv *, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_RankNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Group_Rank(env, self) ;
+}
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Group_Translate_1ranks(JNIEnv *, jclass, jobject, jintArray, jobject) ;
+
+JNIEXPORT jintArray JNICALL
+Java_mpi_Group_Translate_1ranksNative(JNIEnv *env, jclass clazz, jobject group1,
+                                      jintArray ranks1, jobject group2) {
+  return Java_mpi_Group_Translate_1ranks(env, clazz, group1, ranks1, group2) ;
+}
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_Compare(JNIEnv *, jclass, jobject, jobject) ;
+
+JNIEXPORT jint JNICALL
+Java_mpi_Group_CompareNative(JNIEnv *env, jclass clazz, jobject group1,
+                             jobject group2) {
+  return Java_mpi_Group_Compare(env, clazz, group1, group2) ;
+}
+
+/* Request */
+
+JNIEXPORT void JNICALL
+Java_mpi_Request_Free(JNIEnv *, jobject) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Request_FreeNative(JNIEnv *env, jobject self) {
+  Java_mpi_Request_Free(env, self) ;
+}
+
+JNIEXPORT void JNICALL
+Java_mpi_Request_Cancel(JNIEnv *, jobject) ;
+
+JNIEXPORT void JNICALL
+Java_mpi_Request_CancelNative(JNIEnv *env, jobject self) {
+  Java_mpi_Request_Cancel(env, self) ;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Request_Is_1null(JNIEnv *, jobject) ;
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Request_Is_1nullNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Request_Is_1null(env, self) ;
+}
+
+/* Status */
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Status_Test_1cancelled(JNIEnv *, jobject) ;
+
+JNIEXPORT jboolean JNICALL
+Java_mpi_Status_Test_1cancelledNative(JNIEnv *env, jobject self) {
+  return Java_mpi_Status_Test_1cancelled(env, self) ;
+}